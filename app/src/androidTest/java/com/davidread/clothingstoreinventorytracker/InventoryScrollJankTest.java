@@ -0,0 +1,109 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static androidx.test.espresso.Espresso.onView;
+import static androidx.test.espresso.action.ViewActions.swipeUp;
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static org.junit.Assert.*;
+
+/**
+ * {@link InventoryScrollJankTest} provides a benchmark that flings through the product list of
+ * {@link InventoryActivity} and reports the dropped frames measured by its
+ * {@link ScrollJankTracker}. It must run on a debug build.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryScrollJankTest {
+
+    /**
+     * Number of products in the list, and number of flings through it.
+     */
+    private static final int COUNT_ROWS = 1000;
+    private static final int COUNT_FLINGS = 30;
+
+    /**
+     * {@link ContentResolver} for filling the real products database.
+     */
+    private ContentResolver contentResolver;
+
+    /**
+     * Callback method invoked before each test method. It replaces every product with
+     * {@link #COUNT_ROWS} products of varied name lengths.
+     */
+    @Before
+    public void setUp() throws Exception {
+        contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        contentResolver.delete(ProductEntry.CONTENT_URI, null, null);
+
+        Random random = new Random(42);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < COUNT_ROWS; i++) {
+            ContentValues values = new ContentValues();
+            StringBuilder name = new StringBuilder("Product " + i);
+            for (int word = random.nextInt(8); word > 0; word--) {
+                name.append(" Super Soft");
+            }
+            values.put(ProductEntry.COLUMN_NAME, name.toString());
+            values.put(ProductEntry.COLUMN_PRICE, random.nextInt(10000));
+            values.put(ProductEntry.COLUMN_QUANTITY, random.nextInt(1000));
+            values.put(ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+            values.put(ProductEntry.COLUMN_PICTURE, new byte[]{0});
+            operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+    }
+
+    /**
+     * Callback method invoked after each test method. It deletes the products it inserted.
+     */
+    @After
+    public void tearDown() {
+        contentResolver.delete(ProductEntry.CONTENT_URI, null, null);
+    }
+
+    /**
+     * Flings through the list and reports dropped frames per 1000 rows. Verifies that frames were
+     * measured while rows scrolled.
+     */
+    @Test
+    public void fling_ThousandRows_ReportsDroppedFrames() {
+        try (ActivityScenario<InventoryActivity> scenario = ActivityScenario.launch(InventoryActivity.class)) {
+            for (int i = 0; i < COUNT_FLINGS; i++) {
+                onView(withId(R.id.inventory_recycler_view)).perform(swipeUp());
+            }
+
+            AtomicReference<ScrollJankTracker> tracker = new AtomicReference<>();
+            scenario.onActivity(activity -> tracker.set(activity.getScrollJankTracker()));
+            assertNotNull(tracker.get());
+
+            Log.i("InventoryScrollJankTest", String.format(Locale.US,
+                    "%d frames, %d dropped, %d rows flung, %.1f dropped frames per 1000 rows",
+                    tracker.get().getCountFrames(), tracker.get().getCountDroppedFrames(),
+                    tracker.get().getCountRowsScrolled(), tracker.get().getDroppedFramesPer1000Rows()));
+            assertTrue(tracker.get().getCountFrames() > 0);
+            assertTrue(tracker.get().getCountRowsScrolled() > 0);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductBatchDecoder;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ProductBulkReadBenchmarkTest} provides a benchmark that reads the same products by
+ * walking a query's {@link Cursor}, by reading {@link ProductContract#METHOD_BULK_READ} chunks,
+ * and by streaming them through its pipe, and reports the time each takes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductBulkReadBenchmarkTest {
+
+    /**
+     * Number of products read, and supplier marking them so they can be selected and deleted.
+     */
+    private static final int COUNT_ROWS = 20_000;
+    private static final String SUPPLIER = "Bulk Read Benchmark Supply";
+
+    /**
+     * Selection and arguments matching the benchmark products.
+     */
+    private static final String SELECTION = ProductEntry.COLUMN_SUPPLIER + "=?";
+    private static final String[] SELECTION_ARGS = {SUPPLIER};
+
+    /**
+     * {@link ContentResolver} for filling and reading the real products database.
+     */
+    private ContentResolver contentResolver;
+
+    /**
+     * Callback method invoked before each test method. It inserts {@link #COUNT_ROWS} products of
+     * varied name lengths.
+     */
+    @Before
+    public void setUp() throws Exception {
+        contentResolver = ApplicationProvider.getApplicationContext().getContentResolver();
+        contentResolver.delete(ProductEntry.CONTENT_URI, SELECTION, SELECTION_ARGS);
+
+        Random random = new Random(42);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < COUNT_ROWS; i++) {
+            ContentValues values = new ContentValues();
+            StringBuilder name = new StringBuilder("Product " + i);
+            for (int word = random.nextInt(4); word > 0; word--) {
+                name.append(" Super Soft");
+            }
+            values.put(ProductEntry.COLUMN_NAME, name.toString());
+            values.put(ProductEntry.COLUMN_PRICE, random.nextInt(10000));
+            values.put(ProductEntry.COLUMN_QUANTITY, random.nextInt(1000));
+            values.put(ProductEntry.COLUMN_SUPPLIER, SUPPLIER);
+            values.put(ProductEntry.COLUMN_PICTURE, new byte[]{0});
+            operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+    }
+
+    /**
+     * Callback method invoked after each test method. It deletes the products it inserted.
+     */
+    @After
+    public void tearDown() {
+        contentResolver.delete(ProductEntry.CONTENT_URI, SELECTION, SELECTION_ARGS);
+    }
+
+    /**
+     * Reads every benchmark product three ways and reports the time each takes. Verifies that all
+     * three read the same products.
+     */
+    @Test
+    public void bulkRead_20kProducts_ReadsSameProductsAsCursor() throws Exception {
+
+        // Walk a query's cursor, reading every field like a report would.
+        long cursorStart = System.nanoTime();
+        long cursorChecksum = 0;
+        int cursorRows = 0;
+        try (Cursor cursor = contentResolver.query(ProductEntry.CONTENT_URI, new String[]{
+                ProductEntry._ID,
+                ProductEntry.COLUMN_NAME,
+                ProductEntry.COLUMN_PRICE,
+                ProductEntry.COLUMN_QUANTITY,
+                ProductEntry.COLUMN_SUPPLIER
+        }, SELECTION, SELECTION_ARGS, ProductEntry._ID)) {
+            assertNotNull(cursor);
+            while (cursor.moveToNext()) {
+                cursorChecksum += cursor.getLong(0) + cursor.getString(1).length()
+                        + cursor.getInt(2) + cursor.getInt(3) + cursor.getString(4).length();
+                cursorRows++;
+            }
+        }
+        long cursorNanos = System.nanoTime() - cursorStart;
+
+        // Read chunks, passing the id each chunk ends at to the next.
+        long chunkStart = System.nanoTime();
+        long chunkChecksum = 0;
+        int chunkRows = 0;
+        int countChunks = 0;
+        Bundle extras = new Bundle();
+        extras.putString(ProductContract.EXTRA_SELECTION, SELECTION);
+        extras.putStringArray(ProductContract.EXTRA_SELECTION_ARGS, SELECTION_ARGS);
+        Bundle chunk;
+        do {
+            chunk = contentResolver.call(ProductEntry.CONTENT_URI,
+                    ProductContract.METHOD_BULK_READ, null, extras);
+            assertNotNull(chunk);
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.getByteArray(ProductContract.EXTRA_BATCH));
+            ProductBatchDecoder decoder = new ProductBatchDecoder();
+            assertTrue(decoder.readHeader(buffer));
+            while (decoder.next(buffer)) {
+                chunkChecksum += checksum(decoder);
+                chunkRows++;
+            }
+            extras.putLong(ProductContract.EXTRA_AFTER_ID,
+                    chunk.getLong(ProductContract.EXTRA_AFTER_ID));
+            countChunks++;
+        } while (chunk.getBoolean(ProductContract.EXTRA_HAS_MORE));
+        long chunkNanos = System.nanoTime() - chunkStart;
+
+        // Stream a single batch through the pipe, refilling the buffer as rows arrive.
+        long streamStart = System.nanoTime();
+        long streamChecksum = 0;
+        int streamRows = 0;
+        extras.remove(ProductContract.EXTRA_AFTER_ID);
+        extras.putBoolean(ProductContract.EXTRA_STREAM, true);
+        Bundle result = contentResolver.call(ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_BULK_READ, null, extras);
+        assertNotNull(result);
+        ParcelFileDescriptor pipe = result.getParcelable(ProductContract.EXTRA_PIPE);
+        try (InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pipe)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            ProductBatchDecoder decoder = new ProductBatchDecoder();
+            boolean hasReadHeader = false;
+            int countRead;
+            while ((countRead = in.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + countRead);
+                buffer.flip();
+                if (!hasReadHeader) {
+                    hasReadHeader = decoder.readHeader(buffer);
+                }
+                while (hasReadHeader && decoder.next(buffer)) {
+                    streamChecksum += checksum(decoder);
+                    streamRows++;
+                }
+                buffer.compact();
+            }
+        }
+        long streamNanos = System.nanoTime() - streamStart;
+
+        Log.i("ProductBulkReadBenchmarkTest", String.format(Locale.US,
+                "%d products: cursor %.1f ms, %d chunks %.1f ms, stream %.1f ms",
+                cursorRows, cursorNanos / 1e6, countChunks, chunkNanos / 1e6, streamNanos / 1e6));
+        assertEquals(COUNT_ROWS, cursorRows);
+        assertEquals(COUNT_ROWS, chunkRows);
+        assertEquals(COUNT_ROWS, streamRows);
+        assertEquals(cursorChecksum, chunkChecksum);
+        assertEquals(cursorChecksum, streamChecksum);
+    }
+
+    /**
+     * Returns the checksum of the current row of a {@link ProductBatchDecoder}, matching the one
+     * computed from the cursor.
+     */
+    private static long checksum(ProductBatchDecoder decoder) {
+        return decoder.getId() + decoder.getName().length() + decoder.getPrice()
+                + decoder.getQuantity() + decoder.getSupplier().length();
+    }
+}
@@ -1,13 +1,19 @@
 package com.davidread.clothingstoreinventorytracker;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.rule.provider.ProviderTestRule;
 
+import com.davidread.clothingstoreinventorytracker.data.ProductBatchDecoder;
 import com.davidread.clothingstoreinventorytracker.data.ProductContract;
 import com.davidread.clothingstoreinventorytracker.data.ProductProvider;
 
@@ -16,6 +22,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
 import static org.junit.Assert.*;
 
 /**
@@ -167,4 +177,1033 @@ public class ProductProviderTest {
 
         assertNotEquals(countRowsDeleted, -1);
     }
+
+    /**
+     * Verifies that {@link ProductProvider#query(Uri, String[], String, String[], String)} on the
+     * change feed returns only the rows changed after the passed change token, including deletions.
+     */
+    @Test
+    public void query_ChangesSinceToken_ReturnsOnlyNewerRows() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0, 1, 2, 3});
+        Uri firstUri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(firstUri);
+
+        // Read the change token of the first row.
+        Cursor cursor = contentResolver.query(firstUri, null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        long token = cursor.getLong(
+                cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_VERSION));
+        cursor.close();
+
+        Uri secondUri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(secondUri);
+        contentResolver.delete(firstUri, null, null);
+
+        Cursor changes = contentResolver.query(
+                ProductContract.ProductEntry.buildChangesUri(token),
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(changes);
+        assertEquals(2, changes.getCount());
+
+        int idColumnIndex = changes.getColumnIndexOrThrow(ProductContract.ProductEntry._ID);
+        int deletedColumnIndex =
+                changes.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_DELETED);
+        assertTrue(changes.moveToNext());
+        assertEquals(ContentUris.parseId(secondUri), changes.getLong(idColumnIndex));
+        assertEquals(0, changes.getInt(deletedColumnIndex));
+        assertTrue(changes.moveToNext());
+        assertEquals(ContentUris.parseId(firstUri), changes.getLong(idColumnIndex));
+        assertEquals(1, changes.getInt(deletedColumnIndex));
+        changes.close();
+
+        // Verify that an empty limit is refused rather than building a broken query.
+        assertNull(contentResolver.query(ProductContract.ProductEntry.buildChangesUri(token)
+                        .buildUpon()
+                        .appendQueryParameter(ProductContract.PARAM_LIMIT, "")
+                        .build(),
+                null, null, null, null));
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, android.os.Bundle)} can back up the
+     * products to a file and restore them after they are deleted.
+     */
+    @Test
+    public void call_BackupThenRestore_RestoresRows() {
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0, 1, 2, 3});
+        assertNotNull(contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values));
+
+        File backupFile = new File(
+                ApplicationProvider.getApplicationContext().getCacheDir(), "backup_test.db.gz");
+        String backupUri = Uri.fromFile(backupFile).toString();
+        assertNotNull(contentResolver.call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_BACKUP,
+                backupUri,
+                null
+        ));
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        assertNotNull(contentResolver.call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESTORE,
+                backupUri,
+                null
+        ));
+
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        assertTrue(backupFile.delete());
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#query(Uri, String[], String, String[], String)} does not
+     * return stale cached rows after a write.
+     */
+    @Test
+    public void query_AfterInsert_ReturnsFreshRows() {
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        Cursor before = contentResolver.query(
+                ProductContract.ProductEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(before);
+        assertEquals(0, before.getCount());
+        before.close();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0, 1, 2, 3});
+        assertNotNull(contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values));
+
+        Cursor after = contentResolver.query(
+                ProductContract.ProductEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(after);
+        assertEquals(1, after.getCount());
+        assertTrue(after.moveToFirst());
+        assertArrayEquals(new byte[]{0, 1, 2, 3}, after.getBlob(
+                after.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PICTURE)));
+        after.close();
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, Bundle)} applies a batch of
+     * quantity edits only once when it is resent under the same batch id, and never takes a
+     * quantity below 0.
+     */
+    @Test
+    public void call_AdjustQuantitiesResent_AppliesOnce() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        Uri first = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        Uri second = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.EXTRA_IDS,
+                new long[]{ContentUris.parseId(first), ContentUris.parseId(second)});
+        extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[]{5, -20});
+        for (int i = 0; i < 2; i++) {
+            Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                    ProductContract.METHOD_ADJUST_QUANTITIES, "batch-1", extras);
+            assertNotNull(result);
+
+            // The clamped decrement is reported, and a resent batch applies nothing.
+            int[] applied = result.getIntArray(ProductContract.EXTRA_DELTAS);
+            assertNotNull(applied);
+            assertEquals(i == 0 ? 5 : 0, applied[0]);
+            assertEquals(i == 0 ? -10 : 0, applied[1]);
+        }
+
+        assertEquals(15, queryQuantity(first));
+        assertEquals(0, queryQuantity(second));
+    }
+
+    /**
+     * Verifies that products can be looked up by SKU, one at a time and in a batch, and that two
+     * products cannot share a SKU.
+     */
+    @Test
+    public void query_BySku_ReturnsMatchingProduct() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        values.put(ProductContract.ProductEntry.COLUMN_SKU, "0012345678905");
+        Uri uri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        assertNull(contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values));
+
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.buildSkuUri("0012345678905"), null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ContentUris.parseId(uri),
+                cursor.getLong(cursor.getColumnIndexOrThrow(ProductContract.ProductEntry._ID)));
+        cursor.close();
+
+        Bundle extras = new Bundle();
+        extras.putStringArray(ProductContract.EXTRA_SKUS,
+                new String[]{"unknown", "0012345678905", "0012345678905"});
+        Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_LOOKUP_SKUS, null, extras);
+        assertNotNull(result);
+        long id = ContentUris.parseId(uri);
+        assertArrayEquals(new long[]{-1, id, id}, result.getLongArray(ProductContract.EXTRA_IDS));
+    }
+
+    /**
+     * Verifies that the rollup columns of a product follow inserts, updates, and deletes of its
+     * variants, and that deleting the product deletes its variants.
+     */
+    @Test
+    public void insert_Variants_MaintainsProductRollups() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Cozy Cabin Flannel");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 3999);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 0);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        Uri product = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(product);
+        Uri variants = ProductContract.ProductEntry.buildVariantsUri(ContentUris.parseId(product));
+
+        ContentValues small = new ContentValues();
+        small.put(ProductContract.VariantEntry.COLUMN_SIZE, "S");
+        small.put(ProductContract.VariantEntry.COLUMN_COLOR, "Red");
+        small.put(ProductContract.VariantEntry.COLUMN_QUANTITY, 4);
+        Uri smallUri = contentResolver.insert(variants, small);
+        assertNotNull(smallUri);
+        assertNull(contentResolver.insert(variants, small));
+
+        ContentValues large = new ContentValues(small);
+        large.put(ProductContract.VariantEntry.COLUMN_SIZE, "L");
+        large.put(ProductContract.VariantEntry.COLUMN_QUANTITY, 6);
+        assertNotNull(contentResolver.insert(variants, large));
+        assertRollups(product, 2, 10);
+
+        ContentValues restock = new ContentValues();
+        restock.put(ProductContract.VariantEntry.COLUMN_QUANTITY, 9);
+        assertEquals(1, contentResolver.update(smallUri, restock, null, null));
+        assertRollups(product, 2, 15);
+
+        assertEquals(1, contentResolver.delete(smallUri, null, null));
+        assertRollups(product, 1, 6);
+
+        assertEquals(1, contentResolver.delete(product, null, null));
+        Cursor cursor = contentResolver.query(variants, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Asserts the variant count and variant quantity of the product at the passed content URI.
+     */
+    private void assertRollups(Uri uri, int variantCount, int variantQuantity) {
+        Cursor cursor = contentResolver.query(uri, new String[]{
+                ProductContract.ProductEntry.COLUMN_VARIANT_COUNT,
+                ProductContract.ProductEntry.COLUMN_VARIANT_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(variantCount, cursor.getInt(0));
+        assertEquals(variantQuantity, cursor.getInt(1));
+        cursor.close();
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, Bundle)} marks down only the
+     * selected products, keeps a price under a dollar that has no price ending in 99 to round
+     * to, and reprices nothing when a price would become negative.
+     */
+    @Test
+    public void call_RepriceSupplier_MarksDownSelectedProducts() {
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Cozy Cabin Flannel");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 2499);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        Uri markedDown = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Hudson Wholesale Inc.");
+        Uri untouched = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 40);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+        Uri underDollar = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+
+        Bundle extras = new Bundle();
+        extras.putString(ProductContract.EXTRA_SELECTION,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?");
+        extras.putStringArray(ProductContract.EXTRA_SELECTION_ARGS, new String[]{"Regards Wholesale"});
+        extras.putDouble(ProductContract.EXTRA_PERCENT, -20);
+        extras.putString(ProductContract.EXTRA_ROUNDING, ProductContract.ROUNDING_ENDING_99);
+        Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_REPRICE, null, extras);
+        assertNotNull(result);
+        assertEquals(1, result.getInt(ProductContract.EXTRA_COUNT));
+        assertEquals(1999, queryPrice(markedDown));
+        assertEquals(2499, queryPrice(untouched));
+
+        // Verify that a price under a dollar with no price ending in 99 to round to is kept.
+        assertEquals(40, queryPrice(underDollar));
+
+        extras.putDouble(ProductContract.EXTRA_PERCENT, 0);
+        extras.putLong(ProductContract.EXTRA_DELTA, -5000);
+        extras.putString(ProductContract.EXTRA_ROUNDING, ProductContract.ROUNDING_NEAREST);
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_REPRICE, null, extras));
+        assertEquals(1999, queryPrice(markedDown));
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, Bundle)} archives only sold out
+     * products, and that archived products are only returned with the include archived parameter.
+     */
+    @Test
+    public void call_ArchiveSoldOut_QueryableOnlyWithParameter() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Vintage Denim Jacket");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 5999);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 0);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Harbor Supply");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        Uri soldOut = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 3);
+        Uri inStock = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(soldOut);
+        assertNotNull(inStock);
+
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_MAX_AGE_MILLIS, 0);
+        Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_ARCHIVE, null, extras);
+        assertNotNull(result);
+        assertTrue(result.getInt(ProductContract.EXTRA_COUNT) >= 1);
+
+        // Verify that the sold out product left the products table but is still queryable.
+        Cursor cursor = contentResolver.query(soldOut, null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        cursor = contentResolver.query(ProductContract.ProductEntry.withArchived(soldOut),
+                null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(cursor.getColumnIndexOrThrow(
+                ProductContract.ProductEntry.COLUMN_ARCHIVED)));
+        assertEquals("Vintage Denim Jacket", cursor.getString(cursor.getColumnIndexOrThrow(
+                ProductContract.ProductEntry.COLUMN_NAME)));
+        cursor.close();
+
+        // Verify that the product in stock was not archived.
+        assertEquals(3, queryQuantity(inStock));
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, Bundle)} runs every maintenance
+     * task and reports how long each took.
+     */
+    @Test
+    public void call_RunMaintenance_ReportsEveryTask() {
+
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_TIME_BUDGET_MILLIS, 60_000);
+        Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RUN_MAINTENANCE, null, extras);
+        assertNotNull(result);
+
+        String[] tasks = result.getStringArray(ProductContract.EXTRA_TASKS);
+        String[] results = result.getStringArray(ProductContract.EXTRA_RESULTS);
+        long[] durations = result.getLongArray(ProductContract.EXTRA_DURATIONS);
+        assertNotNull(tasks);
+        assertNotNull(results);
+        assertNotNull(durations);
+        assertEquals(6, tasks.length);
+        assertEquals(tasks.length, results.length);
+        assertEquals(tasks.length, durations.length);
+        assertEquals("quick_check", tasks[tasks.length - 1]);
+        assertEquals("ok", results[results.length - 1]);
+        for (long duration : durations) {
+            assertTrue(duration >= 0);
+        }
+    }
+
+    /**
+     * Verifies that {@link ProductProvider#call(String, String, Bundle)} reports slow queries
+     * with their normalized SQL and query plan.
+     */
+    @Test
+    public void call_DumpSlowQueries_ReportsPlanOfRecordedQuery() {
+
+        // Record every operation from now on, starting from an empty log.
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_THRESHOLD_MILLIS, 0);
+        extras.putBoolean(ProductContract.EXTRA_CLEAR, true);
+        assertNotNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_DUMP_SLOW_QUERIES, null, extras));
+
+        Cursor cursor = contentResolver.query(ProductContract.ProductEntry.CONTENT_URI, null,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER + " = 'Harbor Supply'", null, null);
+        assertNotNull(cursor);
+        cursor.close();
+
+        Bundle result = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_DUMP_SLOW_QUERIES, null, null);
+        assertNotNull(result);
+        assertEquals(1, result.getInt(ProductContract.EXTRA_COUNT));
+        String report = result.getString(ProductContract.EXTRA_REPORT);
+        assertNotNull(report);
+
+        // Verify that the literal was normalized and the unindexed supplier column is scanned.
+        assertTrue(report, report.contains(ProductContract.ProductEntry.COLUMN_SUPPLIER + " = ?"));
+        assertFalse(report, report.contains("Harbor Supply"));
+        assertTrue(report, report.contains("SCAN"));
+    }
+
+    /**
+     * Verifies that products sharing a picture each return it, and that changing or deleting one
+     * product leaves the picture of the other untouched.
+     */
+    @Test
+    public void insert_SharedPicture_ReturnedByEachProduct() {
+
+        byte[] picture = new byte[]{7, 7, 7, 7};
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Canvas Tote");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1500);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 4);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Harbor Supply");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, picture);
+        Uri first = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        Uri second = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertArrayEquals(picture, queryPicture(first));
+        assertArrayEquals(picture, queryPicture(second));
+
+        // Verify that a new picture for one product does not change the other.
+        byte[] newPicture = new byte[]{8, 8};
+        ContentValues update = new ContentValues();
+        update.put(ProductContract.ProductEntry.COLUMN_PICTURE, newPicture);
+        assertEquals(1, contentResolver.update(first, update, null, null));
+        assertArrayEquals(newPicture, queryPicture(first));
+        assertArrayEquals(picture, queryPicture(second));
+
+        // Verify that pointing back at a shared picture and deleting the other product keeps it.
+        update.put(ProductContract.ProductEntry.COLUMN_PICTURE, picture);
+        assertEquals(1, contentResolver.update(first, update, null, null));
+        assertEquals(1, contentResolver.delete(second, null, null));
+        assertArrayEquals(picture, queryPicture(first));
+    }
+
+    /**
+     * Verifies that a query on a top content URI returns the most valuable products first, up to
+     * its limit, and that the stock value follows updates of the price and quantity.
+     */
+    @Test
+    public void query_TopMostValuable_ReturnsLimitedRowsInOrder() {
+
+        final String supplier = "Top Test Supply";
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Rain Jacket");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, supplier);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 5000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 2);
+        Uri jacket = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 30);
+        Uri socks = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 20000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 0);
+        Uri boots = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(jacket);
+        assertNotNull(socks);
+        assertNotNull(boots);
+
+        Uri top = ProductContract.ProductEntry.buildTopUri(
+                ProductContract.ProductEntry.SORT_MOST_VALUABLE, 2);
+        final String selection = ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?";
+        final String[] selectionArgs = new String[]{supplier};
+        Cursor cursor = contentResolver.query(top, new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_STOCK_VALUE
+        }, selection, selectionArgs, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ContentUris.parseId(socks), cursor.getLong(0));
+        assertEquals(30000, cursor.getLong(1));
+        assertTrue(cursor.moveToNext());
+        assertEquals(ContentUris.parseId(jacket), cursor.getLong(0));
+        assertEquals(10000, cursor.getLong(1));
+        cursor.close();
+
+        // Verify that restocking a product moves it to the top.
+        ContentValues update = new ContentValues();
+        update.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 3);
+        assertEquals(1, contentResolver.update(boots, update, null, null));
+        cursor = contentResolver.query(top, new String[]{ProductContract.ProductEntry._ID},
+                selection, selectionArgs, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ContentUris.parseId(boots), cursor.getLong(0));
+        cursor.close();
+
+        // Verify that an unknown sort order and a limit of 0 fail.
+        assertNull(contentResolver.query(ProductContract.ProductEntry.buildTopUri("cheapest", 2),
+                null, null, null, null));
+        assertNull(contentResolver.query(ProductContract.ProductEntry.buildTopUri(
+                ProductContract.ProductEntry.SORT_MOST_VALUABLE, 0), null, null, null, null));
+    }
+
+    /**
+     * Verifies that the lowest quantity top products count the units kept in variants.
+     */
+    @Test
+    public void query_TopLowestQuantity_CountsVariantUnits() {
+
+        final String supplier = "Lowest Quantity Test Supply";
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Denim Jeans");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, supplier);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 6000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 0);
+        Uri jeans = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 3);
+        Uri belt = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(jeans);
+        assertNotNull(belt);
+
+        ContentValues variant = new ContentValues();
+        variant.put(ProductContract.VariantEntry.COLUMN_SIZE, "32");
+        variant.put(ProductContract.VariantEntry.COLUMN_QUANTITY, 8);
+        assertNotNull(contentResolver.insert(
+                ProductContract.ProductEntry.buildVariantsUri(ContentUris.parseId(jeans)), variant));
+
+        Cursor cursor = contentResolver.query(ProductContract.ProductEntry.buildTopUri(
+                ProductContract.ProductEntry.SORT_LOWEST_QUANTITY, 2), new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_TOTAL_QUANTITY
+        }, ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?", new String[]{supplier}, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ContentUris.parseId(belt), cursor.getLong(0));
+        assertEquals(3, cursor.getLong(1));
+        assertTrue(cursor.moveToNext());
+        assertEquals(ContentUris.parseId(jeans), cursor.getLong(0));
+        assertEquals(8, cursor.getLong(1));
+        cursor.close();
+    }
+
+    /**
+     * Verifies that recorded sales, but not quantity corrections, count towards sales velocities,
+     * and that only products expected to sell out within the horizon are returned for reordering,
+     * soonest first.
+     */
+    @Test
+    public void query_Reorder_ReturnsSellingProductsBySoonestSellOut() {
+
+        final String supplier = "Reorder Test Supply";
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Wool Scarf");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 2500);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, supplier);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 50);
+        Uri scarf = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 20);
+        Uri gloves = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        Uri hat = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(scarf);
+        assertNotNull(gloves);
+        assertNotNull(hat);
+
+        // Sell some of the scarves and gloves, and correct the count of hats down.
+        assertNotNull(recordSale(scarf, 10));
+        assertNotNull(recordSale(gloves, 10));
+        ContentValues update = new ContentValues();
+        update.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 5);
+        assertEquals(1, contentResolver.update(hat, update, null, null));
+        assertEquals(40, queryQuantity(scarf));
+
+        // Verify that a sale of more units than are in stock is refused.
+        assertNull(recordSale(gloves, 11));
+        assertEquals(10, queryQuantity(gloves));
+
+        // Verify that the gloves, with less stock at the same rate, sell out first.
+        Uri reorder = ProductContract.ProductEntry.CONTENT_REORDER_URI.buildUpon()
+                .appendQueryParameter(ProductContract.PARAM_HORIZON_DAYS, "1000")
+                .build();
+        Cursor cursor = contentResolver.query(reorder, new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_SALES_RATE,
+                ProductContract.ProductEntry.COLUMN_DAYS_OF_STOCK
+        }, ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?", new String[]{supplier}, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ContentUris.parseId(gloves), cursor.getLong(0));
+
+        /* Verify that a sale right after the product was added adds the units spread over the
+         * 28 day window of the moving average. */
+        assertEquals(10.0 / 28, cursor.getDouble(1), 0.001);
+        final double glovesDays = cursor.getDouble(2);
+        assertTrue(cursor.moveToNext());
+        assertEquals(ContentUris.parseId(scarf), cursor.getLong(0));
+        assertTrue(cursor.getDouble(2) > glovesDays);
+        cursor.close();
+
+        // Verify that a horizon shorter than any product's stock returns nothing.
+        reorder = ProductContract.ProductEntry.CONTENT_REORDER_URI.buildUpon()
+                .appendQueryParameter(ProductContract.PARAM_HORIZON_DAYS, "0")
+                .build();
+        cursor = contentResolver.query(reorder, null,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?", new String[]{supplier}, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Verifies that reservations hold units out of the available quantity without changing the
+     * quantity, and that fulfilling one sells its units.
+     */
+    @Test
+    public void call_ReserveThenRelease_HoldsAvailableQuantity() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Leather Belt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 3500);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 5);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Harbor Supply");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        Uri uri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_ID, ContentUris.parseId(uri));
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 3);
+        extras.putLong(ProductContract.EXTRA_TTL_MILLIS, 60_000);
+        Bundle held = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras);
+        assertNotNull(held);
+        assertEquals(5, queryQuantity(uri));
+        assertEquals(2, queryAvailableQuantity(uri));
+
+        // Verify that a hold for more units than are available is refused.
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras));
+
+        // Verify that fulfilling the hold takes its units off the quantity.
+        Bundle release = new Bundle();
+        release.putLong(ProductContract.EXTRA_RESERVATION_ID,
+                held.getLong(ProductContract.EXTRA_RESERVATION_ID));
+        release.putBoolean(ProductContract.EXTRA_FULFILL, true);
+        Bundle released = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RELEASE, null, release);
+        assertNotNull(released);
+        assertEquals(1, released.getInt(ProductContract.EXTRA_COUNT));
+        assertEquals(2, queryQuantity(uri));
+        assertEquals(2, queryAvailableQuantity(uri));
+    }
+
+    /**
+     * Verifies that a cached query stops holding units out of the available quantity once their
+     * hold expires.
+     */
+    @Test
+    public void query_HoldExpired_ReturnsAvailableQuantity() throws InterruptedException {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Wool Scarf");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 2500);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 5);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Harbor Supply");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        Uri uri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_ID, ContentUris.parseId(uri));
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 3);
+        extras.putLong(ProductContract.EXTRA_TTL_MILLIS, 500);
+        assertNotNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras));
+        assertEquals(2, queryAvailableQuantity(uri));
+        assertEquals(2, queryAvailableQuantity(uri));
+
+        Thread.sleep(1000);
+        assertEquals(5, queryAvailableQuantity(uri));
+    }
+
+    /**
+     * Verifies that a product's variants back holds on their own units, that its own quantity
+     * cannot back holds on them, and that fulfilling a hold on a variant sells the variant's
+     * units.
+     */
+    @Test
+    public void call_ReserveVariantThenFulfill_SellsVariantUnits() {
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Cozy Cabin Flannel");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 3999);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 1);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{0});
+        Uri product = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        assertNotNull(product);
+        ContentValues small = new ContentValues();
+        small.put(ProductContract.VariantEntry.COLUMN_SIZE, "S");
+        small.put(ProductContract.VariantEntry.COLUMN_COLOR, "Red");
+        small.put(ProductContract.VariantEntry.COLUMN_QUANTITY, 4);
+        Uri smallUri = contentResolver.insert(
+                ProductContract.ProductEntry.buildVariantsUri(ContentUris.parseId(product)), small);
+        assertNotNull(smallUri);
+        assertEquals(5, queryAvailableQuantity(product));
+
+        // Verify that the product's own unit cannot back a hold on more units than it has.
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_ID, ContentUris.parseId(product));
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 3);
+        extras.putLong(ProductContract.EXTRA_TTL_MILLIS, 60_000);
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras));
+
+        // Verify that the variant backs the hold, and not a variant of another product.
+        extras.putLong(ProductContract.EXTRA_VARIANT_ID, ContentUris.parseId(smallUri));
+        Bundle held = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras);
+        assertNotNull(held);
+        assertEquals(2, queryAvailableQuantity(product));
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras));
+        extras.putLong(ProductContract.EXTRA_ID, ContentUris.parseId(product) + 1);
+        extras.putInt(ProductContract.EXTRA_QUANTITY, 1);
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESERVE, null, extras));
+
+        // Verify that fulfilling the hold takes its units off the variant, not the product.
+        Bundle release = new Bundle();
+        release.putLong(ProductContract.EXTRA_RESERVATION_ID,
+                held.getLong(ProductContract.EXTRA_RESERVATION_ID));
+        release.putBoolean(ProductContract.EXTRA_FULFILL, true);
+        Bundle released = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RELEASE, null, release);
+        assertNotNull(released);
+        assertEquals(1, released.getInt(ProductContract.EXTRA_COUNT));
+        assertEquals(1, queryQuantity(product));
+        assertEquals(2, queryAvailableQuantity(product));
+        Cursor cursor = contentResolver.query(smallUri,
+                new String[]{ProductContract.VariantEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getInt(0));
+        cursor.close();
+    }
+
+    /**
+     * Verifies that each store reads and writes only its own products, and that the store summary
+     * has a row for every store.
+     */
+    @Test
+    public void insert_StoreUris_KeepsStoresApart() {
+
+        // Use a supplier unique to this run, since store databases outlive each test.
+        final String supplier = "Store Test Supply " + System.currentTimeMillis();
+        final String selection = ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?";
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Denim Jacket");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 6000);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 4);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, supplier);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        Uri storeOne = ProductContract.StoreEntry.buildProductsUri(1);
+        Uri storeTwo = ProductContract.StoreEntry.buildProductsUri(2);
+        Uri jacket = contentResolver.insert(storeOne, values);
+        assertNotNull(jacket);
+        assertTrue(jacket.toString().startsWith(storeOne.toString()));
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 7);
+        assertNotNull(contentResolver.insert(storeTwo, values));
+        assertNotNull(contentResolver.insert(storeTwo, values));
+
+        // Verify that the main store id cannot be used as a store URI.
+        assertNull(contentResolver.insert(ProductContract.StoreEntry.buildProductsUri(0), values));
+
+        // Verify that each store only sees its own products.
+        String[] selectionArgs = new String[]{supplier};
+        Cursor cursor = contentResolver.query(storeOne, null, selection, selectionArgs, null);
+        assertNotNull(cursor);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        cursor = contentResolver.query(storeTwo, null, selection, selectionArgs, null);
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+        cursor = contentResolver.query(ProductContract.ProductEntry.CONTENT_URI, null, selection,
+                selectionArgs, null);
+        assertNotNull(cursor);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        assertEquals(4, queryQuantity(jacket));
+
+        // Verify that the summary has a row for the main store and each store in order.
+        cursor = contentResolver.query(ProductContract.StoreEntry.CONTENT_SUMMARY_URI, null,
+                selection, selectionArgs, null);
+        assertNotNull(cursor);
+        assertEquals(3, cursor.getCount());
+        final int storeIdColumn =
+                cursor.getColumnIndexOrThrow(ProductContract.StoreEntry.COLUMN_STORE_ID);
+        final int countColumn =
+                cursor.getColumnIndexOrThrow(ProductContract.StoreEntry.COLUMN_PRODUCT_COUNT);
+        final int quantityColumn =
+                cursor.getColumnIndexOrThrow(ProductContract.StoreEntry.COLUMN_TOTAL_QUANTITY);
+        final int valueColumn =
+                cursor.getColumnIndexOrThrow(ProductContract.StoreEntry.COLUMN_TOTAL_STOCK_VALUE);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ProductContract.StoreEntry.MAIN_STORE_ID, cursor.getLong(storeIdColumn));
+        assertEquals(0, cursor.getInt(countColumn));
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, cursor.getLong(storeIdColumn));
+        assertEquals(1, cursor.getInt(countColumn));
+        assertEquals(4, cursor.getInt(quantityColumn));
+        assertTrue(cursor.moveToNext());
+        assertEquals(2, cursor.getLong(storeIdColumn));
+        assertEquals(2, cursor.getInt(countColumn));
+        assertEquals(14, cursor.getInt(quantityColumn));
+        assertEquals(14 * 6000, cursor.getLong(valueColumn));
+        cursor.close();
+
+        // Verify that deleting from one store leaves the other alone.
+        assertEquals(2, contentResolver.delete(storeTwo, selection, selectionArgs));
+        assertEquals(4, queryQuantity(jacket));
+    }
+
+    /**
+     * Verifies that call methods and batches run on the store they name, and that a batch
+     * spanning stores is refused.
+     */
+    @Test
+    public void call_StoreIdExtra_RunsOnThatStore() throws Exception {
+
+        final Uri storeUri = ProductContract.StoreEntry.buildProductsUri(3);
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Wool Scarf");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 2500);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 6);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Store Call Supply");
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        Uri scarf = contentResolver.insert(storeUri, values);
+        assertNotNull(scarf);
+
+        // Verify that an adjustment naming the store changes the store's product.
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_STORE_ID, 3);
+        extras.putLongArray(ProductContract.EXTRA_IDS, new long[]{ContentUris.parseId(scarf)});
+        extras.putIntArray(ProductContract.EXTRA_DELTAS, new int[]{-2});
+        Bundle adjusted = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_ADJUST_QUANTITIES, "store-call-" + System.nanoTime(),
+                extras);
+        assertNotNull(adjusted);
+        assertEquals(1, adjusted.getInt(ProductContract.EXTRA_COUNT));
+        assertEquals(4, queryQuantity(scarf));
+
+        // Verify that the archive only exists for the main store.
+        Bundle archiveExtras = new Bundle();
+        archiveExtras.putLong(ProductContract.EXTRA_STORE_ID, 3);
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_ARCHIVE, null, archiveExtras));
+
+        // Verify that a batch updating the store's product is applied on the store's database.
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(scarf)
+                .withValue(ProductContract.ProductEntry.COLUMN_QUANTITY, 9)
+                .build());
+        contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+        assertEquals(9, queryQuantity(scarf));
+
+        // Verify that a batch spanning the store and the main store is refused untouched.
+        operations.clear();
+        operations.add(ContentProviderOperation.newUpdate(scarf)
+                .withValue(ProductContract.ProductEntry.COLUMN_QUANTITY, 1)
+                .build());
+        operations.add(ContentProviderOperation.newInsert(ProductContract.ProductEntry.CONTENT_URI)
+                .withValues(values)
+                .build());
+        try {
+            contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            fail("A batch spanning stores was applied");
+        } catch (OperationApplicationException e) {
+
+            // Expected.
+        }
+        assertEquals(9, queryQuantity(scarf));
+    }
+
+    /**
+     * Verifies that bulk read chunks return every matching product once, in id order, and that a
+     * chunk too small for a single product is refused.
+     */
+    @Test
+    public void call_BulkReadSmallChunks_ReturnsEveryProductOnce() {
+
+        final String supplier = "Bulk Read Test Supply";
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1500);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 3);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, supplier);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE, new byte[]{1});
+        long[] ids = new long[5];
+        for (int i = 0; i < ids.length; i++) {
+            values.put(ProductContract.ProductEntry.COLUMN_NAME, "Linen Shirt " + i);
+            Uri uri = contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+            assertNotNull(uri);
+            ids[i] = ContentUris.parseId(uri);
+        }
+
+        // Read chunks small enough to hold only a couple of products each.
+        Bundle extras = new Bundle();
+        extras.putString(ProductContract.EXTRA_SELECTION,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?");
+        extras.putStringArray(ProductContract.EXTRA_SELECTION_ARGS, new String[]{supplier});
+        extras.putInt(ProductContract.EXTRA_MAX_BYTES, 64);
+        int countRows = 0;
+        int countChunks = 0;
+        Bundle chunk;
+        do {
+            chunk = contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                    ProductContract.METHOD_BULK_READ, null, extras);
+            assertNotNull(chunk);
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.getByteArray(ProductContract.EXTRA_BATCH));
+            ProductBatchDecoder decoder = new ProductBatchDecoder();
+            assertTrue(decoder.readHeader(buffer));
+            final int countRowsBefore = countRows;
+            while (decoder.next(buffer)) {
+                assertEquals(ids[countRows], decoder.getId());
+                assertEquals("Linen Shirt " + countRows, decoder.getName());
+                assertEquals(1500, decoder.getPrice());
+                assertEquals(supplier, decoder.getSupplier());
+                countRows++;
+            }
+            assertEquals(chunk.getInt(ProductContract.EXTRA_COUNT), countRows - countRowsBefore);
+            extras.putLong(ProductContract.EXTRA_AFTER_ID,
+                    chunk.getLong(ProductContract.EXTRA_AFTER_ID));
+            countChunks++;
+        } while (chunk.getBoolean(ProductContract.EXTRA_HAS_MORE));
+        assertEquals(ids.length, countRows);
+        assertTrue(countChunks > 1);
+
+        // Verify that a chunk too small for one product is refused.
+        extras.remove(ProductContract.EXTRA_AFTER_ID);
+        extras.putInt(ProductContract.EXTRA_MAX_BYTES, 8);
+        assertNull(contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_BULK_READ, null, extras));
+    }
+
+    /**
+     * Returns the available quantity of the product at the passed content URI.
+     */
+    private int queryAvailableQuantity(Uri uri) {
+        Cursor cursor = contentResolver.query(uri,
+                new String[]{ProductContract.ProductEntry.COLUMN_AVAILABLE_QUANTITY}, null, null,
+                null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int availableQuantity = cursor.getInt(0);
+        cursor.close();
+        return availableQuantity;
+    }
+
+    /**
+     * Returns the picture of the product at the passed content URI.
+     */
+    private byte[] queryPicture(Uri uri) {
+        Cursor cursor = contentResolver.query(uri,
+                new String[]{ProductContract.ProductEntry.COLUMN_PICTURE}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        byte[] picture = cursor.getBlob(0);
+        cursor.close();
+        return picture;
+    }
+
+    /**
+     * Returns the price of the product at the passed content URI.
+     */
+    private int queryPrice(Uri uri) {
+        Cursor cursor = contentResolver.query(uri,
+                new String[]{ProductContract.ProductEntry.COLUMN_PRICE}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int price = cursor.getInt(0);
+        cursor.close();
+        return price;
+    }
+
+    /**
+     * Records a sale of units of the product at the passed content URI, and returns the result.
+     */
+    private Bundle recordSale(Uri uri, int quantity) {
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_ID, ContentUris.parseId(uri));
+        extras.putInt(ProductContract.EXTRA_QUANTITY, quantity);
+        return contentResolver.call(ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RECORD_SALE, null, extras);
+    }
+
+    /**
+     * Returns the quantity of the product at the passed content URI.
+     */
+    private int queryQuantity(Uri uri) {
+        Cursor cursor = contentResolver.query(uri,
+                new String[]{ProductContract.ProductEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int quantity = cursor.getInt(0);
+        cursor.close();
+        return quantity;
+    }
 }
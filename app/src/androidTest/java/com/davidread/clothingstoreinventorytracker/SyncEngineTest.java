@@ -0,0 +1,398 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.rule.provider.ProviderTestRule;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductProvider;
+import com.davidread.clothingstoreinventorytracker.sync.ChangeBatch;
+import com.davidread.clothingstoreinventorytracker.sync.SyncEngine;
+import com.davidread.clothingstoreinventorytracker.sync.SyncPeer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SyncEngineTest} provides several unit tests to verify that {@link SyncEngine} exchanges
+ * only changed rows with a {@link SyncPeer}. A {@link FakeSyncServer} stands in for the store
+ * server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncEngineTest {
+
+    /**
+     * {@link ContentResolver} for accessing the methods of the {@link ProductProvider}.
+     */
+    private ContentResolver contentResolver;
+
+    /**
+     * {@link SharedPreferences} holding the sync state of the {@link SyncEngine} under test.
+     */
+    private SharedPreferences preferences;
+
+    /**
+     * {@link FakeSyncServer} the {@link SyncEngine} under test syncs with.
+     */
+    private FakeSyncServer server;
+
+    /**
+     * {@link SyncEngine} under test.
+     */
+    private SyncEngine syncEngine;
+
+    /**
+     * {@link ProviderTestRule} for mocking {@link SyncEngineTest#contentResolver}.
+     */
+    @Rule
+    public ProviderTestRule providerTestRule =
+            new ProviderTestRule.Builder(ProductProvider.class, ProductContract.CONTENT_AUTHORITY)
+                    .build();
+
+    /**
+     * Callback method invoked before each test method. It empties the {@link ProductProvider},
+     * drains its pending changes into a throwaway server, and then sets up a fresh
+     * {@link FakeSyncServer} and {@link SyncEngine}.
+     */
+    @Before
+    public void setUp() throws Exception {
+        contentResolver = providerTestRule.getResolver();
+        Context context = ApplicationProvider.getApplicationContext();
+        preferences = context.getSharedPreferences("sync_engine_test", Context.MODE_PRIVATE);
+
+        contentResolver.delete(ProductEntry.CONTENT_URI, null, null);
+        preferences.edit().clear().commit();
+        new SyncEngine(contentResolver, preferences, new FakeSyncServer(), 2).sync();
+        preferences.edit().clear().commit();
+
+        server = new FakeSyncServer();
+        syncEngine = new SyncEngine(contentResolver, preferences, server, 2);
+    }
+
+    /**
+     * Verifies that local inserts are pushed once and not pushed again on the next sync.
+     */
+    @Test
+    public void sync_LocalInserts_PushedOnce() throws Exception {
+
+        insertProduct("Red T-Shirt");
+        insertProduct("Blue T-Shirt");
+        insertProduct("Green T-Shirt");
+
+        syncEngine.sync();
+
+        assertEquals(3, server.countRowsPushed);
+        assertEquals(3, server.rows.size());
+
+        syncEngine.sync();
+
+        assertEquals(3, server.countRowsPushed);
+    }
+
+    /**
+     * Verifies that only the changed row is pushed after a local update.
+     */
+    @Test
+    public void sync_LocalUpdate_PushesOnlyChangedRow() throws Exception {
+
+        Uri redUri = insertProduct("Red T-Shirt");
+        insertProduct("Blue T-Shirt");
+        syncEngine.sync();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_QUANTITY, 7);
+        contentResolver.update(redUri, values, null, null);
+        syncEngine.sync();
+
+        assertEquals(3, server.countRowsPushed);
+        assertEquals(Integer.valueOf(7),
+                server.rows.get(queryUuid(redUri)).getAsInteger(ProductEntry.COLUMN_QUANTITY));
+    }
+
+    /**
+     * Verifies that a local delete is pushed as a deletion.
+     */
+    @Test
+    public void sync_LocalDelete_PushedAsDeletion() throws Exception {
+
+        Uri redUri = insertProduct("Red T-Shirt");
+        final String redUuid = queryUuid(redUri);
+        syncEngine.sync();
+        assertTrue(server.rows.containsKey(redUuid));
+
+        contentResolver.delete(redUri, null, null);
+        syncEngine.sync();
+
+        assertFalse(server.rows.containsKey(redUuid));
+    }
+
+    /**
+     * Verifies that server changes are pulled into the {@link ProductProvider} without being
+     * marked dirty.
+     */
+    @Test
+    public void sync_ServerChanges_PulledAndClean() throws Exception {
+
+        server.put("server-1000", "Cozy Cabin Flannel");
+        server.put("server-1001", "Skate Sneaker");
+        server.put("server-1002", "Flex Longer Length Cargo Short");
+        server.remove("server-1001");
+
+        syncEngine.sync();
+
+        Cursor cursor = contentResolver.query(
+                ProductEntry.CONTENT_URI,
+                null,
+                ProductEntry.COLUMN_UUID + " LIKE 'server-%'",
+                null,
+                ProductEntry._ID
+        );
+        assertNotNull(cursor);
+        assertEquals(2, cursor.getCount());
+        while (cursor.moveToNext()) {
+            assertEquals(0, cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_DIRTY)));
+        }
+        cursor.close();
+
+        // Pulled rows are clean, so nothing is pushed back.
+        assertEquals(0, server.countRowsPushed);
+    }
+
+    /**
+     * Verifies that pulling a product whose SKU a different local product holds keeps the local
+     * product, moves the SKU to the pulled product, and pushes the local product back without it.
+     */
+    @Test
+    public void sync_ServerChangeWithCollidingSku_KeepsLocalProduct() throws Exception {
+
+        Uri localUri = insertProduct("Red T-Shirt");
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_SKU, "TS-RED-M");
+        assertEquals(1, contentResolver.update(localUri, values, null, null));
+        syncEngine.sync();
+        final String localUuid = queryUuid(localUri);
+        assertEquals("TS-RED-M", server.rows.get(localUuid).getAsString(ProductEntry.COLUMN_SKU));
+
+        server.put("server-1000", "Cozy Cabin Flannel", "TS-RED-M");
+        syncEngine.sync();
+
+        // Verify that the local product is still there, without the SKU.
+        Cursor cursor = contentResolver.query(localUri, null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertTrue(cursor.isNull(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_SKU)));
+        cursor.close();
+        cursor = contentResolver.query(ProductEntry.buildSkuUri("TS-RED-M"), null, null, null,
+                null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("server-1000",
+                cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_UUID)));
+        cursor.close();
+
+        // Verify that the cleared SKU reaches the server, and no deletion does.
+        syncEngine.sync();
+        assertTrue(server.rows.containsKey(localUuid));
+        assertNull(server.rows.get(localUuid).getAsString(ProductEntry.COLUMN_SKU));
+    }
+
+    /**
+     * Verifies that a product another device inserted under the same local id as a local product
+     * is pulled as a separate product, and that neither overwrites the other.
+     */
+    @Test
+    public void sync_ServerProductWithSameLocalId_KeepsBothProducts() throws Exception {
+
+        Uri localUri = insertProduct("Red T-Shirt");
+        syncEngine.sync();
+
+        // Another device allocated the same local id to a different product.
+        ContentValues change = server.put("other-device", "Skate Sneaker");
+        change.put(ProductEntry._ID, ContentUris.parseId(localUri));
+        syncEngine.sync();
+
+        Cursor cursor = contentResolver.query(localUri, null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Red T-Shirt",
+                cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_NAME)));
+        cursor.close();
+        cursor = contentResolver.query(ProductEntry.CONTENT_URI, null,
+                ProductEntry.COLUMN_UUID + "=?", new String[]{"other-device"}, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertNotEquals(ContentUris.parseId(localUri),
+                cursor.getLong(cursor.getColumnIndexOrThrow(ProductEntry._ID)));
+        assertEquals("Skate Sneaker",
+                cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_NAME)));
+        cursor.close();
+
+        // Verify that the server still has both products.
+        syncEngine.sync();
+        assertEquals(2, server.rows.size());
+    }
+
+    /**
+     * Inserts a product with the passed name into the {@link ProductProvider}.
+     *
+     * @param name Name of the product.
+     * @return Content URI of the new product.
+     */
+    private Uri insertProduct(String name) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_NAME, name);
+        values.put(ProductEntry.COLUMN_PRICE, 1000);
+        values.put(ProductEntry.COLUMN_QUANTITY, 10);
+        values.put(ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductEntry.COLUMN_PICTURE, new byte[]{0, 1, 2, 3});
+        Uri uri = contentResolver.insert(ProductEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    /**
+     * Returns the globally unique id of the product at the passed content URI.
+     */
+    private String queryUuid(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, new String[]{ProductEntry.COLUMN_UUID}, null,
+                null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        String uuid = cursor.getString(0);
+        cursor.close();
+        assertNotNull(uuid);
+        return uuid;
+    }
+
+    /**
+     * {@link FakeSyncServer} is an in-memory {@link SyncPeer} that keeps the latest change per
+     * globally unique product id under a monotonically increasing change token, like a real store
+     * server.
+     */
+    private static class FakeSyncServer implements SyncPeer {
+
+        /**
+         * Latest change per change token.
+         */
+        private final TreeMap<Long, ContentValues> changes = new TreeMap<>();
+
+        /**
+         * Change token of the latest change per globally unique product id.
+         */
+        private final Map<String, Long> tokens = new HashMap<>();
+
+        /**
+         * Current product rows per globally unique product id.
+         */
+        private final Map<String, ContentValues> rows = new HashMap<>();
+
+        /**
+         * Last change token handed out.
+         */
+        private long token = 0;
+
+        /**
+         * Number of changes received through {@link #push(ChangeBatch)}.
+         */
+        private int countRowsPushed = 0;
+
+        @NonNull
+        @Override
+        public ChangeBatch pull(long sinceToken, int limit) {
+            List<ContentValues> batch = new ArrayList<>();
+            long lastToken = sinceToken;
+            for (Map.Entry<Long, ContentValues> entry : changes.tailMap(sinceToken, false).entrySet()) {
+                if (batch.size() == limit) {
+                    return new ChangeBatch(batch, lastToken, true);
+                }
+                batch.add(new ContentValues(entry.getValue()));
+                lastToken = entry.getKey();
+            }
+            return new ChangeBatch(batch, lastToken, false);
+        }
+
+        @Override
+        public void push(@NonNull ChangeBatch batch) {
+            for (ContentValues change : batch.getChanges()) {
+                record(new ContentValues(change));
+                countRowsPushed++;
+            }
+        }
+
+        /**
+         * Records a server-side product with the passed globally unique id and name, and returns
+         * the recorded change.
+         */
+        private ContentValues put(String uuid, String name) {
+            return put(uuid, name, null);
+        }
+
+        /**
+         * Records a server-side product with the passed globally unique id, name, and SKU, and
+         * returns the recorded change.
+         */
+        private ContentValues put(String uuid, String name, String sku) {
+            ContentValues change = new ContentValues();
+            change.put(ProductEntry.COLUMN_UUID, uuid);
+            change.put(ProductEntry.COLUMN_NAME, name);
+            change.put(ProductEntry.COLUMN_PRICE, 2500);
+            change.put(ProductEntry.COLUMN_QUANTITY, 4);
+            change.put(ProductEntry.COLUMN_SUPPLIER, "Regards Wholesale");
+            change.put(ProductEntry.COLUMN_PICTURE, new byte[]{4, 5, 6, 7});
+            change.put(ProductEntry.COLUMN_SKU, sku);
+            change.put(ProductEntry.COLUMN_DELETED, 0);
+            record(change);
+            return change;
+        }
+
+        /**
+         * Records a server-side deletion of the product with the passed globally unique id.
+         */
+        private void remove(String uuid) {
+            ContentValues change = new ContentValues();
+            change.put(ProductEntry.COLUMN_UUID, uuid);
+            change.put(ProductEntry.COLUMN_DELETED, 1);
+            record(change);
+        }
+
+        /**
+         * Stores a change under the next change token, replacing the previous change of the same
+         * product.
+         */
+        private void record(ContentValues change) {
+            String uuid = change.getAsString(ProductEntry.COLUMN_UUID);
+            Long previousToken = tokens.remove(uuid);
+            if (previousToken != null) {
+                changes.remove(previousToken);
+            }
+            token++;
+            changes.put(token, change);
+            tokens.put(uuid, token);
+            if (ChangeBatch.isDeleted(change)) {
+                rows.remove(uuid);
+            } else {
+                rows.put(uuid, change);
+            }
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.davidread.clothingstoreinventorytracker;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+import androidx.annotation.VisibleForTesting;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.DividerItemDecoration;
@@ -8,6 +11,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import android.content.ContentValues;
+import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -16,18 +20,41 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.Toast;
 
+import com.davidread.clothingstoreinventorytracker.data.FirstScreenSnapshot;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
 import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductMaintenanceWorker;
+import com.davidread.clothingstoreinventorytracker.data.ProductRepository;
+import com.davidread.clothingstoreinventorytracker.data.StockEditQueue;
 
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * {@link InventoryActivity} is an activity class that provides a user interface for browsing a list
  * of products stored in the
  * {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider}. It also provides
- * options to add dummy rows and delete all rows.
+ * options to add dummy rows, delete all rows, and back up or restore the products.
  */
 public class InventoryActivity extends AppCompatActivity {
 
+    /**
+     * Request codes for picking the backup destination and restore source documents.
+     */
+    private static final int REQUEST_CODE_BACKUP = 1;
+    private static final int REQUEST_CODE_RESTORE = 2;
+
+    /**
+     * Number of rows that scrolled out of view kept ready to be shown again without rebinding.
+     */
+    private static final int ITEM_VIEW_CACHE_SIZE = 6;
+
+    /**
+     * {@link ExecutorService} for running backup and restore operations off the main thread.
+     */
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * {@link ProductCursorAdapter} for adapting a {@link Cursor} of product data to be displayed
      * in a {@link RecyclerView}.
@@ -39,31 +66,106 @@ public class InventoryActivity extends AppCompatActivity {
      */
     private View emptyView;
 
+    /**
+     * {@link ProductRepository.Subscription} delivering product data to
+     * {@link #onProductsChanged(Cursor)}.
+     */
+    private ProductRepository.Subscription productsSubscription;
+
+    /**
+     * {@link StockEditQueue} writing quantity edits from the {@link RecyclerView} behind.
+     */
+    private StockEditQueue stockEditQueue;
+
+    /**
+     * {@link Random} for randomizing the attributes of dummy rows. It is seeded once, since rows
+     * inserted within the same millisecond would otherwise share their attributes.
+     */
+    private final Random random = new Random();
+
+    /**
+     * {@link FirstScreenSnapshot} painting the first screen of the last launch until live product
+     * data is delivered.
+     */
+    private FirstScreenSnapshot firstScreenSnapshot;
+
+    /**
+     * {@link Cursor} of snapshot rows shown until live product data is delivered, owned by this
+     * activity. Is null once replaced or if there was no snapshot.
+     */
+    private Cursor snapshotCursor;
+
+    /**
+     * {@link StartupTracer} measuring the time to first frame and to live data.
+     */
+    private StartupTracer startupTracer;
+
+    /**
+     * {@link ScrollJankTracker} measuring how smoothly the {@link RecyclerView} scrolls. Is null in
+     * release builds.
+     */
+    private ScrollJankTracker scrollJankTracker;
+
     /**
      * Callback method invoked to initialize the activity. Initializes global helper objects, sets
-     * up the activity's {@link RecyclerView}, and makes initial call to
-     * {@link InventoryActivity#queryRows()}.
+     * up the activity's {@link RecyclerView}, and starts observing product data through the
+     * {@link ProductRepository}.
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_inventory);
+        startupTracer = new StartupTracer(this);
 
         // Initialize global ProductCursorAdapter with no Cursor to adapt yet.
         productCursorAdapter = new ProductCursorAdapter();
+        stockEditQueue = StockEditQueue.getInstance(this);
+        productCursorAdapter.setStockEditQueue(stockEditQueue);
+
+        // Keep the products database tuned while the device is idle and charging.
+        ProductMaintenanceWorker.schedule(this);
 
-        // Initialize RecyclerView.
+        // Initialize RecyclerView. Its size never depends on its contents, so changes to the data
+        // set do not trigger a layout of the whole activity.
         RecyclerView recyclerView = findViewById(R.id.inventory_recycler_view);
+        recyclerView.setHasFixedSize(true);
         recyclerView.setAdapter(productCursorAdapter);
+
+        // Keep a few more rows that scrolled out of view ready to come back without being rebound.
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        recyclerView.setItemAnimator(new DefaultItemAnimator());
+        recyclerView.setItemViewCacheSize(ITEM_VIEW_CACHE_SIZE);
+
+        // Rows rebound in place, such as after a quantity edit, are not cross-faded.
+        DefaultItemAnimator itemAnimator = new DefaultItemAnimator();
+        itemAnimator.setSupportsChangeAnimations(false);
+        recyclerView.setItemAnimator(itemAnimator);
         recyclerView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
 
+        // Measure scroll smoothness in debug builds.
+        if (BuildConfig.DEBUG) {
+            scrollJankTracker = new ScrollJankTracker(recyclerView);
+        }
+
         // Initialize empty View.
         emptyView = findViewById(R.id.empty_view);
 
-        // Initial call to query ProductProvider.
-        queryRows();
+        // Paint the first screen of the last launch while the live query runs.
+        firstScreenSnapshot = new FirstScreenSnapshot(this);
+        snapshotCursor = firstScreenSnapshot.read();
+        if (snapshotCursor != null) {
+            productCursorAdapter.swapCursor(snapshotCursor);
+            startupTracer.onSnapshotShown(snapshotCursor.getCount());
+        }
+
+        // Observe ProductProvider, which re-delivers rows after every change.
+        productsSubscription = ProductRepository.getInstance(this).observe(
+                ProductEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null,
+                this::onProductsChanged
+        );
     }
 
     /**
@@ -89,18 +191,31 @@ public class InventoryActivity extends AppCompatActivity {
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         int id = item.getItemId();
-        /* Insert a row into the ProductProvider and re-query the ProductProvider when "Add Dummy
-         * Row" is selected. */
+        // Insert a row into the ProductProvider when "Add Dummy Row" is selected.
         if (id == R.id.action_add_dummy) {
             insertDummyRow();
-            queryRows();
             return true;
         }
-        /* Delete all data from the ProductProvider and re-query the ProductProvider when "Delete
-         * All Rows" is selected. */
+        // Delete all data from the ProductProvider when "Delete All Rows" is selected.
         else if (id == R.id.action_delete_all) {
             deleteAllRows();
-            queryRows();
+            return true;
+        }
+        // Let the user pick where to save a backup when "Back Up" is selected.
+        else if (id == R.id.action_backup) {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("application/gzip")
+                    .putExtra(Intent.EXTRA_TITLE, getString(R.string.backup_file_name));
+            startActivityForResult(intent, REQUEST_CODE_BACKUP);
+            return true;
+        }
+        // Let the user pick a backup to restore when "Restore" is selected.
+        else if (id == R.id.action_restore) {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("*/*");
+            startActivityForResult(intent, REQUEST_CODE_RESTORE);
             return true;
         }
         // Have superclass handle it for all other selections.
@@ -109,6 +224,93 @@ public class InventoryActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Callback method invoked when a document picked for a backup or restore is returned. It runs
+     * the backup or restore on {@link #backgroundExecutor}.
+     *
+     * @param requestCode The request code the picker was started with.
+     * @param resultCode  The result code returned by the picker.
+     * @param data        {@link Intent} holding the picked document's {@link Uri}.
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_CODE_BACKUP) {
+            runBackupOperation(ProductContract.METHOD_BACKUP, data.getData(),
+                    R.string.backup_succeeded_message, R.string.backup_failed_message);
+        } else if (requestCode == REQUEST_CODE_RESTORE) {
+            runBackupOperation(ProductContract.METHOD_RESTORE, data.getData(),
+                    R.string.restore_succeeded_message, R.string.restore_failed_message);
+        }
+    }
+
+    /**
+     * Callback method invoked when the activity is no longer visible. It flushes queued quantity
+     * edits right away, since the process may be killed while in the background.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stockEditQueue.flush();
+    }
+
+    /**
+     * Callback method invoked when the activity is destroyed. It stops observing product data,
+     * closes any snapshot rows still shown, and shuts down {@link #backgroundExecutor}.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        productsSubscription.cancel();
+        productCursorAdapter.swapCursor(null);
+        if (snapshotCursor != null) {
+            snapshotCursor.close();
+        }
+        backgroundExecutor.shutdown();
+    }
+
+    /**
+     * Returns {@link #scrollJankTracker}. Is null in release builds.
+     */
+    @Nullable
+    @VisibleForTesting
+    ScrollJankTracker getScrollJankTracker() {
+        return scrollJankTracker;
+    }
+
+    /**
+     * Calls a backup or restore method of the
+     * {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider} on
+     * {@link #backgroundExecutor}. It pops a toast with the outcome when done.
+     *
+     * @param method           {@link ProductContract#METHOD_BACKUP} or
+     *                         {@link ProductContract#METHOD_RESTORE}.
+     * @param documentUri      {@link Uri} of the picked document.
+     * @param succeededMessage String resource id of the message popped on success.
+     * @param failedMessage    String resource id of the message popped on failure.
+     */
+    private void runBackupOperation(String method, Uri documentUri, @StringRes int succeededMessage,
+                                    @StringRes int failedMessage) {
+        backgroundExecutor.execute(() -> {
+            Bundle result = getContentResolver().call(
+                    ProductEntry.CONTENT_URI,
+                    method,
+                    documentUri.toString(),
+                    null
+            );
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                Toast.makeText(this, getString(result != null ? succeededMessage : failedMessage),
+                        Toast.LENGTH_SHORT).show();
+            });
+        });
+    }
+
     /**
      * Inserts a row with random dummy attributes into the
      * {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider}. It pops a toast if
@@ -138,9 +340,6 @@ public class InventoryActivity extends AppCompatActivity {
                 "eFashion Wholesale"
         };
 
-        // Random for randomizing row attributes.
-        Random random = new Random(System.currentTimeMillis());
-
         // Construct a ContentValues containing some random valid attributes of a dummy row.
         ContentValues values = new ContentValues();
         values.put(ProductEntry.COLUMN_NAME, dummyNames[random.nextInt(10)]);
@@ -164,20 +363,14 @@ public class InventoryActivity extends AppCompatActivity {
     }
 
     /**
-     * Queries the {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider} for all
-     * its data. It updates the {@link #productCursorAdapter} with the fetched {@link Cursor} and
-     * pops a toast if the query operation fails.
+     * Callback method invoked by the {@link ProductRepository} with the latest product data. It
+     * updates the {@link #productCursorAdapter} with the delivered {@link Cursor}, replacing any
+     * snapshot rows, and pops a toast if the query operation failed.
+     *
+     * @param cursor {@link Cursor} of product data owned by the {@link ProductRepository}. Is null
+     *               if the query operation failed.
      */
-    private void queryRows() {
-
-        // Perform the query operation.
-        Cursor cursor = getContentResolver().query(
-                ProductEntry.CONTENT_URI,
-                null,
-                null,
-                null,
-                null
-        );
+    private void onProductsChanged(@Nullable Cursor cursor) {
 
         // Pop a toast and return early if the query operation fails.
         if (cursor == null) {
@@ -185,8 +378,22 @@ public class InventoryActivity extends AppCompatActivity {
             return;
         }
 
-        // Update ProductCursorAdapter with new Cursor.
-        productCursorAdapter.changeCursor(cursor);
+        /* Quantity edits flushed before the query are part of the new Cursor, so stop showing
+         * them on top of it. */
+        stockEditQueue.onDataRefreshed(cursor);
+
+        /* Update ProductCursorAdapter with new Cursor. The repository closes the old one unless
+         * it held snapshot rows. Since item ids are stable, snapshot rows are reconciled with
+         * their live rows in place. */
+        productCursorAdapter.swapCursor(cursor);
+        if (snapshotCursor != null) {
+            snapshotCursor.close();
+            snapshotCursor = null;
+        }
+        startupTracer.onLiveData();
+
+        // Keep the new first screen for the next cold start.
+        firstScreenSnapshot.save(cursor, backgroundExecutor);
 
         // Update visibility of empty View depending on the size of the Cursor.
         if (productCursorAdapter.getItemCount() == 0) {
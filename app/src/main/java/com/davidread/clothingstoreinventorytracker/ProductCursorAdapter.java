@@ -8,9 +8,13 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.StockEditQueue;
 
 /**
  * {@link ProductCursorAdapter} is an adapter class that provides a binding from a {@link Cursor} of
@@ -25,12 +29,19 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<RecyclerView.View
      */
     private Cursor cursor;
 
+    /**
+     * {@link StockEditQueue} taking quantity edits from the increment and decrement buttons. Is
+     * null if quantities cannot be edited.
+     */
+    private StockEditQueue stockEditQueue;
+
     /**
      * Constructs a new {@link ProductCursorAdapter} with a null
      * {@link ProductCursorAdapter#cursor}.
      */
     public ProductCursorAdapter() {
         this.cursor = null;
+        setHasStableIds(true);
     }
 
     /**
@@ -42,6 +53,7 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<RecyclerView.View
      */
     public ProductCursorAdapter(Cursor cursor) {
         this.cursor = cursor;
+        setHasStableIds(true);
     }
 
     /**
@@ -79,17 +91,87 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<RecyclerView.View
         int nameColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_NAME);
         int priceColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_PRICE);
         int quantityColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_QUANTITY);
+        int variantCountColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_VARIANT_COUNT);
+        int variantQuantityColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_VARIANT_QUANTITY);
 
         // Get attributes from Cursor.
         String name = cursor.getString(nameColumnIndex);
         String price = cursor.getString(priceColumnIndex);
-        String quantity = cursor.getString(quantityColumnIndex);
+        int quantity = cursor.getInt(quantityColumnIndex);
+
+        /* Products with variants keep their stock in the variants, so show the rolled up total
+         * from the same row, and only let quantities be edited on products without variants. */
+        final boolean hasVariants = variantCountColumnIndex != -1 && cursor.getInt(variantCountColumnIndex) > 0;
+        if (hasVariants) {
+            quantity = variantQuantityColumnIndex == -1 ? 0 : cursor.getInt(variantQuantityColumnIndex);
+        } else if (stockEditQueue != null) {
+
+            // Show queued quantity edits that are not in the Cursor yet.
+            quantity = Math.max(0, quantity + stockEditQueue.getDisplayDelta(getItemId(position)));
+        }
 
         // Update ViewHolder with attributes.
         ProductViewHolder productViewHolder = (ProductViewHolder) holder;
-        productViewHolder.getNameTextView().setText(name);
-        productViewHolder.getPriceTextView().setText(price);
-        productViewHolder.getQuantityTextView().setText(quantity);
+        setTextFuture(productViewHolder.getNameTextView(), name);
+        setTextFuture(productViewHolder.getPriceTextView(), price);
+        setTextFuture(productViewHolder.getQuantityTextView(), String.valueOf(quantity));
+
+        // Queue a quantity edit when the increment or decrement button is clicked.
+        final int buttonVisibility = hasVariants ? View.INVISIBLE : View.VISIBLE;
+        productViewHolder.getIncrementButton().setVisibility(buttonVisibility);
+        productViewHolder.getDecrementButton().setVisibility(buttonVisibility);
+        final int displayedQuantity = quantity;
+        productViewHolder.getIncrementButton().setOnClickListener(view -> adjustQuantity(holder, 1, displayedQuantity));
+        productViewHolder.getDecrementButton().setOnClickListener(view -> adjustQuantity(holder, -1, displayedQuantity));
+    }
+
+    /**
+     * Sets the text of a {@link TextView} whose text layout is measured on a background thread.
+     * Rows are usually bound ahead of being shown by prefetching, so the layout is ready by the
+     * time the {@link TextView} is measured, and the main thread does not spend its frame on it.
+     *
+     * @param textView {@link TextView} to set the text of.
+     * @param text     Text to set.
+     */
+    private static void setTextFuture(@NonNull TextView textView, CharSequence text) {
+        if (textView instanceof AppCompatTextView) {
+            ((AppCompatTextView) textView).setTextFuture(PrecomputedTextCompat.getTextFuture(
+                    text == null ? "" : text,
+                    TextViewCompat.getTextMetricsParams(textView),
+                    null
+            ));
+        } else {
+            textView.setText(text);
+        }
+    }
+
+    /**
+     * Queues a quantity edit for the product bound to a {@link RecyclerView.ViewHolder} and
+     * rebinds it to show the edited quantity. Quantities are never decremented below 0.
+     *
+     * @param holder            {@link RecyclerView.ViewHolder} whose button was clicked.
+     * @param delta             Amount to add to the product's quantity.
+     * @param displayedQuantity Quantity shown when the button was clicked.
+     */
+    private void adjustQuantity(@NonNull RecyclerView.ViewHolder holder, int delta, int displayedQuantity) {
+        int position = holder.getAdapterPosition();
+        if (stockEditQueue == null || position == RecyclerView.NO_POSITION
+                || displayedQuantity + delta < 0) {
+            return;
+        }
+        stockEditQueue.adjustQuantity(getItemId(position), delta);
+        notifyItemChanged(position);
+    }
+
+    /**
+     * Sets the {@link StockEditQueue} that takes quantity edits from the increment and decrement
+     * buttons and whose queued edits are shown on top of the {@link Cursor}'s quantities.
+     *
+     * @param stockEditQueue The {@link StockEditQueue} to use.
+     */
+    public void setStockEditQueue(StockEditQueue stockEditQueue) {
+        this.stockEditQueue = stockEditQueue;
+        notifyItemRangeChanged(0, getItemCount());
     }
 
     /**
@@ -143,20 +225,32 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<RecyclerView.View
      * @param newCursor The new {@link Cursor} to be used.
      */
     public void changeCursor(Cursor newCursor) {
-
-        // Notify RecyclerView to remove old Cursor data set and close the old Cursor.
-        if (cursor != null) {
-            notifyItemRangeRemoved(0, getItemCount());
-            cursor.close();
+        Cursor oldCursor = swapCursor(newCursor);
+        if (oldCursor != null) {
+            oldCursor.close();
         }
+    }
+
+    /**
+     * Swap the {@link Cursor} being adapted for a new {@link Cursor}. Unlike
+     * {@link #changeCursor(Cursor)}, the existing {@link Cursor} is not closed, which suits
+     * {@link Cursor}s owned by someone else, such as a
+     * {@link com.davidread.clothingstoreinventorytracker.data.ProductRepository}.
+     *
+     * @param newCursor The new {@link Cursor} to be used.
+     * @return The previous {@link Cursor}. Is null if there was none.
+     */
+    public Cursor swapCursor(Cursor newCursor) {
 
         // Assign the new Cursor.
+        Cursor oldCursor = cursor;
         cursor = newCursor;
 
-        // Notify RecyclerView to insert new Cursor data set.
-        if (newCursor != null) {
-            notifyItemRangeInserted(0, newCursor.getCount());
-        }
+        // Notify RecyclerView of the new data set. Since item ids are stable, RecyclerView matches
+        // rows by id, so unchanged rows keep their views and the scroll position is kept.
+        notifyDataSetChanged();
+
+        return oldCursor;
     }
 
     /**
@@ -0,0 +1,168 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Locale;
+
+/**
+ * {@link ScrollJankTracker} is a class that measures how smoothly a {@link RecyclerView} scrolls.
+ * While the list is scrolling, it timestamps every frame with {@link Choreographer} and counts a
+ * frame as dropped for every refresh period that passed without one. It also counts the rows that
+ * scrolled into view, so dropped frames can be compared across lists and flings as dropped frames
+ * per 1000 rows.
+ */
+public class ScrollJankTracker extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback {
+
+    /**
+     * Tag used when logging the metrics of each scroll.
+     */
+    private static final String LOG_TAG = "ScrollJank";
+
+    /**
+     * Refresh period of the display in nanoseconds, read when each scroll starts.
+     */
+    private long frameIntervalNanos;
+
+    /**
+     * Timestamp in nanoseconds of the previous frame, or 0 if the list is not scrolling.
+     */
+    private long previousFrameNanos = 0;
+
+    /**
+     * Adapter position of the first row in view, used to count rows scrolled into view.
+     */
+    private int previousFirstVisiblePosition = RecyclerView.NO_POSITION;
+
+    /**
+     * Totals since the tracker was attached or last reset.
+     */
+    private long countFrames = 0;
+    private long countDroppedFrames = 0;
+    private long countRowsScrolled = 0;
+
+    /**
+     * Totals at the start of the current scroll, used to log the metrics of each scroll.
+     */
+    private long scrollStartDroppedFrames = 0;
+    private long scrollStartRowsScrolled = 0;
+
+    /**
+     * Constructs a new {@link ScrollJankTracker} and starts tracking a {@link RecyclerView}. The
+     * {@link RecyclerView} must use a {@link LinearLayoutManager}.
+     *
+     * @param recyclerView {@link RecyclerView} to track.
+     */
+    public ScrollJankTracker(@NonNull RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(this);
+    }
+
+    /**
+     * Callback method invoked when the scroll state of the {@link RecyclerView} changes. It starts
+     * timestamping frames when scrolling starts, and logs the metrics of the scroll when it stops.
+     */
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState != RecyclerView.SCROLL_STATE_IDLE && previousFrameNanos == 0) {
+            Display display = recyclerView.getDisplay();
+            float refreshRate = display == null ? 60f : display.getRefreshRate();
+            frameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+            previousFrameNanos = System.nanoTime();
+            scrollStartDroppedFrames = countDroppedFrames;
+            scrollStartRowsScrolled = countRowsScrolled;
+            Choreographer.getInstance().postFrameCallback(this);
+        } else if (newState == RecyclerView.SCROLL_STATE_IDLE && previousFrameNanos != 0) {
+            previousFrameNanos = 0;
+            Choreographer.getInstance().removeFrameCallback(this);
+            Log.d(LOG_TAG, String.format(Locale.US,
+                    "Scroll: %d dropped frames over %d rows. Total: %.1f dropped frames per 1000 rows",
+                    countDroppedFrames - scrollStartDroppedFrames,
+                    countRowsScrolled - scrollStartRowsScrolled,
+                    getDroppedFramesPer1000Rows()));
+        }
+    }
+
+    /**
+     * Callback method invoked when the {@link RecyclerView} scrolls. It counts the rows that
+     * scrolled into view in either direction.
+     */
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null) {
+            return;
+        }
+        int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+        if (previousFirstVisiblePosition != RecyclerView.NO_POSITION
+                && firstVisiblePosition != RecyclerView.NO_POSITION) {
+            countRowsScrolled += Math.abs(firstVisiblePosition - previousFirstVisiblePosition);
+        }
+        previousFirstVisiblePosition = firstVisiblePosition;
+    }
+
+    /**
+     * Callback method invoked by {@link Choreographer} at the start of each frame while the list
+     * is scrolling.
+     *
+     * @param frameTimeNanos Time in nanoseconds at which the frame started rendering.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (previousFrameNanos == 0) {
+            return;
+        }
+        long elapsedNanos = frameTimeNanos - previousFrameNanos;
+        if (elapsedNanos > 0) {
+            countFrames++;
+            countDroppedFrames += Math.max(0, Math.round((double) elapsedNanos / frameIntervalNanos) - 1);
+            previousFrameNanos = frameTimeNanos;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Returns the number of frames rendered while scrolling.
+     */
+    public long getCountFrames() {
+        return countFrames;
+    }
+
+    /**
+     * Returns the number of frames dropped while scrolling.
+     */
+    public long getCountDroppedFrames() {
+        return countDroppedFrames;
+    }
+
+    /**
+     * Returns the number of rows that scrolled into view.
+     */
+    public long getCountRowsScrolled() {
+        return countRowsScrolled;
+    }
+
+    /**
+     * Returns the number of frames dropped for every 1000 rows that scrolled into view, or 0 if
+     * no rows have scrolled yet.
+     */
+    public double getDroppedFramesPer1000Rows() {
+        return countRowsScrolled == 0 ? 0 : 1000.0 * countDroppedFrames / countRowsScrolled;
+    }
+
+    /**
+     * Resets every total to 0.
+     */
+    public void reset() {
+        countFrames = 0;
+        countDroppedFrames = 0;
+        countRowsScrolled = 0;
+        scrollStartDroppedFrames = 0;
+        scrollStartRowsScrolled = 0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * {@link StartupTracer} is a class that measures a cold start of an activity: the time to its
+ * first frame, which may show rows from a snapshot, and the time to the first delivery of live
+ * data. Both are logged, and on Android 10 and above are also recorded as async trace sections,
+ * so they line up with the system's own startup slices in a trace. Live data is also reported to
+ * the system through {@link Activity#reportFullyDrawn()}.
+ */
+public class StartupTracer implements ViewTreeObserver.OnPreDrawListener {
+
+    /**
+     * Tag used when logging startup times.
+     */
+    private static final String LOG_TAG = "Startup";
+
+    /**
+     * {@link String} names and cookies of the trace sections.
+     */
+    private static final String SECTION_FIRST_FRAME = "startup: first frame";
+    private static final String SECTION_LIVE_DATA = "startup: live data";
+    private static final int SECTION_COOKIE = 0;
+
+    /**
+     * Whether a tracer has already measured from the process start. Later tracers, such as for a
+     * recreated activity, measure from their own creation.
+     */
+    private static boolean isProcessStartMeasured = false;
+
+    /**
+     * {@link Activity} being measured.
+     */
+    private final Activity activity;
+
+    /**
+     * {@link SystemClock#elapsedRealtime()} at which the start began: the process start for the
+     * first tracer of a process where known, or else the creation of this tracer.
+     */
+    private final long startMillis;
+
+    /**
+     * Number of snapshot rows shown in the first frame.
+     */
+    private int countSnapshotRows = 0;
+
+    /**
+     * Whether the first frame and the live data have been reported.
+     */
+    private boolean isFirstFrameReported = false;
+    private boolean isLiveDataReported = false;
+
+    /**
+     * Constructs a new {@link StartupTracer} and starts measuring. It must be constructed in
+     * {@link Activity#onCreate(android.os.Bundle)} after the content view is set.
+     *
+     * @param activity {@link Activity} to measure.
+     */
+    @MainThread
+    public StartupTracer(@NonNull Activity activity) {
+        this.activity = activity;
+        this.startMillis = !isProcessStartMeasured
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime()
+                : SystemClock.elapsedRealtime();
+        isProcessStartMeasured = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(SECTION_FIRST_FRAME, SECTION_COOKIE);
+            Trace.beginAsyncSection(SECTION_LIVE_DATA, SECTION_COOKIE);
+        }
+        activity.getWindow().getDecorView().getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    /**
+     * Records how many snapshot rows the first frame shows.
+     *
+     * @param countRows Number of snapshot rows.
+     */
+    @MainThread
+    public void onSnapshotShown(int countRows) {
+        countSnapshotRows = countRows;
+    }
+
+    /**
+     * Callback method invoked just before the first frame is drawn. It reports the time to first
+     * frame and stops listening.
+     *
+     * @return True to let the frame be drawn.
+     */
+    @Override
+    public boolean onPreDraw() {
+        View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+        if (!isFirstFrameReported) {
+            isFirstFrameReported = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                Trace.endAsyncSection(SECTION_FIRST_FRAME, SECTION_COOKIE);
+            }
+            Log.i(LOG_TAG, String.format(Locale.US, "First frame after %d ms with %d snapshot rows",
+                    SystemClock.elapsedRealtime() - startMillis, countSnapshotRows));
+        }
+        return true;
+    }
+
+    /**
+     * Reports the time to live data the first time it is called.
+     */
+    @MainThread
+    public void onLiveData() {
+        if (isLiveDataReported) {
+            return;
+        }
+        isLiveDataReported = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(SECTION_LIVE_DATA, SECTION_COOKIE);
+        }
+        Log.i(LOG_TAG, String.format(Locale.US, "Live data after %d ms",
+                SystemClock.elapsedRealtime() - startMillis));
+        activity.reportFullyDrawn();
+    }
+}
@@ -0,0 +1,206 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothingstoreinventorytracker.R;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link FirstScreenSnapshot} is a class that keeps a copy of the first screen of products on
+ * disk, so a cold-started list can paint them before the live query of {@link ProductProvider}
+ * delivers. The snapshot holds only the columns the list shows, and is replaced whenever the live
+ * first screen changes.
+ *
+ * <p>Only the first few rows are kept, so the snapshot is a few kilobytes and is read on the main
+ * thread, ahead of the first frame.
+ */
+public class FirstScreenSnapshot {
+
+    /**
+     * Tag used when logging snapshot failures.
+     */
+    private static final String LOG_TAG = "FirstScreenSnapshot";
+
+    /**
+     * {@link String} name of the snapshot file, kept out of backups since it is derived data.
+     */
+    private static final String FILE_NAME = "first_screen.snapshot";
+
+    /**
+     * Version of the snapshot format. A snapshot of another version is ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Columns of the {@link Cursor} returned by {@link #read()}.
+     */
+    public static final String[] COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_NAME,
+            ProductEntry.COLUMN_PRICE,
+            ProductEntry.COLUMN_QUANTITY,
+            ProductEntry.COLUMN_VARIANT_COUNT,
+            ProductEntry.COLUMN_VARIANT_QUANTITY
+    };
+
+    /**
+     * {@link AtomicFile} holding the snapshot, so a write cut short leaves the previous snapshot.
+     */
+    private final AtomicFile file;
+
+    /**
+     * Maximum number of rows kept.
+     */
+    private final int maxRows;
+
+    /**
+     * Encoded snapshot last read or saved, used to skip writing an unchanged first screen. Is
+     * null if there is none.
+     */
+    private byte[] lastSnapshot;
+
+    /**
+     * Constructs a new {@link FirstScreenSnapshot}.
+     *
+     * @param context {@link Context} for getting the snapshot file and its row count.
+     */
+    public FirstScreenSnapshot(@NonNull Context context) {
+        this.file = new AtomicFile(new File(context.getNoBackupFilesDir(), FILE_NAME));
+        this.maxRows = context.getResources().getInteger(R.integer.first_screen_snapshot_rows);
+    }
+
+    /**
+     * Reads the snapshot saved by an earlier launch.
+     *
+     * @return A {@link Cursor} holding the {@link #COLUMNS} of the snapshot rows, owned by the
+     * caller. Is null if there is no usable snapshot.
+     */
+    @MainThread
+    @Nullable
+    public Cursor read() {
+        byte[] snapshot;
+        try {
+            snapshot = file.readFully();
+        } catch (IOException e) {
+
+            // Return null if no snapshot has been saved yet.
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot))) {
+
+            // Return null if the snapshot was written in another format.
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final int countRows = in.readInt();
+            MatrixCursor cursor = new MatrixCursor(COLUMNS, countRows);
+            for (int i = 0; i < countRows; i++) {
+                cursor.addRow(new Object[]{
+                        in.readLong(),
+                        in.readUTF(),
+                        in.readInt(),
+                        in.readInt(),
+                        in.readInt(),
+                        in.readInt()
+                });
+            }
+            lastSnapshot = snapshot;
+            return cursor;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the first rows of a live query as the snapshot for the next launch. The rows are
+     * copied right away, since the {@link Cursor} may be closed once a newer one is delivered,
+     * and written on the passed {@link Executor}.
+     *
+     * @param cursor   {@link Cursor} holding the live products, including the {@link #COLUMNS}.
+     * @param executor {@link Executor} to write the snapshot on.
+     */
+    @MainThread
+    public void save(@NonNull Cursor cursor, @NonNull Executor executor) {
+        final byte[] snapshot;
+        try {
+            snapshot = encode(cursor);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Cannot encode snapshot", e);
+            return;
+        }
+
+        // Skip the write if the first screen has not changed.
+        if (Arrays.equals(snapshot, lastSnapshot)) {
+            return;
+        }
+        lastSnapshot = snapshot;
+        executor.execute(() -> write(snapshot));
+    }
+
+    /**
+     * Returns the first {@link #maxRows} rows of a {@link Cursor} in the snapshot format.
+     *
+     * @throws IllegalArgumentException If the {@link Cursor} lacks one of the {@link #COLUMNS}.
+     */
+    @NonNull
+    private byte[] encode(@NonNull Cursor cursor) throws IOException {
+        final int[] columnIndices = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columnIndices[i] = cursor.getColumnIndexOrThrow(COLUMNS[i]);
+        }
+
+        final int countRows = Math.min(cursor.getCount(), maxRows);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(countRows);
+            for (int row = 0; row < countRows && cursor.moveToPosition(row); row++) {
+                out.writeLong(cursor.getLong(columnIndices[0]));
+                out.writeUTF(cursor.getString(columnIndices[1]));
+                for (int i = 2; i < columnIndices.length; i++) {
+                    out.writeInt(cursor.getInt(columnIndices[i]));
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the snapshot file with an encoded snapshot.
+     */
+    @WorkerThread
+    private void write(@NonNull byte[] snapshot) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(snapshot);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot write snapshot", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+}
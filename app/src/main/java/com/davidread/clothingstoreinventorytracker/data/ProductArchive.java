@@ -0,0 +1,150 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.TombstoneEntry;
+
+/**
+ * {@link ProductArchive} is a helper class that moves sold out products nobody has written for a
+ * while from the products database into the archive database. Products are moved in small
+ * chunks, each with its own short transactions, so writers of the products table are only held
+ * up for the length of one chunk.
+ */
+final class ProductArchive {
+
+    /**
+     * Number of products moved per chunk.
+     */
+    private static final int CHUNK_SIZE = 200;
+
+    /**
+     * {@link String} names of the products database tables as seen from the archive database.
+     */
+    private static final String PRODUCTS = ProductArchiveDbHelper.PRODUCTS_SCHEMA_NAME + "."
+            + ProductEntry.TABLE_NAME;
+    private static final String PRODUCTS_WITH_PICTURES = ProductArchiveDbHelper.PRODUCTS_SCHEMA_NAME
+            + "." + ProductDbHelper.PRODUCTS_VIEW_NAME;
+    private static final String TOMBSTONES = ProductArchiveDbHelper.PRODUCTS_SCHEMA_NAME + "."
+            + TombstoneEntry.TABLE_NAME;
+    private static final String SYNC_COUNTER = ProductArchiveDbHelper.PRODUCTS_SCHEMA_NAME + "."
+            + ProductDbHelper.SYNC_COUNTER_TABLE_NAME;
+    private static final String ARCHIVED_PRODUCTS = "main."
+            + ProductArchiveDbHelper.ARCHIVED_PRODUCTS_TABLE_NAME;
+
+    /**
+     * Private constructor to prevent accidental instantiation of {@link ProductArchive}.
+     */
+    private ProductArchive() {
+    }
+
+    /**
+     * Moves every product with no quantity and no variants that was last written at or before the
+     * passed time into the archive database.
+     *
+     * <p>Each chunk is first copied and committed, and only then deleted from the products table
+     * in a second transaction, since SQLite does not guarantee that a transaction spanning two
+     * write-ahead logged databases is atomic across a crash. A crash between the two leaves the
+     * product in both databases, where the products table wins, and the next run finishes the
+     * move. A product written between the copy and the delete is left in the products table.
+     *
+     * <p>Archived copies hold their own picture rather than a reference into the pictures table,
+     * so the archive database stays readable on its own.
+     *
+     * @param db             Writable {@link SQLiteDatabase} of {@link ProductArchiveDbHelper}.
+     * @param cutoffMillis   Time in milliseconds since the epoch at or before which a product
+     *                       must have last been written to be archived.
+     * @param deadlineMillis {@link SystemClock#uptimeMillis()} after which no further chunk is
+     *                       started. Products left over are moved by the next run.
+     * @return The number of products moved.
+     */
+    @WorkerThread
+    static int archive(@NonNull SQLiteDatabase db, long cutoffMillis, long deadlineMillis) {
+        final String eligible = ProductEntry.COLUMN_QUANTITY + " = 0 AND "
+                + ProductEntry.COLUMN_VARIANT_COUNT + " = 0 AND "
+                + ProductEntry.COLUMN_UPDATED_AT + " <= " + cutoffMillis;
+        final String columns = TextUtils.join(", ", ProductArchiveDbHelper.ARCHIVED_COLUMNS);
+
+        int countArchived = 0;
+        long lastId = 0;
+        while (SystemClock.uptimeMillis() < deadlineMillis) {
+
+            // Page by id, so products left behind by a chunk are not visited again.
+            String ids = queryIds(db, ProductEntry._ID + " > " + lastId + " AND " + eligible);
+            if (ids == null) {
+                break;
+            }
+            lastId = Long.parseLong(ids.substring(ids.lastIndexOf(',') + 1));
+
+            db.beginTransaction();
+            try {
+                db.execSQL("INSERT OR REPLACE INTO " + ARCHIVED_PRODUCTS + " (" + columns + ", "
+                        + ProductArchiveDbHelper.COLUMN_ARCHIVED_AT + ") SELECT " + columns + ", "
+                        + System.currentTimeMillis() + " FROM " + PRODUCTS_WITH_PICTURES
+                        + " WHERE " + ProductEntry._ID + " IN (" + ids + ") AND " + eligible);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            db.beginTransaction();
+            try {
+
+                // Drop copies of products that were written or deleted since they were copied.
+                db.execSQL("DELETE FROM " + ARCHIVED_PRODUCTS + " WHERE " + ProductEntry._ID
+                        + " IN (" + ids + ") AND NOT EXISTS (SELECT 1 FROM " + PRODUCTS
+                        + " WHERE " + PRODUCTS + "." + ProductEntry._ID + " = "
+                        + ARCHIVED_PRODUCTS + "." + ProductEntry._ID + " AND "
+                        + PRODUCTS + "." + ProductEntry.COLUMN_VERSION + " = "
+                        + ARCHIVED_PRODUCTS + "." + ProductEntry.COLUMN_VERSION + ")");
+
+                final long versionBeforeDelete = DatabaseUtils.longForQuery(db,
+                        "SELECT value FROM " + SYNC_COUNTER, null);
+                SQLiteStatement delete = db.compileStatement("DELETE FROM " + PRODUCTS
+                        + " WHERE " + ProductEntry._ID + " IN (SELECT " + ProductEntry._ID
+                        + " FROM " + ARCHIVED_PRODUCTS + " WHERE " + ProductEntry._ID
+                        + " IN (" + ids + "))");
+                countArchived += delete.executeUpdateDelete();
+                delete.close();
+
+                // Archiving is not a deletion, so drop the tombstones the delete just left.
+                db.execSQL("DELETE FROM " + TOMBSTONES + " WHERE " + TombstoneEntry._ID
+                        + " IN (" + ids + ") AND " + TombstoneEntry.COLUMN_VERSION + " > "
+                        + versionBeforeDelete);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return countArchived;
+    }
+
+    /**
+     * Returns the ids of the first {@link #CHUNK_SIZE} products matching a selection, in
+     * ascending order.
+     *
+     * @param db        {@link SQLiteDatabase} of {@link ProductArchiveDbHelper}.
+     * @param selection Selection over the products table, holding no arguments.
+     * @return The ids separated by commas, ready to be inlined into an IN list. Is null if no
+     * product matches.
+     */
+    private static String queryIds(@NonNull SQLiteDatabase db, @NonNull String selection) {
+        StringBuilder ids = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("SELECT " + ProductEntry._ID + " FROM " + PRODUCTS
+                + " WHERE " + selection + " ORDER BY " + ProductEntry._ID + " LIMIT "
+                + CHUNK_SIZE, null)) {
+            while (cursor.moveToNext()) {
+                ids.append(ids.length() == 0 ? "" : ",").append(cursor.getLong(0));
+            }
+        }
+        return ids.length() == 0 ? null : ids.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+/**
+ * {@link ProductArchiveDbHelper} is a helper class for the archive database, which holds products
+ * moved out of the products database by {@link ProductArchive}. Every connection it opens attaches
+ * the products database and defines a temporary view over the products of both databases.
+ *
+ * <p>The archive database is a separate helper rather than a database attached to
+ * {@link ProductDbHelper} because Android turns write-ahead logging off for a connection pool
+ * that attaches a database. Attaching from this side leaves the products database pool, and its
+ * concurrent readers, untouched.
+ */
+class ProductArchiveDbHelper extends SQLiteOpenHelper {
+
+    /**
+     * {@link String} name for the database file.
+     */
+    static final String DB_NAME = "products_archive.db";
+
+    /**
+     * Int version for the database schema. Version 2 adds the globally unique id of archived
+     * products.
+     */
+    static final int DB_VERSION = 2;
+
+    /**
+     * {@link String} name under which the products database is attached.
+     */
+    static final String PRODUCTS_SCHEMA_NAME = "hot";
+
+    /**
+     * {@link String} name of the table holding archived products, and of its column holding the
+     * time in milliseconds since the epoch at which each product was archived.
+     */
+    static final String ARCHIVED_PRODUCTS_TABLE_NAME = "archived_products";
+    static final String COLUMN_ARCHIVED_AT = "archived_at";
+
+    /**
+     * {@link String} name of the temporary view over the products of both databases.
+     */
+    static final String ALL_PRODUCTS_VIEW_NAME = "all_products";
+
+    /**
+     * Product columns kept for archived products. Rollup and sync bookkeeping columns other than
+     * the version are not kept, since only products without variants are archived and archived
+     * products are never pushed to a peer.
+     */
+    static final String[] ARCHIVED_COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_NAME,
+            ProductEntry.COLUMN_PRICE,
+            ProductEntry.COLUMN_QUANTITY,
+            ProductEntry.COLUMN_SUPPLIER,
+            ProductEntry.COLUMN_PICTURE,
+            ProductEntry.COLUMN_SKU,
+            ProductEntry.COLUMN_UUID,
+            ProductEntry.COLUMN_VERSION,
+            ProductEntry.COLUMN_UPDATED_AT
+    };
+
+    /**
+     * {@link ProductDbHelper} of the products database to attach.
+     */
+    private final ProductDbHelper productDbHelper;
+
+    /**
+     * Constructs a new {@link ProductArchiveDbHelper}.
+     *
+     * @param context         {@link Context} for the superclass.
+     * @param productDbHelper {@link ProductDbHelper} of the products database to attach. It is
+     *                        opened first, so the attached products database is always upgraded.
+     */
+    ProductArchiveDbHelper(@NonNull Context context, @NonNull ProductDbHelper productDbHelper) {
+        super(context, DB_NAME, null, DB_VERSION);
+        this.productDbHelper = productDbHelper;
+    }
+
+    /**
+     * Callback method invoked when the database is created for the first time. It creates the
+     * archived products table.
+     *
+     * @param db {@link SQLiteDatabase} being created.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ARCHIVED_PRODUCTS_TABLE_NAME + " ("
+                + ProductEntry._ID + " INTEGER PRIMARY KEY, "
+                + ProductEntry.COLUMN_NAME + " TEXT NOT NULL, "
+                + ProductEntry.COLUMN_PRICE + " INTEGER NOT NULL, "
+                + ProductEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                + ProductEntry.COLUMN_SUPPLIER + " TEXT NOT NULL, "
+                + ProductEntry.COLUMN_PICTURE + " BLOB NOT NULL, "
+                + ProductEntry.COLUMN_SKU + " TEXT, "
+                + ProductEntry.COLUMN_UUID + " TEXT, "
+                + ProductEntry.COLUMN_VERSION + " INTEGER NOT NULL, "
+                + ProductEntry.COLUMN_UPDATED_AT + " INTEGER NOT NULL, "
+                + COLUMN_ARCHIVED_AT + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Callback method invoked when the database schema is upgraded. Products archived before
+     * version 2 get the globally unique id the products database gave them in the same upgrade.
+     *
+     * @param db         {@link SQLiteDatabase} being upgraded.
+     * @param oldVersion The old database version.
+     * @param newVersion The new database version.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + ARCHIVED_PRODUCTS_TABLE_NAME + " ADD COLUMN "
+                    + ProductEntry.COLUMN_UUID + " TEXT");
+            db.execSQL("UPDATE " + ARCHIVED_PRODUCTS_TABLE_NAME + " SET "
+                    + ProductEntry.COLUMN_UUID + " = '" + ProductDbHelper.LEGACY_UUID_PREFIX
+                    + "' || " + ProductEntry._ID);
+        }
+    }
+
+    /**
+     * Callback method invoked when the database has been opened. It attaches the products
+     * database and defines {@link #ALL_PRODUCTS_VIEW_NAME}, which is temporary since a view in
+     * one database cannot refer to another. Archived copies of products that are back in the
+     * products table, such as after an interrupted move or under a new id after a sync pulled
+     * them again, are hidden by the view.
+     *
+     * @param db {@link SQLiteDatabase} that was opened.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        db.execSQL("ATTACH DATABASE ? AS " + PRODUCTS_SCHEMA_NAME,
+                new Object[]{productDbHelper.getWritableDatabase().getPath()});
+
+        final String columns = TextUtils.join(", ", ARCHIVED_COLUMNS);
+        db.execSQL("CREATE TEMP VIEW " + ALL_PRODUCTS_VIEW_NAME + " AS SELECT "
+                + columns + ", "
+                + ProductEntry.COLUMN_DIRTY + ", "
+                + ProductEntry.COLUMN_VARIANT_COUNT + ", "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + ", "
+                + ProductEntry.COLUMN_STOCK_VALUE + ", "
+                + ProductEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + ProductEntry.COLUMN_AVAILABLE_QUANTITY + ", "
+                + "0 AS " + ProductEntry.COLUMN_ARCHIVED
+                + " FROM " + PRODUCTS_SCHEMA_NAME + "." + ProductDbHelper.PRODUCTS_VIEW_NAME
+                + " UNION ALL SELECT "
+                + columns + ", "
+                + "0 AS " + ProductEntry.COLUMN_DIRTY + ", "
+                + "0 AS " + ProductEntry.COLUMN_VARIANT_COUNT + ", "
+                + "0 AS " + ProductEntry.COLUMN_VARIANT_QUANTITY + ", "
+                + "0 AS " + ProductEntry.COLUMN_STOCK_VALUE + ", "
+                + ProductEntry.COLUMN_QUANTITY + " AS " + ProductEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + "0 AS " + ProductEntry.COLUMN_AVAILABLE_QUANTITY + ", "
+                + "1 AS " + ProductEntry.COLUMN_ARCHIVED
+                + " FROM main." + ARCHIVED_PRODUCTS_TABLE_NAME
+                + " WHERE " + ProductEntry._ID + " NOT IN (SELECT " + ProductEntry._ID + " FROM "
+                + PRODUCTS_SCHEMA_NAME + "." + ProductEntry.TABLE_NAME + ") AND "
+                + ProductEntry.COLUMN_UUID + " NOT IN (SELECT " + ProductEntry.COLUMN_UUID
+                + " FROM " + PRODUCTS_SCHEMA_NAME + "." + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry.COLUMN_UUID + " IS NOT NULL)");
+    }
+}
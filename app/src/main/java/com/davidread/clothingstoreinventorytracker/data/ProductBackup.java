@@ -0,0 +1,235 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link ProductBackup} is a helper class that takes consistent, gzip compressed snapshots of the
+ * products database and prepares snapshots for restore. Both directions copy whole database pages
+ * as a byte stream, so their cost grows with the database size rather than its row count.
+ */
+final class ProductBackup {
+
+    /**
+     * Suffixes of the files SQLite keeps next to a database file.
+     */
+    private static final String[] DB_SIDE_FILE_SUFFIXES = {"-wal", "-shm", "-journal"};
+
+    /**
+     * Size of the buffer used to copy streams.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Private constructor to prevent accidental instantiation of {@link ProductBackup}.
+     */
+    private ProductBackup() {
+    }
+
+    /**
+     * Writes a compressed snapshot of the products database to the passed {@link OutputStream}.
+     * On Android 11 and later, the snapshot is taken with VACUUM INTO on a separate read-only
+     * connection, so writers are never blocked. On earlier versions, whose SQLite predates
+     * VACUUM INTO, the write-ahead log is checkpointed and the database and log files are copied
+     * while holding the write lock, which stalls writers only for the length of a file copy.
+     *
+     * @param context {@link Context} for locating the database and cache directory.
+     * @param db      Writable {@link SQLiteDatabase} of the products database.
+     * @param out     {@link OutputStream} to write the snapshot to. It is closed when done.
+     * @return The uncompressed size of the snapshot in bytes.
+     * @throws IOException If the snapshot cannot be taken or written.
+     */
+    @WorkerThread
+    static long backup(@NonNull Context context, @NonNull SQLiteDatabase db,
+                       @NonNull OutputStream out) throws IOException {
+        File snapshot = new File(context.getCacheDir(), ProductDbHelper.DB_NAME + ".snapshot");
+        deleteDatabaseFiles(snapshot);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                vacuumInto(db.getPath(), snapshot);
+            } else {
+                copyUnderWriteLock(db, snapshot);
+            }
+            try (InputStream in = new FileInputStream(snapshot);
+                 OutputStream gzip = new GZIPOutputStream(out, COPY_BUFFER_SIZE)) {
+                copy(in, gzip);
+            }
+            return snapshot.length();
+        } catch (SQLiteException e) {
+            throw new IOException("Cannot take database snapshot", e);
+        } finally {
+            out.close();
+            deleteDatabaseFiles(snapshot);
+        }
+    }
+
+    /**
+     * Reads a compressed snapshot into a file next to the products database and verifies that it
+     * is an intact products database that this application can open.
+     *
+     * @param context {@link Context} for locating the database directory.
+     * @param in      {@link InputStream} of a snapshot written by
+     *                {@link #backup(Context, SQLiteDatabase, OutputStream)}. It is closed when done.
+     * @return The validated snapshot file, ready to be moved over the products database.
+     * @throws IOException If the snapshot cannot be read or is not a valid products database.
+     */
+    @NonNull
+    @WorkerThread
+    static File prepareRestore(@NonNull Context context, @NonNull InputStream in)
+            throws IOException {
+        File dbFile = context.getDatabasePath(ProductDbHelper.DB_NAME);
+        File restore = new File(dbFile.getParentFile(), ProductDbHelper.DB_NAME + ".restore");
+        deleteDatabaseFiles(restore);
+        try (InputStream gzip = new GZIPInputStream(in, COPY_BUFFER_SIZE);
+             OutputStream out = new FileOutputStream(restore)) {
+            copy(gzip, out);
+        }
+
+        try {
+            validate(restore);
+        } catch (IOException e) {
+            deleteDatabaseFiles(restore);
+            throw e;
+        }
+        return restore;
+    }
+
+    /**
+     * Verifies that the passed file is an intact products database with a schema version this
+     * application can open or upgrade.
+     *
+     * @param file Database file to verify.
+     * @throws IOException If the file is not a valid products database.
+     */
+    private static void validate(@NonNull File file) throws IOException {
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } catch (SQLiteException e) {
+            throw new IOException("Snapshot is not a database", e);
+        }
+        try {
+            if (!"ok".equalsIgnoreCase(DatabaseUtils.stringForQuery(db, "PRAGMA quick_check", null))) {
+                throw new IOException("Snapshot is corrupt");
+            }
+            if (db.getVersion() < 1 || db.getVersion() > ProductDbHelper.DB_VERSION) {
+                throw new IOException("Snapshot has unsupported version " + db.getVersion());
+            }
+            if (DatabaseUtils.queryNumEntries(db, "sqlite_master", "type='table' AND name=?",
+                    new String[]{ProductContract.ProductEntry.TABLE_NAME}) != 1) {
+                throw new IOException("Snapshot has no products table");
+            }
+        } catch (SQLiteException e) {
+            throw new IOException("Snapshot cannot be read", e);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Moves a snapshot prepared by {@link #prepareRestore(Context, InputStream)} over the products
+     * database. Every connection to the products database must be closed first. Stale log files
+     * are removed before the rename, so the rename alone decides which database is live.
+     *
+     * @param context  {@link Context} for locating the database directory.
+     * @param snapshot Snapshot file returned by {@link #prepareRestore(Context, InputStream)}.
+     * @throws IOException If the snapshot cannot be moved into place.
+     */
+    static void swapIn(@NonNull Context context, @NonNull File snapshot) throws IOException {
+        File dbFile = context.getDatabasePath(ProductDbHelper.DB_NAME);
+        for (String suffix : DB_SIDE_FILE_SUFFIXES) {
+            File sideFile = new File(dbFile.getPath() + suffix);
+            if (sideFile.exists() && !sideFile.delete()) {
+                throw new IOException("Cannot delete " + sideFile);
+            }
+        }
+        if (!snapshot.renameTo(dbFile)) {
+            deleteDatabaseFiles(snapshot);
+            throw new IOException("Cannot move snapshot into place");
+        }
+    }
+
+    /**
+     * Writes a compacted copy of the database at the passed path using VACUUM INTO on a separate
+     * read-only connection.
+     */
+    private static void vacuumInto(@NonNull String dbPath, @NonNull File snapshot) {
+        SQLiteDatabase readOnly = SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            readOnly.execSQL("VACUUM INTO " + DatabaseUtils.sqlEscapeString(snapshot.getPath()));
+        } finally {
+            readOnly.close();
+        }
+    }
+
+    /**
+     * Copies the database and write-ahead log files while holding the write lock, and then folds
+     * the copied log into the copied database by opening it once.
+     */
+    private static void copyUnderWriteLock(@NonNull SQLiteDatabase db, @NonNull File snapshot)
+            throws IOException {
+
+        // Keep the log, and therefore the time spent holding the lock, short.
+        DatabaseUtils.stringForQuery(db, "PRAGMA wal_checkpoint(TRUNCATE)", null);
+
+        File dbFile = new File(db.getPath());
+        File walFile = new File(db.getPath() + "-wal");
+        db.beginTransactionNonExclusive();
+        try {
+            copy(dbFile, snapshot);
+            if (walFile.exists()) {
+                copy(walFile, new File(snapshot.getPath() + "-wal"));
+            }
+        } finally {
+            db.endTransaction();
+        }
+
+        // Opening without write-ahead logging checkpoints the copied log into the snapshot.
+        SQLiteDatabase copy = SQLiteDatabase.openDatabase(
+                snapshot.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        copy.close();
+    }
+
+    /**
+     * Copies a file.
+     */
+    private static void copy(@NonNull File from, @NonNull File to) throws IOException {
+        try (InputStream in = new FileInputStream(from);
+             OutputStream out = new FileOutputStream(to)) {
+            copy(in, out);
+        }
+    }
+
+    /**
+     * Copies every byte of an {@link InputStream} into an {@link OutputStream}.
+     */
+    private static void copy(@NonNull InputStream in, @NonNull OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Deletes a database file and the files SQLite keeps next to it.
+     */
+    private static void deleteDatabaseFiles(@NonNull File file) {
+        SQLiteDatabase.deleteDatabase(file);
+    }
+}
@@ -0,0 +1,226 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link ProductBatchDecoder} is a class that streams product rows out of {@link ByteBuffer}s
+ * written by {@link ProductBatchEncoder}. It works like a cursor: {@link #next(ByteBuffer)} reads
+ * one row into reusable fields, and the getters return that row's values. Names and pictures are
+ * kept as bytes until asked for, so skipping over rows allocates nothing.
+ */
+public final class ProductBatchDecoder {
+
+    /**
+     * Suppliers read so far, in dictionary order.
+     */
+    private final List<String> suppliers = new ArrayList<>();
+
+    /**
+     * Id of the last row read, used to decode the next id delta.
+     */
+    private long id = 0;
+
+    /**
+     * Fields of the current row.
+     */
+    private boolean isDeleted;
+    private int price;
+    private int quantity;
+    private int supplierIndex;
+
+    /**
+     * Reusable buffers holding the UTF-8 name and the picture of the current row, and the UTF-8
+     * bytes of a new supplier while it is read.
+     */
+    private byte[] nameBytes = new byte[64];
+    private int nameLength;
+    private byte[] pictureBytes = new byte[0];
+    private int pictureLength = -1;
+    private byte[] supplierBytes = new byte[64];
+
+    /**
+     * Whether {@link #readHeader(ByteBuffer)} has succeeded.
+     */
+    private boolean hasReadHeader = false;
+
+    /**
+     * Reads the batch header. Must be called once before any row is read.
+     *
+     * @param buffer {@link ByteBuffer} to read from.
+     * @return Whether the whole header was available. If not, the buffer is left unchanged.
+     * @throws IllegalArgumentException If the buffer does not hold a supported product batch.
+     */
+    public boolean readHeader(@NonNull ByteBuffer buffer) {
+        if (buffer.remaining() < 3) {
+            return false;
+        }
+        if (buffer.get() != ProductBatchFormat.MAGIC_0 || buffer.get() != ProductBatchFormat.MAGIC_1) {
+            throw new IllegalArgumentException("Not a product batch");
+        }
+        byte version = buffer.get();
+        if (version != ProductBatchFormat.VERSION) {
+            throw new IllegalArgumentException("Unsupported product batch version " + version);
+        }
+        hasReadHeader = true;
+        return true;
+    }
+
+    /**
+     * Reads the next row.
+     *
+     * @param buffer {@link ByteBuffer} to read from.
+     * @return Whether a whole row was available. If not, the buffer is left unchanged so the caller
+     * can refill it and call again, and the getters are not valid until a later call succeeds.
+     * @throws IllegalArgumentException If the row is malformed.
+     */
+    public boolean next(@NonNull ByteBuffer buffer) {
+        if (!hasReadHeader) {
+            throw new IllegalStateException("Header must be read before rows");
+        }
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+
+        final int start = buffer.position();
+        final int countSuppliers = suppliers.size();
+        try {
+            int flags = buffer.get();
+            long nextId = id + ProductBatchFormat.zigzagDecode(ProductBatchFormat.readVarint(buffer));
+            isDeleted = (flags & ProductBatchFormat.FLAG_DELETED) != 0;
+            if (!isDeleted) {
+                nameLength = readLength(buffer);
+                nameBytes = ensureCapacity(nameBytes, nameLength);
+                buffer.get(nameBytes, 0, nameLength);
+                price = readInt(buffer);
+                quantity = readInt(buffer);
+                int reference = readInt(buffer);
+                if (reference == 0) {
+                    int supplierLength = readLength(buffer);
+                    supplierBytes = ensureCapacity(supplierBytes, supplierLength);
+                    buffer.get(supplierBytes, 0, supplierLength);
+                    suppliers.add(new String(supplierBytes, 0, supplierLength, StandardCharsets.UTF_8));
+                    supplierIndex = suppliers.size() - 1;
+                } else if (reference <= suppliers.size()) {
+                    supplierIndex = reference - 1;
+                } else {
+                    throw new IllegalArgumentException("Unknown supplier reference " + reference);
+                }
+                if ((flags & ProductBatchFormat.FLAG_PICTURE) != 0) {
+                    pictureLength = readLength(buffer);
+                    pictureBytes = ensureCapacity(pictureBytes, pictureLength);
+                    buffer.get(pictureBytes, 0, pictureLength);
+                } else {
+                    pictureLength = -1;
+                }
+            }
+            id = nextId;
+            return true;
+        } catch (BufferUnderflowException e) {
+            // Roll back to the start of the row, including a supplier added by it.
+            buffer.position(start);
+            while (suppliers.size() > countSuppliers) {
+                suppliers.remove(suppliers.size() - 1);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the id of the current row.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns whether the current row describes a deleted product. Only {@link #getId()} is valid
+     * for deleted rows.
+     */
+    public boolean isDeleted() {
+        return isDeleted;
+    }
+
+    /**
+     * Returns the name of the current row.
+     */
+    @NonNull
+    public String getName() {
+        return new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the price of the current row.
+     */
+    public int getPrice() {
+        return price;
+    }
+
+    /**
+     * Returns the quantity of the current row.
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Returns the supplier of the current row. The same {@link String} instance is returned for
+     * every row sharing a supplier.
+     */
+    @NonNull
+    public String getSupplier() {
+        return suppliers.get(supplierIndex);
+    }
+
+    /**
+     * Returns the picture length of the current row. Is -1 if the row has no picture.
+     */
+    public int getPictureLength() {
+        return pictureLength;
+    }
+
+    /**
+     * Returns a copy of the picture of the current row. Is null if the row has no picture.
+     */
+    @Nullable
+    public byte[] getPicture() {
+        return pictureLength == -1 ? null : Arrays.copyOf(pictureBytes, pictureLength);
+    }
+
+    /**
+     * Reads a varint that must fit in a non-negative int.
+     */
+    private static int readInt(ByteBuffer buffer) {
+        long value = ProductBatchFormat.readVarint(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a length and throws a {@link BufferUnderflowException} if the buffer does not hold that
+     * many more bytes, so a row split across buffers is retried instead of rejected.
+     */
+    private static int readLength(ByteBuffer buffer) {
+        int length = readInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    /**
+     * Returns the passed array if it holds at least the passed number of bytes, or a bigger one.
+     */
+    private static byte[] ensureCapacity(byte[] bytes, int length) {
+        return bytes.length >= length ? bytes : new byte[Math.max(length, bytes.length * 2)];
+    }
+}
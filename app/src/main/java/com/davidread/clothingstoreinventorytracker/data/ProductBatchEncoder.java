@@ -0,0 +1,134 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link ProductBatchEncoder} is a class that streams product rows into {@link ByteBuffer}s using
+ * the compact format described in {@link ProductBatchFormat}. A row is only written if it fits
+ * entirely in the buffer, so callers can drain a full buffer and retry the same row. One encoder
+ * writes one batch, since the supplier dictionary builds up across rows.
+ */
+public final class ProductBatchEncoder {
+
+    /**
+     * Dictionary index of each supplier written so far.
+     */
+    private final Map<String, Integer> supplierIndices = new HashMap<>();
+
+    /**
+     * Id of the last row written, used to delta encode the next id.
+     */
+    private long previousId = 0;
+
+    /**
+     * Whether {@link #writeHeader(ByteBuffer)} has succeeded.
+     */
+    private boolean hasWrittenHeader = false;
+
+    /**
+     * Writes the batch header. Must be called once before any row is written.
+     *
+     * @param buffer {@link ByteBuffer} to write to.
+     * @return Whether the header fit in the buffer.
+     */
+    public boolean writeHeader(@NonNull ByteBuffer buffer) {
+        if (hasWrittenHeader) {
+            throw new IllegalStateException("Header already written");
+        }
+        if (buffer.remaining() < 3) {
+            return false;
+        }
+        buffer.put(ProductBatchFormat.MAGIC_0);
+        buffer.put(ProductBatchFormat.MAGIC_1);
+        buffer.put(ProductBatchFormat.VERSION);
+        hasWrittenHeader = true;
+        return true;
+    }
+
+    /**
+     * Writes a product row.
+     *
+     * @param buffer   {@link ByteBuffer} to write to.
+     * @param id       Id of the product.
+     * @param name     Name of the product.
+     * @param price    Non-negative price of the product.
+     * @param quantity Non-negative quantity of the product.
+     * @param supplier Supplier of the product.
+     * @param picture  Picture of the product. Is null to leave the picture out of the row.
+     * @return Whether the row fit in the buffer. If not, the buffer is left unchanged.
+     */
+    public boolean writeProduct(@NonNull ByteBuffer buffer, long id, @NonNull String name,
+                                int price, int quantity, @NonNull String supplier,
+                                @Nullable byte[] picture) {
+        if (price < 0 || quantity < 0) {
+            throw new IllegalArgumentException("Price and quantity must be non-negative");
+        }
+        checkHeaderWritten();
+
+        final int start = buffer.position();
+        Integer supplierIndex = supplierIndices.get(supplier);
+        try {
+            buffer.put((byte) (picture != null ? ProductBatchFormat.FLAG_PICTURE : 0));
+            ProductBatchFormat.writeVarint(buffer, ProductBatchFormat.zigzagEncode(id - previousId));
+            ProductBatchFormat.writeString(buffer, name);
+            ProductBatchFormat.writeVarint(buffer, price);
+            ProductBatchFormat.writeVarint(buffer, quantity);
+            if (supplierIndex != null) {
+                ProductBatchFormat.writeVarint(buffer, supplierIndex + 1);
+            } else {
+                ProductBatchFormat.writeVarint(buffer, 0);
+                ProductBatchFormat.writeString(buffer, supplier);
+            }
+            if (picture != null) {
+                ProductBatchFormat.writeVarint(buffer, picture.length);
+                buffer.put(picture);
+            }
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return false;
+        }
+
+        // Only commit the dictionary entry and id once the whole row is written.
+        if (supplierIndex == null) {
+            supplierIndices.put(supplier, supplierIndices.size());
+        }
+        previousId = id;
+        return true;
+    }
+
+    /**
+     * Writes a row describing a deleted product.
+     *
+     * @param buffer {@link ByteBuffer} to write to.
+     * @param id     Id of the deleted product.
+     * @return Whether the row fit in the buffer. If not, the buffer is left unchanged.
+     */
+    public boolean writeDeleted(@NonNull ByteBuffer buffer, long id) {
+        checkHeaderWritten();
+        final int start = buffer.position();
+        try {
+            buffer.put((byte) ProductBatchFormat.FLAG_DELETED);
+            ProductBatchFormat.writeVarint(buffer, ProductBatchFormat.zigzagEncode(id - previousId));
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return false;
+        }
+        previousId = id;
+        return true;
+    }
+
+    /**
+     * Throws an {@link IllegalStateException} if the header has not been written yet.
+     */
+    private void checkHeaderWritten() {
+        if (!hasWrittenHeader) {
+            throw new IllegalStateException("Header must be written before rows");
+        }
+    }
+}
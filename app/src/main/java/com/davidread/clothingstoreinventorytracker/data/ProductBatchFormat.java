@@ -0,0 +1,159 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ProductBatchFormat} is a class that defines constants and primitive read/write helpers
+ * for the binary product batch format shared by {@link ProductBatchEncoder} and
+ * {@link ProductBatchDecoder}.
+ *
+ * <p>A batch starts with the magic bytes "PB" and a format version byte. Each row after that is:
+ * <ul>
+ * <li>a flags byte ({@link #FLAG_DELETED}, {@link #FLAG_PICTURE}),</li>
+ * <li>the id as a zigzag varint delta from the previous row's id,</li>
+ * <li>for rows that are not deleted: the name as a varint length and UTF-8 bytes, the price and
+ * quantity as varints, the supplier as a varint dictionary reference, and the picture as a varint
+ * length and raw bytes when {@link #FLAG_PICTURE} is set.</li>
+ * </ul>
+ * A supplier reference of 0 is followed by a new supplier string that takes the next dictionary
+ * index. A reference of n refers to the supplier at dictionary index n - 1.
+ */
+final class ProductBatchFormat {
+
+    /**
+     * Bytes every batch starts with.
+     */
+    static final byte MAGIC_0 = 'P';
+    static final byte MAGIC_1 = 'B';
+
+    /**
+     * Version of the format written by {@link ProductBatchEncoder}.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Row flag set when the row describes a deleted product and has no other fields.
+     */
+    static final int FLAG_DELETED = 1;
+
+    /**
+     * Row flag set when the row carries a picture.
+     */
+    static final int FLAG_PICTURE = 1 << 1;
+
+    /**
+     * Private constructor to prevent accidental instantiation of {@link ProductBatchFormat}.
+     */
+    private ProductBatchFormat() {
+    }
+
+    /**
+     * Writes an unsigned varint of up to 64 bits.
+     *
+     * @param buffer {@link ByteBuffer} to write to.
+     * @param value  Value to write, treated as unsigned.
+     */
+    static void writeVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint of up to 64 bits.
+     *
+     * @param buffer {@link ByteBuffer} to read from.
+     * @return The value read.
+     * @throws BufferUnderflowException If the buffer ends before the varint does.
+     * @throws IllegalArgumentException If the varint is longer than 10 bytes.
+     */
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so small negative values stay small as a varint.
+     */
+    static long zigzagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigzagEncode(long)}.
+     */
+    static long zigzagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Returns the number of bytes the passed {@link String} takes as UTF-8.
+     *
+     * @param string {@link String} to measure.
+     * @return The UTF-8 length in bytes.
+     */
+    static int utf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes a {@link String} as a varint length followed by its UTF-8 bytes, without allocating
+     * an intermediate byte array. Unpaired surrogates are written as U+FFFD.
+     *
+     * @param buffer {@link ByteBuffer} to write to.
+     * @param string {@link String} to write.
+     */
+    static void writeString(ByteBuffer buffer, String string) {
+        writeVarint(buffer, utf8Length(string));
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Write U+FFFD, which takes the same 3 bytes counted by utf8Length().
+                buffer.put((byte) 0xEF);
+                buffer.put((byte) 0xBF);
+                buffer.put((byte) 0xBD);
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
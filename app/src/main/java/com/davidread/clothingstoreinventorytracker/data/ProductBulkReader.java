@@ -0,0 +1,208 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link ProductBulkReader} is a helper class that reads products in bulk for
+ * {@link ProductContract#METHOD_BULK_READ}, encoded by {@link ProductBatchEncoder}. Consumers
+ * decode plain bytes instead of walking a {@link Cursor} over the products view, which costs a
+ * {@link android.database.CursorWindow} copy and a call per field, and these reads skip the
+ * view's joins and the query cache.
+ *
+ * <p>Products are read in pages by id, each a query of its own, so a read of any size never
+ * counts or windows more than one page of rows.
+ */
+final class ProductBulkReader {
+
+    /**
+     * Smallest number of bytes a product takes in a batch: a flags byte, a one byte id delta, a
+     * one character name with its length, a price, a quantity, and a supplier reference.
+     */
+    private static final int MIN_ROW_BYTES = 7;
+
+    /**
+     * Number of products read per page when streaming.
+     */
+    private static final int STREAM_PAGE_ROWS = 5000;
+
+    /**
+     * Size in bytes of the buffer written to a stream each time it fills up.
+     */
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Columns of the products table read for each product, in the order they are encoded.
+     */
+    private static final String[] COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_NAME,
+            ProductEntry.COLUMN_PRICE,
+            ProductEntry.COLUMN_QUANTITY,
+            ProductEntry.COLUMN_SUPPLIER
+    };
+
+    /**
+     * Private constructor to prevent accidental instantiation of {@link ProductBulkReader}.
+     */
+    private ProductBulkReader() {
+    }
+
+    /**
+     * Reads one chunk of the products matching a selection.
+     *
+     * @param db            Readable {@link SQLiteDatabase} of the products database.
+     * @param selection     A selection criteria over the products table. Is null for every product.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @param afterId       Id after which the chunk starts.
+     * @param maxBytes      Size in bytes the chunk must fit in.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_BATCH}, the
+     * {@link ProductContract#EXTRA_COUNT} of products in it, the
+     * {@link ProductContract#EXTRA_AFTER_ID} of the next chunk, and whether it
+     * {@link ProductContract#EXTRA_HAS_MORE}. Is null if the next product does not fit in a chunk.
+     */
+    @Nullable
+    static Bundle readChunk(@NonNull SQLiteDatabase db, @Nullable String selection,
+                            @Nullable String[] selectionArgs, long afterId, int maxBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(maxBytes);
+        ProductBatchEncoder encoder = new ProductBatchEncoder();
+        encoder.writeHeader(buffer);
+
+        /* The page holds more products than can fit in the chunk, so running out of room, rather
+         * than out of rows, is what tells that more products follow. */
+        int countRows = 0;
+        long lastId = afterId;
+        boolean hasMore = false;
+        try (Cursor cursor = queryPage(db, selection, selectionArgs, afterId,
+                maxBytes / MIN_ROW_BYTES + 1)) {
+            while (cursor.moveToNext()) {
+                if (!writeRow(encoder, buffer, cursor)) {
+                    hasMore = true;
+                    break;
+                }
+                countRows++;
+                lastId = cursor.getLong(0);
+            }
+        }
+
+        // Return null if the next product can never fit in a chunk of this size.
+        if (hasMore && countRows == 0) {
+            return null;
+        }
+
+        Bundle result = new Bundle();
+        result.putByteArray(ProductContract.EXTRA_BATCH,
+                Arrays.copyOf(buffer.array(), buffer.position()));
+        result.putInt(ProductContract.EXTRA_COUNT, countRows);
+        result.putLong(ProductContract.EXTRA_AFTER_ID, lastId);
+        result.putBoolean(ProductContract.EXTRA_HAS_MORE, hasMore);
+        return result;
+    }
+
+    /**
+     * Writes every product matching a selection to a stream as a single batch.
+     *
+     * @param db            Readable {@link SQLiteDatabase} of the products database.
+     * @param selection     A selection criteria over the products table. Is null for every product.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @param out           {@link OutputStream} to write to. It is not closed.
+     * @return The number of products written.
+     * @throws IOException If the stream cannot be written, such as when the reader closed it, or
+     *                     a product does not fit in the stream buffer.
+     */
+    @WorkerThread
+    static int stream(@NonNull SQLiteDatabase db, @Nullable String selection,
+                      @Nullable String[] selectionArgs, @NonNull OutputStream out)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_BYTES);
+        ProductBatchEncoder encoder = new ProductBatchEncoder();
+        encoder.writeHeader(buffer);
+
+        int countRows = 0;
+        long lastId = 0;
+        int countPageRows;
+        do {
+            countPageRows = 0;
+            try (Cursor cursor = queryPage(db, selection, selectionArgs, lastId,
+                    STREAM_PAGE_ROWS)) {
+                while (cursor.moveToNext()) {
+
+                    // Drain a full buffer and retry the product that did not fit.
+                    if (!writeRow(encoder, buffer, cursor)) {
+                        drain(buffer, out);
+                        if (!writeRow(encoder, buffer, cursor)) {
+                            throw new IOException("Product " + cursor.getLong(0)
+                                    + " does not fit in the stream buffer");
+                        }
+                    }
+                    countPageRows++;
+                    lastId = cursor.getLong(0);
+                }
+            }
+            countRows += countPageRows;
+        } while (countPageRows == STREAM_PAGE_ROWS);
+
+        drain(buffer, out);
+        out.flush();
+        return countRows;
+    }
+
+    /**
+     * Queries a page of the products matching a selection, in id order.
+     *
+     * @param db            Readable {@link SQLiteDatabase} of the products database.
+     * @param selection     A selection criteria over the products table.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @param afterId       Id after which the page starts.
+     * @param limit         Largest number of products in the page.
+     * @return A {@link Cursor} holding the {@link #COLUMNS} of the page's products.
+     */
+    @NonNull
+    private static Cursor queryPage(@NonNull SQLiteDatabase db, @Nullable String selection,
+                                    @Nullable String[] selectionArgs, long afterId, int limit) {
+        return db.rawQuery(SQLiteQueryBuilder.buildQueryString(false, ProductEntry.TABLE_NAME,
+                COLUMNS, DatabaseUtils.concatenateWhere(selection, ProductEntry._ID + " > " + afterId),
+                null, null, ProductEntry._ID, String.valueOf(limit)), selectionArgs);
+    }
+
+    /**
+     * Writes the product at the current position of a {@link Cursor} over {@link #COLUMNS}.
+     *
+     * @param encoder {@link ProductBatchEncoder} of the batch.
+     * @param buffer  {@link ByteBuffer} to write to.
+     * @param cursor  {@link Cursor} positioned on the product.
+     * @return Whether the product fit in the buffer. If not, the buffer is left unchanged.
+     */
+    private static boolean writeRow(@NonNull ProductBatchEncoder encoder,
+                                    @NonNull ByteBuffer buffer, @NonNull Cursor cursor) {
+        return encoder.writeProduct(buffer, cursor.getLong(0), cursor.getString(1),
+                cursor.getInt(2), cursor.getInt(3), cursor.getString(4), null);
+    }
+
+    /**
+     * Writes the contents of a buffer to a stream and empties the buffer.
+     *
+     * @param buffer {@link ByteBuffer} to drain.
+     * @param out    {@link OutputStream} to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void drain(@NonNull ByteBuffer buffer, @NonNull OutputStream out)
+            throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+}
@@ -1,6 +1,7 @@
 package com.davidread.clothingstoreinventorytracker.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -26,12 +27,311 @@ public final class ProductContract {
      */
     public static final String PATH_PRODUCTS = "products";
 
+    /**
+     * {@link String} to append to {@link ProductEntry#CONTENT_URI} to access the change feed of
+     * product data from the {@link ProductProvider}.
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * {@link String} to append to {@link ProductEntry#CONTENT_URI} to look up product data by SKU
+     * from the {@link ProductProvider}.
+     */
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * {@link String} to append to {@link #BASE_CONTENT_URI}, or to a single product's content URI,
+     * to access size and color variant data from the {@link ProductProvider}.
+     */
+    public static final String PATH_VARIANTS = "variants";
+
+    /**
+     * {@link String} to append to {@link ProductEntry#CONTENT_URI} to query the first products of
+     * a named sort order from the {@link ProductProvider}.
+     */
+    public static final String PATH_TOP = "top";
+
+    /**
+     * {@link String} to append to {@link ProductEntry#CONTENT_URI} to query the products that
+     * need reordering from the {@link ProductProvider}.
+     */
+    public static final String PATH_REORDER = "reorder";
+
+    /**
+     * {@link String} to append to {@link #BASE_CONTENT_URI} to access the data of a single store
+     * location, or a summary of every store, from the {@link ProductProvider}.
+     */
+    public static final String PATH_STORES = "stores";
+
+    /**
+     * {@link String} to append to {@link StoreEntry#CONTENT_URI} to query the summary of every
+     * store from the {@link ProductProvider}.
+     */
+    public static final String PATH_SUMMARY = "summary";
+
+    /**
+     * {@link String} name of the query parameter that marks a request as coming from a sync
+     * adapter. Writes made with this parameter set to "true" are not marked dirty, so they are not
+     * pushed back to the peer they came from.
+     */
+    public static final String PARAM_CALLER_IS_SYNC_ADAPTER = "caller_is_syncadapter";
+
+    /**
+     * {@link String} name of the query parameter that limits the number of rows returned by a
+     * query on {@link ProductEntry#CONTENT_CHANGES_URI}, {@link ProductEntry#CONTENT_TOP_URI}, or
+     * {@link ProductEntry#CONTENT_REORDER_URI}.
+     */
+    public static final String PARAM_LIMIT = "limit";
+
+    /**
+     * {@link String} name of the query parameter that makes a query on
+     * {@link ProductEntry#CONTENT_URI}, or on a single product's content URI, also return archived
+     * products when set to "true". Archived rows have {@link ProductEntry#COLUMN_ARCHIVED} set to
+     * 1 and are read-only.
+     */
+    public static final String PARAM_INCLUDE_ARCHIVED = "include_archived";
+
+    /**
+     * {@link String} name of the query parameter holding the number of days of stock a query on
+     * {@link ProductEntry#CONTENT_REORDER_URI} must cover. Products expected to sell out sooner
+     * are returned. If absent, {@link ProductEntry#DEFAULT_REORDER_HORIZON_DAYS} is used.
+     */
+    public static final String PARAM_HORIZON_DAYS = "horizon_days";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that clears the dirty flag of
+     * products and tombstones after they have been pushed to a peer. It expects
+     * {@link #EXTRA_IDS} and {@link #EXTRA_VERSIONS} in its extras and only clears rows whose
+     * version still matches, so changes made during the push stay dirty.
+     */
+    public static final String METHOD_MARK_CLEAN = "mark_clean";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that writes a compressed,
+     * consistent snapshot of the products database to the content URI passed as its argument.
+     * Writes keep being served while the snapshot is taken. Must not be called on the main thread.
+     */
+    public static final String METHOD_BACKUP = "backup";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that replaces the products
+     * database with a snapshot read from the content URI passed as its argument. The snapshot is
+     * validated before it atomically replaces the database. Must not be called on the main thread.
+     */
+    public static final String METHOD_RESTORE = "restore";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that adds a delta to the
+     * quantity of several products in a single transaction. It expects a unique batch id as its
+     * argument and {@link #EXTRA_IDS} and {@link #EXTRA_DELTAS} in its extras. A batch id that was
+     * already applied is ignored, so a batch can safely be resent. Quantities stop at 0, so the
+     * result holds the {@link #EXTRA_DELTAS} actually applied, which are all 0 for a batch that was
+     * already applied, and the {@link #EXTRA_GENERATION} the batch was committed at.
+     */
+    public static final String METHOD_ADJUST_QUANTITIES = "adjust_quantities";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that resolves many SKUs to
+     * product ids at once, such as the codes scanned while receiving a shipment. It expects
+     * {@link #EXTRA_SKUS} in its extras and returns {@link #EXTRA_IDS} in the same order, holding
+     * -1 for each SKU that matches no product.
+     */
+    public static final String METHOD_LOOKUP_SKUS = "lookup_skus";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that reprices every product
+     * matching a selection with a single UPDATE in one transaction, such as a seasonal markdown.
+     * The new price in cents is the old price scaled by {@link #EXTRA_PERCENT}, plus
+     * {@link #EXTRA_DELTA}, rounded by {@link #EXTRA_ROUNDING}. It takes an optional
+     * {@link #EXTRA_SELECTION} and {@link #EXTRA_SELECTION_ARGS} over the products table, and
+     * returns the {@link #EXTRA_COUNT} of repriced products. If any matching product would get a
+     * negative price, no product is repriced and null is returned.
+     */
+    public static final String METHOD_REPRICE = "reprice";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that moves sold out products
+     * nobody has written for a while out of the products table into a separate archive database,
+     * so the products table stays small. A product is moved once it has no quantity, no variants,
+     * and has not been written for {@link #EXTRA_MAX_AGE_MILLIS}, which defaults to the
+     * archive_after_days integer resource. Archived products are only returned by queries with
+     * {@link #PARAM_INCLUDE_ARCHIVED}, are not reported as deleted by the change feed, and are not
+     * part of {@link #METHOD_BACKUP} snapshots. Returns the {@link #EXTRA_COUNT} of archived
+     * products. Must not be called on the main thread.
+     */
+    public static final String METHOD_ARCHIVE = "archive";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that runs one pass of
+     * database maintenance: archiving, deleting unreferenced pictures, refreshing query planner
+     * statistics, giving free pages back to the file system, checkpointing the write-ahead log,
+     * and checking integrity. It takes an optional {@link #EXTRA_TIME_BUDGET_MILLIS}, after which
+     * remaining tasks are skipped, and returns the {@link #EXTRA_TASKS} run with their
+     * {@link #EXTRA_RESULTS} and {@link #EXTRA_DURATIONS} in milliseconds. Must not be called on
+     * the main thread.
+     */
+    public static final String METHOD_RUN_MAINTENANCE = "run_maintenance";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} debug call method that returns the
+     * {@link #EXTRA_REPORT} of recent slow queries, updates, and deletes, each with its normalized
+     * SQL, argument shape, row count, duration, and query plan. It takes an optional
+     * {@link #EXTRA_THRESHOLD_MILLIS}, which changes the duration from which operations are
+     * recorded, and an optional {@link #EXTRA_CLEAR}, which empties the log after the report is
+     * built. The same report is printed by dumpsys for the provider.
+     */
+    public static final String METHOD_DUMP_SLOW_QUERIES = "dump_slow_queries";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that holds units of a
+     * product, such as for a customer at the counter or a pending online order, without taking
+     * them off its quantity. It expects the product's {@link #EXTRA_ID}, the
+     * {@link #EXTRA_QUANTITY} to hold, and {@link #EXTRA_TTL_MILLIS} after which the hold is
+     * released on its own. Units of a variant are held by also passing its
+     * {@link #EXTRA_VARIANT_ID}; without it, the units are held from the product's own quantity.
+     * Returns the {@link #EXTRA_RESERVATION_ID} and the {@link #EXTRA_EXPIRES_AT} time in
+     * milliseconds since the epoch. Is null if the extras are invalid or fewer units than asked
+     * for are available, in which case nothing is held.
+     */
+    public static final String METHOD_RESERVE = "reserve";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that releases a hold made by
+     * {@link #METHOD_RESERVE} before it expires. It expects the {@link #EXTRA_RESERVATION_ID}.
+     * With {@link #EXTRA_FULFILL} set to true, such as when the held units are sold, they are
+     * also taken off the quantity of the variant or product they were held from in the same
+     * transaction. Quantities edited down while the hold was active may no longer cover it, so
+     * only the units still in stock are sold. Returns the {@link #EXTRA_COUNT} of released holds,
+     * which is 0 if the hold already expired, and for a fulfilled hold the
+     * {@link #EXTRA_QUANTITY} of units sold.
+     */
+    public static final String METHOD_RELEASE = "release";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that sells units of a
+     * product. It expects the product's {@link #EXTRA_ID} and the {@link #EXTRA_QUANTITY} sold, and
+     * sells units of a variant by also passing its {@link #EXTRA_VARIANT_ID}. The units are taken
+     * off the quantity and folded into the product's {@link ProductEntry#COLUMN_SALES_RATE} in one
+     * transaction. Only sales made through this method, or by fulfilling a hold with
+     * {@link #METHOD_RELEASE}, count towards the sales rate, so other quantity changes such as
+     * corrections leave it alone. Returns the {@link #EXTRA_COUNT} of sold rows. Is null if the
+     * extras are invalid or fewer units than sold are available, in which case nothing is sold.
+     */
+    public static final String METHOD_RECORD_SALE = "record_sale";
+
+    /**
+     * {@link String} name of the {@link ProductProvider} call method that reads products in bulk,
+     * such as for reports, sync, and exports, without walking a {@link android.database.Cursor}
+     * row by row. Products are written in id order as a product batch, read with
+     * {@link ProductBatchDecoder}, holding each product's id, name, price, quantity, and supplier
+     * but no picture. It takes an optional {@link #EXTRA_SELECTION} and
+     * {@link #EXTRA_SELECTION_ARGS} over the products table.
+     *
+     * <p>By default, it returns one chunk of products as the {@link #EXTRA_BATCH} byte array, of
+     * at most {@link #EXTRA_MAX_BYTES}, with the {@link #EXTRA_COUNT} of products in it. If
+     * {@link #EXTRA_HAS_MORE} is true, the next chunk is read by passing the returned
+     * {@link #EXTRA_AFTER_ID} back. Each chunk is a batch of its own. Is null if the extras are
+     * invalid or a single product does not fit in a chunk.
+     *
+     * <p>With {@link #EXTRA_STREAM} set to true, it instead returns the read side of a pipe as the
+     * {@link #EXTRA_PIPE} {@link android.os.ParcelFileDescriptor}, which the caller must close,
+     * streaming every matching product as a single batch. The pipe reports an error on close if
+     * the products could not be read.
+     *
+     * <p>Products written while a bulk read is under way may or may not be part of it, but no
+     * product is read twice.
+     */
+    public static final String METHOD_BULK_READ = "bulk_read";
+
+    /**
+     * Default and largest {@link #EXTRA_MAX_BYTES} of a {@link #METHOD_BULK_READ} chunk. The
+     * largest chunk stays well below the binder transaction limit.
+     */
+    public static final int DEFAULT_BULK_READ_BYTES = 256 * 1024;
+    public static final int MAX_BULK_READ_BYTES = 512 * 1024;
+
+    /**
+     * {@link String} values of {@link #EXTRA_ROUNDING}. Prices are rounded to the nearest cent,
+     * down or up to a whole cent, or to the nearest whole dollar minus one cent, such as 19.99.
+     * With {@link #ROUNDING_ENDING_99}, a new price under 50 cents has no such price to round to,
+     * so the product keeps its price and is not counted as repriced.
+     */
+    public static final String ROUNDING_NEAREST = "nearest";
+    public static final String ROUNDING_DOWN = "down";
+    public static final String ROUNDING_UP = "up";
+    public static final String ROUNDING_ENDING_99 = "ending_99";
+
+    /**
+     * {@link String} keys for the extras and results of {@link ProductProvider} call methods.
+     */
+    public static final String EXTRA_IDS = "ids";
+    public static final String EXTRA_VERSIONS = "versions";
+    public static final String EXTRA_DELTAS = "deltas";
+    public static final String EXTRA_SKUS = "skus";
+    public static final String EXTRA_SELECTION = "selection";
+    public static final String EXTRA_SELECTION_ARGS = "selection_args";
+    public static final String EXTRA_PERCENT = "percent";
+    public static final String EXTRA_DELTA = "delta";
+    public static final String EXTRA_ROUNDING = "rounding";
+    public static final String EXTRA_MAX_AGE_MILLIS = "max_age_millis";
+    public static final String EXTRA_TIME_BUDGET_MILLIS = "time_budget_millis";
+    public static final String EXTRA_TASKS = "tasks";
+    public static final String EXTRA_RESULTS = "results";
+    public static final String EXTRA_DURATIONS = "durations";
+    public static final String EXTRA_THRESHOLD_MILLIS = "threshold_millis";
+    public static final String EXTRA_CLEAR = "clear";
+    public static final String EXTRA_REPORT = "report";
+    public static final String EXTRA_COUNT = "count";
+    public static final String EXTRA_SIZE = "size";
+    public static final String EXTRA_ID = "id";
+    public static final String EXTRA_VARIANT_ID = "variant_id";
+    public static final String EXTRA_QUANTITY = "quantity";
+    public static final String EXTRA_TTL_MILLIS = "ttl_millis";
+    public static final String EXTRA_RESERVATION_ID = "reservation_id";
+    public static final String EXTRA_EXPIRES_AT = "expires_at";
+    public static final String EXTRA_FULFILL = "fulfill";
+    public static final String EXTRA_AFTER_ID = "after_id";
+    public static final String EXTRA_MAX_BYTES = "max_bytes";
+    public static final String EXTRA_BATCH = "batch";
+    public static final String EXTRA_HAS_MORE = "has_more";
+    public static final String EXTRA_STREAM = "stream";
+    public static final String EXTRA_PIPE = "pipe";
+
+    /**
+     * {@link String} key of the optional extra holding the id of the store a
+     * {@link ProductProvider} call method runs on. Without it, methods run on the main store.
+     * {@link #METHOD_BACKUP}, {@link #METHOD_RESTORE}, and {@link #METHOD_ARCHIVE} only run on the
+     * main store, and {@link #METHOD_RUN_MAINTENANCE} skips archiving on other stores.
+     */
+    public static final String EXTRA_STORE_ID = "store_id";
+
+    /**
+     * {@link String} key of the long the {@link ProductProvider} bumps on every change it
+     * notifies. The extras of a query cursor hold the generation read before the query ran, so a
+     * change committed at that generation or earlier is part of the cursor's rows. The result of
+     * {@link #METHOD_ADJUST_QUANTITIES} holds the generation its batch was committed at.
+     */
+    public static final String EXTRA_GENERATION = "generation";
+
     /**
      * Private constructor to prevent accidental instantiation of {@link ProductContract}.
      */
     private ProductContract() {
     }
 
+    /**
+     * Returns a copy of the passed content {@link Uri} with
+     * {@link #PARAM_CALLER_IS_SYNC_ADAPTER} set to "true".
+     *
+     * @param uri Content {@link Uri} to mark as a sync adapter request.
+     * @return The marked content {@link Uri}.
+     */
+    public static Uri asSyncAdapter(Uri uri) {
+        return uri.buildUpon()
+                .appendQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER, "true")
+                .build();
+    }
+
     /**
      * {@link ProductEntry} is a class defines constants to help work with product data from the
      * {@link ProductProvider}.
@@ -43,6 +343,60 @@ public final class ProductContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * Content {@link Uri} for using the change feed of product data from the
+         * {@link ProductProvider}. Use {@link #buildChangesUri(long)} to query the changes made
+         * after a given change token.
+         */
+        public static final Uri CONTENT_CHANGES_URI = Uri.withAppendedPath(CONTENT_URI, PATH_CHANGES);
+
+        /**
+         * Content {@link Uri} for looking up product data by SKU from the {@link ProductProvider}.
+         * Use {@link #buildSkuUri(String)} to look up a single SKU.
+         */
+        public static final Uri CONTENT_SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
+        /**
+         * Content {@link Uri} for querying the first products of a named sort order from the
+         * {@link ProductProvider}. Use {@link #buildTopUri(String, int)} to query one of the
+         * SORT constants. The sort order passed to the query is ignored, and a selection narrows
+         * the rows the top ones are taken from.
+         */
+        public static final Uri CONTENT_TOP_URI = Uri.withAppendedPath(CONTENT_URI, PATH_TOP);
+
+        /**
+         * {@link String} names of the sort orders of {@link #CONTENT_TOP_URI}. Each is answered by
+         * walking an index, so only the rows returned are read. {@link #SORT_LOWEST_QUANTITY}
+         * sorts on {@link #COLUMN_TOTAL_QUANTITY}, so products keeping their stock in variants
+         * are ranked by it. Ties are broken by id, newest first except for
+         * {@link #SORT_LOWEST_QUANTITY}.
+         */
+        public static final String SORT_MOST_VALUABLE = "most_valuable";
+        public static final String SORT_LOWEST_QUANTITY = "lowest_quantity";
+        public static final String SORT_MOST_EXPENSIVE = "most_expensive";
+
+        /**
+         * Number of rows returned by a query on {@link #CONTENT_TOP_URI} without
+         * {@link ProductContract#PARAM_LIMIT}.
+         */
+        public static final int DEFAULT_TOP_LIMIT = 10;
+
+        /**
+         * Content {@link Uri} for querying the products that need reordering from the
+         * {@link ProductProvider}: those whose stock is expected to sell out within
+         * {@link ProductContract#PARAM_HORIZON_DAYS} at their current sales velocity, soonest
+         * first. Products that have never sold are left out. Rows hold every product column plus
+         * {@link #COLUMN_SALES_RATE}, {@link #COLUMN_DAYS_OF_STOCK}, and
+         * {@link #COLUMN_REORDER_POINT}. The sort order passed to the query is ignored.
+         */
+        public static final Uri CONTENT_REORDER_URI = Uri.withAppendedPath(CONTENT_URI, PATH_REORDER);
+
+        /**
+         * Number of days of stock a query on {@link #CONTENT_REORDER_URI} must cover without
+         * {@link ProductContract#PARAM_HORIZON_DAYS}.
+         */
+        public static final int DEFAULT_REORDER_HORIZON_DAYS = 14;
+
         /**
          * {@link String} specifying the MIME type of {@link #CONTENT_URI} for a single piece of
          * product data.
@@ -65,6 +419,263 @@ public final class ProductContract {
         public static final String COLUMN_PRICE = "price";
         public static final String COLUMN_QUANTITY = "quantity";
         public static final String COLUMN_SUPPLIER = "supplier";
+
+        /**
+         * {@link String} constant defining the picture column, a byte array. Products sharing the
+         * same picture bytes share a single stored copy, so reusing a picture costs no storage.
+         */
         public static final String COLUMN_PICTURE = "picture";
+
+        /**
+         * {@link String} constant defining the optional SKU or barcode column. No two products
+         * share a SKU, but any number of products may have none.
+         */
+        public static final String COLUMN_SKU = "sku";
+
+        /**
+         * {@link String} constant defining the column holding a product's globally unique id, which
+         * names the same product on every device it is synced to, while {@link #_ID} is only
+         * unique on one device. It is assigned when a product is inserted without one and cannot
+         * be changed afterwards.
+         */
+        public static final String COLUMN_UUID = "uuid";
+
+        /**
+         * {@link String} constants defining read-only rollups of a product's variants, maintained
+         * by the database whenever a variant changes. {@link #COLUMN_VARIANT_COUNT} is the number
+         * of variants and {@link #COLUMN_VARIANT_QUANTITY} is their total quantity. A product with
+         * variants keeps its stock in them rather than in {@link #COLUMN_QUANTITY}.
+         */
+        public static final String COLUMN_VARIANT_COUNT = "variant_count";
+        public static final String COLUMN_VARIANT_QUANTITY = "variant_quantity";
+
+        /**
+         * {@link String} constant defining the read-only value of a product's stock in cents, its
+         * price times {@link #COLUMN_QUANTITY} plus {@link #COLUMN_VARIANT_QUANTITY}, maintained by
+         * the database.
+         */
+        public static final String COLUMN_STOCK_VALUE = "stock_value";
+
+        /**
+         * {@link String} constant defining the read-only number of units of a product in stock,
+         * {@link #COLUMN_QUANTITY} plus {@link #COLUMN_VARIANT_QUANTITY}, maintained by the
+         * database.
+         */
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * {@link String} constant defining the read-only number of units that are not held by an
+         * active reservation of {@link ProductContract#METHOD_RESERVE}: {@link #COLUMN_QUANTITY}
+         * plus {@link #COLUMN_VARIANT_QUANTITY}, minus the units held.
+         */
+        public static final String COLUMN_AVAILABLE_QUANTITY = "available_quantity";
+
+        /**
+         * {@link String} constants defining sync bookkeeping columns. {@link #COLUMN_VERSION} is a
+         * monotonically increasing change token assigned by the database on every write.
+         * {@link #COLUMN_DIRTY} is 1 when a row has local changes that are not yet pushed to a
+         * peer. {@link #COLUMN_DELETED} is only present in rows of
+         * {@link #CONTENT_CHANGES_URI} and is 1 when the row describes a deleted product.
+         */
+        public static final String COLUMN_VERSION = "version";
+        public static final String COLUMN_DIRTY = "dirty";
+        public static final String COLUMN_DELETED = "deleted";
+
+        /**
+         * {@link String} constant defining the read-only time in milliseconds since the epoch at
+         * which a product was last written, maintained by the database.
+         */
+        public static final String COLUMN_UPDATED_AT = "updated_at";
+
+        /**
+         * {@link String} constant defining a column only present in rows of queries with
+         * {@link ProductContract#PARAM_INCLUDE_ARCHIVED}. It is 1 when the row describes an
+         * archived product.
+         */
+        public static final String COLUMN_ARCHIVED = "archived";
+
+        /**
+         * {@link String} constants defining columns only present in rows of
+         * {@link #CONTENT_REORDER_URI}. {@link #COLUMN_SALES_RATE} is an exponentially weighted
+         * moving average of the units sold per day, kept up to date as sales are recorded with
+         * {@link ProductContract#METHOD_RECORD_SALE}. {@link #COLUMN_DAYS_OF_STOCK} is the number
+         * of days the stock lasts at that rate. {@link #COLUMN_REORDER_POINT} is the number of
+         * units that covers the horizon of the query, so the product needs reordering while its
+         * stock is at or below it.
+         */
+        public static final String COLUMN_SALES_RATE = "sales_rate";
+        public static final String COLUMN_DAYS_OF_STOCK = "days_of_stock";
+        public static final String COLUMN_REORDER_POINT = "reorder_point";
+
+        /**
+         * Returns a copy of the passed product content {@link Uri} with
+         * {@link ProductContract#PARAM_INCLUDE_ARCHIVED} set to "true".
+         *
+         * @param uri Content {@link Uri} of all products or of a single product.
+         * @return Content {@link Uri} that also returns archived products.
+         */
+        public static Uri withArchived(Uri uri) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_INCLUDE_ARCHIVED, "true")
+                    .build();
+        }
+
+        /**
+         * Returns a content {@link Uri} for querying all product changes made after the passed
+         * change token. Pass 0 to get every row.
+         *
+         * @param sinceToken Change token returned by a previous query of the change feed.
+         * @return Content {@link Uri} for the change feed.
+         */
+        public static Uri buildChangesUri(long sinceToken) {
+            return ContentUris.withAppendedId(CONTENT_CHANGES_URI, sinceToken);
+        }
+
+        /**
+         * Returns a content {@link Uri} for looking up the product with the passed SKU.
+         *
+         * @param sku SKU or barcode of the product.
+         * @return Content {@link Uri} for the product with the SKU.
+         */
+        public static Uri buildSkuUri(String sku) {
+            return Uri.withAppendedPath(CONTENT_SKU_URI, sku);
+        }
+
+        /**
+         * Returns a content {@link Uri} for querying the first products of a named sort order.
+         *
+         * @param sort  One of the SORT constants, such as {@link #SORT_MOST_VALUABLE}.
+         * @param limit Maximum number of products to return. Must be positive.
+         * @return Content {@link Uri} for the first products of the sort order.
+         */
+        public static Uri buildTopUri(String sort, int limit) {
+            return Uri.withAppendedPath(CONTENT_TOP_URI, sort).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Returns a content {@link Uri} for querying the variants of a product, or inserting a new
+         * variant of it.
+         *
+         * @param productId Id of the product.
+         * @return Content {@link Uri} for the product's variants.
+         */
+        public static Uri buildVariantsUri(long productId) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, productId), PATH_VARIANTS);
+        }
+    }
+
+    /**
+     * {@link TombstoneEntry} is a class that defines constants for the table that remembers
+     * deleted products so their deletion can be delivered through
+     * {@link ProductEntry#CONTENT_CHANGES_URI}.
+     */
+    public static class TombstoneEntry implements BaseColumns {
+
+        /**
+         * {@link String} constants defining the product tombstones table's name and columns.
+         */
+        public static final String TABLE_NAME = "product_tombstones";
+        public static final String COLUMN_UUID = ProductEntry.COLUMN_UUID;
+        public static final String COLUMN_VERSION = ProductEntry.COLUMN_VERSION;
+        public static final String COLUMN_DIRTY = ProductEntry.COLUMN_DIRTY;
+    }
+
+    /**
+     * {@link VariantEntry} is a class that defines constants to help work with the size and color
+     * variants of products from the {@link ProductProvider}. Each variant belongs to one product
+     * and has its own quantity, while the name, price, supplier, and picture are shared through
+     * the product.
+     */
+    public static class VariantEntry implements BaseColumns {
+
+        /**
+         * Content {@link Uri} for using variant data of every product from the
+         * {@link ProductProvider}. Use {@link ProductEntry#buildVariantsUri(long)} for the variants
+         * of a single product.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_VARIANTS);
+
+        /**
+         * {@link String} specifying the MIME type of {@link #CONTENT_URI} for a single piece of
+         * variant data.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_VARIANTS;
+
+        /**
+         * {@link String} specifying the MIME type of {@link #CONTENT_URI} for a list of variant
+         * data.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_VARIANTS;
+
+        /**
+         * {@link String} constants defining the product variants table's name and columns. No two
+         * variants of a product share both a size and a color.
+         */
+        public static final String TABLE_NAME = "product_variants";
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_SIZE = "size";
+        public static final String COLUMN_COLOR = "color";
+        public static final String COLUMN_QUANTITY = "quantity";
+    }
+
+    /**
+     * {@link StoreEntry} is a class that defines constants to help work with the store locations
+     * of the {@link ProductProvider}. Each store keeps its products in its own database, so
+     * writes to different stores run in parallel and a store's queries only read its own data.
+     * Store product URIs built by {@link #buildProductsUri(long)} accept the same paths, query
+     * parameters, and columns as {@link ProductEntry#CONTENT_URI}, except for variants and
+     * archived products. Call methods apply to the main store only, and only writes to the main
+     * store are atomic with the rest of a batch.
+     */
+    public static class StoreEntry {
+
+        /**
+         * Id of the main store, whose products are at {@link ProductEntry#CONTENT_URI}. Other
+         * stores have positive ids.
+         */
+        public static final long MAIN_STORE_ID = 0;
+
+        /**
+         * Content {@link Uri} for using store data from the {@link ProductProvider}.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STORES);
+
+        /**
+         * Content {@link Uri} for querying one summary row per store, the main store included,
+         * from the {@link ProductProvider}. The stores are read in parallel. A selection over
+         * product columns limits the products each row summarizes.
+         */
+        public static final Uri CONTENT_SUMMARY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SUMMARY);
+
+        /**
+         * {@link String} specifying the MIME type of {@link #CONTENT_SUMMARY_URI}.
+         */
+        public static final String CONTENT_SUMMARY_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STORES;
+
+        /**
+         * {@link String} constants defining the columns of {@link #CONTENT_SUMMARY_URI}: the store
+         * id, its number of products, its units in stock, and the value of its stock in cents.
+         */
+        public static final String COLUMN_STORE_ID = "store_id";
+        public static final String COLUMN_PRODUCT_COUNT = "product_count";
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+        public static final String COLUMN_TOTAL_STOCK_VALUE = "total_stock_value";
+
+        /**
+         * Returns the content {@link Uri} of a store's products. Paths such as a single product's
+         * id or {@link ProductContract#PATH_SKU} are appended to it as to
+         * {@link ProductEntry#CONTENT_URI}.
+         *
+         * @param storeId Id of the store, which is positive.
+         * @return Content {@link Uri} for the store's products.
+         */
+        public static Uri buildProductsUri(long storeId) {
+            return Uri.withAppendedPath(ContentUris.withAppendedId(CONTENT_URI, storeId), PATH_PRODUCTS);
+        }
     }
 }
@@ -1,11 +1,20 @@
 package com.davidread.clothingstoreinventorytracker.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.provider.BaseColumns;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.TombstoneEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.VariantEntry;
+
 /**
  * {@link ProductDbHelper} is a helper class for SQLite database creation and version management
  * within this application.
@@ -15,26 +24,146 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     /**
      * {@link String} name for the database file.
      */
-    private static final String DB_NAME = "products.db";
+    static final String DB_NAME = "products.db";
+
+    /**
+     * Int version for the database schema. Each version above 1 has a matching upgrade step in
+     * {@link #onUpgrade(SQLiteDatabase, int, int)}.
+     */
+    static final int DB_VERSION = 16;
+
+    /**
+     * {@link String} name of the single row table holding the last change token handed out to a
+     * product write.
+     */
+    static final String SYNC_COUNTER_TABLE_NAME = "sync_counter";
+
+    /**
+     * {@link String} name of the table remembering which stock edit batches have been applied, so
+     * a batch replayed after a process restart is applied only once, and of its columns holding
+     * the batch id and the time in milliseconds since the epoch the batch was applied.
+     */
+    static final String STOCK_EDIT_BATCHES_TABLE_NAME = "stock_edit_batches";
+    static final String COLUMN_BATCH_ID = "batch_id";
+    static final String COLUMN_BATCH_APPLIED_AT = "applied_at";
+
+    /**
+     * {@link String} name of the table recording each maintenance task run by
+     * {@link ProductMaintenance}, what it did, and how long it took, and of its columns holding
+     * the task name, the time in milliseconds since the epoch it started, the milliseconds it
+     * took, and a short description of what it did.
+     */
+    static final String MAINTENANCE_LOG_TABLE_NAME = "maintenance_log";
+    static final String COLUMN_MAINTENANCE_TASK = "task";
+    static final String COLUMN_MAINTENANCE_STARTED_AT = "started_at";
+    static final String COLUMN_MAINTENANCE_DURATION_MILLIS = "duration_millis";
+    static final String COLUMN_MAINTENANCE_RESULT = "result";
+
+    /**
+     * {@link String} name of the content-addressed table holding each distinct product picture
+     * once, and of its columns holding the SHA-256 hash of the picture, the picture, and the
+     * number of products referring to it.
+     */
+    static final String PICTURES_TABLE_NAME = "pictures";
+    static final String COLUMN_PICTURE_HASH = "picture_hash";
+    static final String COLUMN_PICTURE_DATA = "data";
+    static final String COLUMN_PICTURE_REF_COUNT = "ref_count";
+
+    /**
+     * {@link String} name of the table holding one sales velocity per product, and of its columns
+     * holding the product id, the moving average of units sold per day, and the time in
+     * milliseconds since the epoch the average was last brought up to date.
+     */
+    static final String SALES_VELOCITY_TABLE_NAME = "sales_velocity";
+    static final String COLUMN_VELOCITY_PRODUCT_ID = "product_id";
+    static final String COLUMN_VELOCITY_RATE = "rate";
+    static final String COLUMN_VELOCITY_OBSERVED_AT = "observed_at";
+
+    /**
+     * Time constant in days of the sales velocity moving average. A sale's weight falls by a
+     * factor of e every this many days. It is built into {@link #SALES_VELOCITY_DECAY_TABLE_NAME},
+     * so changing it needs an upgrade step that refills it.
+     */
+    static final int SALES_VELOCITY_WINDOW_DAYS = 28;
 
     /**
-     * Int version for the database schema. Is constant because the database schema is not upgraded
-     * in this application.
+     * {@link String} name of the table holding the factor a sales velocity decays by over each
+     * whole number of days, and of its columns holding the number of days and the factor. SQLite
+     * has no exponential function, so queries look the factor up here instead. Velocities older
+     * than the last day in the table have decayed to nothing.
      */
-    private static final int DB_VERSION = 1;
+    static final String SALES_VELOCITY_DECAY_TABLE_NAME = "sales_velocity_decay";
+    static final String COLUMN_DECAY_DAYS = "days";
+    static final String COLUMN_DECAY_FACTOR = "factor";
 
     /**
-     * Constructs a new {@link ProductDbHelper}.
+     * Number of days in {@link #SALES_VELOCITY_DECAY_TABLE_NAME}, after which a velocity has
+     * decayed to less than a billionth of itself.
+     */
+    private static final int SALES_VELOCITY_DECAY_DAYS = 21 * SALES_VELOCITY_WINDOW_DAYS;
+
+    /**
+     * {@link String} name of the table holding stock reservations, and of its columns holding the
+     * reserved product's id, the id of the variant backing the hold or null if the product's own
+     * quantity backs it, the number of units held, and the time in milliseconds since the epoch
+     * at which the hold expires.
+     */
+    static final String RESERVATIONS_TABLE_NAME = "reservations";
+    static final String COLUMN_RESERVATION_PRODUCT_ID = "product_id";
+    static final String COLUMN_RESERVATION_VARIANT_ID = "variant_id";
+    static final String COLUMN_RESERVATION_QUANTITY = "quantity";
+    static final String COLUMN_RESERVATION_EXPIRES_AT = "expires_at";
+
+    /**
+     * {@link String} name of the view presenting products with their pictures, as described by
+     * {@link ProductEntry}. Products are read through it and written to the products table.
+     */
+    static final String PRODUCTS_VIEW_NAME = "products_with_pictures";
+
+    /**
+     * {@link String} prefix of the globally unique ids given to products and tombstones that
+     * existed before the column did, followed by their id.
+     */
+    static final String LEGACY_UUID_PREFIX = "legacy-";
+
+    /**
+     * Constructs a new {@link ProductDbHelper}. Write-ahead logging is enabled so readers, such as
+     * a running backup, never block writers.
      *
      * @param context {@link Context} for the superclass.
      */
     public ProductDbHelper(@Nullable Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+        this(context, DB_NAME);
+    }
+
+    /**
+     * Constructs a new {@link ProductDbHelper} over a database file of another name, such as the
+     * database of a single store location.
+     *
+     * @param context {@link Context} for the superclass.
+     * @param name    {@link String} name of the database file.
+     */
+    ProductDbHelper(@Nullable Context context, @NonNull String name) {
+        super(context, name, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Callback method invoked when the database connection is being configured. It asks for
+     * incremental auto-vacuum, which only takes effect on a database with no tables yet, so new
+     * databases can give free pages back in small steps during maintenance.
+     *
+     * @param db {@link SQLiteDatabase} being configured.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     /**
-     * Callback method invoked when the database is created for the first time. It simply
-     * initializes the database by creating a new products table.
+     * Callback method invoked when the database is created for the first time. It creates the
+     * version 1 products table and then runs every upgrade step so new and upgraded databases
+     * share the same schema.
      *
      * @param db {@link SQLiteDatabase} being created.
      */
@@ -48,11 +177,13 @@ public class ProductDbHelper extends SQLiteOpenHelper {
                 + ProductContract.ProductEntry.COLUMN_SUPPLIER + " TEXT NOT NULL, "
                 + ProductContract.ProductEntry.COLUMN_PICTURE + " BLOB NOT NULL);";
         db.execSQL(SQL_CREATE_PRODUCTS_TABLE);
+        onUpgrade(db, 1, DB_VERSION);
     }
 
     /**
-     * Callback method invoked when the database schema is upgraded. The database schema will not
-     * be upgraded, so it does nothing.
+     * Callback method invoked when the database schema is upgraded. It runs each upgrade step
+     * between the old and new database versions in order, and then redefines
+     * {@link #PRODUCTS_VIEW_NAME} over the upgraded products table.
      *
      * @param db         {@link SQLiteDatabase} being upgraded.
      * @param oldVersion The old database version.
@@ -60,5 +191,693 @@ public class ProductDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            upgradeToVersion2(db);
+        }
+        if (oldVersion < 3) {
+            upgradeToVersion3(db);
+        }
+        if (oldVersion < 4) {
+            upgradeToVersion4(db);
+        }
+        if (oldVersion < 5) {
+            upgradeToVersion5(db);
+        }
+        if (oldVersion < 6) {
+            upgradeToVersion6(db);
+        }
+        if (oldVersion < 7) {
+            upgradeToVersion7(db);
+        }
+        if (oldVersion < 8) {
+            upgradeToVersion8(db);
+        }
+        if (oldVersion < 9) {
+            upgradeToVersion9(db);
+        }
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+        }
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+        }
+        if (oldVersion < 12) {
+            upgradeToVersion12(db);
+        }
+        if (oldVersion < 13) {
+            upgradeToVersion13(db);
+        }
+        if (oldVersion < 14) {
+            upgradeToVersion14(db);
+        }
+        if (oldVersion < 15) {
+            upgradeToVersion15(db);
+        }
+        if (oldVersion < 16) {
+            upgradeToVersion16(db);
+        }
+        createProductsView(db);
+    }
+
+    /**
+     * Upgrades the database to version 2. It adds the version and dirty columns to the products
+     * table, a tombstones table for deleted products, and triggers that stamp every insert, update,
+     * and delete with the next value of a single change counter.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_DIRTY + " INTEGER NOT NULL DEFAULT 1");
+        db.execSQL("CREATE INDEX products_version_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_VERSION + ")");
+
+        db.execSQL("CREATE TABLE " + TombstoneEntry.TABLE_NAME + " ("
+                + TombstoneEntry._ID + " INTEGER PRIMARY KEY, "
+                + TombstoneEntry.COLUMN_VERSION + " INTEGER NOT NULL, "
+                + TombstoneEntry.COLUMN_DIRTY + " INTEGER NOT NULL DEFAULT 1)");
+        db.execSQL("CREATE INDEX product_tombstones_version_index ON " + TombstoneEntry.TABLE_NAME
+                + " (" + TombstoneEntry.COLUMN_VERSION + ")");
+
+        db.execSQL("CREATE TABLE " + SYNC_COUNTER_TABLE_NAME + " (value INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + SYNC_COUNTER_TABLE_NAME + " (value) VALUES (0)");
+
+        // Give rows that existed before the upgrade a version so they appear in the change feed.
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VERSION + " = " + ProductEntry._ID);
+        db.execSQL("UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = (SELECT IFNULL(MAX("
+                + ProductEntry.COLUMN_VERSION + "), 0) FROM " + ProductEntry.TABLE_NAME + ")");
+
+        final String NEXT_VERSION = "(SELECT value FROM " + SYNC_COUNTER_TABLE_NAME + ")";
+        final String BUMP_COUNTER = "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; ";
+
+        db.execSQL("CREATE TRIGGER products_version_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + BUMP_COUNTER
+                + "UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_VERSION
+                + " = " + NEXT_VERSION + " WHERE " + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; "
+                + "DELETE FROM " + TombstoneEntry.TABLE_NAME + " WHERE " + TombstoneEntry._ID
+                + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+
+        // Only changes to product data bump the version, so clearing the dirty flag does not.
+        db.execSQL("CREATE TRIGGER products_version_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + ProductEntry.COLUMN_PICTURE + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + BUMP_COUNTER
+                + "UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_VERSION
+                + " = " + NEXT_VERSION + " WHERE " + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+
+        db.execSQL("CREATE TRIGGER products_version_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + BUMP_COUNTER
+                + "INSERT OR REPLACE INTO " + TombstoneEntry.TABLE_NAME + " ("
+                + TombstoneEntry._ID + ", " + TombstoneEntry.COLUMN_VERSION + ", "
+                + TombstoneEntry.COLUMN_DIRTY + ") VALUES (OLD." + ProductEntry._ID + ", "
+                + NEXT_VERSION + ", 1); "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 3. It adds the table of applied stock edit batches.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + STOCK_EDIT_BATCHES_TABLE_NAME + " ("
+                + COLUMN_BATCH_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_BATCH_APPLIED_AT + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Upgrades the database to version 4. It adds the SKU column with a unique index, which also
+     * serves SKU lookups, and makes SKU changes bump the product version so they are synced.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion4(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_SKU + " TEXT");
+        db.execSQL("CREATE UNIQUE INDEX products_sku_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_SKU + ")");
+
+        db.execSQL("DROP TRIGGER products_version_update");
+        db.execSQL("CREATE TRIGGER products_version_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + ProductEntry.COLUMN_PICTURE + ", "
+                + ProductEntry.COLUMN_SKU + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; "
+                + "UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_VERSION
+                + " = (SELECT value FROM " + SYNC_COUNTER_TABLE_NAME + ") WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 5. It adds the product variants table and the rollup
+     * columns of the products table, which triggers keep equal to the count and total quantity of
+     * each product's variants. Deleting a product deletes its variants.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + VariantEntry.TABLE_NAME + " ("
+                + VariantEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + VariantEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + VariantEntry.COLUMN_SIZE + " TEXT NOT NULL, "
+                + VariantEntry.COLUMN_COLOR + " TEXT NOT NULL, "
+                + VariantEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0)");
+
+        // Serves both the uniqueness rule and the lookup of a product's variants.
+        db.execSQL("CREATE UNIQUE INDEX product_variants_product_index ON " + VariantEntry.TABLE_NAME
+                + " (" + VariantEntry.COLUMN_PRODUCT_ID + ", " + VariantEntry.COLUMN_SIZE + ", "
+                + VariantEntry.COLUMN_COLOR + ")");
+
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_VARIANT_COUNT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " INTEGER NOT NULL DEFAULT 0");
+
+        final String ADD_TO_ROLLUP = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VARIANT_COUNT + " = " + ProductEntry.COLUMN_VARIANT_COUNT + " + 1, "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " = " + ProductEntry.COLUMN_VARIANT_QUANTITY
+                + " + NEW." + VariantEntry.COLUMN_QUANTITY + " WHERE " + ProductEntry._ID
+                + " = NEW." + VariantEntry.COLUMN_PRODUCT_ID + "; ";
+        final String REMOVE_FROM_ROLLUP = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VARIANT_COUNT + " = " + ProductEntry.COLUMN_VARIANT_COUNT + " - 1, "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " = " + ProductEntry.COLUMN_VARIANT_QUANTITY
+                + " - OLD." + VariantEntry.COLUMN_QUANTITY + " WHERE " + ProductEntry._ID
+                + " = OLD." + VariantEntry.COLUMN_PRODUCT_ID + "; ";
+
+        db.execSQL("CREATE TRIGGER product_variants_rollup_insert AFTER INSERT ON "
+                + VariantEntry.TABLE_NAME + " BEGIN " + ADD_TO_ROLLUP + "END");
+        db.execSQL("CREATE TRIGGER product_variants_rollup_update AFTER UPDATE OF "
+                + VariantEntry.COLUMN_PRODUCT_ID + ", " + VariantEntry.COLUMN_QUANTITY + " ON "
+                + VariantEntry.TABLE_NAME + " BEGIN " + REMOVE_FROM_ROLLUP + ADD_TO_ROLLUP + "END");
+        db.execSQL("CREATE TRIGGER product_variants_rollup_delete AFTER DELETE ON "
+                + VariantEntry.TABLE_NAME + " BEGIN " + REMOVE_FROM_ROLLUP + "END");
+
+        // Rollups are computed from the variants rather than taken from the inserted values.
+        db.execSQL("CREATE TRIGGER products_variants_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VARIANT_COUNT + " = (SELECT COUNT(*) FROM "
+                + VariantEntry.TABLE_NAME + " WHERE " + VariantEntry.COLUMN_PRODUCT_ID + " = NEW."
+                + ProductEntry._ID + "), "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " = (SELECT IFNULL(SUM("
+                + VariantEntry.COLUMN_QUANTITY + "), 0) FROM " + VariantEntry.TABLE_NAME + " WHERE "
+                + VariantEntry.COLUMN_PRODUCT_ID + " = NEW." + ProductEntry._ID + ") WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+
+        // A trigger rather than a foreign key, since foreign keys are only enforced on connections
+        // that turn them on, which this helper does not.
+        db.execSQL("CREATE TRIGGER products_variants_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + VariantEntry.TABLE_NAME + " WHERE "
+                + VariantEntry.COLUMN_PRODUCT_ID + " = OLD." + ProductEntry._ID + "; "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 6. It adds the column holding when each product was last
+     * written, which the version triggers now stamp alongside the version. Rows that existed
+     * before the upgrade count as written at upgrade time.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        final String NOW_MILLIS = "(CAST(strftime('%s', 'now') AS INTEGER) * 1000)";
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_UPDATED_AT + " = " + NOW_MILLIS);
+
+        final String STAMP_ROW = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VERSION + " = (SELECT value FROM " + SYNC_COUNTER_TABLE_NAME + "), "
+                + ProductEntry.COLUMN_UPDATED_AT + " = " + NOW_MILLIS + " WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; ";
+
+        db.execSQL("DROP TRIGGER products_version_insert");
+        db.execSQL("CREATE TRIGGER products_version_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; "
+                + STAMP_ROW
+                + "DELETE FROM " + TombstoneEntry.TABLE_NAME + " WHERE " + TombstoneEntry._ID
+                + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+
+        db.execSQL("DROP TRIGGER products_version_update");
+        db.execSQL("CREATE TRIGGER products_version_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + ProductEntry.COLUMN_PICTURE + ", "
+                + ProductEntry.COLUMN_SKU + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; "
+                + STAMP_ROW
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 7. It adds the maintenance log table.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + MAINTENANCE_LOG_TABLE_NAME + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_MAINTENANCE_TASK + " TEXT NOT NULL, "
+                + COLUMN_MAINTENANCE_STARTED_AT + " INTEGER NOT NULL, "
+                + COLUMN_MAINTENANCE_DURATION_MILLIS + " INTEGER NOT NULL, "
+                + COLUMN_MAINTENANCE_RESULT + " TEXT NOT NULL)");
+    }
+
+    /**
+     * Upgrades the database to version 8. It moves product pictures into the pictures table,
+     * where a picture shared by many products is stored once under its hash, and which
+     * {@link #PRODUCTS_VIEW_NAME} joins back in. Triggers keep the reference count of each picture equal to the
+     * number of products pointing at it and delete pictures no product points at any more.
+     * SQLite releases before 3.35 cannot drop a column, so the picture column of the products
+     * table stays but holds an empty blob.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + PICTURES_TABLE_NAME + " ("
+                + COLUMN_PICTURE_HASH + " TEXT PRIMARY KEY, "
+                + COLUMN_PICTURE_DATA + " BLOB NOT NULL, "
+                + COLUMN_PICTURE_REF_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + COLUMN_PICTURE_HASH + " TEXT");
+
+        // Move pictures before the version triggers watch the hash, so moving is not a change.
+        db.execSQL("DROP TRIGGER products_version_update");
+        movePicturesToPicturesTable(db);
+        db.execSQL("UPDATE " + PICTURES_TABLE_NAME + " SET " + COLUMN_PICTURE_REF_COUNT
+                + " = (SELECT COUNT(*) FROM " + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry.TABLE_NAME + "." + COLUMN_PICTURE_HASH + " = "
+                + PICTURES_TABLE_NAME + "." + COLUMN_PICTURE_HASH + ")");
+
+        db.execSQL("CREATE TRIGGER products_version_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + COLUMN_PICTURE_HASH + ", "
+                + ProductEntry.COLUMN_SKU + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; "
+                + "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_VERSION + " = (SELECT value FROM " + SYNC_COUNTER_TABLE_NAME + "), "
+                + ProductEntry.COLUMN_UPDATED_AT + " = (CAST(strftime('%s', 'now') AS INTEGER) * 1000)"
+                + " WHERE " + ProductEntry._ID + " = NEW." + ProductEntry._ID + "; "
+                + "END");
+
+        // Serves the reference recount done by maintenance.
+        db.execSQL("CREATE INDEX products_picture_hash_index ON " + ProductEntry.TABLE_NAME
+                + " (" + COLUMN_PICTURE_HASH + ")");
+
+        final String ADD_REFERENCE = "UPDATE " + PICTURES_TABLE_NAME + " SET "
+                + COLUMN_PICTURE_REF_COUNT + " = " + COLUMN_PICTURE_REF_COUNT + " + 1 WHERE "
+                + COLUMN_PICTURE_HASH + " = NEW." + COLUMN_PICTURE_HASH + "; ";
+        final String REMOVE_REFERENCE = "UPDATE " + PICTURES_TABLE_NAME + " SET "
+                + COLUMN_PICTURE_REF_COUNT + " = " + COLUMN_PICTURE_REF_COUNT + " - 1 WHERE "
+                + COLUMN_PICTURE_HASH + " = OLD." + COLUMN_PICTURE_HASH + "; "
+                + "DELETE FROM " + PICTURES_TABLE_NAME + " WHERE " + COLUMN_PICTURE_HASH
+                + " = OLD." + COLUMN_PICTURE_HASH + " AND " + COLUMN_PICTURE_REF_COUNT + " <= 0; ";
+
+        /* Sync adapter inserts used to replace whole product rows without firing delete triggers,
+         * so the replaced row gave up its reference before the insert. Version 15 drops this
+         * trigger, since those writes became updates. */
+        db.execSQL("CREATE TRIGGER products_pictures_replace BEFORE INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + PICTURES_TABLE_NAME + " SET " + COLUMN_PICTURE_REF_COUNT + " = "
+                + COLUMN_PICTURE_REF_COUNT + " - 1 WHERE " + COLUMN_PICTURE_HASH + " = (SELECT "
+                + COLUMN_PICTURE_HASH + " FROM " + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry._ID + " = NEW." + ProductEntry._ID + "); "
+                + "END");
+        db.execSQL("CREATE TRIGGER products_pictures_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN " + ADD_REFERENCE + "END");
+        db.execSQL("CREATE TRIGGER products_pictures_update AFTER UPDATE OF "
+                + COLUMN_PICTURE_HASH + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + ADD_REFERENCE + REMOVE_REFERENCE + "END");
+        db.execSQL("CREATE TRIGGER products_pictures_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN " + REMOVE_REFERENCE + "END");
+    }
+
+    /**
+     * Upgrades the database to version 9. It adds the stock value column, which triggers keep
+     * equal to the price times the units in stock, and indexes for the named sort orders of
+     * {@link ProductContract.ProductEntry#CONTENT_TOP_URI}. Each index ends in the row id, so a
+     * sort with the id as tie-breaker walks the index and a limited query stops after its rows.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        final String STOCK_VALUE = ProductEntry.COLUMN_PRICE + " * (" + ProductEntry.COLUMN_QUANTITY
+                + " + " + ProductEntry.COLUMN_VARIANT_QUANTITY + ")";
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_STOCK_VALUE + " = " + STOCK_VALUE);
+
+        // Variant changes reach the stock value through the variant quantity rollup.
+        final String SET_STOCK_VALUE = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_STOCK_VALUE + " = NEW." + ProductEntry.COLUMN_PRICE
+                + " * (NEW." + ProductEntry.COLUMN_QUANTITY + " + NEW."
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + ") WHERE " + ProductEntry._ID
+                + " = NEW." + ProductEntry._ID + "; ";
+        db.execSQL("CREATE TRIGGER products_stock_value_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN " + SET_STOCK_VALUE + "END");
+        db.execSQL("CREATE TRIGGER products_stock_value_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " ON " + ProductEntry.TABLE_NAME
+                + " BEGIN " + SET_STOCK_VALUE + "END");
+
+        db.execSQL("CREATE INDEX products_stock_value_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_STOCK_VALUE + ")");
+        db.execSQL("CREATE INDEX products_quantity_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_QUANTITY + ")");
+        db.execSQL("CREATE INDEX products_price_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRICE + ")");
+    }
+
+    /**
+     * Upgrades the database to version 10. It adds the sales velocity table, where triggers fold
+     * every decrease of a product's or variant's quantity into a moving average of units sold per
+     * day. Restocks and deleted variants are not sales, so they leave the average alone.
+     *
+     * <p>The average decays over the time between sales by {@code w / (w + days)} for a window of
+     * {@code w} days, which stays within plain SQL arithmetic where an exponential would not. Each
+     * sale then costs one row update, however long the product's sales history. Version 14 drops
+     * the sale triggers and replaces the decay with an exponential one.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        final String NOW_MILLIS = "(CAST(strftime('%s', 'now') AS INTEGER) * 1000)";
+        db.execSQL("CREATE TABLE " + SALES_VELOCITY_TABLE_NAME + " ("
+                + COLUMN_VELOCITY_PRODUCT_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_VELOCITY_RATE + " REAL NOT NULL DEFAULT 0, "
+                + COLUMN_VELOCITY_OBSERVED_AT + " INTEGER NOT NULL)");
+
+        // Products that existed before the upgrade start being observed at upgrade time.
+        db.execSQL("INSERT INTO " + SALES_VELOCITY_TABLE_NAME + " ("
+                + COLUMN_VELOCITY_PRODUCT_ID + ", " + COLUMN_VELOCITY_OBSERVED_AT + ") SELECT "
+                + ProductEntry._ID + ", " + NOW_MILLIS + " FROM " + ProductEntry.TABLE_NAME);
+
+        // A product that already has a velocity row keeps it, so the insert never fails on it.
+        db.execSQL("CREATE TRIGGER products_velocity_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "INSERT OR IGNORE INTO " + SALES_VELOCITY_TABLE_NAME + " ("
+                + COLUMN_VELOCITY_PRODUCT_ID + ", " + COLUMN_VELOCITY_OBSERVED_AT + ") VALUES (NEW."
+                + ProductEntry._ID + ", " + NOW_MILLIS + "); "
+                + "END");
+        db.execSQL("CREATE TRIGGER products_velocity_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + SALES_VELOCITY_TABLE_NAME + " WHERE "
+                + COLUMN_VELOCITY_PRODUCT_ID + " = OLD." + ProductEntry._ID + "; "
+                + "END");
+
+        db.execSQL("CREATE TRIGGER products_velocity_sale AFTER UPDATE OF "
+                + ProductEntry.COLUMN_QUANTITY + " ON " + ProductEntry.TABLE_NAME + " WHEN NEW."
+                + ProductEntry.COLUMN_QUANTITY + " < OLD." + ProductEntry.COLUMN_QUANTITY
+                + " BEGIN " + buildRecordSale("NEW." + ProductEntry._ID,
+                "OLD." + ProductEntry.COLUMN_QUANTITY + " - NEW." + ProductEntry.COLUMN_QUANTITY,
+                NOW_MILLIS) + "END");
+        db.execSQL("CREATE TRIGGER product_variants_velocity_sale AFTER UPDATE OF "
+                + VariantEntry.COLUMN_QUANTITY + " ON " + VariantEntry.TABLE_NAME + " WHEN NEW."
+                + VariantEntry.COLUMN_QUANTITY + " < OLD." + VariantEntry.COLUMN_QUANTITY
+                + " AND NEW." + VariantEntry.COLUMN_PRODUCT_ID + " = OLD."
+                + VariantEntry.COLUMN_PRODUCT_ID + " BEGIN "
+                + buildRecordSale("NEW." + VariantEntry.COLUMN_PRODUCT_ID,
+                "OLD." + VariantEntry.COLUMN_QUANTITY + " - NEW." + VariantEntry.COLUMN_QUANTITY,
+                NOW_MILLIS) + "END");
+    }
+
+    /**
+     * Returns a trigger statement folding a sale into a product's sales velocity.
+     *
+     * @param productId SQL expression of the product id.
+     * @param units     SQL expression of the number of units sold.
+     * @param nowMillis SQL expression of the current time in milliseconds since the epoch.
+     * @return The statement, ending in a semicolon.
+     */
+    private static String buildRecordSale(String productId, String units, String nowMillis) {
+        final String WINDOW = String.valueOf(SALES_VELOCITY_WINDOW_DAYS);
+        return "UPDATE " + SALES_VELOCITY_TABLE_NAME + " SET "
+                + COLUMN_VELOCITY_RATE + " = (" + COLUMN_VELOCITY_RATE + " * " + WINDOW + " + ("
+                + units + ")) / (" + WINDOW + " + (" + nowMillis + " - "
+                + COLUMN_VELOCITY_OBSERVED_AT + ") / 86400000.0), "
+                + COLUMN_VELOCITY_OBSERVED_AT + " = " + nowMillis + " WHERE "
+                + COLUMN_VELOCITY_PRODUCT_ID + " = " + productId + "; ";
+    }
+
+    /**
+     * Upgrades the database to version 11. It adds the reservations table with two indexes: one
+     * by product that covers summing a product's active holds, and one by expiry that lets every
+     * expired hold be deleted with a single range scan.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + RESERVATIONS_TABLE_NAME + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_RESERVATION_PRODUCT_ID + " INTEGER NOT NULL, "
+                + COLUMN_RESERVATION_QUANTITY + " INTEGER NOT NULL, "
+                + COLUMN_RESERVATION_EXPIRES_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX reservations_product_index ON " + RESERVATIONS_TABLE_NAME + " ("
+                + COLUMN_RESERVATION_PRODUCT_ID + ", " + COLUMN_RESERVATION_EXPIRES_AT + ", "
+                + COLUMN_RESERVATION_QUANTITY + ")");
+        db.execSQL("CREATE INDEX reservations_expiry_index ON " + RESERVATIONS_TABLE_NAME + " ("
+                + COLUMN_RESERVATION_EXPIRES_AT + ")");
+
+        // Holds of a deleted product can never be fulfilled, so they are deleted with it.
+        db.execSQL("CREATE TRIGGER products_reservations_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + RESERVATIONS_TABLE_NAME + " WHERE "
+                + COLUMN_RESERVATION_PRODUCT_ID + " = OLD." + ProductEntry._ID + "; "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 12. It adds the variant backing each reservation, an index
+     * by variant that covers summing a variant's active holds, and a trigger that deletes the
+     * holds of a deleted variant. Holds made before this version are backed by their product.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + RESERVATIONS_TABLE_NAME + " ADD COLUMN "
+                + COLUMN_RESERVATION_VARIANT_ID + " INTEGER");
+        db.execSQL("CREATE INDEX reservations_variant_index ON " + RESERVATIONS_TABLE_NAME + " ("
+                + COLUMN_RESERVATION_VARIANT_ID + ", " + COLUMN_RESERVATION_EXPIRES_AT + ", "
+                + COLUMN_RESERVATION_QUANTITY + ")");
+        db.execSQL("CREATE TRIGGER product_variants_reservations_delete AFTER DELETE ON "
+                + VariantEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + RESERVATIONS_TABLE_NAME + " WHERE "
+                + COLUMN_RESERVATION_VARIANT_ID + " = OLD." + VariantEntry._ID + "; "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 13. It adds the globally unique id of products and
+     * tombstones, with a unique index that sync adapter writes look products up by, and makes
+     * deletes carry the id into their tombstones. A product inserted again under the id of a
+     * tombstone, such as when a peer undoes a deletion, replaces the tombstone.
+     *
+     * <p>Before this version, the same id named the same product on every device, so products and
+     * tombstones that already exist get a globally unique id derived from their id, and keep
+     * matching their copies on other devices.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion13(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_UUID + " TEXT");
+        db.execSQL("ALTER TABLE " + TombstoneEntry.TABLE_NAME + " ADD COLUMN "
+                + TombstoneEntry.COLUMN_UUID + " TEXT");
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET " + ProductEntry.COLUMN_UUID
+                + " = '" + LEGACY_UUID_PREFIX + "' || " + ProductEntry._ID);
+        db.execSQL("UPDATE " + TombstoneEntry.TABLE_NAME + " SET " + TombstoneEntry.COLUMN_UUID
+                + " = '" + LEGACY_UUID_PREFIX + "' || " + TombstoneEntry._ID);
+        db.execSQL("CREATE UNIQUE INDEX products_uuid_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_UUID + ")");
+        db.execSQL("CREATE INDEX product_tombstones_uuid_index ON " + TombstoneEntry.TABLE_NAME
+                + " (" + TombstoneEntry.COLUMN_UUID + ")");
+
+        final String NEXT_VERSION = "(SELECT value FROM " + SYNC_COUNTER_TABLE_NAME + ")";
+        db.execSQL("DROP TRIGGER products_version_delete");
+        db.execSQL("CREATE TRIGGER products_version_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + SYNC_COUNTER_TABLE_NAME + " SET value = value + 1; "
+                + "INSERT OR REPLACE INTO " + TombstoneEntry.TABLE_NAME + " ("
+                + TombstoneEntry._ID + ", " + TombstoneEntry.COLUMN_UUID + ", "
+                + TombstoneEntry.COLUMN_VERSION + ", " + TombstoneEntry.COLUMN_DIRTY
+                + ") VALUES (OLD." + ProductEntry._ID + ", OLD." + ProductEntry.COLUMN_UUID + ", "
+                + NEXT_VERSION + ", 1); "
+                + "END");
+        db.execSQL("CREATE TRIGGER products_tombstones_uuid_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + TombstoneEntry.TABLE_NAME + " WHERE "
+                + TombstoneEntry.COLUMN_UUID + " = NEW." + ProductEntry.COLUMN_UUID + "; "
+                + "END");
+    }
+
+    /**
+     * Upgrades the database to version 14. It drops the triggers that counted every decrease of
+     * a quantity as a sale, which also counted corrections and stock fixes, so sales are only
+     * recorded where they are made. It also replaces the hyperbolic decay of sales velocities
+     * with an exponential one, which SQLite cannot compute, by adding a table of the decay factor
+     * over each whole number of days.
+     *
+     * <p>Velocities recorded before the upgrade were decayed hyperbolically, and are kept as they
+     * are, since later sales and time bring them in line.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion14(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER products_velocity_sale");
+        db.execSQL("DROP TRIGGER product_variants_velocity_sale");
+
+        db.execSQL("CREATE TABLE " + SALES_VELOCITY_DECAY_TABLE_NAME + " ("
+                + COLUMN_DECAY_DAYS + " INTEGER PRIMARY KEY, "
+                + COLUMN_DECAY_FACTOR + " REAL NOT NULL)");
+        SQLiteStatement statement = db.compileStatement("INSERT INTO "
+                + SALES_VELOCITY_DECAY_TABLE_NAME + " (" + COLUMN_DECAY_DAYS + ", "
+                + COLUMN_DECAY_FACTOR + ") VALUES (?, ?)");
+        for (int days = 0; days <= SALES_VELOCITY_DECAY_DAYS; days++) {
+            statement.bindLong(1, days);
+            statement.bindDouble(2, Math.exp(-(double) days / SALES_VELOCITY_WINDOW_DAYS));
+            statement.executeInsert();
+        }
+        statement.close();
+    }
+
+    /**
+     * Upgrades the database to version 15. It drops the trigger that took a picture reference
+     * from a product row about to be replaced by an insert. Sync adapter writes update the row
+     * with the pulled product's globally unique id instead of replacing it, and inserts always get
+     * a new id, so the trigger never matched a row.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion15(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER products_pictures_replace");
+    }
+
+    /**
+     * Upgrades the database to version 16. It adds the total quantity column, which triggers keep
+     * equal to the quantity plus the variant quantity, and an index on it for
+     * {@link ProductContract.ProductEntry#SORT_LOWEST_QUANTITY}, which sorted on the quantity
+     * alone and so ranked products keeping their stock in variants as sold out. SQLite releases
+     * before 3.9 cannot index an expression, so the sum is stored like the stock value.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private void upgradeToVersion16(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                + ProductEntry.COLUMN_TOTAL_QUANTITY + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_TOTAL_QUANTITY + " = " + ProductEntry.COLUMN_QUANTITY + " + "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY);
+
+        // Variant changes reach the total quantity through the variant quantity rollup.
+        final String SET_TOTAL_QUANTITY = "UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                + ProductEntry.COLUMN_TOTAL_QUANTITY + " = NEW." + ProductEntry.COLUMN_QUANTITY
+                + " + NEW." + ProductEntry.COLUMN_VARIANT_QUANTITY + " WHERE " + ProductEntry._ID
+                + " = NEW." + ProductEntry._ID + "; ";
+        db.execSQL("CREATE TRIGGER products_total_quantity_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN " + SET_TOTAL_QUANTITY + "END");
+        db.execSQL("CREATE TRIGGER products_total_quantity_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " ON " + ProductEntry.TABLE_NAME
+                + " BEGIN " + SET_TOTAL_QUANTITY + "END");
+
+        db.execSQL("CREATE INDEX products_total_quantity_index ON " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_TOTAL_QUANTITY + ")");
+    }
+
+    /**
+     * Defines {@link #PRODUCTS_VIEW_NAME}, the products table with each product's picture joined
+     * in from the pictures table and its available quantity, replacing any earlier definition.
+     * The available quantity leaves out holds that have expired but are not yet released, and is
+     * only computed for queries that ask for it. It reads the clock to the millisecond, the same
+     * resolution as the expiry times of holds.
+     *
+     * @param db {@link SQLiteDatabase} being created or upgraded.
+     */
+    private static void createProductsView(SQLiteDatabase db) {
+        db.execSQL("DROP VIEW IF EXISTS " + PRODUCTS_VIEW_NAME);
+        db.execSQL("CREATE VIEW " + PRODUCTS_VIEW_NAME + " AS SELECT "
+                + ProductEntry.TABLE_NAME + "." + ProductEntry._ID + " AS " + ProductEntry._ID + ", "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + PICTURES_TABLE_NAME + "." + COLUMN_PICTURE_DATA + " AS " + ProductEntry.COLUMN_PICTURE + ", "
+                + ProductEntry.COLUMN_SKU + ", "
+                + ProductEntry.COLUMN_UUID + ", "
+                + ProductEntry.COLUMN_VERSION + ", "
+                + ProductEntry.COLUMN_DIRTY + ", "
+                + ProductEntry.COLUMN_VARIANT_COUNT + ", "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + ", "
+                + ProductEntry.COLUMN_UPDATED_AT + ", "
+                + ProductEntry.COLUMN_STOCK_VALUE + ", "
+                + ProductEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_QUANTITY + " + "
+                + ProductEntry.COLUMN_VARIANT_QUANTITY + " - (SELECT IFNULL(SUM("
+                + RESERVATIONS_TABLE_NAME + "." + COLUMN_RESERVATION_QUANTITY + "), 0) FROM "
+                + RESERVATIONS_TABLE_NAME + " WHERE " + RESERVATIONS_TABLE_NAME + "."
+                + COLUMN_RESERVATION_PRODUCT_ID + " = " + ProductEntry.TABLE_NAME + "."
+                + ProductEntry._ID + " AND " + RESERVATIONS_TABLE_NAME + "."
+                + COLUMN_RESERVATION_EXPIRES_AT
+                + " > CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER))"
+                + " AS " + ProductEntry.COLUMN_AVAILABLE_QUANTITY
+                + " FROM " + ProductEntry.TABLE_NAME + " LEFT JOIN " + PICTURES_TABLE_NAME
+                + " ON " + PICTURES_TABLE_NAME + "." + COLUMN_PICTURE_HASH + " = "
+                + ProductEntry.TABLE_NAME + "." + COLUMN_PICTURE_HASH);
+    }
+
+    /**
+     * Moves the picture of every product into the pictures table and points the product at it,
+     * a few products at a time so large pictures never fill a cursor window together.
+     *
+     * @param db {@link SQLiteDatabase} being upgraded.
+     */
+    private static void movePicturesToPicturesTable(SQLiteDatabase db) {
+        long lastId = 0;
+        while (true) {
+            ContentValues values = new ContentValues();
+            int countMoved = 0;
+            try (Cursor cursor = db.rawQuery("SELECT " + ProductEntry._ID + ", "
+                    + ProductEntry.COLUMN_PICTURE + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry._ID + " > ? ORDER BY " + ProductEntry._ID
+                    + " LIMIT 16", new String[]{String.valueOf(lastId)})) {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    values.clear();
+                    values.put(COLUMN_PICTURE_HASH, ProductPictures.store(db, cursor.getBlob(1)));
+                    values.put(ProductEntry.COLUMN_PICTURE, ProductPictures.EMPTY_PICTURE);
+                    db.update(ProductEntry.TABLE_NAME, values, ProductEntry._ID + " = ?",
+                            new String[]{String.valueOf(lastId)});
+                    countMoved++;
+                }
+            }
+            if (countMoved == 0) {
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,327 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link ProductMaintenance} is a class that runs one pass of database maintenance within a time
+ * budget: deleting unreferenced pictures, refreshing query planner statistics, giving free pages
+ * back to the file system, checkpointing the write-ahead log, and checking integrity. Every task
+ * is either read-only or split into short write transactions, so writers are never stalled for
+ * long. Each task run is recorded in the maintenance log table of the products database.
+ */
+final class ProductMaintenance {
+
+    /**
+     * Tag used when logging maintenance results.
+     */
+    private static final String LOG_TAG = "ProductMaintenance";
+
+    /**
+     * {@link String} names of the maintenance tasks, as recorded in the maintenance log.
+     */
+    static final String TASK_ARCHIVE = "archive";
+    static final String TASK_COLLECT_PICTURES = "collect_pictures";
+    static final String TASK_OPTIMIZE = "optimize";
+    static final String TASK_INCREMENTAL_VACUUM = "incremental_vacuum";
+    static final String TASK_CHECKPOINT = "checkpoint";
+    static final String TASK_QUICK_CHECK = "quick_check";
+
+    /**
+     * Number of free pages given back per incremental vacuum transaction.
+     */
+    private static final int VACUUM_PAGES_PER_SLICE = 128;
+
+    /**
+     * Largest database in bytes that is converted to incremental auto-vacuum with a full VACUUM.
+     * The conversion holds the write lock for the whole copy, so larger databases are left as
+     * they are.
+     */
+    private static final long MAX_CONVERSION_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Number of rows sampled per index when refreshing statistics, on releases whose SQLite
+     * supports an analysis limit.
+     */
+    private static final int ANALYSIS_LIMIT = 400;
+
+    /**
+     * Time in milliseconds maintenance log rows are kept for.
+     */
+    private static final long LOG_RETENTION_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Value of PRAGMA auto_vacuum for incremental auto-vacuum.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * {@link ProductMaintenance.Task} is an interface for a maintenance task.
+     */
+    interface Task {
+
+        /**
+         * Runs the task.
+         *
+         * @return Short description of what the task did.
+         */
+        @NonNull
+        String run();
+    }
+
+    /**
+     * Writable {@link SQLiteDatabase} of the products database.
+     */
+    private final SQLiteDatabase db;
+
+    /**
+     * {@link SystemClock#uptimeMillis()} after which no further task or slice is started.
+     */
+    private final long deadlineMillis;
+
+    /**
+     * Names, results, and durations in milliseconds of the tasks run so far.
+     */
+    private final List<String> tasks = new ArrayList<>();
+    private final List<String> results = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>();
+
+    /**
+     * Constructs a new {@link ProductMaintenance}.
+     *
+     * @param db           Writable {@link SQLiteDatabase} of the products database.
+     * @param budgetMillis Time in milliseconds the pass may take. A task or slice already started
+     *                     when the budget runs out is finished.
+     */
+    ProductMaintenance(@NonNull SQLiteDatabase db, long budgetMillis) {
+        this.db = db;
+        this.deadlineMillis = SystemClock.uptimeMillis() + budgetMillis;
+    }
+
+    /**
+     * Returns {@link ProductMaintenance#deadlineMillis}.
+     */
+    long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Runs every built-in task in order until the budget runs out. Unreferenced pictures are
+     * deleted and statistics are refreshed before free pages are given back, the log is
+     * checkpointed after so the file can shrink, and the read-only integrity check runs last.
+     */
+    @WorkerThread
+    void runAll() {
+        run(TASK_COLLECT_PICTURES, this::collectPictures);
+        run(TASK_OPTIMIZE, this::optimize);
+        run(TASK_INCREMENTAL_VACUUM, this::incrementalVacuum);
+        run(TASK_CHECKPOINT, this::checkpoint);
+        run(TASK_QUICK_CHECK, this::quickCheck);
+    }
+
+    /**
+     * Runs a task if the budget has not run out, and records its result and duration. A task
+     * that fails is recorded with its error rather than ending the pass.
+     *
+     * @param name Name of the task.
+     * @param task {@link Task} to run.
+     */
+    @WorkerThread
+    void run(@NonNull String name, @NonNull Task task) {
+        if (SystemClock.uptimeMillis() >= deadlineMillis) {
+            record(name, System.currentTimeMillis(), 0, "skipped, out of time");
+            return;
+        }
+        final long startedAt = System.currentTimeMillis();
+        final long startUptime = SystemClock.uptimeMillis();
+        String result;
+        try {
+            result = task.run();
+        } catch (SQLiteException e) {
+            result = "failed: " + e.getMessage();
+        }
+        record(name, startedAt, SystemClock.uptimeMillis() - startUptime, result);
+    }
+
+    /**
+     * Returns a {@link Bundle} describing the tasks run so far.
+     *
+     * @return A {@link Bundle} holding {@link ProductContract#EXTRA_TASKS},
+     * {@link ProductContract#EXTRA_RESULTS}, and {@link ProductContract#EXTRA_DURATIONS}, in the
+     * order the tasks ran.
+     */
+    @NonNull
+    Bundle toBundle() {
+        long[] durationArray = new long[durations.size()];
+        for (int i = 0; i < durationArray.length; i++) {
+            durationArray[i] = durations.get(i);
+        }
+        Bundle result = new Bundle();
+        result.putStringArray(ProductContract.EXTRA_TASKS, tasks.toArray(new String[0]));
+        result.putStringArray(ProductContract.EXTRA_RESULTS, results.toArray(new String[0]));
+        result.putLongArray(ProductContract.EXTRA_DURATIONS, durationArray);
+        return result;
+    }
+
+    /**
+     * Deletes pictures no product points at any more.
+     */
+    @NonNull
+    private String collectPictures() {
+        return ProductPictures.collectUnreferenced(db) + " unreferenced pictures deleted";
+    }
+
+    /**
+     * Refreshes the statistics the query planner chooses indexes with. PRAGMA optimize only
+     * analyzes tables whose statistics are stale, but needs Android 8.1, so earlier releases
+     * analyze every table. Sampling is limited where supported, so the write lock taken to store
+     * the statistics is held briefly even for large tables. Both run in one transaction so the
+     * limit applies to the pooled connection that does the analysis.
+     */
+    @NonNull
+    private String optimize() {
+        String result;
+        db.beginTransactionNonExclusive();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                runPragma("PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                runPragma("PRAGMA optimize");
+                result = "optimized";
+            } else {
+                db.execSQL("ANALYZE");
+                result = "analyzed";
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    /**
+     * Gives free pages back to the file system in slices of {@link #VACUUM_PAGES_PER_SLICE}
+     * pages, each its own short write transaction. Databases created before incremental
+     * auto-vacuum was enabled are converted once with a full VACUUM if they are small enough.
+     */
+    @NonNull
+    private String incrementalVacuum() {
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (freePages == 0) {
+            return "no free pages";
+        }
+
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            long sizeBytes = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                    * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+            if (sizeBytes > MAX_CONVERSION_BYTES) {
+                return String.format(Locale.US,
+                        "%d free pages kept, database too large to convert", freePages);
+            }
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            return String.format(Locale.US,
+                    "%d free pages released by converting to incremental", freePages);
+        }
+
+        long releasedPages = 0;
+        while (freePages > 0 && SystemClock.uptimeMillis() < deadlineMillis) {
+            runPragma("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_SLICE + ")");
+            long remainingPages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+            releasedPages += freePages - remainingPages;
+            if (remainingPages >= freePages) {
+                break;
+            }
+            freePages = remainingPages;
+        }
+        return String.format(Locale.US, "%d free pages released, %d left", releasedPages, freePages);
+    }
+
+    /**
+     * Copies the write-ahead log back into the database without waiting for readers or
+     * blocking writers. Frames still needed by a reader are left for the next checkpoint.
+     */
+    @NonNull
+    private String checkpoint() {
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null)) {
+            if (!cursor.moveToFirst()) {
+                return "not in write-ahead log mode";
+            }
+            return String.format(Locale.US, "%d of %d frames checkpointed",
+                    cursor.getLong(2), cursor.getLong(1));
+        }
+    }
+
+    /**
+     * Checks the database for corruption. The check only reads, so writers carry on while it
+     * runs.
+     */
+    @NonNull
+    private String quickCheck() {
+        String result = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check(1)", null);
+        if (!"ok".equals(result)) {
+            Log.e(LOG_TAG, "Quick check failed: " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a PRAGMA statement to completion. Stepping through its cursor is needed since
+     * statements like incremental_vacuum do one unit of work per step.
+     *
+     * @param sql PRAGMA statement to run.
+     */
+    private void runPragma(@NonNull String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.getCount();
+        }
+    }
+
+    /**
+     * Records a task run in memory, in the log, and in the maintenance log table, which is pruned
+     * of rows older than {@link #LOG_RETENTION_MILLIS} at the same time.
+     *
+     * @param task           Name of the task.
+     * @param startedAt      Time in milliseconds since the epoch at which the task started.
+     * @param durationMillis Time in milliseconds the task took.
+     * @param result         Short description of what the task did.
+     */
+    private void record(@NonNull String task, long startedAt, long durationMillis,
+                        @NonNull String result) {
+        tasks.add(task);
+        results.add(result);
+        durations.add(durationMillis);
+        Log.i(LOG_TAG, String.format(Locale.US, "%s: %s in %d ms", task, result, durationMillis));
+
+        ContentValues values = new ContentValues();
+        values.put(ProductDbHelper.COLUMN_MAINTENANCE_TASK, task);
+        values.put(ProductDbHelper.COLUMN_MAINTENANCE_STARTED_AT, startedAt);
+        values.put(ProductDbHelper.COLUMN_MAINTENANCE_DURATION_MILLIS, durationMillis);
+        values.put(ProductDbHelper.COLUMN_MAINTENANCE_RESULT, result);
+        db.beginTransactionNonExclusive();
+        try {
+            db.delete(ProductDbHelper.MAINTENANCE_LOG_TABLE_NAME,
+                    ProductDbHelper.COLUMN_MAINTENANCE_STARTED_AT + " < ?",
+                    new String[]{String.valueOf(startedAt - LOG_RETENTION_MILLIS)});
+            db.insert(ProductDbHelper.MAINTENANCE_LOG_TABLE_NAME, null, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
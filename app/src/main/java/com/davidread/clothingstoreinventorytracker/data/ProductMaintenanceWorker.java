@@ -0,0 +1,86 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductMaintenanceWorker} is a {@link Worker} that runs a pass of
+ * {@link ProductContract#METHOD_RUN_MAINTENANCE} about once a day, while the device is charging
+ * and, where supported, idle. The pass goes through {@link ProductProvider}, so it shares the
+ * provider's database connections instead of opening its own.
+ */
+public class ProductMaintenanceWorker extends Worker {
+
+    /**
+     * {@link String} name of the unique periodic work.
+     */
+    private static final String UNIQUE_WORK_NAME = "product_maintenance";
+
+    /**
+     * Time in milliseconds a maintenance pass may take. WorkManager stops a worker after 10
+     * minutes, and maintenance windows end as soon as the device is used, so passes are kept
+     * short and the next pass picks up where this one stopped.
+     */
+    private static final long TIME_BUDGET_MILLIS = 30_000;
+
+    /**
+     * Constructs a new {@link ProductMaintenanceWorker}.
+     *
+     * @param context      {@link Context} for the superclass.
+     * @param workerParams {@link WorkerParameters} for the superclass.
+     */
+    public ProductMaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Schedules the daily maintenance pass unless it is already scheduled.
+     *
+     * @param context {@link Context} for getting the {@link WorkManager}.
+     */
+    public static void schedule(@NonNull Context context) {
+        Constraints.Builder constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            constraints.setRequiresDeviceIdle(true);
+        }
+        PeriodicWorkRequest request =
+                new PeriodicWorkRequest.Builder(ProductMaintenanceWorker.class, 1, TimeUnit.DAYS)
+                        .setConstraints(constraints.build())
+                        .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Callback method invoked on a background thread to run the maintenance pass.
+     *
+     * @return {@link Result#success()} if the pass ran, or {@link Result#retry()} if the provider
+     * could not run it.
+     */
+    @NonNull
+    @Override
+    public Result doWork() {
+        Bundle extras = new Bundle();
+        extras.putLong(ProductContract.EXTRA_TIME_BUDGET_MILLIS, TIME_BUDGET_MILLIS);
+        Bundle result = getApplicationContext().getContentResolver().call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RUN_MAINTENANCE,
+                null,
+                extras
+        );
+        return result == null ? Result.retry() : Result.success();
+    }
+}
@@ -0,0 +1,122 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link ProductPictures} is a helper class for the content-addressed pictures table, which
+ * stores each distinct product picture once under the SHA-256 hash of its bytes. Products point
+ * at their picture by hash, and triggers of the products table count the references.
+ */
+final class ProductPictures {
+
+    /**
+     * Value of the products table's picture column, which no longer holds the picture itself.
+     */
+    static final byte[] EMPTY_PICTURE = new byte[0];
+
+    /**
+     * Characters of a hexadecimal hash.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private constructor to prevent accidental instantiation of {@link ProductPictures}.
+     */
+    private ProductPictures() {
+    }
+
+    /**
+     * Stores a picture unless a picture with the same bytes is already stored. A newly stored
+     * picture has no references until a product points at it, so it must be pointed at in the
+     * same transaction or it may be collected by {@link #collectUnreferenced(SQLiteDatabase)}.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the products database.
+     * @param picture Bytes of the picture.
+     * @return The hash the picture is stored under.
+     */
+    @NonNull
+    static String store(@NonNull SQLiteDatabase db, @NonNull byte[] picture) {
+        final String hash = hash(picture);
+        ContentValues values = new ContentValues();
+        values.put(ProductDbHelper.COLUMN_PICTURE_HASH, hash);
+        values.put(ProductDbHelper.COLUMN_PICTURE_DATA, picture);
+        db.insertWithOnConflict(ProductDbHelper.PICTURES_TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        return hash;
+    }
+
+    /**
+     * Replaces the picture in the passed product values with a reference to the stored picture,
+     * storing it first if needed. Values without a picture are left unchanged.
+     *
+     * @param db     Writable {@link SQLiteDatabase} of the products database.
+     * @param values Product values to rewrite, whose picture is a byte array.
+     */
+    static void replaceWithReference(@NonNull SQLiteDatabase db, @NonNull ContentValues values) {
+        if (!values.containsKey(ProductEntry.COLUMN_PICTURE)) {
+            return;
+        }
+        values.put(ProductDbHelper.COLUMN_PICTURE_HASH,
+                store(db, values.getAsByteArray(ProductEntry.COLUMN_PICTURE)));
+        values.put(ProductEntry.COLUMN_PICTURE, EMPTY_PICTURE);
+    }
+
+    /**
+     * Recounts the references of every picture and deletes pictures no product points at, such as
+     * a picture stored for an update that matched no product.
+     *
+     * @param db Writable {@link SQLiteDatabase} of the products database.
+     * @return The number of pictures deleted.
+     */
+    static int collectUnreferenced(@NonNull SQLiteDatabase db) {
+        int countDeleted;
+        db.beginTransactionNonExclusive();
+        try {
+            db.execSQL("UPDATE " + ProductDbHelper.PICTURES_TABLE_NAME + " SET "
+                    + ProductDbHelper.COLUMN_PICTURE_REF_COUNT + " = (SELECT COUNT(*) FROM "
+                    + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry.TABLE_NAME + "."
+                    + ProductDbHelper.COLUMN_PICTURE_HASH + " = "
+                    + ProductDbHelper.PICTURES_TABLE_NAME + "."
+                    + ProductDbHelper.COLUMN_PICTURE_HASH + ")");
+            SQLiteStatement delete = db.compileStatement("DELETE FROM "
+                    + ProductDbHelper.PICTURES_TABLE_NAME + " WHERE "
+                    + ProductDbHelper.COLUMN_PICTURE_REF_COUNT + " = 0");
+            countDeleted = delete.executeUpdateDelete();
+            delete.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return countDeleted;
+    }
+
+    /**
+     * Returns the lowercase hexadecimal SHA-256 hash of the passed bytes.
+     */
+    @NonNull
+    static String hash(@NonNull byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+
+            // Every Android release provides SHA-256.
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+}
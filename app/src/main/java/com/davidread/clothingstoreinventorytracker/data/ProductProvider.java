@@ -1,16 +1,59 @@
 package com.davidread.clothingstoreinventorytracker.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.Trace;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.davidread.clothingstoreinventorytracker.R;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.StoreEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.TombstoneEntry;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.VariantEntry;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * {@link ProductProvider} is a class that defines a content provider for products data.
  */
@@ -26,6 +69,67 @@ public class ProductProvider extends ContentProvider {
      */
     private static final int URI_CODE_SINGLE_PRODUCT = 101;
 
+    /**
+     * URI matcher code for a content URI referring to the product changes after a change token.
+     */
+    private static final int URI_CODE_PRODUCT_CHANGES = 102;
+
+    /**
+     * URI matcher code for a content URI referring to the product with a given SKU.
+     */
+    private static final int URI_CODE_PRODUCT_SKU = 103;
+
+    /**
+     * URI matcher code for a content URI referring to the variants of a single product.
+     */
+    private static final int URI_CODE_PRODUCT_VARIANTS = 104;
+
+    /**
+     * URI matcher code for a content URI referring to the variants of all products.
+     */
+    private static final int URI_CODE_ALL_VARIANTS = 105;
+
+    /**
+     * URI matcher code for a content URI referring to a single variant.
+     */
+    private static final int URI_CODE_SINGLE_VARIANT = 106;
+
+    /**
+     * URI matcher code for a content URI referring to the first products of a named sort order.
+     */
+    private static final int URI_CODE_PRODUCT_TOP = 107;
+
+    /**
+     * URI matcher code for a content URI referring to the products that need reordering.
+     */
+    private static final int URI_CODE_PRODUCT_REORDER = 108;
+
+    /**
+     * URI matcher code for a content URI referring to the summary of every store.
+     */
+    private static final int URI_CODE_STORE_SUMMARY = 109;
+
+    /**
+     * Store id returned by {@link #getStoreId(Uri)} for a content URI naming an invalid store.
+     */
+    private static final long INVALID_STORE_ID = -1;
+
+    /**
+     * Time in milliseconds an applied stock edit batch id is remembered for.
+     */
+    private static final long STOCK_EDIT_BATCH_RETENTION_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Maximum number of SKUs bound to a single lookup query, which stays well below the bound
+     * argument limit of older SQLite releases.
+     */
+    private static final int MAX_SKUS_PER_QUERY = 500;
+
+    /**
+     * Default time in milliseconds a maintenance pass may take.
+     */
+    private static final long DEFAULT_MAINTENANCE_BUDGET_MILLIS = 30_000;
+
     /**
      * {@link UriMatcher} for matching a {@link Uri} to a URI matcher code.
      */
@@ -41,6 +145,59 @@ public class ProductProvider extends ContentProvider {
                 ProductContract.CONTENT_AUTHORITY,
                 ProductContract.PATH_PRODUCTS + "/#", URI_CODE_SINGLE_PRODUCT
         );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_CHANGES + "/#",
+                URI_CODE_PRODUCT_CHANGES
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SKU + "/*",
+                URI_CODE_PRODUCT_SKU
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_VARIANTS,
+                URI_CODE_PRODUCT_VARIANTS
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_VARIANTS, URI_CODE_ALL_VARIANTS
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_VARIANTS + "/#", URI_CODE_SINGLE_VARIANT
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_TOP + "/*",
+                URI_CODE_PRODUCT_TOP
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_REORDER,
+                URI_CODE_PRODUCT_REORDER
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_STORES + "/" + ProductContract.PATH_SUMMARY,
+                URI_CODE_STORE_SUMMARY
+        );
+
+        // A store's products accept the same paths as the main store's, except for variants.
+        final String storeProducts = ProductContract.PATH_STORES + "/#/"
+                + ProductContract.PATH_PRODUCTS;
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, storeProducts, URI_CODE_ALL_PRODUCTS);
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, storeProducts + "/#",
+                URI_CODE_SINGLE_PRODUCT);
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                storeProducts + "/" + ProductContract.PATH_CHANGES + "/#", URI_CODE_PRODUCT_CHANGES);
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                storeProducts + "/" + ProductContract.PATH_SKU + "/*", URI_CODE_PRODUCT_SKU);
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                storeProducts + "/" + ProductContract.PATH_TOP + "/*", URI_CODE_PRODUCT_TOP);
+        uriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                storeProducts + "/" + ProductContract.PATH_REORDER, URI_CODE_PRODUCT_REORDER);
     }
 
     /**
@@ -49,17 +206,114 @@ public class ProductProvider extends ContentProvider {
     private ProductDbHelper productDbHelper;
 
     /**
-     * Callback method invoked on this content provider's startup. It simply initializes
-     * {@link #productDbHelper}.
+     * {@link ProductArchiveDbHelper} for getting references to the archive database, which has
+     * the products database attached.
+     */
+    private ProductArchiveDbHelper archiveDbHelper;
+
+    /**
+     * {@link ProductSlowQueryLog} recording slow queries, updates, and deletes.
+     */
+    private ProductSlowQueryLog slowQueryLog;
+
+    /**
+     * {@link ProductQueryCache} for serving repeated queries without touching SQLite.
+     */
+    private ProductQueryCache queryCache;
+
+    /**
+     * {@link ProductReservationScheduler} releasing stock reservations as they expire.
+     */
+    private ProductReservationScheduler reservationScheduler;
+
+    /**
+     * {@link ProductStorePool} holding the databases of the stores other than the main store.
+     */
+    private ProductStorePool storePool;
+
+    /**
+     * Table generation counter. Every write path bumps it, which invalidates every result cached
+     * in {@link #queryCache} before the write.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Lock guarding the products database against being replaced while it is in use. Every
+     * request, sweep of {@link #reservationScheduler}, and warm-up holds the read lock while it
+     * touches the products or archive database, and {@link #restore(Uri)} holds the write lock
+     * while it closes both and moves the snapshot over the products database. A query fills its
+     * cursor's first window while holding the read lock, so only rows read past that window may
+     * come from a database closed by a later restore.
+     */
+    private final ReentrantReadWriteLock databaseLock = new ReentrantReadWriteLock();
+
+    /**
+     * Ids of the stores other than the main store that took a hold since this content provider
+     * started, whose expired holds each sweep of {@link #reservationScheduler} also releases.
+     */
+    private final Set<Long> storesWithHolds =
+            Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /**
+     * Whether the current thread is inside {@link #applyBatch(ArrayList)}. Change notifications
+     * are held back until the batch commits.
+     */
+    private final ThreadLocal<Boolean> isApplyingBatch = new ThreadLocal<>();
+
+    /**
+     * Callback method invoked on this content provider's startup. It initializes
+     * {@link #productDbHelper}, {@link #archiveDbHelper}, {@link #slowQueryLog},
+     * {@link #queryCache}, {@link #reservationScheduler}, and {@link #storePool}, and starts warming
+     * up the products database in the background.
      *
      * @return Whether this content provider was successfully loaded.
      */
     @Override
     public boolean onCreate() {
         productDbHelper = new ProductDbHelper(getContext());
+        archiveDbHelper = new ProductArchiveDbHelper(getContext(), productDbHelper);
+        slowQueryLog = new ProductSlowQueryLog(
+                getContext().getResources().getInteger(R.integer.slow_query_threshold_millis),
+                getContext().getResources().getInteger(R.integer.slow_query_log_size));
+        queryCache = new ProductQueryCache(
+                getContext().getResources().getInteger(R.integer.query_cache_max_bytes));
+        HandlerThread backgroundThread = new HandlerThread("ProductProvider background");
+        backgroundThread.start();
+        reservationScheduler = new ProductReservationScheduler(backgroundThread.getLooper(),
+                databaseLock.readLock(), this::releaseExpiredReservations);
+        reservationScheduler.load(productDbHelper);
+        storePool = new ProductStorePool(getContext(), backgroundThread.getLooper());
+        new Thread(this::warmUp, "ProductProvider warm-up").start();
         return true;
     }
 
+    /**
+     * Opens the products database, creating or upgrading it if needed, and reads the first screen
+     * of products. This runs while the first activity is still being created, so the first query
+     * finds the database open and its first pages cached instead of paying for both before the
+     * list can show live data.
+     */
+    private void warmUp() {
+        Trace.beginSection("ProductProvider.warmUp");
+        databaseLock.readLock().lock();
+        try {
+            SQLiteDatabase db = productDbHelper.getWritableDatabase();
+            final String firstScreenRows = String.valueOf(
+                    getContext().getResources().getInteger(R.integer.first_screen_snapshot_rows));
+            try (Cursor cursor = db.rawQuery(SQLiteQueryBuilder.buildQueryString(false,
+                    ProductDbHelper.PRODUCTS_VIEW_NAME, null, null, null, null, null,
+                    firstScreenRows), null)) {
+                cursor.getCount();
+            }
+        } catch (SQLiteException e) {
+
+            // The first query opens the database again and reports the failure to its caller.
+        } finally {
+            databaseLock.readLock().unlock();
+            Trace.endSection();
+        }
+    }
+
     /**
      * Returns the MIME type of the data stored in this content provider that matches with the
      * passed {@link Uri}.
@@ -76,13 +330,77 @@ public class ProductProvider extends ContentProvider {
                 return ProductContract.ProductEntry.CONTENT_LIST_TYPE;
             case URI_CODE_SINGLE_PRODUCT:
                 return ProductContract.ProductEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_PRODUCT_CHANGES:
+                return ProductContract.ProductEntry.CONTENT_LIST_TYPE;
+            case URI_CODE_PRODUCT_SKU:
+                return ProductContract.ProductEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_PRODUCT_TOP:
+            case URI_CODE_PRODUCT_REORDER:
+                return ProductContract.ProductEntry.CONTENT_LIST_TYPE;
+            case URI_CODE_PRODUCT_VARIANTS:
+            case URI_CODE_ALL_VARIANTS:
+                return VariantEntry.CONTENT_LIST_TYPE;
+            case URI_CODE_SINGLE_VARIANT:
+                return VariantEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_STORE_SUMMARY:
+                return StoreEntry.CONTENT_SUMMARY_TYPE;
             default:
                 return null;
         }
     }
 
     /**
-     * Insert new data into this content provider.
+     * Returns the id of the store a content URI refers to.
+     *
+     * @param uri Content URI of the request.
+     * @return Id of the store. Is {@link StoreEntry#MAIN_STORE_ID} if the content URI is not
+     * scoped to a store, and {@link #INVALID_STORE_ID} if it names the main store by id or an id
+     * that does not fit in a long.
+     */
+    private long getStoreId(@NonNull Uri uri) {
+        List<String> pathSegments = uri.getPathSegments();
+        if (pathSegments.size() < 3 || !ProductContract.PATH_STORES.equals(pathSegments.get(0))
+                || !ProductContract.PATH_PRODUCTS.equals(pathSegments.get(2))) {
+            return StoreEntry.MAIN_STORE_ID;
+        }
+        try {
+            final long storeId = Long.parseLong(pathSegments.get(1));
+            return storeId > StoreEntry.MAIN_STORE_ID ? storeId : INVALID_STORE_ID;
+        } catch (NumberFormatException e) {
+            return INVALID_STORE_ID;
+        }
+    }
+
+    /**
+     * Returns the content URI of a store's products.
+     *
+     * @param storeId Id of the store.
+     * @return {@link ProductEntry#CONTENT_URI} for the main store, or the store's products URI.
+     */
+    @NonNull
+    private static Uri getProductsUri(long storeId) {
+        return storeId == StoreEntry.MAIN_STORE_ID
+                ? ProductEntry.CONTENT_URI
+                : StoreEntry.buildProductsUri(storeId);
+    }
+
+    /**
+     * Runs an operation on a store's database. The main store's database is always open, and any
+     * other store's database is leased from {@link #storePool} for the length of the call.
+     *
+     * @param storeId   Id of the store.
+     * @param operation {@link ProductStorePool.Operation} to run.
+     * @return The result of the operation.
+     */
+    private <T> T runOnStore(long storeId, @NonNull ProductStorePool.Operation<T> operation) {
+        return storeId == StoreEntry.MAIN_STORE_ID
+                ? operation.run(productDbHelper)
+                : storePool.run(storeId, operation);
+    }
+
+    /**
+     * Insert new data into this content provider. Inserts from a sync adapter may carry an id and
+     * update the existing row with that id.
      *
      * @param uri    Content URI of the insertion request.
      * @param values A set of column name/value pairs to add.
@@ -91,37 +409,144 @@ public class ProductProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @NonNull ContentValues values) {
+        databaseLock.readLock().lock();
+        try {
+            return insertHoldingLock(uri, values);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
 
-        // Return null if ContentValues are invalid.
-        if (values.size() != 5 || !hasValidContentValues(values)) {
+    /**
+     * Runs {@link #insert(Uri, ContentValues)} while holding the read lock of {@link #databaseLock}.
+     */
+    @Nullable
+    private Uri insertHoldingLock(@NonNull Uri uri, @NonNull ContentValues values) {
+
+        // Variants are inserted through their product's content URI.
+        if (uriMatcher.match(uri) == URI_CODE_PRODUCT_VARIANTS) {
+            return insertVariant(uri, values);
+        }
+
+        // Return null if ContentValues are invalid or the content URI names an invalid store.
+        final long storeId = getStoreId(uri);
+        if (!hasRequiredContentValues(values) || !hasValidContentValues(values)
+                || storeId == INVALID_STORE_ID) {
             return null;
         }
 
-        // Perform the appropriate insert operation given the passed content URI.
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
-        long insertId;
-        final int match = uriMatcher.match(uri);
-        switch (match) {
-            case URI_CODE_ALL_PRODUCTS:
-                insertId = db.insert(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        null,
-                        values
-                );
-                break;
-            default:
-                insertId = -1;
+        /* Mark the row dirty unless it came from a sync adapter, and give a new product its
+         * globally unique id. A sync adapter must pass the id the product has on its peer. */
+        final boolean callerIsSyncAdapter = isCallerSyncAdapter(uri);
+        values = new ContentValues(values);
+        values.put(ProductEntry.COLUMN_DIRTY, callerIsSyncAdapter ? 0 : 1);
+        if (!values.containsKey(ProductEntry.COLUMN_UUID)) {
+            if (callerIsSyncAdapter) {
+                return null;
+            }
+            values.put(ProductEntry.COLUMN_UUID, UUID.randomUUID().toString());
         }
 
+        // Perform the insert operation on the database of the content URI's store.
+        final ContentValues insertValues = values;
+        final long insertId = runOnStore(storeId, dbHelper -> insertProduct(
+                dbHelper.getWritableDatabase(), uriMatcher.match(uri), insertValues,
+                callerIsSyncAdapter));
+
         // Return null if the insertion operation failed.
         if (insertId == -1) {
             return null;
         }
 
         // Notify listeners that the data at this content URI has changed.
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
+
+        return ContentUris.withAppendedId(getProductsUri(storeId), insertId);
+    }
+
+    /**
+     * Inserts a product into the products table. The picture is stored in the same transaction
+     * so it is never left without a reference.
+     *
+     * @param db                  Writable {@link SQLiteDatabase} to insert into.
+     * @param match               URI matcher code of the insertion request's content URI.
+     * @param values              Column name/value pairs of the product, marked dirty or clean.
+     * @param callerIsSyncAdapter Whether the insert came from a sync adapter and may update the
+     *                            row with the same globally unique id.
+     * @return The id of the new row. Is -1 if the insertion failed.
+     */
+    private long insertProduct(@NonNull SQLiteDatabase db, int match,
+                               @NonNull ContentValues values, boolean callerIsSyncAdapter) {
+        long insertId;
+        db.beginTransaction();
+        try {
+            ProductPictures.replaceWithReference(db, values);
+            switch (match) {
+                case URI_CODE_ALL_PRODUCTS:
+                    if (callerIsSyncAdapter) {
+                        insertId = upsertSyncedProduct(db, values);
+                    } else {
+                        insertId = db.insert(
+                                ProductContract.ProductEntry.TABLE_NAME,
+                                null,
+                                values
+                        );
+                    }
+                    break;
+                default:
+                    insertId = -1;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return insertId;
+    }
+
+    /**
+     * Writes a product pulled from a sync peer, updating the row with its globally unique id if
+     * there is one and inserting it under a new local id otherwise. Local ids are never taken from
+     * the peer, since each device allocates its own. A row is never replaced, since a replaced row
+     * fires no delete trigger and would leave its tombstone, variants, and picture reference
+     * behind.
+     *
+     * <p>If another product holds the pulled SKU, the peer's assignment wins: the other product's
+     * SKU is cleared through a normal update that marks it dirty, so the peer learns of it on the
+     * next push.
+     *
+     * @param db     Writable {@link SQLiteDatabase} inside a transaction.
+     * @param values Column name/value pairs of the pulled product, including its globally unique
+     *               id.
+     * @return The local id of the written row. Is -1 if the write failed.
+     */
+    private static long upsertSyncedProduct(@NonNull SQLiteDatabase db,
+                                            @NonNull ContentValues values) {
+        final String uuid = values.getAsString(ProductEntry.COLUMN_UUID);
+        values.remove(ProductEntry._ID);
+        final String sku = values.getAsString(ProductEntry.COLUMN_SKU);
+        if (sku != null) {
+            ContentValues clearSku = new ContentValues();
+            clearSku.putNull(ProductEntry.COLUMN_SKU);
+            clearSku.put(ProductEntry.COLUMN_DIRTY, 1);
+            db.update(ProductEntry.TABLE_NAME, clearSku,
+                    ProductEntry.COLUMN_SKU + "=? AND " + ProductEntry.COLUMN_UUID + "!=?",
+                    new String[]{sku, uuid});
+        }
 
-        return ContentUris.withAppendedId(uri, insertId);
+        // Update the row with the pulled globally unique id, or insert it if there is none yet.
+        try (Cursor cursor = db.rawQuery("SELECT " + ProductEntry._ID + " FROM "
+                + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry.COLUMN_UUID + "=?",
+                new String[]{uuid})) {
+            if (cursor.moveToFirst()) {
+                final long id = cursor.getLong(0);
+                ContentValues update = new ContentValues(values);
+                update.remove(ProductEntry.COLUMN_UUID);
+                db.update(ProductEntry.TABLE_NAME, update, ProductEntry._ID + "=?",
+                        new String[]{String.valueOf(id)});
+                return id;
+            }
+        }
+        return db.insert(ProductEntry.TABLE_NAME, null, values);
     }
 
     /**
@@ -136,55 +561,343 @@ public class ProductProvider extends ContentProvider {
      *                      from selectionArgs, in order that they appear in the selection. The
      *                      values will be bound as Strings. This value may be null.
      * @param sortOrder     How the rows in the cursor should be sorted. If null, then the default
-     *                      sort is applied.
-     * @return A {@link Cursor} containing the queried data. Is null if the query request failed.
+     *                      sort is applied. Ignored for the change feed, which is always sorted by
+     *                      version, for the top products, which are sorted by their named
+     *                      sort order, and for the products that need reordering, which are
+     *                      sorted by days of stock.
+     * @return A {@link Cursor} containing the queried data, whose extras hold the
+     * {@link ProductContract#EXTRA_GENERATION} the query started at. Is null if the query request
+     * failed.
      */
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
                         @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        databaseLock.readLock().lock();
+        try {
+            final long queryGeneration = generation.get();
+            Cursor cursor = queryHoldingLock(uri, projection, selection, selectionArgs, sortOrder,
+                    queryGeneration);
+            return cursor == null ? null : withGeneration(cursor, queryGeneration);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
 
-        // Perform the appropriate query operation given the passed content URI.
-        SQLiteDatabase db = productDbHelper.getReadableDatabase();
-        Cursor cursor;
+    /**
+     * Runs {@link #query(Uri, String[], String, String[], String)} while holding the read lock of
+     * {@link #databaseLock}.
+     *
+     * @param queryGeneration Value of {@link #generation} read before the query started.
+     */
+    @Nullable
+    private Cursor queryHoldingLock(@NonNull Uri uri, @Nullable String[] projection,
+                                    @Nullable String selection, @Nullable String[] selectionArgs,
+                                    @Nullable String sortOrder, long queryGeneration) {
+
+        /* Serve the query from the cache if nothing was written since it was cached. The products
+         * that need reordering are never cached, since their sales velocities decay with the
+         * clock rather than with writes. Available quantities change once a hold expires, before
+         * the sweep deletes it and bumps the generation, so each snapshot of a store is only
+         * served until the first hold active when it was read expires. */
         final int match = uriMatcher.match(uri);
+        final boolean isCacheable = match != UriMatcher.NO_MATCH
+                && match != URI_CODE_PRODUCT_REORDER;
+        final QueryKey key = new QueryKey(uri, projection, selection, selectionArgs, sortOrder);
+        final long nowMillis = System.currentTimeMillis();
+        Cursor cursor = isCacheable ? queryCache.get(key, queryGeneration, nowMillis) : null;
+        if (cursor != null) {
+            setNotificationUri(cursor, match, uri);
+            return cursor;
+        }
+
+        // The summary of every store is read from all of their databases.
+        if (match == URI_CODE_STORE_SUMMARY) {
+            cursor = queryStoreSummary(selection, selectionArgs);
+            if (cursor != null) {
+                cursor = queryCache.put(key, queryGeneration, Long.MAX_VALUE, cursor);
+                setNotificationUri(cursor, match, uri);
+            }
+            return cursor;
+        }
+
+        // Return null if the content URI names an invalid store.
+        final long storeId = getStoreId(uri);
+        if (storeId == INVALID_STORE_ID) {
+            return null;
+        }
+
+        /* Lease the database of any store other than the main store. The lease is held until the
+         * query's cursor is closed if the cursor still reads from the database. */
+        final ProductDbHelper dbHelper = storeId == StoreEntry.MAIN_STORE_ID
+                ? productDbHelper
+                : storePool.acquire(storeId);
+        boolean isLeaseHeld = dbHelper != productDbHelper;
+        try {
+            final long validUntilMillis = isCacheable
+                    ? queryNextHoldExpiry(dbHelper.getReadableDatabase(), nowMillis)
+                    : Long.MAX_VALUE;
+            cursor = queryStore(dbHelper, storeId == StoreEntry.MAIN_STORE_ID, match, uri,
+                    projection, selection, selectionArgs, sortOrder);
+            if (cursor != null) {
+                Cursor liveCursor = cursor;
+                if (isCacheable) {
+                    cursor = queryCache.put(key, queryGeneration, validUntilMillis, liveCursor);
+                }
+                if (isLeaseHeld && cursor == liveCursor) {
+                    cursor = storePool.releaseOnClose(storeId, cursor);
+                    isLeaseHeld = false;
+                }
+                setNotificationUri(cursor, match, uri);
+            }
+        } finally {
+            if (isLeaseHeld) {
+                storePool.release(storeId);
+            }
+        }
+
+        return cursor;
+    }
+
+    /**
+     * Runs a query on a store's database.
+     *
+     * @param dbHelper      {@link ProductDbHelper} of the store's database.
+     * @param isMainStore   Whether the store is the main store, whose queries may include
+     *                      archived products and variants.
+     * @param match         URI matcher code of the query's content URI.
+     * @param uri           Content URI of the query request.
+     * @param projection    The list of columns to put into the cursor.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @param sortOrder     How the rows in the cursor should be sorted.
+     * @return A {@link Cursor} reading the queried data. Is null if the query request failed.
+     */
+    @Nullable
+    private Cursor queryStore(@NonNull ProductDbHelper dbHelper, boolean isMainStore, int match,
+                              @NonNull Uri uri, @Nullable String[] projection,
+                              @Nullable String selection, @Nullable String[] selectionArgs,
+                              @Nullable String sortOrder) {
+
+        /* Products are read through the view joining in their pictures, or the view over both
+         * databases for queries including archived products. */
+        final boolean includeArchived = isMainStore && Boolean.parseBoolean(
+                uri.getQueryParameter(ProductContract.PARAM_INCLUDE_ARCHIVED));
+        final String productsTable = includeArchived
+                ? ProductArchiveDbHelper.ALL_PRODUCTS_VIEW_NAME
+                : ProductDbHelper.PRODUCTS_VIEW_NAME;
+
+        // Perform the appropriate query operation given the passed content URI.
+        SQLiteDatabase db = includeArchived
+                && (match == URI_CODE_ALL_PRODUCTS || match == URI_CODE_SINGLE_PRODUCT)
+                ? archiveDbHelper.getReadableDatabase()
+                : dbHelper.getReadableDatabase();
+        String sql;
         switch (match) {
             case URI_CODE_ALL_PRODUCTS:
-                cursor = db.query(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                sql = SQLiteQueryBuilder.buildQueryString(false, productsTable, projection,
+                        selection, null, null, sortOrder, null);
                 break;
             case URI_CODE_SINGLE_PRODUCT:
-                selection = ProductContract.ProductEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = db.query(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
+                sql = SQLiteQueryBuilder.buildQueryString(false, productsTable, projection,
+                        ProductEntry._ID + "=?", null, null, sortOrder, null);
+                break;
+            case URI_CODE_PRODUCT_SKU:
+                selectionArgs = new String[]{uri.getLastPathSegment()};
+                sql = SQLiteQueryBuilder.buildQueryString(false, ProductDbHelper.PRODUCTS_VIEW_NAME,
+                        projection, ProductEntry.COLUMN_SKU + "=?", null, null, sortOrder, null);
+                break;
+            case URI_CODE_PRODUCT_VARIANTS:
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{uri.getPathSegments().get(1)});
+                sql = SQLiteQueryBuilder.buildQueryString(false, VariantEntry.TABLE_NAME, projection,
+                        DatabaseUtils.concatenateWhere(selection, VariantEntry.COLUMN_PRODUCT_ID + "=?"),
+                        null, null, sortOrder, null);
+                break;
+            case URI_CODE_ALL_VARIANTS:
+                sql = SQLiteQueryBuilder.buildQueryString(false, VariantEntry.TABLE_NAME, projection,
+                        selection, null, null, sortOrder, null);
+                break;
+            case URI_CODE_SINGLE_VARIANT:
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                sql = SQLiteQueryBuilder.buildQueryString(false, VariantEntry.TABLE_NAME, projection,
+                        VariantEntry._ID + "=?", null, null, sortOrder, null);
+                break;
+            case URI_CODE_PRODUCT_CHANGES:
+                sql = buildChangesQuery(selection, uri.getQueryParameter(ProductContract.PARAM_LIMIT));
+                selectionArgs = buildChangesArgs(ContentUris.parseId(uri), selectionArgs);
+                break;
+            case URI_CODE_PRODUCT_TOP:
+                sql = buildTopQuery(uri.getLastPathSegment(), projection, selection,
+                        uri.getQueryParameter(ProductContract.PARAM_LIMIT));
+                break;
+            case URI_CODE_PRODUCT_REORDER:
+                sql = buildReorderQuery(projection, selection,
+                        uri.getQueryParameter(ProductContract.PARAM_HORIZON_DAYS),
+                        uri.getQueryParameter(ProductContract.PARAM_LIMIT));
                 break;
             default:
-                cursor = null;
+                sql = null;
         }
 
-        // Register this content URI to listen for changes if the query operation succeeded.
-        if (cursor != null) {
-            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        // Return null if the query operation is not supported.
+        if (sql == null) {
+            return null;
+        }
+
+        // Run the query.
+        final long startNanos = ProductSlowQueryLog.start();
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+
+        // Fill the first window here, so the time spent running the query is measured.
+        slowQueryLog.record(db, ProductSlowQueryLog.OPERATION_QUERY, sql, sql, selectionArgs,
+                cursor.getCount(), startNanos);
+        return cursor;
+    }
+
+    /**
+     * Returns the time the first hold of a store that is active at the passed time expires. The
+     * available quantities read from the store stay the same until then unless it is written.
+     *
+     * @param db        {@link SQLiteDatabase} of the store.
+     * @param nowMillis Current time in milliseconds since the epoch.
+     * @return The time in milliseconds since the epoch. Is {@link Long#MAX_VALUE} if the store
+     * has no active holds.
+     */
+    private static long queryNextHoldExpiry(@NonNull SQLiteDatabase db, long nowMillis) {
+        return DatabaseUtils.longForQuery(db, "SELECT IFNULL(MIN("
+                        + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + "), " + Long.MAX_VALUE
+                        + ") FROM " + ProductDbHelper.RESERVATIONS_TABLE_NAME + " WHERE "
+                        + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " > ?",
+                new String[]{String.valueOf(nowMillis)});
+    }
+
+    /**
+     * Queries one summary row per store: the main store first, then every other store that has a
+     * database, in ascending id order. The other stores are read in parallel on
+     * {@link #storePool}'s threads while the main store is read on the calling thread.
+     *
+     * @param selection     A selection criteria over product columns limiting the products each
+     *                      row summarizes.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return A {@link Cursor} with the columns of {@link StoreEntry#CONTENT_SUMMARY_URI}. Is null
+     * if a store could not be read.
+     */
+    @Nullable
+    private Cursor queryStoreSummary(@Nullable String selection,
+                                     @Nullable String[] selectionArgs) {
+        final String sql = SQLiteQueryBuilder.buildQueryString(false, ProductEntry.TABLE_NAME,
+                new String[]{
+                        "COUNT(*)",
+                        "IFNULL(SUM(" + ProductEntry.COLUMN_QUANTITY + " + "
+                                + ProductEntry.COLUMN_VARIANT_QUANTITY + "), 0)",
+                        "IFNULL(SUM(" + ProductEntry.COLUMN_STOCK_VALUE + "), 0)"
+                }, selection, null, null, null, null);
+        final ProductStorePool.Operation<long[]> summarize = dbHelper -> {
+            try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery(sql, selectionArgs)) {
+                cursor.moveToFirst();
+                return new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)};
+            }
+        };
+
+        // Start reading the other stores before reading the main store.
+        final long[] storeIds = storePool.listStoreIds();
+        List<Future<long[]>> summaries = new ArrayList<>(storeIds.length);
+        for (long storeId : storeIds) {
+            summaries.add(storePool.submit(storeId, summarize));
         }
 
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                StoreEntry.COLUMN_STORE_ID,
+                StoreEntry.COLUMN_PRODUCT_COUNT,
+                StoreEntry.COLUMN_TOTAL_QUANTITY,
+                StoreEntry.COLUMN_TOTAL_STOCK_VALUE
+        });
+        try {
+            addStoreSummaryRow(cursor, StoreEntry.MAIN_STORE_ID, summarize.run(productDbHelper));
+            for (int i = 0; i < storeIds.length; i++) {
+                addStoreSummaryRow(cursor, storeIds[i], summaries.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+
+            // Return null if a store's database could not be read.
+            return null;
+        }
         return cursor;
     }
 
+    /**
+     * Adds a store's summary to a {@link MatrixCursor}.
+     *
+     * @param cursor  {@link MatrixCursor} with the columns of
+     *                {@link StoreEntry#CONTENT_SUMMARY_URI}.
+     * @param storeId Id of the store.
+     * @param summary The store's product count, units in stock, and stock value.
+     */
+    private static void addStoreSummaryRow(@NonNull MatrixCursor cursor, long storeId,
+                                           @NonNull long[] summary) {
+        cursor.addRow(new Object[]{storeId, summary[0], summary[1], summary[2]});
+    }
+
+    /**
+     * Registers a query's content URI on its {@link Cursor} to listen for changes. The change feed,
+     * the top products, and the products that need reordering listen on all products of their
+     * store since any product write to the store changes them.
+     *
+     * @param cursor {@link Cursor} holding the query results.
+     * @param match  URI matcher code of the query's content URI.
+     * @param uri    Content URI of the query request.
+     */
+    private void setNotificationUri(@NonNull Cursor cursor, int match, @NonNull Uri uri) {
+        cursor.setNotificationUri(
+                getContext().getContentResolver(),
+                match == URI_CODE_PRODUCT_CHANGES || match == URI_CODE_PRODUCT_TOP
+                        || match == URI_CODE_PRODUCT_REORDER ? getProductsUri(getStoreId(uri)) : uri
+        );
+    }
+
+    /**
+     * Returns a {@link Cursor} over the same rows as the passed one whose extras also hold the
+     * generation a query started at. Every write committed before that generation was reached is
+     * part of the rows, so callers holding edits back until they show up, such as
+     * {@link StockEditQueue}, can tell which of them the rows include.
+     *
+     * @param cursor          {@link Cursor} holding the results of the query.
+     * @param queryGeneration Value of {@link #generation} read before the query started.
+     * @return A {@link Cursor} over the same rows.
+     */
+    @NonNull
+    private static Cursor withGeneration(@NonNull Cursor cursor, long queryGeneration) {
+        final Bundle extras = cursor.getExtras() == null ? new Bundle()
+                : new Bundle(cursor.getExtras());
+        extras.putLong(ProductContract.EXTRA_GENERATION, queryGeneration);
+        return new CursorWrapper(cursor) {
+            @Override
+            public Bundle getExtras() {
+                return extras;
+            }
+        };
+    }
+
+    /**
+     * Bumps {@link #generation} and notifies listeners that the data at the passed content URI,
+     * and so the summary of every store, has changed. Inside {@link #applyBatch(ArrayList)}, the
+     * notification is sent once the batch commits instead.
+     *
+     * @param uri Content URI of the changed data.
+     */
+    private void notifyChange(@NonNull Uri uri) {
+        generation.incrementAndGet();
+        if (!Boolean.TRUE.equals(isApplyingBatch.get())) {
+            getContext().getContentResolver().notifyChange(uri, null);
+            getContext().getContentResolver().notifyChange(StoreEntry.CONTENT_SUMMARY_URI, null);
+        }
+    }
+
     /**
      * Update data in this content provider.
      *
@@ -200,53 +913,113 @@ public class ProductProvider extends ContentProvider {
     @Override
     public int update(@NonNull Uri uri, @NonNull ContentValues values, @Nullable String selection,
                       @Nullable String[] selectionArgs) {
+        databaseLock.readLock().lock();
+        try {
+            return updateHoldingLock(uri, values, selection, selectionArgs);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@link #update(Uri, ContentValues, String, String[])} while holding the read lock of
+     * {@link #databaseLock}.
+     */
+    private int updateHoldingLock(@NonNull Uri uri, @NonNull ContentValues values,
+                                  @Nullable String selection, @Nullable String[] selectionArgs) {
 
         // Return 0 if ContentValues is empty.
         if (values.size() == 0) {
             return 0;
         }
 
-        // Return -1 if ContentValues are invalid.
-        if (!hasValidContentValues(values)) {
-            return -1;
+        // Variants are updated separately from products.
+        final int variantMatch = uriMatcher.match(uri);
+        if (variantMatch == URI_CODE_ALL_VARIANTS || variantMatch == URI_CODE_SINGLE_VARIANT) {
+            return updateVariants(uri, variantMatch, values, selection, selectionArgs);
         }
 
-        // Perform the appropriate update operation given the passed content URI.
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
-        int countRowsUpdated;
-        final int match = uriMatcher.match(uri);
-        switch (match) {
-            case URI_CODE_ALL_PRODUCTS:
-                countRowsUpdated = db.update(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        values,
-                        selection,
-                        selectionArgs
-                );
-                break;
-            case URI_CODE_SINGLE_PRODUCT:
-                selection = ProductContract.ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                countRowsUpdated = db.update(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        values,
-                        selection,
-                        selectionArgs
-                );
-                break;
-            default:
-                countRowsUpdated = -1;
+        /* Return -1 if ContentValues are invalid, change the globally unique id, or the content
+         * URI names an invalid store. */
+        final long storeId = getStoreId(uri);
+        if (!hasValidContentValues(values) || values.containsKey(ProductEntry.COLUMN_UUID)
+                || storeId == INVALID_STORE_ID) {
+            return -1;
         }
 
+        // Mark the rows dirty unless the update came from a sync adapter.
+        final ContentValues updateValues = new ContentValues(values);
+        updateValues.put(ProductEntry.COLUMN_DIRTY, isCallerSyncAdapter(uri) ? 0 : 1);
+
+        // Perform the update operation on the database of the content URI's store.
+        final int countRowsUpdated = runOnStore(storeId, dbHelper -> updateProducts(
+                dbHelper.getWritableDatabase(), uri, updateValues, selection, selectionArgs));
+
         /* Notify listeners that the data at this content URI has changed if the update operation
          * succeeded. */
         if (countRowsUpdated != -1 && countRowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return countRowsUpdated;
     }
 
+    /**
+     * Updates the rows matching the passed content URI and selection in the products table. A
+     * new picture is stored in the same transaction so it is never left without a reference.
+     *
+     * @param db            Writable {@link SQLiteDatabase} to update.
+     * @param uri           Content URI of the update request.
+     * @param values        Columns to update, marked dirty or clean.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of rows updated. Is -1 if the update failed.
+     */
+    private int updateProducts(@NonNull SQLiteDatabase db, @NonNull Uri uri,
+                               @NonNull ContentValues values, @Nullable String selection,
+                               @Nullable String[] selectionArgs) {
+        int countRowsUpdated;
+        final int match = uriMatcher.match(uri);
+        db.beginTransaction();
+        try {
+            ProductPictures.replaceWithReference(db, values);
+            try {
+                switch (match) {
+                    case URI_CODE_ALL_PRODUCTS:
+                        countRowsUpdated = updateTable(
+                                db,
+                                ProductContract.ProductEntry.TABLE_NAME,
+                                values,
+                                selection,
+                                selectionArgs
+                        );
+                        break;
+                    case URI_CODE_SINGLE_PRODUCT:
+                        selection = ProductContract.ProductEntry._ID + "=?";
+                        selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                        countRowsUpdated = updateTable(
+                                db,
+                                ProductContract.ProductEntry.TABLE_NAME,
+                                values,
+                                selection,
+                                selectionArgs
+                        );
+                        break;
+                    default:
+                        countRowsUpdated = -1;
+                }
+            } catch (SQLiteConstraintException e) {
+
+                // Return -1 if the update would give two products the same SKU.
+                countRowsUpdated = -1;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return countRowsUpdated;
+    }
+
     /**
      * Delete data from this content provider.
      *
@@ -261,14 +1034,100 @@ public class ProductProvider extends ContentProvider {
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection,
                       @Nullable String[] selectionArgs) {
+        databaseLock.readLock().lock();
+        try {
+            return deleteHoldingLock(uri, selection, selectionArgs);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
 
-        // Perform the appropriate delete operation given the passed content URI.
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+    /**
+     * Runs {@link #delete(Uri, String, String[])} while holding the read lock of
+     * {@link #databaseLock}.
+     */
+    private int deleteHoldingLock(@NonNull Uri uri, @Nullable String selection,
+                                  @Nullable String[] selectionArgs) {
+
+        // Variants are deleted separately from products.
+        final int variantMatch = uriMatcher.match(uri);
+        if (variantMatch == URI_CODE_ALL_VARIANTS || variantMatch == URI_CODE_SINGLE_VARIANT) {
+            return deleteVariants(uri, variantMatch, selection, selectionArgs);
+        }
+
+        // Return -1 if the content URI names an invalid store.
+        final long storeId = getStoreId(uri);
+        if (storeId == INVALID_STORE_ID) {
+            return -1;
+        }
+
+        // Perform the delete operation on the database of the content URI's store.
+        final int countRowsDeleted = runOnStore(storeId, dbHelper -> deleteProducts(
+                dbHelper.getWritableDatabase(), uri, selection, selectionArgs));
+
+        /* Notify listeners that the data at this content URI has changed if the delete operation
+         * succeeded. */
+        if (countRowsDeleted != -1 && countRowsDeleted != 0) {
+            notifyChange(uri);
+        }
+
+        return countRowsDeleted;
+    }
+
+    /**
+     * Deletes the rows matching the passed content URI and selection from the products table,
+     * leaving tombstones that a sync adapter delete marks as already synced.
+     *
+     * @param db            Writable {@link SQLiteDatabase} to delete from.
+     * @param uri           Content URI of the delete request.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of rows deleted. Is -1 if the content URI is not supported.
+     */
+    private int deleteProducts(@NonNull SQLiteDatabase db, @NonNull Uri uri,
+                               @Nullable String selection, @Nullable String[] selectionArgs) {
+        final boolean callerIsSyncAdapter = isCallerSyncAdapter(uri);
+        int countRowsDeleted;
+        if (callerIsSyncAdapter) {
+            db.beginTransaction();
+        }
+        try {
+            final long versionBefore = callerIsSyncAdapter ? currentVersion(db) : 0;
+            countRowsDeleted = deleteRows(db, uri, selection, selectionArgs);
+
+            /* Tombstones created by a sync adapter delete describe a change that came from the
+             * peer, so they are not pushed back to it. */
+            if (callerIsSyncAdapter) {
+                db.execSQL("UPDATE " + TombstoneEntry.TABLE_NAME + " SET "
+                        + TombstoneEntry.COLUMN_DIRTY + " = 0 WHERE "
+                        + TombstoneEntry.COLUMN_VERSION + " > ?", new Object[]{versionBefore});
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            if (callerIsSyncAdapter) {
+                db.endTransaction();
+            }
+        }
+        return countRowsDeleted;
+    }
+
+    /**
+     * Deletes the rows matching the passed content URI and selection from the products table.
+     *
+     * @param db            Writable {@link SQLiteDatabase} to delete from.
+     * @param uri           Content URI of the delete request.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of rows deleted. Is -1 if the content URI is not supported.
+     */
+    private int deleteRows(@NonNull SQLiteDatabase db, @NonNull Uri uri,
+                           @Nullable String selection, @Nullable String[] selectionArgs) {
         int countRowsDeleted;
         final int match = uriMatcher.match(uri);
         switch (match) {
             case URI_CODE_ALL_PRODUCTS:
-                countRowsDeleted = db.delete(
+                countRowsDeleted = deleteFromTable(
+                        db,
                         ProductContract.ProductEntry.TABLE_NAME,
                         selection,
                         selectionArgs
@@ -277,7 +1136,8 @@ public class ProductProvider extends ContentProvider {
             case URI_CODE_SINGLE_PRODUCT:
                 selection = ProductContract.ProductEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                countRowsDeleted = db.delete(
+                countRowsDeleted = deleteFromTable(
+                        db,
                         ProductContract.ProductEntry.TABLE_NAME,
                         selection,
                         selectionArgs
@@ -286,16 +1146,191 @@ public class ProductProvider extends ContentProvider {
             default:
                 countRowsDeleted = -1;
         }
+        return countRowsDeleted;
+    }
 
-        /* Notify listeners that the data at this content URI has changed if the delete operation
-         * succeeded. */
-        if (countRowsDeleted != -1 && countRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+    /**
+     * Updates the rows of a table matching a selection, and records the update in
+     * {@link #slowQueryLog} if it was slow.
+     *
+     * @param db            Writable {@link SQLiteDatabase} to update.
+     * @param table         {@link String} name of the table.
+     * @param values        Columns to update.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of rows updated.
+     */
+    private int updateTable(@NonNull SQLiteDatabase db, @NonNull String table,
+                            @NonNull ContentValues values, @Nullable String selection,
+                            @Nullable String[] selectionArgs) {
+        final long startNanos = ProductSlowQueryLog.start();
+        final int countRowsUpdated = db.update(table, values, selection, selectionArgs);
+        slowQueryLog.record(db, ProductSlowQueryLog.OPERATION_UPDATE,
+                "UPDATE " + table + " SET " + TextUtils.join("=?, ", values.keySet()) + "=?"
+                        + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection),
+                buildRowSearchQuery(table, selection), selectionArgs, countRowsUpdated, startNanos);
+        return countRowsUpdated;
+    }
+
+    /**
+     * Deletes the rows of a table matching a selection, and records the delete in
+     * {@link #slowQueryLog} if it was slow.
+     *
+     * @param db            Writable {@link SQLiteDatabase} to delete from.
+     * @param table         {@link String} name of the table.
+     * @param selection     A selection criteria to apply when filtering rows.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of rows deleted.
+     */
+    private int deleteFromTable(@NonNull SQLiteDatabase db, @NonNull String table,
+                                @Nullable String selection, @Nullable String[] selectionArgs) {
+        final long startNanos = ProductSlowQueryLog.start();
+        final int countRowsDeleted = db.delete(table, selection, selectionArgs);
+        slowQueryLog.record(db, ProductSlowQueryLog.OPERATION_DELETE,
+                "DELETE FROM " + table
+                        + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection),
+                buildRowSearchQuery(table, selection), selectionArgs, countRowsDeleted, startNanos);
+        return countRowsDeleted;
+    }
+
+    /**
+     * Returns a query finding the rows an update or delete with the passed selection changes, so
+     * its query plan shows how they are found.
+     */
+    @NonNull
+    private static String buildRowSearchQuery(@NonNull String table, @Nullable String selection) {
+        return SQLiteQueryBuilder.buildQueryString(false, table, new String[]{"rowid"},
+                selection, null, null, null, null);
+    }
+
+    /**
+     * Inserts a new variant of the product referred to by the passed content URI.
+     *
+     * @param uri    Content URI of the product's variants.
+     * @param values Size, color, and optional quantity of the variant.
+     * @return The content URI for the new variant. Is null if the values are invalid, the product
+     * does not exist, or the product already has a variant with the same size and color.
+     */
+    @Nullable
+    private Uri insertVariant(@NonNull Uri uri, @NonNull ContentValues values) {
+
+        // Return null if ContentValues are invalid.
+        if (!values.containsKey(VariantEntry.COLUMN_SIZE)
+                || !values.containsKey(VariantEntry.COLUMN_COLOR)
+                || !hasValidVariantValues(values)) {
+            return null;
+        }
+
+        final String productId = uri.getPathSegments().get(1);
+        values = new ContentValues(values);
+        values.put(VariantEntry.COLUMN_PRODUCT_ID, Long.parseLong(productId));
+
+        // Check that the product exists and insert in one transaction, so it cannot be deleted
+        // in between and leave the variant behind.
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        long insertId = -1;
+        db.beginTransaction();
+        try {
+            if (DatabaseUtils.queryNumEntries(db, ProductEntry.TABLE_NAME,
+                    ProductEntry._ID + "=?", new String[]{productId}) == 1) {
+                insertId = db.insert(VariantEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Return null if the insertion operation failed.
+        if (insertId == -1) {
+            return null;
+        }
+
+        notifyVariantChange();
+        return ContentUris.withAppendedId(VariantEntry.CONTENT_URI, insertId);
+    }
+
+    /**
+     * Updates the variants matching the passed content URI and selection.
+     *
+     * @param uri           Content URI of the update request.
+     * @param match         URI matcher code of the content URI.
+     * @param values        Columns of the variants to update.
+     * @param selection     A selection criteria to apply when filtering variants.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of variants updated. Is -1 if the update request failed.
+     */
+    private int updateVariants(@NonNull Uri uri, int match, @NonNull ContentValues values,
+                               @Nullable String selection, @Nullable String[] selectionArgs) {
+
+        // Return -1 if ContentValues are invalid.
+        if (!hasValidVariantValues(values)) {
+            return -1;
+        }
+
+        if (match == URI_CODE_SINGLE_VARIANT) {
+            selection = VariantEntry._ID + "=?";
+            selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
         }
 
+        int countRowsUpdated;
+        try {
+            countRowsUpdated = updateTable(
+                    productDbHelper.getWritableDatabase(),
+                    VariantEntry.TABLE_NAME,
+                    values,
+                    selection,
+                    selectionArgs
+            );
+        } catch (SQLiteConstraintException e) {
+
+            // Return -1 if the update would give two variants of a product the same size and color.
+            return -1;
+        }
+
+        if (countRowsUpdated > 0) {
+            notifyVariantChange();
+        }
+        return countRowsUpdated;
+    }
+
+    /**
+     * Deletes the variants matching the passed content URI and selection.
+     *
+     * @param uri           Content URI of the delete request.
+     * @param match         URI matcher code of the content URI.
+     * @param selection     A selection criteria to apply when filtering variants.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @return The number of variants deleted.
+     */
+    private int deleteVariants(@NonNull Uri uri, int match, @Nullable String selection,
+                               @Nullable String[] selectionArgs) {
+        if (match == URI_CODE_SINGLE_VARIANT) {
+            selection = VariantEntry._ID + "=?";
+            selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+        }
+
+        int countRowsDeleted = deleteFromTable(
+                productDbHelper.getWritableDatabase(),
+                VariantEntry.TABLE_NAME,
+                selection,
+                selectionArgs
+        );
+
+        if (countRowsDeleted > 0) {
+            notifyVariantChange();
+        }
         return countRowsDeleted;
     }
 
+    /**
+     * Notifies listeners of variants and of products, since a variant change also changes the
+     * rollup columns of its product.
+     */
+    private void notifyVariantChange() {
+        notifyChange(VariantEntry.CONTENT_URI);
+        notifyChange(ProductEntry.CONTENT_URI);
+    }
+
     /**
      * Returns true if a {@link ContentValues} is passed that can be put into this content provider.
      *
@@ -304,6 +1339,23 @@ public class ProductProvider extends ContentProvider {
      */
     private boolean hasValidContentValues(@NonNull ContentValues values) {
 
+        // Verify that no column maintained by this content provider is being set.
+        if (values.containsKey(ProductEntry.COLUMN_VERSION)
+                || values.containsKey(ProductEntry.COLUMN_DIRTY)
+                || values.containsKey(ProductEntry.COLUMN_VARIANT_COUNT)
+                || values.containsKey(ProductEntry.COLUMN_VARIANT_QUANTITY)
+                || values.containsKey(ProductEntry.COLUMN_UPDATED_AT)
+                || values.containsKey(ProductEntry.COLUMN_STOCK_VALUE)
+                || values.containsKey(ProductEntry.COLUMN_TOTAL_QUANTITY)
+                || values.containsKey(ProductEntry.COLUMN_AVAILABLE_QUANTITY)
+                || values.containsKey(ProductEntry.COLUMN_ARCHIVED)
+                || values.containsKey(ProductEntry.COLUMN_SALES_RATE)
+                || values.containsKey(ProductEntry.COLUMN_DAYS_OF_STOCK)
+                || values.containsKey(ProductEntry.COLUMN_REORDER_POINT)
+                || values.containsKey(ProductDbHelper.COLUMN_PICTURE_HASH)) {
+            return false;
+        }
+
         // Verify that the data in the name column is a nonempty String.
         if (values.containsKey(ProductContract.ProductEntry.COLUMN_NAME)) {
             Object name = values.get(ProductContract.ProductEntry.COLUMN_NAME);
@@ -348,6 +1400,1403 @@ public class ProductProvider extends ContentProvider {
             }
         }
 
+        // Verify that the data in the SKU column is null or a nonempty String.
+        if (values.containsKey(ProductEntry.COLUMN_SKU)) {
+            Object sku = values.get(ProductEntry.COLUMN_SKU);
+            if (sku != null
+                    && (!(sku instanceof String) || ((String) sku).isEmpty())) {
+                return false;
+            }
+        }
+
+        // Verify that the data in the globally unique id column is a nonempty String.
+        if (values.containsKey(ProductEntry.COLUMN_UUID)) {
+            Object uuid = values.get(ProductEntry.COLUMN_UUID);
+            if (!(uuid instanceof String) || ((String) uuid).isEmpty()) {
+                return false;
+            }
+        }
+
         return true;
     }
+
+    /**
+     * Returns true if a {@link ContentValues} is passed that can be put into a variant. The product
+     * a variant belongs to is set by its content URI and cannot be changed.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return Whether the {@link ContentValues} can be put into a variant.
+     */
+    private boolean hasValidVariantValues(@NonNull ContentValues values) {
+        for (String key : values.keySet()) {
+            Object value = values.get(key);
+            switch (key) {
+                case VariantEntry.COLUMN_SIZE:
+                case VariantEntry.COLUMN_COLOR:
+
+                    // Verify that the data in the size and color columns are nonempty Strings.
+                    if (!(value instanceof String) || ((String) value).isEmpty()) {
+                        return false;
+                    }
+                    break;
+                case VariantEntry.COLUMN_QUANTITY:
+
+                    // Verify that the data in the quantity column is a non-negative Integer.
+                    if (!(value instanceof Integer) || ((Integer) value) < 0) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a {@link ContentValues} is passed that has every column needed to insert a
+     * new product into this content provider.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return Whether the {@link ContentValues} has every column needed for an insert.
+     */
+    private boolean hasRequiredContentValues(@NonNull ContentValues values) {
+        return values.containsKey(ProductEntry.COLUMN_NAME)
+                && values.containsKey(ProductEntry.COLUMN_PRICE)
+                && values.containsKey(ProductEntry.COLUMN_QUANTITY)
+                && values.containsKey(ProductEntry.COLUMN_SUPPLIER)
+                && values.containsKey(ProductEntry.COLUMN_PICTURE);
+    }
+
+    /**
+     * Returns true if the passed content URI marks its request as coming from a sync adapter.
+     *
+     * @param uri Content URI of the request.
+     * @return Whether the request comes from a sync adapter.
+     */
+    private static boolean isCallerSyncAdapter(@NonNull Uri uri) {
+        return Boolean.parseBoolean(
+                uri.getQueryParameter(ProductContract.PARAM_CALLER_IS_SYNC_ADAPTER));
+    }
+
+    /**
+     * Returns the last change token handed out to a product write.
+     *
+     * @param db {@link SQLiteDatabase} to query.
+     * @return The last change token.
+     */
+    private static long currentVersion(@NonNull SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(
+                db, "SELECT value FROM " + ProductDbHelper.SYNC_COUNTER_TABLE_NAME, null);
+    }
+
+    /**
+     * Returns the SQL of a query of the first products of a named sort order. Every order ends in
+     * the id and matches an index of the products table, so SQLite walks the index and stops after
+     * the limit instead of sorting every matching product.
+     *
+     * @param sort       One of the SORT constants of {@link ProductEntry}.
+     * @param projection The list of columns to put into the cursor. If null, then all columns are
+     *                   included.
+     * @param selection  A selection criteria to apply when filtering rows. If null, then all rows
+     *                   are included.
+     * @param limit      {@link String} maximum number of rows to return. If null, then
+     *                   {@link ProductEntry#DEFAULT_TOP_LIMIT} rows are returned.
+     * @return The SQL of the query. Is null if the sort order is unknown or the limit is not a
+     * positive number.
+     */
+    @Nullable
+    private static String buildTopQuery(@Nullable String sort, @Nullable String[] projection,
+                                        @Nullable String selection, @Nullable String limit) {
+
+        // Return null if the limit is not a positive number.
+        if (limit == null) {
+            limit = String.valueOf(ProductEntry.DEFAULT_TOP_LIMIT);
+        } else if (TextUtils.isEmpty(limit) || !TextUtils.isDigitsOnly(limit)
+                || limit.replace("0", "").isEmpty()) {
+            return null;
+        }
+
+        // Return null if the sort order is unknown.
+        String orderBy;
+        if (ProductEntry.SORT_MOST_VALUABLE.equals(sort)) {
+            orderBy = ProductEntry.COLUMN_STOCK_VALUE + " DESC, " + ProductEntry._ID + " DESC";
+        } else if (ProductEntry.SORT_LOWEST_QUANTITY.equals(sort)) {
+            orderBy = ProductEntry.COLUMN_TOTAL_QUANTITY + " ASC, " + ProductEntry._ID + " ASC";
+        } else if (ProductEntry.SORT_MOST_EXPENSIVE.equals(sort)) {
+            orderBy = ProductEntry.COLUMN_PRICE + " DESC, " + ProductEntry._ID + " DESC";
+        } else {
+            return null;
+        }
+
+        return SQLiteQueryBuilder.buildQueryString(false, ProductDbHelper.PRODUCTS_VIEW_NAME,
+                projection, selection, null, null, orderBy, limit);
+    }
+
+    /**
+     * Returns the SQL of a query of the products expected to sell out within a horizon, soonest
+     * first. The stored sales velocity of each product is decayed by the whole days since its
+     * last sale, looked up in the decay table since SQLite has no exponential function, so a
+     * product that stopped selling drifts out of the results. Only the products table, the
+     * velocity table, and the decay table are read, never a sales history.
+     *
+     * @param projection  The list of columns to put into the cursor. If null, then all columns
+     *                    are included.
+     * @param selection   A selection criteria to apply when filtering rows. If null, then all
+     *                    rows are included.
+     * @param horizonDays {@link String} number of days of stock to cover. If null, then
+     *                    {@link ProductEntry#DEFAULT_REORDER_HORIZON_DAYS} is used.
+     * @param limit       {@link String} maximum number of rows to return. If null, then all
+     *                    matching products are returned.
+     * @return The SQL of the query. Is null if the horizon or the limit is not a number.
+     */
+    @Nullable
+    private static String buildReorderQuery(@Nullable String[] projection,
+                                            @Nullable String selection,
+                                            @Nullable String horizonDays, @Nullable String limit) {
+
+        // Return null if the horizon or the limit is not a positive number.
+        if (horizonDays == null) {
+            horizonDays = String.valueOf(ProductEntry.DEFAULT_REORDER_HORIZON_DAYS);
+        } else if (TextUtils.isEmpty(horizonDays) || !TextUtils.isDigitsOnly(horizonDays)) {
+            return null;
+        }
+        if (limit != null && (TextUtils.isEmpty(limit) || !TextUtils.isDigitsOnly(limit))) {
+            return null;
+        }
+
+        final String demand = ProductEntry.COLUMN_SALES_RATE + " * " + horizonDays;
+        final String decay = "IFNULL((SELECT " + ProductDbHelper.COLUMN_DECAY_FACTOR + " FROM "
+                + ProductDbHelper.SALES_VELOCITY_DECAY_TABLE_NAME + " WHERE "
+                + ProductDbHelper.COLUMN_DECAY_DAYS + " = MAX(0, (CAST(strftime('%s', 'now') AS "
+                + "INTEGER) * 1000 - " + ProductDbHelper.COLUMN_VELOCITY_OBSERVED_AT
+                + ") / 86400000)), 0)";
+        final String salesRates = "(SELECT " + ProductDbHelper.PRODUCTS_VIEW_NAME + ".*, "
+                + ProductDbHelper.COLUMN_VELOCITY_RATE + " * " + decay + " AS "
+                + ProductEntry.COLUMN_SALES_RATE
+                + " FROM " + ProductDbHelper.PRODUCTS_VIEW_NAME + " JOIN "
+                + ProductDbHelper.SALES_VELOCITY_TABLE_NAME + " ON "
+                + ProductDbHelper.COLUMN_VELOCITY_PRODUCT_ID + " = "
+                + ProductDbHelper.PRODUCTS_VIEW_NAME + "." + ProductEntry._ID
+                + " WHERE " + ProductDbHelper.COLUMN_VELOCITY_RATE + " > 0)";
+
+        // The reorder point is the demand over the horizon, rounded up to whole units.
+        final String forecasts = "(SELECT *, ("
+                + ProductEntry.COLUMN_QUANTITY + " + " + ProductEntry.COLUMN_VARIANT_QUANTITY
+                + ") / " + ProductEntry.COLUMN_SALES_RATE + " AS "
+                + ProductEntry.COLUMN_DAYS_OF_STOCK + ", "
+                + "CAST(" + demand + " AS INTEGER) + (" + demand + " > CAST(" + demand
+                + " AS INTEGER)) AS " + ProductEntry.COLUMN_REORDER_POINT
+                + " FROM " + salesRates + ")";
+
+        final String where = ProductEntry.COLUMN_DAYS_OF_STOCK + " <= " + horizonDays
+                + (TextUtils.isEmpty(selection) ? "" : " AND (" + selection + ")");
+        return SQLiteQueryBuilder.buildQueryString(false, forecasts, projection, where, null,
+                null, ProductEntry.COLUMN_DAYS_OF_STOCK + ", " + ProductEntry._ID, limit);
+    }
+
+    /**
+     * Returns the SQL of a query of the products and tombstones changed after a change token,
+     * ordered by version. Tombstone rows have null product columns other than the globally unique
+     * id, and a {@link ProductEntry#COLUMN_DELETED} value of 1. Its arguments are built by
+     * {@link #buildChangesArgs(long, String[])}.
+     *
+     * @param selection A selection criteria applied to both products and tombstones. It may only
+     *                  reference the id, globally unique id, version, and dirty columns. This
+     *                  value may be null.
+     * @param limit     {@link String} maximum number of rows to return. If null, then all
+     *                  changes are returned.
+     * @return The SQL of the query. Is null if the limit is not a number.
+     */
+    @Nullable
+    private static String buildChangesQuery(@Nullable String selection, @Nullable String limit) {
+
+        // Return null if the limit is not a positive number.
+        if (limit != null && (TextUtils.isEmpty(limit) || !TextUtils.isDigitsOnly(limit))) {
+            return null;
+        }
+
+        final String where = ProductEntry.COLUMN_VERSION + " > ?"
+                + (TextUtils.isEmpty(selection) ? "" : " AND (" + selection + ")");
+        return "SELECT "
+                + ProductEntry._ID + ", "
+                + ProductEntry.COLUMN_NAME + ", "
+                + ProductEntry.COLUMN_PRICE + ", "
+                + ProductEntry.COLUMN_QUANTITY + ", "
+                + ProductEntry.COLUMN_SUPPLIER + ", "
+                + ProductEntry.COLUMN_PICTURE + ", "
+                + ProductEntry.COLUMN_SKU + ", "
+                + ProductEntry.COLUMN_UUID + ", "
+                + ProductEntry.COLUMN_VERSION + ", "
+                + ProductEntry.COLUMN_DIRTY + ", "
+                + "0 AS " + ProductEntry.COLUMN_DELETED
+                + " FROM " + ProductDbHelper.PRODUCTS_VIEW_NAME + " WHERE " + where
+                + " UNION ALL SELECT "
+                + TombstoneEntry._ID + ", NULL, NULL, NULL, NULL, NULL, NULL, "
+                + TombstoneEntry.COLUMN_UUID + ", "
+                + TombstoneEntry.COLUMN_VERSION + ", "
+                + TombstoneEntry.COLUMN_DIRTY + ", 1"
+                + " FROM " + TombstoneEntry.TABLE_NAME + " WHERE " + where
+                + " ORDER BY " + ProductEntry.COLUMN_VERSION
+                + (limit == null ? "" : " LIMIT " + limit);
+    }
+
+    /**
+     * Returns the arguments of a query built by {@link #buildChangesQuery(String, String)}.
+     *
+     * @param sinceToken    Change token to query changes after.
+     * @param selectionArgs Arguments for the ?s in the selection. This value may be null.
+     * @return The arguments of the query.
+     */
+    @NonNull
+    private static String[] buildChangesArgs(long sinceToken, @Nullable String[] selectionArgs) {
+
+        // The same selection is bound once for each side of the union.
+        final int countSelectionArgs = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[2 * (countSelectionArgs + 1)];
+        for (int i = 0; i < 2; i++) {
+            int offset = i * (countSelectionArgs + 1);
+            args[offset] = String.valueOf(sinceToken);
+            if (countSelectionArgs > 0) {
+                System.arraycopy(selectionArgs, 0, args, offset + 1, countSelectionArgs);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Applies a batch of operations in a single database transaction, so either every operation
+     * is applied or none are. The transaction runs on the database of the store the operations'
+     * content URIs name, so every operation must target the same store. Listeners are notified
+     * once, after the batch commits.
+     *
+     * @param operations The operations to apply.
+     * @return The results of the applied operations.
+     * @throws OperationApplicationException If any operation fails, or the operations target an
+     *                                       invalid store or more than one store.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        // Throw if the operations do not all target the same valid store.
+        final long storeId = operations.isEmpty() ? StoreEntry.MAIN_STORE_ID
+                : getStoreId(operations.get(0).getUri());
+        for (ContentProviderOperation operation : operations) {
+            if (getStoreId(operation.getUri()) != storeId) {
+                throw new OperationApplicationException("Operations target more than one store");
+            }
+        }
+        if (storeId == INVALID_STORE_ID) {
+            throw new OperationApplicationException("Operations target an invalid store");
+        }
+
+        /* Lease the database of any store other than the main store for the length of the batch,
+         * so each operation runs on the same connection, inside the batch's transaction. */
+        ContentProviderResult[] results;
+        databaseLock.readLock().lock();
+        final ProductDbHelper dbHelper = storeId == StoreEntry.MAIN_STORE_ID
+                ? productDbHelper
+                : storePool.acquire(storeId);
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            isApplyingBatch.set(true);
+            db.beginTransaction();
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                isApplyingBatch.set(false);
+
+                // Results cached while the batch was uncommitted, or rolled back, are now stale.
+                generation.incrementAndGet();
+            }
+        } finally {
+            if (dbHelper != productDbHelper) {
+                storePool.release(storeId);
+            }
+            databaseLock.readLock().unlock();
+        }
+
+        if (!operations.isEmpty()) {
+            getContext().getContentResolver().notifyChange(getProductsUri(storeId), null);
+            getContext().getContentResolver().notifyChange(StoreEntry.CONTENT_SUMMARY_URI, null);
+        }
+        return results;
+    }
+
+    /**
+     * Calls a provider-defined method on this content provider. See
+     * {@link ProductContract#METHOD_MARK_CLEAN}, {@link ProductContract#METHOD_BACKUP},
+     * {@link ProductContract#METHOD_RESTORE}, {@link ProductContract#METHOD_ADJUST_QUANTITIES},
+     * {@link ProductContract#METHOD_LOOKUP_SKUS}, and {@link ProductContract#METHOD_REPRICE} for the
+     * supported methods. Each method runs on the store named by
+     * {@link ProductContract#EXTRA_STORE_ID}, or on the main store without it.
+     *
+     * @param method {@link String} name of the method to call.
+     * @param arg    {@link String} argument of the method.
+     * @param extras {@link Bundle} of extras for the method.
+     * @return A {@link Bundle} of results. Is null if the method, its argument, or its extras are
+     * not supported, if the extras name an invalid store or one the method does not run on, or if
+     * the method failed.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+
+        // Return null if the extras name an invalid store.
+        final long storeId = extras == null ? StoreEntry.MAIN_STORE_ID
+                : extras.getLong(ProductContract.EXTRA_STORE_ID, StoreEntry.MAIN_STORE_ID);
+        if (storeId < StoreEntry.MAIN_STORE_ID) {
+            return null;
+        }
+
+        // Restoring takes the write lock of databaseLock, so it must not hold the read lock.
+        if (method.equals(ProductContract.METHOD_RESTORE)) {
+            return arg == null || storeId != StoreEntry.MAIN_STORE_ID
+                    ? null
+                    : restore(Uri.parse(arg));
+        }
+
+        databaseLock.readLock().lock();
+        try {
+            return callHoldingLock(method, arg, extras, storeId);
+        } finally {
+            databaseLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@link #call(String, String, Bundle)} for every method except
+     * {@link ProductContract#METHOD_RESTORE} while holding the read lock of {@link #databaseLock}.
+     * Backups and the archive database only exist for the main store.
+     */
+    @Nullable
+    private Bundle callHoldingLock(@NonNull String method, @Nullable String arg,
+                                   @Nullable Bundle extras, long storeId) {
+        final boolean isMainStore = storeId == StoreEntry.MAIN_STORE_ID;
+        switch (method) {
+            case ProductContract.METHOD_MARK_CLEAN:
+                return runOnStore(storeId, dbHelper ->
+                        markClean(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_BACKUP:
+                return arg == null || !isMainStore ? null : backup(Uri.parse(arg));
+            case ProductContract.METHOD_ADJUST_QUANTITIES:
+                return arg == null ? null : runOnStore(storeId, dbHelper ->
+                        adjustQuantities(dbHelper.getWritableDatabase(), storeId, arg, extras));
+            case ProductContract.METHOD_LOOKUP_SKUS:
+                return runOnStore(storeId, dbHelper ->
+                        lookupSkus(dbHelper.getReadableDatabase(), extras));
+            case ProductContract.METHOD_REPRICE:
+                return extras == null ? null : runOnStore(storeId, dbHelper ->
+                        reprice(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_ARCHIVE:
+                return isMainStore ? archive(extras) : null;
+            case ProductContract.METHOD_RUN_MAINTENANCE:
+                return runOnStore(storeId, dbHelper ->
+                        runMaintenance(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_DUMP_SLOW_QUERIES:
+                return dumpSlowQueries(extras);
+            case ProductContract.METHOD_RESERVE:
+                return extras == null ? null : runOnStore(storeId, dbHelper ->
+                        reserve(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_RELEASE:
+                return extras == null ? null : runOnStore(storeId, dbHelper ->
+                        release(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_RECORD_SALE:
+                return extras == null ? null : runOnStore(storeId, dbHelper ->
+                        recordSale(dbHelper.getWritableDatabase(), storeId, extras));
+            case ProductContract.METHOD_BULK_READ:
+                return bulkRead(storeId, extras);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads products in bulk, either one chunk at a time or streamed through a pipe. See
+     * {@link ProductContract#METHOD_BULK_READ}.
+     *
+     * @param storeId Id of the store to read.
+     * @param extras {@link Bundle} optionally holding {@link ProductContract#EXTRA_SELECTION},
+     *               {@link ProductContract#EXTRA_SELECTION_ARGS}, and either
+     *               {@link ProductContract#EXTRA_STREAM} or {@link ProductContract#EXTRA_AFTER_ID}
+     *               and {@link ProductContract#EXTRA_MAX_BYTES}.
+     * @return A {@link Bundle} holding a chunk of products or the read side of the pipe. Is null if
+     * the extras are invalid, a single product does not fit in a chunk, or the pipe could not be
+     * created.
+     */
+    @Nullable
+    private Bundle bulkRead(long storeId, @Nullable Bundle extras) {
+        final Bundle options = extras == null ? Bundle.EMPTY : extras;
+        final String selection = options.getString(ProductContract.EXTRA_SELECTION);
+        final String[] selectionArgs = options.getStringArray(ProductContract.EXTRA_SELECTION_ARGS);
+
+        // Stream every product on a background thread, which stops if the reader closes the pipe.
+        if (options.getBoolean(ProductContract.EXTRA_STREAM)) {
+            final ParcelFileDescriptor[] pipe;
+            try {
+                pipe = ParcelFileDescriptor.createReliablePipe();
+            } catch (IOException e) {
+                return null;
+            }
+            new Thread(() -> streamBulkRead(storeId, selection, selectionArgs, pipe[1]),
+                    "ProductProvider bulk read").start();
+            Bundle result = new Bundle();
+            result.putParcelable(ProductContract.EXTRA_PIPE, pipe[0]);
+            return result;
+        }
+
+        // Return null if the extras are invalid.
+        final long afterId = options.getLong(ProductContract.EXTRA_AFTER_ID, 0);
+        final int maxBytes = options.getInt(ProductContract.EXTRA_MAX_BYTES,
+                ProductContract.DEFAULT_BULK_READ_BYTES);
+        if (afterId < 0 || maxBytes <= 0 || maxBytes > ProductContract.MAX_BULK_READ_BYTES) {
+            return null;
+        }
+
+        return runOnStore(storeId, dbHelper -> ProductBulkReader.readChunk(
+                dbHelper.getReadableDatabase(), selection, selectionArgs, afterId, maxBytes));
+    }
+
+    /**
+     * Streams every product matching a selection into the write side of a pipe, and closes it
+     * with an error if the products could not be read. The read lock of {@link #databaseLock} is
+     * held until the stream ends, so a restore waits for it, and any store other than the main
+     * store is leased as long.
+     *
+     * @param storeId       Id of the store to read.
+     * @param selection     A selection criteria over the products table.
+     * @param selectionArgs Arguments for the ?s in selection.
+     * @param sink          Write side of the pipe.
+     */
+    private void streamBulkRead(long storeId, @Nullable String selection,
+                                @Nullable String[] selectionArgs,
+                                @NonNull ParcelFileDescriptor sink) {
+        databaseLock.readLock().lock();
+        final ProductDbHelper dbHelper = storeId == StoreEntry.MAIN_STORE_ID
+                ? productDbHelper
+                : storePool.acquire(storeId);
+        try {
+            OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(sink);
+            ProductBulkReader.stream(dbHelper.getReadableDatabase(), selection, selectionArgs, out);
+            out.close();
+        } catch (IOException | SQLiteException e) {
+            try {
+                sink.closeWithError(String.valueOf(e.getMessage()));
+            } catch (IOException closeException) {
+
+                // The reader already closed its side of the pipe, so nobody is left to tell.
+            }
+        } finally {
+            if (dbHelper != productDbHelper) {
+                storePool.release(storeId);
+            }
+            databaseLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the report of {@link #slowQueryLog}, after applying the passed options.
+     *
+     * @param extras {@link Bundle} optionally holding {@link ProductContract#EXTRA_THRESHOLD_MILLIS}
+     *               and {@link ProductContract#EXTRA_CLEAR}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_REPORT} and the
+     * {@link ProductContract#EXTRA_COUNT} of operations in it. Is null if the threshold is
+     * negative.
+     */
+    @Nullable
+    private Bundle dumpSlowQueries(@Nullable Bundle extras) {
+        if (extras != null && extras.containsKey(ProductContract.EXTRA_THRESHOLD_MILLIS)) {
+
+            // Return null if the threshold is negative.
+            final long thresholdMillis = extras.getLong(ProductContract.EXTRA_THRESHOLD_MILLIS);
+            if (thresholdMillis < 0) {
+                return null;
+            }
+            slowQueryLog.setThresholdMillis(thresholdMillis);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, slowQueryLog.size());
+        result.putString(ProductContract.EXTRA_REPORT, slowQueryLog.buildReport());
+        if (extras != null && extras.getBoolean(ProductContract.EXTRA_CLEAR)) {
+            slowQueryLog.clear();
+        }
+        return result;
+    }
+
+    /**
+     * Prints the report of {@link #slowQueryLog}, such as for
+     * "adb shell dumpsys activity provider com.davidread.clothingstoreinventorytracker".
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.print(slowQueryLog.buildReport());
+    }
+
+    /**
+     * Writes a compressed snapshot of the products database to the passed content URI while this
+     * content provider keeps serving requests.
+     *
+     * @param destination Content URI to write the snapshot to.
+     * @return A {@link Bundle} holding the uncompressed {@link ProductContract#EXTRA_SIZE} of the
+     * snapshot. Is null if the backup failed.
+     */
+    @Nullable
+    private Bundle backup(@NonNull Uri destination) {
+        long size;
+        try {
+            OutputStream out = getContext().getContentResolver().openOutputStream(destination);
+            if (out == null) {
+                return null;
+            }
+            size = ProductBackup.backup(getContext(), productDbHelper.getWritableDatabase(), out);
+        } catch (IOException e) {
+            return null;
+        }
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_SIZE, size);
+        return result;
+    }
+
+    /**
+     * Replaces the products database with a snapshot read from the passed content URI. The
+     * snapshot is decompressed and validated next to the live database, which keeps serving
+     * requests meanwhile. The write lock of {@link #databaseLock} is then taken, which waits for
+     * every running request and sweep and holds back new ones, so nothing reopens the products
+     * database, or attaches it to the archive database, between closing it and moving the
+     * snapshot over it with a single rename. Cursors returned before the restore may fail when
+     * read past their first window.
+     *
+     * @param source Content URI to read the snapshot from.
+     * @return A {@link Bundle} holding the uncompressed {@link ProductContract#EXTRA_SIZE} of the
+     * restored database. Is null if the restore failed, in which case the live database is left
+     * untouched, or if the calling thread is inside another request.
+     */
+    @Nullable
+    private Bundle restore(@NonNull Uri source) {
+
+        // Return null rather than wait forever for the read lock this thread holds itself.
+        if (databaseLock.getReadHoldCount() > 0) {
+            return null;
+        }
+
+        File snapshot;
+        try {
+            InputStream in = getContext().getContentResolver().openInputStream(source);
+            if (in == null) {
+                return null;
+            }
+            snapshot = ProductBackup.prepareRestore(getContext(), in);
+            databaseLock.writeLock().lock();
+            try {
+                reservationScheduler.clear();
+                archiveDbHelper.close();
+                productDbHelper.close();
+                ProductBackup.swapIn(getContext(), snapshot);
+            } finally {
+
+                // Every product may have changed, and the holds in whichever database is now in
+                // place need releasing as they expire.
+                queryCache.clear();
+                reservationScheduler.load(productDbHelper);
+                databaseLock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        notifyChange(ProductEntry.CONTENT_URI);
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_SIZE,
+                getContext().getDatabasePath(ProductDbHelper.DB_NAME).length());
+        return result;
+    }
+
+    /**
+     * Moves sold out products nobody has written for a while into the archive database. The move
+     * runs on the archive database's own connection, so listeners are notified here once it is
+     * done.
+     *
+     * @param extras {@link Bundle} optionally holding {@link ProductContract#EXTRA_MAX_AGE_MILLIS}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of archived
+     * products. Is null if the extras are invalid or the move failed, in which case the products
+     * moved before the failure stay archived.
+     */
+    @Nullable
+    private Bundle archive(@Nullable Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final long defaultMaxAgeMillis = getDefaultArchiveMaxAgeMillis();
+        final long maxAgeMillis = extras == null ? defaultMaxAgeMillis
+                : extras.getLong(ProductContract.EXTRA_MAX_AGE_MILLIS, defaultMaxAgeMillis);
+        if (maxAgeMillis < 0) {
+            return null;
+        }
+
+        // Return null if the move failed.
+        final int countArchived = archiveProducts(maxAgeMillis, Long.MAX_VALUE);
+        if (countArchived == -1) {
+            return null;
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, countArchived);
+        return result;
+    }
+
+    /**
+     * Moves products that have been sold out for longer than the passed age into the archive
+     * database, and notifies listeners.
+     *
+     * @param maxAgeMillis   Time in milliseconds a sold out product must go without being
+     *                       written before it is moved.
+     * @param deadlineMillis {@link android.os.SystemClock#uptimeMillis()} after which no further
+     *                       chunk of products is moved.
+     * @return The number of products moved. Is -1 if the move failed, in which case the products
+     * moved before the failure stay archived.
+     */
+    private int archiveProducts(long maxAgeMillis, long deadlineMillis) {
+        int countArchived;
+        try {
+            countArchived = ProductArchive.archive(archiveDbHelper.getWritableDatabase(),
+                    System.currentTimeMillis() - maxAgeMillis, deadlineMillis);
+        } catch (SQLiteException e) {
+            countArchived = -1;
+        }
+
+        // Notify even after a failure, since earlier chunks may have been moved.
+        if (countArchived != 0) {
+            notifyChange(ProductEntry.CONTENT_URI);
+        }
+        return countArchived;
+    }
+
+    /**
+     * Returns the time in milliseconds a sold out product must go without being written before
+     * it is archived, unless a caller passes its own.
+     */
+    private long getDefaultArchiveMaxAgeMillis() {
+        return getContext().getResources().getInteger(R.integer.archive_after_days)
+                * 24L * 60 * 60 * 1000;
+    }
+
+    /**
+     * Runs one pass of database maintenance within a time budget. Archiving runs first, since it
+     * frees the pages the later tasks give back, and only on the main store, which is the only
+     * store with an archive database.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras {@link Bundle} optionally holding
+     *               {@link ProductContract#EXTRA_TIME_BUDGET_MILLIS}.
+     * @return A {@link Bundle} describing each task run, as described by
+     * {@link ProductContract#METHOD_RUN_MAINTENANCE}. Is null if the extras are invalid.
+     */
+    @Nullable
+    private Bundle runMaintenance(@NonNull SQLiteDatabase db, long storeId,
+                                  @Nullable Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final long budgetMillis = extras == null ? DEFAULT_MAINTENANCE_BUDGET_MILLIS
+                : extras.getLong(ProductContract.EXTRA_TIME_BUDGET_MILLIS,
+                DEFAULT_MAINTENANCE_BUDGET_MILLIS);
+        if (budgetMillis <= 0) {
+            return null;
+        }
+
+        ProductMaintenance maintenance = new ProductMaintenance(db, budgetMillis);
+        if (storeId == StoreEntry.MAIN_STORE_ID) {
+            maintenance.run(ProductMaintenance.TASK_ARCHIVE, () -> {
+                int countArchived = archiveProducts(getDefaultArchiveMaxAgeMillis(),
+                        maintenance.getDeadlineMillis());
+                return countArchived == -1 ? "failed" : countArchived + " products archived";
+            });
+        }
+        maintenance.runAll();
+        return maintenance.toBundle();
+    }
+
+    /**
+     * Holds units of a product, or of one of its variants, until the hold expires or is released.
+     * The units not yet held by the product or variant backing the hold are checked and the hold
+     * inserted in one transaction, so concurrent holds never take more units than are available,
+     * and each hold can be taken off the row it was checked against when it is fulfilled.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras {@link Bundle} holding {@link ProductContract#EXTRA_ID},
+     *               optionally {@link ProductContract#EXTRA_VARIANT_ID},
+     *               {@link ProductContract#EXTRA_QUANTITY}, and
+     *               {@link ProductContract#EXTRA_TTL_MILLIS}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_RESERVATION_ID} and
+     * {@link ProductContract#EXTRA_EXPIRES_AT}. Is null if the extras are invalid, the variant
+     * does not belong to the product, or the product or variant does not have enough units
+     * available.
+     */
+    @Nullable
+    private Bundle reserve(@NonNull SQLiteDatabase db, long storeId, @NonNull Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final long productId = extras.getLong(ProductContract.EXTRA_ID, -1);
+        final long variantId = extras.getLong(ProductContract.EXTRA_VARIANT_ID, -1);
+        final int quantity = extras.getInt(ProductContract.EXTRA_QUANTITY);
+        final long ttlMillis = extras.getLong(ProductContract.EXTRA_TTL_MILLIS);
+        if (productId < 0 || quantity <= 0 || ttlMillis <= 0) {
+            return null;
+        }
+
+        final long nowMillis = System.currentTimeMillis();
+        final long expiresAt = nowMillis + ttlMillis;
+        long reservationId = -1;
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = variantId < 0
+                    ? queryUnheldProductQuantity(db, productId, nowMillis)
+                    : queryUnheldVariantQuantity(db, productId, variantId, nowMillis)) {
+                if (cursor.moveToFirst() && cursor.getLong(0) >= quantity) {
+                    ContentValues values = new ContentValues();
+                    values.put(ProductDbHelper.COLUMN_RESERVATION_PRODUCT_ID, productId);
+                    if (variantId >= 0) {
+                        values.put(ProductDbHelper.COLUMN_RESERVATION_VARIANT_ID, variantId);
+                    }
+                    values.put(ProductDbHelper.COLUMN_RESERVATION_QUANTITY, quantity);
+                    values.put(ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT, expiresAt);
+                    reservationId = db.insert(ProductDbHelper.RESERVATIONS_TABLE_NAME, null, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Return null if the product or variant is missing or short of units.
+        if (reservationId == -1) {
+            return null;
+        }
+        if (storeId != StoreEntry.MAIN_STORE_ID) {
+            storesWithHolds.add(storeId);
+        }
+        reservationScheduler.schedule(expiresAt);
+        notifyChange(ContentUris.withAppendedId(getProductsUri(storeId), productId));
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_RESERVATION_ID, reservationId);
+        result.putLong(ProductContract.EXTRA_EXPIRES_AT, expiresAt);
+        return result;
+    }
+
+    /**
+     * Queries the units of a product's own quantity that are not held by an active hold, leaving
+     * out its variants, whose units are only held through the variants themselves.
+     *
+     * @param db        {@link SQLiteDatabase} holding the product.
+     * @param productId Id of the product.
+     * @param nowMillis Time in milliseconds since the epoch at which holds are active.
+     * @return A {@link Cursor} holding a single row with the number of units, or no row if the
+     * product does not exist.
+     */
+    @NonNull
+    private static Cursor queryUnheldProductQuantity(@NonNull SQLiteDatabase db, long productId,
+                                                     long nowMillis) {
+        return db.rawQuery("SELECT " + ProductEntry.COLUMN_QUANTITY + " - (SELECT IFNULL(SUM("
+                + ProductDbHelper.COLUMN_RESERVATION_QUANTITY + "), 0) FROM "
+                + ProductDbHelper.RESERVATIONS_TABLE_NAME + " WHERE "
+                + ProductDbHelper.COLUMN_RESERVATION_PRODUCT_ID + " = ? AND "
+                + ProductDbHelper.COLUMN_RESERVATION_VARIANT_ID + " IS NULL AND "
+                + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " > ?) FROM "
+                + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ?",
+                new String[]{String.valueOf(productId), String.valueOf(nowMillis),
+                        String.valueOf(productId)});
+    }
+
+    /**
+     * Queries the units of a variant's quantity that are not held by an active hold.
+     *
+     * @param db        {@link SQLiteDatabase} holding the variant.
+     * @param productId Id of the product the variant must belong to.
+     * @param variantId Id of the variant.
+     * @param nowMillis Time in milliseconds since the epoch at which holds are active.
+     * @return A {@link Cursor} holding a single row with the number of units, or no row if the
+     * variant does not exist or belongs to another product.
+     */
+    @NonNull
+    private static Cursor queryUnheldVariantQuantity(@NonNull SQLiteDatabase db, long productId,
+                                                     long variantId, long nowMillis) {
+        return db.rawQuery("SELECT " + VariantEntry.COLUMN_QUANTITY + " - (SELECT IFNULL(SUM("
+                + ProductDbHelper.COLUMN_RESERVATION_QUANTITY + "), 0) FROM "
+                + ProductDbHelper.RESERVATIONS_TABLE_NAME + " WHERE "
+                + ProductDbHelper.COLUMN_RESERVATION_VARIANT_ID + " = ? AND "
+                + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " > ?) FROM "
+                + VariantEntry.TABLE_NAME + " WHERE " + VariantEntry._ID + " = ? AND "
+                + VariantEntry.COLUMN_PRODUCT_ID + " = ?",
+                new String[]{String.valueOf(variantId), String.valueOf(nowMillis),
+                        String.valueOf(variantId), String.valueOf(productId)});
+    }
+
+    /**
+     * Releases a hold before it expires. If it is fulfilled, its units are sold: taken off the
+     * quantity of the variant or product they were held from and folded into the product's sales
+     * velocity.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras  {@link Bundle} holding {@link ProductContract#EXTRA_RESERVATION_ID} and
+     *                optionally {@link ProductContract#EXTRA_FULFILL}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of released holds
+     * and, for a fulfilled hold, the {@link ProductContract#EXTRA_QUANTITY} of units sold. Is null
+     * if the extras are invalid.
+     */
+    @Nullable
+    private Bundle release(@NonNull SQLiteDatabase db, long storeId, @NonNull Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final long reservationId = extras.getLong(ProductContract.EXTRA_RESERVATION_ID, -1);
+        if (reservationId < 0) {
+            return null;
+        }
+        final boolean fulfill = extras.getBoolean(ProductContract.EXTRA_FULFILL);
+
+        long productId = -1;
+        boolean isVariantHold = false;
+        long unitsSold = 0;
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = db.rawQuery("SELECT "
+                    + ProductDbHelper.COLUMN_RESERVATION_PRODUCT_ID + ", "
+                    + ProductDbHelper.COLUMN_RESERVATION_VARIANT_ID + ", "
+                    + ProductDbHelper.COLUMN_RESERVATION_QUANTITY + " FROM "
+                    + ProductDbHelper.RESERVATIONS_TABLE_NAME + " WHERE " + BaseColumns._ID
+                    + " = ? AND " + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " > ?",
+                    new String[]{String.valueOf(reservationId),
+                            String.valueOf(System.currentTimeMillis())})) {
+                if (cursor.moveToFirst()) {
+                    productId = cursor.getLong(0);
+                    isVariantHold = !cursor.isNull(1);
+                    db.delete(ProductDbHelper.RESERVATIONS_TABLE_NAME, BaseColumns._ID + " = ?",
+                            new String[]{String.valueOf(reservationId)});
+
+                    /* Quantities edited down while the hold was active may no longer cover it, so
+                     * only the units still in stock are sold, and their number is returned. A
+                     * variant's units reach its product through the rollup triggers. */
+                    if (fulfill && isVariantHold) {
+                        unitsSold = Math.min(cursor.getLong(2), DatabaseUtils.longForQuery(db,
+                                "SELECT IFNULL(MAX(" + VariantEntry.COLUMN_QUANTITY + "), 0) FROM "
+                                        + VariantEntry.TABLE_NAME + " WHERE " + VariantEntry._ID
+                                        + " = ?",
+                                new String[]{String.valueOf(cursor.getLong(1))}));
+                        db.execSQL("UPDATE " + VariantEntry.TABLE_NAME + " SET "
+                                + VariantEntry.COLUMN_QUANTITY + " = "
+                                + VariantEntry.COLUMN_QUANTITY + " - ? WHERE "
+                                + VariantEntry._ID + " = ?",
+                                new Object[]{unitsSold, cursor.getLong(1)});
+                    } else if (fulfill) {
+                        unitsSold = Math.min(cursor.getLong(2), DatabaseUtils.longForQuery(db,
+                                "SELECT IFNULL(MAX(" + ProductEntry.COLUMN_QUANTITY + "), 0) FROM "
+                                        + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID
+                                        + " = ?",
+                                new String[]{String.valueOf(productId)}));
+                        db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                                + ProductEntry.COLUMN_QUANTITY + " = "
+                                + ProductEntry.COLUMN_QUANTITY + " - ?, "
+                                + ProductEntry.COLUMN_DIRTY + " = 1 WHERE "
+                                + ProductEntry._ID + " = ?",
+                                new Object[]{unitsSold, productId});
+                    }
+                    if (unitsSold > 0) {
+                        recordSalesVelocity(db, productId, unitsSold, System.currentTimeMillis());
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (isVariantHold) {
+            notifyVariantChange();
+        } else if (productId != -1) {
+            notifyChange(ContentUris.withAppendedId(getProductsUri(storeId), productId));
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, productId == -1 ? 0 : 1);
+        if (fulfill) {
+            result.putInt(ProductContract.EXTRA_QUANTITY, (int) unitsSold);
+        }
+        return result;
+    }
+
+    /**
+     * Sells units of a product, or of one of its variants. The units not held by an active hold
+     * are checked, taken off the quantity, and folded into the product's sales velocity in one
+     * transaction, so a sale never takes units held for someone else.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras  {@link Bundle} holding {@link ProductContract#EXTRA_ID},
+     *                optionally {@link ProductContract#EXTRA_VARIANT_ID}, and
+     *                {@link ProductContract#EXTRA_QUANTITY}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of sold rows. Is
+     * null if the extras are invalid, the variant does not belong to the product, or the product
+     * or variant does not have enough units available.
+     */
+    @Nullable
+    private Bundle recordSale(@NonNull SQLiteDatabase db, long storeId, @NonNull Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final long productId = extras.getLong(ProductContract.EXTRA_ID, -1);
+        final long variantId = extras.getLong(ProductContract.EXTRA_VARIANT_ID, -1);
+        final int quantity = extras.getInt(ProductContract.EXTRA_QUANTITY);
+        if (productId < 0 || quantity <= 0) {
+            return null;
+        }
+
+        final long nowMillis = System.currentTimeMillis();
+        boolean isSold;
+        db.beginTransaction();
+        try {
+            try (Cursor cursor = variantId < 0
+                    ? queryUnheldProductQuantity(db, productId, nowMillis)
+                    : queryUnheldVariantQuantity(db, productId, variantId, nowMillis)) {
+                isSold = cursor.moveToFirst() && cursor.getLong(0) >= quantity;
+            }
+            if (isSold && variantId >= 0) {
+                db.execSQL("UPDATE " + VariantEntry.TABLE_NAME + " SET "
+                        + VariantEntry.COLUMN_QUANTITY + " = "
+                        + VariantEntry.COLUMN_QUANTITY + " - ? WHERE "
+                        + VariantEntry._ID + " = ?",
+                        new Object[]{quantity, variantId});
+            } else if (isSold) {
+                db.execSQL("UPDATE " + ProductEntry.TABLE_NAME + " SET "
+                        + ProductEntry.COLUMN_QUANTITY + " = "
+                        + ProductEntry.COLUMN_QUANTITY + " - ?, "
+                        + ProductEntry.COLUMN_DIRTY + " = 1 WHERE "
+                        + ProductEntry._ID + " = ?",
+                        new Object[]{quantity, productId});
+            }
+            if (isSold) {
+                recordSalesVelocity(db, productId, quantity, nowMillis);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // Return null if the product or variant is missing or short of units.
+        if (!isSold) {
+            return null;
+        }
+        if (variantId >= 0) {
+            notifyVariantChange();
+        } else {
+            notifyChange(ContentUris.withAppendedId(getProductsUri(storeId), productId));
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, 1);
+        return result;
+    }
+
+    /**
+     * Folds a sale into a product's sales velocity, as computed by
+     * {@link #foldSale(double, long, double)}. SQLite has no exponential function, so the average
+     * is computed here rather than in a trigger.
+     *
+     * @param db        Writable {@link SQLiteDatabase} holding the product.
+     * @param productId Id of the product.
+     * @param units     Number of units sold.
+     * @param nowMillis Time in milliseconds since the epoch of the sale.
+     */
+    private static void recordSalesVelocity(@NonNull SQLiteDatabase db, long productId,
+                                            long units, long nowMillis) {
+        final String where = ProductDbHelper.COLUMN_VELOCITY_PRODUCT_ID + " = ?";
+        final String[] whereArgs = {String.valueOf(productId)};
+        double rate;
+        long observedAt;
+        try (Cursor cursor = db.query(ProductDbHelper.SALES_VELOCITY_TABLE_NAME,
+                new String[]{ProductDbHelper.COLUMN_VELOCITY_RATE,
+                        ProductDbHelper.COLUMN_VELOCITY_OBSERVED_AT},
+                where, whereArgs, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            rate = cursor.getDouble(0);
+            observedAt = cursor.getLong(1);
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(ProductDbHelper.COLUMN_VELOCITY_RATE,
+                foldSale(rate, units, Math.max(0, nowMillis - observedAt) / 86400000.0));
+        values.put(ProductDbHelper.COLUMN_VELOCITY_OBSERVED_AT, nowMillis);
+        db.update(ProductDbHelper.SALES_VELOCITY_TABLE_NAME, values, where, whereArgs);
+    }
+
+    /**
+     * Returns a sales velocity with a sale folded in. The velocity is an exponentially weighted
+     * moving average of units sold per day over a window of {@code w} days: the units sold are
+     * spread over the {@code t} days since the previous sale, and that rate is weighted by how
+     * much of the window has passed, giving {@code rate * e^(-t/w) + units * (1 - e^(-t/w)) / t}.
+     * Sales made at a steady rate therefore settle at that rate. Sales made at the same instant
+     * each add {@code units / w}, the limit as {@code t} goes to 0.
+     *
+     * @param rate  Velocity in units per day as of the previous sale.
+     * @param units Number of units sold.
+     * @param days  Days since the previous sale.
+     * @return The velocity in units per day as of this sale.
+     */
+    private static double foldSale(double rate, long units, double days) {
+        final double window = ProductDbHelper.SALES_VELOCITY_WINDOW_DAYS;
+        if (days <= 0) {
+            return rate + units / window;
+        }
+        final double weight = -Math.expm1(-days / window);
+        return rate * (1 - weight) + units * weight / days;
+    }
+
+    /**
+     * Deletes every reservation that expired at or before the passed time from the main store and
+     * every store in {@link #storesWithHolds}, called by {@link #reservationScheduler} on its
+     * background thread. Expired holds another store took before this content provider started
+     * are deleted once that store takes a new hold.
+     *
+     * @param nowMillis Time in milliseconds since the epoch.
+     */
+    private void releaseExpiredReservations(long nowMillis) {
+        releaseExpiredStoreReservations(StoreEntry.MAIN_STORE_ID, nowMillis);
+        for (long storeId : storesWithHolds) {
+            releaseExpiredStoreReservations(storeId, nowMillis);
+        }
+    }
+
+    /**
+     * Deletes every reservation of a store that expired at or before the passed time.
+     *
+     * @param storeId   Id of the store.
+     * @param nowMillis Time in milliseconds since the epoch.
+     */
+    private void releaseExpiredStoreReservations(long storeId, long nowMillis) {
+        int countReleased;
+        try {
+            countReleased = runOnStore(storeId, dbHelper -> deleteFromTable(
+                    dbHelper.getWritableDatabase(),
+                    ProductDbHelper.RESERVATIONS_TABLE_NAME,
+                    ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " <= ?",
+                    new String[]{String.valueOf(nowMillis)}));
+        } catch (SQLiteException e) {
+
+            // Expired holds are already left out of available quantities, and the next sweep
+            // deletes them.
+            return;
+        }
+        if (countReleased > 0) {
+            notifyChange(getProductsUri(storeId));
+        }
+    }
+
+    /**
+     * Clears the dirty flag of the products and tombstones described by the passed extras in a
+     * single transaction. A row is only cleared while its version matches the pushed version.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras {@link Bundle} holding {@link ProductContract#EXTRA_IDS} and
+     *               {@link ProductContract#EXTRA_VERSIONS}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of cleared rows. Is
+     * null if the extras are invalid.
+     */
+    @Nullable
+    private Bundle markClean(@NonNull SQLiteDatabase db, long storeId, @Nullable Bundle extras) {
+
+        // Return null if the extras are invalid.
+        long[] ids = extras == null ? null : extras.getLongArray(ProductContract.EXTRA_IDS);
+        long[] versions = extras == null ? null : extras.getLongArray(ProductContract.EXTRA_VERSIONS);
+        if (ids == null || versions == null || ids.length != versions.length) {
+            return null;
+        }
+
+        ContentValues clean = new ContentValues();
+        clean.put(ProductEntry.COLUMN_DIRTY, 0);
+        final String where = ProductEntry._ID + "=? AND " + ProductEntry.COLUMN_VERSION + "=?";
+        int countRowsCleaned = 0;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                String[] whereArgs = {String.valueOf(ids[i]), String.valueOf(versions[i])};
+                countRowsCleaned += db.update(ProductEntry.TABLE_NAME, clean, where, whereArgs);
+                countRowsCleaned += db.update(TombstoneEntry.TABLE_NAME, clean, where, whereArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (countRowsCleaned > 0) {
+            notifyChange(getProductsUri(storeId));
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, countRowsCleaned);
+        return result;
+    }
+
+    /**
+     * Adds a delta to the quantity of several products in a single transaction, unless the batch
+     * was already applied. Quantities stop at 0 to keep them non-negative, so the deltas actually
+     * applied are returned for the caller to show in place of the ones it asked for.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param batchId {@link String} id that is unique to this batch.
+     * @param extras  {@link Bundle} holding {@link ProductContract#EXTRA_IDS} and
+     *                {@link ProductContract#EXTRA_DELTAS}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of updated rows, the
+     * {@link ProductContract#EXTRA_DELTAS} applied to each product, and the
+     * {@link ProductContract#EXTRA_GENERATION} after the batch. Is null if the extras are invalid.
+     */
+    @Nullable
+    private Bundle adjustQuantities(@NonNull SQLiteDatabase db, long storeId,
+                                    @NonNull String batchId, @Nullable Bundle extras) {
+
+        // Return null if the extras are invalid.
+        long[] ids = extras == null ? null : extras.getLongArray(ProductContract.EXTRA_IDS);
+        int[] deltas = extras == null ? null : extras.getIntArray(ProductContract.EXTRA_DELTAS);
+        if (ids == null || deltas == null || ids.length != deltas.length) {
+            return null;
+        }
+
+        int countRowsUpdated = 0;
+        final int[] appliedDeltas = new int[ids.length];
+        db.beginTransaction();
+        try {
+            boolean isApplied = DatabaseUtils.queryNumEntries(
+                    db,
+                    ProductDbHelper.STOCK_EDIT_BATCHES_TABLE_NAME,
+                    ProductDbHelper.COLUMN_BATCH_ID + "=?",
+                    new String[]{batchId}
+            ) > 0;
+            if (!isApplied) {
+
+                // Cut each decrease short at the product's quantity, and remember what was applied.
+                SQLiteStatement select = db.compileStatement("SELECT "
+                        + ProductEntry.COLUMN_QUANTITY + " FROM " + ProductEntry.TABLE_NAME
+                        + " WHERE " + ProductEntry._ID + " = ?");
+                SQLiteStatement update = db.compileStatement("UPDATE "
+                        + ProductEntry.TABLE_NAME + " SET "
+                        + ProductEntry.COLUMN_QUANTITY + " = "
+                        + ProductEntry.COLUMN_QUANTITY + " + ?, "
+                        + ProductEntry.COLUMN_DIRTY + " = 1 WHERE "
+                        + ProductEntry._ID + " = ?");
+                for (int i = 0; i < ids.length; i++) {
+                    select.bindLong(1, ids[i]);
+                    long quantity;
+                    try {
+                        quantity = select.simpleQueryForLong();
+                    } catch (SQLiteDoneException e) {
+
+                        // The product is gone, so nothing is applied to it.
+                        continue;
+                    }
+                    appliedDeltas[i] = (int) Math.max(deltas[i], -quantity);
+                    update.bindLong(1, appliedDeltas[i]);
+                    update.bindLong(2, ids[i]);
+                    countRowsUpdated += update.executeUpdateDelete();
+                }
+                select.close();
+                update.close();
+
+                // Remember the batch, and forget batches too old to still be resent.
+                ContentValues batch = new ContentValues();
+                batch.put(ProductDbHelper.COLUMN_BATCH_ID, batchId);
+                batch.put(ProductDbHelper.COLUMN_BATCH_APPLIED_AT, System.currentTimeMillis());
+                db.insert(ProductDbHelper.STOCK_EDIT_BATCHES_TABLE_NAME, null, batch);
+                db.delete(
+                        ProductDbHelper.STOCK_EDIT_BATCHES_TABLE_NAME,
+                        ProductDbHelper.COLUMN_BATCH_APPLIED_AT + " < ?",
+                        new String[]{String.valueOf(
+                                System.currentTimeMillis() - STOCK_EDIT_BATCH_RETENTION_MILLIS)}
+                );
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (countRowsUpdated > 0) {
+            notifyChange(getProductsUri(storeId));
+        }
+
+        // A batch applied before adds nothing now, and its deltas are already in queried data.
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, countRowsUpdated);
+        result.putIntArray(ProductContract.EXTRA_DELTAS, appliedDeltas);
+        result.putLong(ProductContract.EXTRA_GENERATION, generation.get());
+        return result;
+    }
+
+    /**
+     * Resolves SKUs to product ids with one indexed query per {@link #MAX_SKUS_PER_QUERY} SKUs.
+     *
+     * @param db     Readable {@link SQLiteDatabase} of the store.
+     * @param extras {@link Bundle} holding the {@link ProductContract#EXTRA_SKUS} to resolve.
+     * @return A {@link Bundle} holding {@link ProductContract#EXTRA_IDS} in the order of the SKUs,
+     * with -1 for each SKU that matches no product. Is null if the extras are invalid.
+     */
+    @Nullable
+    private Bundle lookupSkus(@NonNull SQLiteDatabase db, @Nullable Bundle extras) {
+
+        // Return null if the extras are invalid.
+        String[] skus = extras == null ? null : extras.getStringArray(ProductContract.EXTRA_SKUS);
+        if (skus == null) {
+            return null;
+        }
+
+        // Map each distinct SKU to the positions it was passed at.
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < skus.length; i++) {
+            if (skus[i] != null) {
+                List<Integer> skuPositions = positions.get(skus[i]);
+                if (skuPositions == null) {
+                    skuPositions = new ArrayList<>(1);
+                    positions.put(skus[i], skuPositions);
+                }
+                skuPositions.add(i);
+            }
+        }
+
+        long[] ids = new long[skus.length];
+        Arrays.fill(ids, -1);
+        String[] distinctSkus = positions.keySet().toArray(new String[0]);
+        for (int start = 0; start < distinctSkus.length; start += MAX_SKUS_PER_QUERY) {
+            String[] chunk = Arrays.copyOfRange(distinctSkus, start,
+                    Math.min(distinctSkus.length, start + MAX_SKUS_PER_QUERY));
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.length; i++) {
+                placeholders.append(i == 0 ? "?" : ",?");
+            }
+            try (Cursor cursor = db.query(
+                    ProductEntry.TABLE_NAME,
+                    new String[]{ProductEntry._ID, ProductEntry.COLUMN_SKU},
+                    ProductEntry.COLUMN_SKU + " IN (" + placeholders + ")",
+                    chunk,
+                    null,
+                    null,
+                    null
+            )) {
+                while (cursor.moveToNext()) {
+                    for (int position : positions.get(cursor.getString(1))) {
+                        ids[position] = cursor.getLong(0);
+                    }
+                }
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(ProductContract.EXTRA_IDS, ids);
+        return result;
+    }
+
+    /**
+     * Reprices every product matching a selection with a single UPDATE. The new prices are
+     * checked against the non-negative price rule with one aggregate query in the same
+     * transaction, so either every matching product is repriced or none is. Products whose price
+     * does not change are not written, so they keep their version and are not synced.
+     *
+     * @param db      Writable {@link SQLiteDatabase} of the store.
+     * @param storeId Id of the store.
+     * @param extras {@link Bundle} holding the selection, percent, delta, and rounding rule
+     *               described by {@link ProductContract#METHOD_REPRICE}.
+     * @return A {@link Bundle} holding the {@link ProductContract#EXTRA_COUNT} of repriced
+     * products. Is null if the extras are invalid or a price would become negative.
+     */
+    @Nullable
+    private Bundle reprice(@NonNull SQLiteDatabase db, long storeId, @NonNull Bundle extras) {
+
+        // Return null if the extras are invalid.
+        final double percent = extras.getDouble(ProductContract.EXTRA_PERCENT, 0);
+        final long delta = extras.getLong(ProductContract.EXTRA_DELTA, 0);
+        if (Double.isNaN(percent) || Double.isInfinite(percent)) {
+            return null;
+        }
+        final String newPrice = buildRepriceExpression(
+                1 + percent / 100,
+                delta,
+                extras.getString(ProductContract.EXTRA_ROUNDING, ProductContract.ROUNDING_NEAREST)
+        );
+        if (newPrice == null) {
+            return null;
+        }
+
+        // Only touch matching products whose price actually changes.
+        final String selection = DatabaseUtils.concatenateWhere(
+                extras.getString(ProductContract.EXTRA_SELECTION),
+                ProductEntry.COLUMN_PRICE + " != " + newPrice
+        );
+        final String[] selectionArgs = extras.getStringArray(ProductContract.EXTRA_SELECTION_ARGS);
+
+        int countRowsUpdated;
+        db.beginTransaction();
+        try {
+
+            // Return null if any new price would be negative.
+            if (DatabaseUtils.queryNumEntries(db, ProductEntry.TABLE_NAME,
+                    DatabaseUtils.concatenateWhere(selection, newPrice + " < 0"), selectionArgs) > 0) {
+                return null;
+            }
+
+            SQLiteStatement statement = db.compileStatement("UPDATE " + ProductEntry.TABLE_NAME
+                    + " SET " + ProductEntry.COLUMN_PRICE + " = " + newPrice + ", "
+                    + ProductEntry.COLUMN_DIRTY + " = 1 WHERE " + selection);
+            if (selectionArgs != null) {
+                statement.bindAllArgsAsStrings(selectionArgs);
+            }
+            countRowsUpdated = statement.executeUpdateDelete();
+            statement.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (countRowsUpdated > 0) {
+            notifyChange(getProductsUri(storeId));
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(ProductContract.EXTRA_COUNT, countRowsUpdated);
+        return result;
+    }
+
+    /**
+     * Returns a SQL expression computing a product's new price in cents from its price column.
+     * Only numbers built here are put into the expression, so it is safe to inline.
+     *
+     * @param factor   Factor to scale the price by.
+     * @param delta    Cents to add after scaling.
+     * @param rounding One of the ROUNDING values of {@link ProductContract}.
+     * @return The SQL expression. Is null if the rounding rule is unknown.
+     */
+    @Nullable
+    private static String buildRepriceExpression(double factor, long delta, @NonNull String rounding) {
+        final String exact = "(" + ProductEntry.COLUMN_PRICE + " * " + factor + " + " + delta + ")";
+        switch (rounding) {
+            case ProductContract.ROUNDING_NEAREST:
+                return "CAST(ROUND(" + exact + ") AS INTEGER)";
+            case ProductContract.ROUNDING_DOWN:
+                return "(CAST(" + exact + " AS INTEGER) - (" + exact + " < CAST(" + exact + " AS INTEGER)))";
+            case ProductContract.ROUNDING_UP:
+                return "(CAST(" + exact + " AS INTEGER) + (" + exact + " > CAST(" + exact + " AS INTEGER)))";
+            case ProductContract.ROUNDING_ENDING_99:
+
+                /* A price under 50 cents rounds to 0 dollars, and so would end up at -1 and fail
+                 * the whole reprice, so it is left as it is. A negative price still fails. */
+                return "(CASE WHEN " + exact + " < 0 THEN -1 WHEN " + exact + " < 50 THEN "
+                        + ProductEntry.COLUMN_PRICE + " ELSE CAST(ROUND(" + exact
+                        + " / 100.0) AS INTEGER) * 100 - 1 END)";
+            default:
+                return null;
+        }
+    }
 }
@@ -0,0 +1,351 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ProductQueryCache} is a class that caches the results of {@link ProductProvider} queries
+ * as immutable in-memory snapshots. Every cached {@link Cursor} is a lightweight view over a shared
+ * snapshot, so repeated queries neither touch SQLite nor copy rows. Each snapshot is tagged with
+ * the table generation it was read at and is dropped once a write bumps the generation, or once
+ * the time its values stop being current has passed, such as when a hold expires and changes the
+ * available quantities it holds. The least recently used snapshots are evicted to stay under a
+ * memory ceiling.
+ */
+final class ProductQueryCache {
+
+    /**
+     * Estimated memory overhead in bytes of a row and a single value.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 32;
+    private static final int VALUE_OVERHEAD_BYTES = 16;
+
+    /**
+     * Number of rows read before the size of a whole snapshot is estimated from them.
+     */
+    private static final int SAMPLE_ROWS = 16;
+
+    /**
+     * Maximum estimated memory in bytes taken by cached snapshots.
+     */
+    private final long maxBytes;
+
+    /**
+     * Cached snapshots in least recently used order.
+     */
+    private final LinkedHashMap<QueryKey, Snapshot> snapshots =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Estimated memory in bytes taken by {@link #snapshots}.
+     */
+    private long currentBytes = 0;
+
+    /**
+     * Constructs a new {@link ProductQueryCache}.
+     *
+     * @param maxBytes Maximum estimated memory in bytes taken by cached snapshots. Is 0 to disable
+     *                 caching.
+     */
+    ProductQueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a {@link Cursor} over the cached results of a query, if they were read at the
+     * current table generation and are still current.
+     *
+     * @param key        {@link QueryKey} of the query.
+     * @param generation Current table generation.
+     * @param nowMillis  Current time in milliseconds since the epoch.
+     * @return A new {@link Cursor} over the cached results. Is null if there are none.
+     */
+    @Nullable
+    synchronized Cursor get(@NonNull QueryKey key, long generation, long nowMillis) {
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            return null;
+        }
+        if (snapshot.generation != generation || nowMillis >= snapshot.validUntilMillis) {
+            snapshots.remove(key);
+            currentBytes -= snapshot.sizeBytes;
+            return null;
+        }
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Caches the results of a query read at the passed table generation.
+     *
+     * @param key              {@link QueryKey} of the query.
+     * @param generation       Table generation read before the query ran.
+     * @param validUntilMillis Time in milliseconds since the epoch from which the results may
+     *                         differ without a write. Is {@link Long#MAX_VALUE} if only writes
+     *                         change them.
+     * @param cursor           {@link Cursor} holding the results. It is closed if it gets cached.
+     * @return A {@link Cursor} over the cached results, or the passed {@link Cursor} rewound to its
+     * start if the results are too big to cache.
+     */
+    @NonNull
+    Cursor put(@NonNull QueryKey key, long generation, long validUntilMillis,
+               @NonNull Cursor cursor) {
+        if (maxBytes <= 0) {
+            return cursor;
+        }
+
+        // Give up without reading a row if even the overhead of the rows outgrows the ceiling.
+        final int countColumns = cursor.getColumnCount();
+        final int countRows = cursor.getCount();
+        if ((long) countRows * (ROW_OVERHEAD_BYTES + (long) countColumns * VALUE_OVERHEAD_BYTES)
+                > maxBytes) {
+            return cursor;
+        }
+
+        /* Read every row, giving up as soon as the snapshot outgrows the ceiling, or once the
+         * first rows show the whole snapshot would, so large results are not copied in vain. */
+        final int countSampleRows = Math.min(countRows, SAMPLE_ROWS);
+        final Object[][] rows = new Object[countRows][];
+        long sizeBytes = 0;
+        for (int row = 0; cursor.moveToPosition(row); row++) {
+            Object[] values = new Object[countColumns];
+            sizeBytes += ROW_OVERHEAD_BYTES;
+            for (int column = 0; column < countColumns; column++) {
+                values[column] = readValue(cursor, column);
+                sizeBytes += estimateBytes(values[column]);
+            }
+            rows[row] = values;
+            if (sizeBytes > maxBytes || (row + 1 == countSampleRows
+                    && sizeBytes / countSampleRows * countRows > maxBytes)) {
+                cursor.moveToPosition(-1);
+                return cursor;
+            }
+        }
+        Snapshot snapshot = new Snapshot(cursor.getColumnNames(), rows, generation,
+                validUntilMillis, sizeBytes);
+        cursor.close();
+
+        synchronized (this) {
+            Snapshot previous = snapshots.put(key, snapshot);
+            if (previous != null) {
+                currentBytes -= previous.sizeBytes;
+            }
+            currentBytes += sizeBytes;
+            evict(generation);
+        }
+        return new SnapshotCursor(snapshot);
+    }
+
+    /**
+     * Drops every cached snapshot.
+     */
+    synchronized void clear() {
+        snapshots.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Drops snapshots from older generations, and then the least recently used snapshots until
+     * the cache is under its ceiling.
+     *
+     * @param generation Current table generation.
+     */
+    private void evict(long generation) {
+        Iterator<Map.Entry<QueryKey, Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Snapshot snapshot = iterator.next().getValue();
+            if (snapshot.generation < generation) {
+                iterator.remove();
+                currentBytes -= snapshot.sizeBytes;
+            }
+        }
+        iterator = snapshots.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            currentBytes -= iterator.next().getValue().sizeBytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Reads the value of a column at the current position of a {@link Cursor} as a {@link Long},
+     * {@link Double}, {@link String}, byte array, or null.
+     */
+    @Nullable
+    private static Object readValue(@NonNull Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the estimated memory in bytes taken by a value read by
+     * {@link #readValue(Cursor, int)}.
+     */
+    private static long estimateBytes(@Nullable Object value) {
+        if (value instanceof String) {
+            return VALUE_OVERHEAD_BYTES + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return VALUE_OVERHEAD_BYTES + ((byte[]) value).length;
+        } else {
+            return VALUE_OVERHEAD_BYTES;
+        }
+    }
+
+    /**
+     * {@link Snapshot} is a model class that holds the immutable results of a query.
+     */
+    private static final class Snapshot {
+
+        private final String[] columnNames;
+        private final Object[][] rows;
+        private final long generation;
+        private final long validUntilMillis;
+        private final long sizeBytes;
+
+        Snapshot(String[] columnNames, Object[][] rows, long generation, long validUntilMillis,
+                 long sizeBytes) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+            this.generation = generation;
+            this.validUntilMillis = validUntilMillis;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    /**
+     * {@link SnapshotCursor} is a read-only {@link Cursor} over a shared {@link Snapshot}. Blobs are
+     * copied on read so callers cannot change the shared snapshot.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+
+        private final Snapshot snapshot;
+
+        SnapshotCursor(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int getCount() {
+            return snapshot.rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return snapshot.columnNames;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof String) {
+                return FIELD_TYPE_STRING;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            } else {
+                return FIELD_TYPE_NULL;
+            }
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return null;
+            } else if (value instanceof byte[]) {
+                throw new IllegalStateException("Cannot read a blob as a string");
+            }
+            return value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            } else if (value instanceof String) {
+                try {
+                    return Long.parseLong((String) value);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else if (value instanceof String) {
+                try {
+                    return Double.parseDouble((String) value);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return null;
+            } else if (value instanceof byte[]) {
+                return ((byte[]) value).clone();
+            }
+            throw new IllegalStateException("Cannot read a non-blob value as a blob");
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        /**
+         * Returns the value of a column in the current row.
+         */
+        private Object get(int column) {
+            int position = getPosition();
+            if (position < 0 || position >= snapshot.rows.length) {
+                throw new IllegalStateException("Cursor is not on a row: " + position);
+            }
+            return snapshot.rows[position][column];
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link ProductRepository} is a class that exposes {@link ProductProvider} queries as observable
+ * streams. Each distinct query runs once no matter how many observers share it, is re-run on a
+ * background thread whenever the {@link ProductProvider} notifies a change to its content URI,
+ * and delivers its results on the main thread. Bursts of change notifications are debounced into
+ * a single re-query.
+ *
+ * <p>The repository owns every {@link Cursor} it delivers and closes it once a newer one has been
+ * delivered or the last observer is gone, so observers must not close them.
+ */
+public class ProductRepository {
+
+    /**
+     * Time in milliseconds to wait for more change notifications before re-running a query.
+     */
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    /**
+     * Single instance of {@link ProductRepository} for this process.
+     */
+    private static ProductRepository instance;
+
+    /**
+     * {@link ContentResolver} for running queries.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * {@link ExecutorService} for running queries off the main thread.
+     */
+    private final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * {@link Handler} for debouncing notifications and delivering results on the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Live queries with at least one observer, keyed by their query parameters.
+     */
+    private final Map<QueryKey, LiveQuery> liveQueries = new HashMap<>();
+
+    /**
+     * {@link Observer} is an interface for receiving the results of an observed query.
+     */
+    public interface Observer {
+
+        /**
+         * Callback method invoked on the main thread with the latest results of the query.
+         *
+         * @param cursor {@link Cursor} holding the results. Is null if the query failed. It is
+         *               owned by the {@link ProductRepository} and must not be closed.
+         */
+        void onChanged(@Nullable Cursor cursor);
+    }
+
+    /**
+     * {@link Subscription} is an interface for stopping the delivery of query results to an
+     * {@link Observer}.
+     */
+    public interface Subscription {
+
+        /**
+         * Stops delivering results to the {@link Observer}. Must be called on the main thread.
+         */
+        @MainThread
+        void cancel();
+    }
+
+    /**
+     * Constructs a new {@link ProductRepository}.
+     *
+     * @param contentResolver {@link ContentResolver} for running queries.
+     */
+    ProductRepository(@NonNull ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * Returns the single instance of {@link ProductRepository} for this process.
+     *
+     * @param context {@link Context} for getting the {@link ContentResolver}.
+     * @return The {@link ProductRepository}.
+     */
+    @NonNull
+    public static synchronized ProductRepository getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ProductRepository(context.getApplicationContext().getContentResolver());
+        }
+        return instance;
+    }
+
+    /**
+     * Starts observing a query of the {@link ProductProvider}. The observer receives the current
+     * results as soon as they are available and again after every change to the queried content
+     * URI. Parameters have the same meaning as in
+     * {@link ContentResolver#query(Uri, String[], String, String[], String)}.
+     *
+     * @param uri           Content URI to query.
+     * @param projection    The list of columns to return. This value may be null.
+     * @param selection     A selection criteria to apply when filtering rows. This value may be
+     *                      null.
+     * @param selectionArgs Arguments for the ?s in selection. This value may be null.
+     * @param sortOrder     How the rows should be sorted. This value may be null.
+     * @param observer      {@link Observer} to deliver results to.
+     * @return {@link Subscription} for stopping delivery.
+     */
+    @MainThread
+    @NonNull
+    public Subscription observe(@NonNull Uri uri, @Nullable String[] projection,
+                                @Nullable String selection, @Nullable String[] selectionArgs,
+                                @Nullable String sortOrder, @NonNull Observer observer) {
+        final QueryKey key = new QueryKey(uri, projection, selection, selectionArgs, sortOrder);
+        LiveQuery liveQuery = liveQueries.get(key);
+        if (liveQuery == null) {
+            liveQuery = new LiveQuery(key);
+            liveQueries.put(key, liveQuery);
+            liveQuery.start();
+        } else if (liveQuery.hasResult) {
+            observer.onChanged(liveQuery.cursor);
+        }
+        liveQuery.observers.add(observer);
+
+        final LiveQuery subscribedQuery = liveQuery;
+        return () -> {
+            subscribedQuery.observers.remove(observer);
+            if (subscribedQuery.observers.isEmpty()) {
+                liveQueries.remove(subscribedQuery.key);
+                subscribedQuery.stop();
+            }
+        };
+    }
+
+    /**
+     * {@link LiveQuery} is a class that runs one query for every observer sharing it and re-runs
+     * it when its content URI changes.
+     */
+    private class LiveQuery extends ContentObserver {
+
+        /**
+         * {@link QueryKey} describing the query.
+         */
+        private final QueryKey key;
+
+        /**
+         * Observers receiving the results of the query.
+         */
+        private final List<Observer> observers = new ArrayList<>();
+
+        /**
+         * {@link Runnable} that submits the query to {@link #queryExecutor}.
+         */
+        private final Runnable requery = this::submitQuery;
+
+        /**
+         * Latest results of the query, and whether any results were delivered yet.
+         */
+        private Cursor cursor;
+        private boolean hasResult = false;
+
+        /**
+         * Number of the latest submitted query. Results of older queries are dropped.
+         */
+        private int generation = 0;
+
+        /**
+         * Whether the query has been stopped.
+         */
+        private boolean isStopped = false;
+
+        /**
+         * Constructs a new {@link LiveQuery}.
+         *
+         * @param key {@link QueryKey} describing the query.
+         */
+        LiveQuery(@NonNull QueryKey key) {
+            super(mainHandler);
+            this.key = key;
+        }
+
+        /**
+         * Registers for change notifications and runs the query for the first time.
+         */
+        void start() {
+            contentResolver.registerContentObserver(key.uri, true, this);
+            submitQuery();
+        }
+
+        /**
+         * Unregisters from change notifications and releases the latest results.
+         */
+        void stop() {
+            isStopped = true;
+            contentResolver.unregisterContentObserver(this);
+            mainHandler.removeCallbacks(requery);
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+        }
+
+        /**
+         * Callback method invoked on the main thread when the content URI changes. It waits
+         * {@link #DEBOUNCE_MILLIS} for more changes before re-running the query.
+         *
+         * @param selfChange Whether the change was caused by this observer.
+         */
+        @Override
+        public void onChange(boolean selfChange) {
+            mainHandler.removeCallbacks(requery);
+            mainHandler.postDelayed(requery, DEBOUNCE_MILLIS);
+        }
+
+        /**
+         * Runs the query on {@link #queryExecutor} and delivers its results on the main thread.
+         * The {@link Cursor} is filled on the background thread so observers never wait on disk.
+         */
+        private void submitQuery() {
+            final int queryGeneration = ++generation;
+            queryExecutor.execute(() -> {
+                Cursor result = contentResolver.query(
+                        key.uri,
+                        key.projection,
+                        key.selection,
+                        key.selectionArgs,
+                        key.sortOrder
+                );
+                if (result != null) {
+                    result.getCount();
+                }
+                mainHandler.post(() -> deliver(queryGeneration, result));
+            });
+        }
+
+        /**
+         * Delivers new results to every observer and closes the results they replace.
+         *
+         * @param queryGeneration Number of the query that produced the results.
+         * @param result          {@link Cursor} holding the results. Is null if the query failed.
+         */
+        private void deliver(int queryGeneration, @Nullable Cursor result) {
+            if (isStopped || queryGeneration != generation) {
+                if (result != null) {
+                    result.close();
+                }
+                return;
+            }
+            Cursor previous = cursor;
+            cursor = result;
+            hasResult = true;
+            for (Observer observer : new ArrayList<>(observers)) {
+                observer.onChanged(result);
+            }
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+}
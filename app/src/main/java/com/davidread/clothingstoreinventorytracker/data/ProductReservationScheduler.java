@@ -0,0 +1,179 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * {@link ProductReservationScheduler} is a class that releases stock reservations once they
+ * expire. Expiry times are kept in memory in a priority queue, and a single message on a
+ * background {@link Handler} waits for the earliest of them, so the reservations table is never
+ * polled. When the message runs, every reservation due by then is released at once with a single
+ * range delete on the expiry index, however many there are.
+ *
+ * <p>Wake-ups are rounded up to whole {@link #COALESCE_MILLIS} periods, so holds expiring close
+ * together are released by the same sweep. A wake-up may also come late while the device sleeps,
+ * which only delays the release, since available quantities already leave out expired holds.
+ * Reservations released before they expire are left in the queue and cost at most one sweep that
+ * deletes nothing, which is cheaper than finding them in the queue.
+ *
+ * <p>Sweeps and loads hold a lock shared with the content provider's requests, so they never touch
+ * the database while it is being replaced.
+ */
+final class ProductReservationScheduler {
+
+    /**
+     * Length in milliseconds of the periods wake-ups are rounded up to.
+     */
+    private static final long COALESCE_MILLIS = 1000;
+
+    /**
+     * {@link ProductReservationScheduler.Releaser} is an interface for releasing expired
+     * reservations.
+     */
+    interface Releaser {
+
+        /**
+         * Releases every reservation that expired at or before the passed time.
+         *
+         * @param nowMillis Time in milliseconds since the epoch.
+         */
+        @WorkerThread
+        void releaseExpired(long nowMillis);
+    }
+
+    /**
+     * Expiry times in milliseconds since the epoch of the reservations not yet swept, earliest
+     * first.
+     */
+    private final PriorityQueue<Long> expiries = new PriorityQueue<>();
+
+    /**
+     * {@link Handler} the sweeps run on.
+     */
+    private final Handler handler;
+
+    /**
+     * {@link Lock} held while a sweep or load touches the database.
+     */
+    private final Lock databaseLock;
+
+    /**
+     * {@link Releaser} called by each sweep.
+     */
+    private final Releaser releaser;
+
+    /**
+     * {@link Runnable} posted to {@link #handler} to sweep expired reservations.
+     */
+    private final Runnable sweep = this::sweep;
+
+    /**
+     * Expiry time the posted sweep is for. Is {@link Long#MAX_VALUE} if no sweep is posted.
+     */
+    private long scheduledFor = Long.MAX_VALUE;
+
+    /**
+     * Constructs a new {@link ProductReservationScheduler}.
+     *
+     * @param looper       {@link Looper} of the background thread the sweeps run on.
+     * @param databaseLock {@link Lock} held while a sweep or load touches the database.
+     * @param releaser     {@link Releaser} called by each sweep.
+     */
+    ProductReservationScheduler(@NonNull Looper looper, @NonNull Lock databaseLock,
+                                @NonNull Releaser releaser) {
+        this.handler = new Handler(looper);
+        this.databaseLock = databaseLock;
+        this.releaser = releaser;
+    }
+
+    /**
+     * Schedules the release of a reservation.
+     *
+     * @param expiresAt Time in milliseconds since the epoch at which the reservation expires.
+     */
+    synchronized void schedule(long expiresAt) {
+        expiries.add(expiresAt);
+        if (expiresAt < scheduledFor) {
+            post(expiresAt);
+        }
+    }
+
+    /**
+     * Schedules the release of every reservation in a database, such as when the process starts
+     * or the database is replaced. The database is read on the background thread.
+     *
+     * @param dbHelper {@link SQLiteOpenHelper} of the products database.
+     */
+    void load(@NonNull SQLiteOpenHelper dbHelper) {
+        handler.post(() -> {
+            databaseLock.lock();
+            try (Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT "
+                    + ProductDbHelper.COLUMN_RESERVATION_EXPIRES_AT + " FROM "
+                    + ProductDbHelper.RESERVATIONS_TABLE_NAME, null)) {
+                while (cursor.moveToNext()) {
+                    schedule(cursor.getLong(0));
+                }
+            } catch (SQLiteException e) {
+
+                // Holds left unscheduled are released by the next sweep after they expire.
+            } finally {
+                databaseLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Drops every scheduled expiry and the posted sweep, such as before the database is replaced.
+     * A sweep already running finishes first if the caller holds the write side of the lock.
+     */
+    synchronized void clear() {
+        handler.removeCallbacks(sweep);
+        expiries.clear();
+        scheduledFor = Long.MAX_VALUE;
+    }
+
+    /**
+     * Posts the sweep for the passed expiry time in place of any earlier posted sweep.
+     *
+     * @param expiresAt Time in milliseconds since the epoch of the earliest expiry.
+     */
+    private void post(long expiresAt) {
+        handler.removeCallbacks(sweep);
+        scheduledFor = expiresAt;
+        final long wakeAt = (expiresAt / COALESCE_MILLIS + 1) * COALESCE_MILLIS;
+        handler.postDelayed(sweep, Math.max(0, wakeAt - System.currentTimeMillis()));
+    }
+
+    /**
+     * Releases every expired reservation, drops their expiry times from the queue, and posts the
+     * sweep for the next expiry.
+     */
+    @WorkerThread
+    private void sweep() {
+        final long nowMillis = System.currentTimeMillis();
+        databaseLock.lock();
+        try {
+            releaser.releaseExpired(nowMillis);
+        } finally {
+            databaseLock.unlock();
+        }
+        synchronized (this) {
+            while (!expiries.isEmpty() && expiries.peek() <= nowMillis) {
+                expiries.poll();
+            }
+            scheduledFor = Long.MAX_VALUE;
+            if (!expiries.isEmpty()) {
+                post(expiries.peek());
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ProductSlowQueryLog} is a class that records the {@link ProductProvider} operations that
+ * take longer than a threshold. Each record holds the normalized SQL of the operation, the shape
+ * of its arguments, the number of rows it returned or changed, and the query plan SQLite chose, so
+ * a missing index shows up as a full table scan. Only the most recent records are kept.
+ *
+ * <p>Timing an operation costs two clock reads. The query plan is only captured for slow
+ * operations.
+ */
+final class ProductSlowQueryLog {
+
+    /**
+     * Tag used when logging slow operations.
+     */
+    private static final String LOG_TAG = "SlowQuery";
+
+    /**
+     * {@link String} names of the timed operations.
+     */
+    static final String OPERATION_QUERY = "query";
+    static final String OPERATION_UPDATE = "update";
+    static final String OPERATION_DELETE = "delete";
+
+    /**
+     * {@link Pattern}s that normalize SQL, so operations differing only in their literals share
+     * the same text.
+     */
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Maximum number of records kept.
+     */
+    private final int capacity;
+
+    /**
+     * Records in the order they were made, oldest first.
+     */
+    private final ArrayDeque<Entry> entries;
+
+    /**
+     * Duration in nanoseconds from which an operation is recorded.
+     */
+    private volatile long thresholdNanos;
+
+    /**
+     * Constructs a new {@link ProductSlowQueryLog}.
+     *
+     * @param thresholdMillis Duration in milliseconds from which an operation is recorded.
+     * @param capacity        Maximum number of records kept.
+     */
+    ProductSlowQueryLog(long thresholdMillis, int capacity) {
+        this.capacity = capacity;
+        this.entries = new ArrayDeque<>(capacity);
+        setThresholdMillis(thresholdMillis);
+    }
+
+    /**
+     * Sets the duration in milliseconds from which an operation is recorded. Pass 0 to record
+     * every operation.
+     */
+    void setThresholdMillis(long thresholdMillis) {
+        thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    /**
+     * Returns the time to pass as the start of an operation to
+     * {@link #record(SQLiteDatabase, String, String, String, String[], int, long)}.
+     */
+    static long start() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records an operation that just finished if it took at least the threshold.
+     *
+     * @param db         {@link SQLiteDatabase} the operation ran on.
+     * @param operation  One of the OPERATION names.
+     * @param sql        SQL of the operation.
+     * @param planSql    SELECT statement whose query plan describes how the operation found its
+     *                   rows, binding the same arguments.
+     * @param args       Arguments bound to the ?s of planSql.
+     * @param countRows  Number of rows the operation returned or changed.
+     * @param startNanos Value returned by {@link #start()} before the operation ran.
+     */
+    void record(@NonNull SQLiteDatabase db, @NonNull String operation, @NonNull String sql,
+                @NonNull String planSql, @Nullable String[] args, int countRows, long startNanos) {
+        final long durationNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        if (durationNanos < thresholdNanos || capacity == 0) {
+            return;
+        }
+
+        Entry entry = new Entry(
+                System.currentTimeMillis(),
+                operation,
+                normalize(sql),
+                describeArgs(args),
+                countRows,
+                durationNanos / 1_000_000,
+                explain(db, planSql, args)
+        );
+        Log.w(LOG_TAG, entry.toString());
+        synchronized (entries) {
+            if (entries.size() == capacity) {
+                entries.removeFirst();
+            }
+            entries.addLast(entry);
+        }
+    }
+
+    /**
+     * Returns the number of records kept.
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Deletes every record.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns a human readable report of every record kept, oldest first.
+     */
+    @NonNull
+    String buildReport() {
+        StringBuilder report = new StringBuilder();
+        synchronized (entries) {
+            report.append(String.format(Locale.US, "%d slow operations (threshold %d ms)%n",
+                    entries.size(), thresholdNanos / 1_000_000));
+            for (Entry entry : entries) {
+                report.append(entry).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the passed SQL with its literals replaced by ?, lists of ?s collapsed, and
+     * whitespace collapsed.
+     */
+    @NonNull
+    static String normalize(@NonNull String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?...)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Returns the shape of the passed arguments, such as "[int, text(12), null]". The values
+     * themselves are left out, since they may hold customer data.
+     */
+    @NonNull
+    static String describeArgs(@Nullable String[] args) {
+        if (args == null || args.length == 0) {
+            return "[]";
+        }
+        String[] shapes = new String[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] == null) {
+                shapes[i] = "null";
+            } else if (args[i].matches("-?\\d+")) {
+                shapes[i] = "int";
+            } else if (args[i].matches("-?\\d*\\.\\d+")) {
+                shapes[i] = "real";
+            } else {
+                shapes[i] = "text(" + args[i].length() + ")";
+            }
+        }
+        return "[" + TextUtils.join(", ", shapes) + "]";
+    }
+
+    /**
+     * Returns the query plan of a statement, one step per line.
+     *
+     * @return The query plan. Is an explanation if it cannot be captured.
+     */
+    @NonNull
+    private static String explain(@NonNull SQLiteDatabase db, @NonNull String sql,
+                                  @Nullable String[] args) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+
+            // The step description is the last column on every SQLite release.
+            final int detailIndex = cursor.getColumnCount() - 1;
+            while (cursor.moveToNext()) {
+                plan.append(plan.length() == 0 ? "" : "\n").append(cursor.getString(detailIndex));
+            }
+        } catch (SQLiteException | IllegalArgumentException e) {
+            return "unavailable: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
+    /**
+     * {@link Entry} is a model class that describes one slow operation.
+     */
+    private static final class Entry {
+
+        /**
+         * Formats {@link #timeMillis} in reports.
+         */
+        private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+        private final long timeMillis;
+        private final String operation;
+        private final String sql;
+        private final String argsShape;
+        private final int countRows;
+        private final long durationMillis;
+        private final String plan;
+
+        /**
+         * Constructs a new {@link Entry}.
+         *
+         * @param timeMillis     Time in milliseconds since the epoch at which the operation ended.
+         * @param operation      One of the OPERATION names.
+         * @param sql            Normalized SQL of the operation.
+         * @param argsShape      Shape of the arguments of the operation.
+         * @param countRows      Number of rows the operation returned or changed.
+         * @param durationMillis Time in milliseconds the operation took.
+         * @param plan           Query plan of the operation, one step per line.
+         */
+        Entry(long timeMillis, String operation, String sql, String argsShape, int countRows,
+              long durationMillis, String plan) {
+            this.timeMillis = timeMillis;
+            this.operation = operation;
+            this.sql = sql;
+            this.argsShape = argsShape;
+            this.countRows = countRows;
+            this.durationMillis = durationMillis;
+            this.plan = plan;
+        }
+
+        /**
+         * Returns this record as report lines.
+         */
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s %d ms, %d rows, args %s%n  %s%n  plan: %s",
+                    new SimpleDateFormat(TIME_FORMAT, Locale.US).format(new Date(timeMillis)),
+                    operation, durationMillis, countRows, argsShape, sql,
+                    plan.replace("\n", "\n        "));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link ProductStorePool} is a class that keeps one {@link ProductDbHelper} per store location,
+ * each over its own database file. A store's database is opened the first time it is used, and
+ * closed again once nobody has used it for {@link #IDLE_CLOSE_MILLIS}. Since every store has its
+ * own file, and so its own write lock, writes to different stores run in parallel.
+ *
+ * <p>Callers lease a store's {@link ProductDbHelper} for as long as they use it, including for the
+ * lifetime of any {@link Cursor} still reading from it, so a database is never closed under a
+ * reader.
+ */
+final class ProductStorePool {
+
+    /**
+     * Time in milliseconds a store's database is kept open after its last lease is released.
+     */
+    private static final long IDLE_CLOSE_MILLIS = 60_000;
+
+    /**
+     * Maximum number of stores read at the same time by {@link #submit(long, Operation)}.
+     */
+    private static final int MAX_FAN_OUT_THREADS = 4;
+
+    /**
+     * Time in seconds an idle fan-out thread is kept alive for.
+     */
+    private static final long FAN_OUT_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * {@link String} prefix and suffix of the name of a store's database file.
+     */
+    private static final String DB_NAME_PREFIX = "products_store_";
+    private static final String DB_NAME_SUFFIX = ".db";
+
+    /**
+     * {@link ProductStorePool.Operation} is an interface for work done on a store's database.
+     *
+     * @param <T> Type of the result of the work.
+     */
+    interface Operation<T> {
+
+        /**
+         * Does the work.
+         *
+         * @param dbHelper {@link ProductDbHelper} of the store's database, leased for the call.
+         * @return The result of the work.
+         */
+        T run(@NonNull ProductDbHelper dbHelper);
+    }
+
+    /**
+     * {@link ProductStorePool.Entry} is a model class that holds an open store's
+     * {@link ProductDbHelper} and its leases.
+     */
+    private static final class Entry {
+
+        private final ProductDbHelper dbHelper;
+        private int countLeases = 0;
+        private long lastReleasedMillis = 0;
+
+        Entry(ProductDbHelper dbHelper) {
+            this.dbHelper = dbHelper;
+        }
+    }
+
+    /**
+     * {@link Context} for creating {@link ProductDbHelper}s and listing database files.
+     */
+    private final Context context;
+
+    /**
+     * {@link Handler} the idle databases are closed on.
+     */
+    private final Handler handler;
+
+    /**
+     * {@link Entry}s of the open stores by store id.
+     */
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /**
+     * {@link ThreadPoolExecutor} reading several stores at the same time. Its threads stop when
+     * idle.
+     */
+    private final ThreadPoolExecutor fanOutExecutor;
+
+    /**
+     * {@link Runnable} posted to {@link #handler} to close idle databases.
+     */
+    private final Runnable closeIdle = this::closeIdle;
+
+    /**
+     * Whether {@link #closeIdle} is posted.
+     */
+    private boolean isCloseIdlePosted = false;
+
+    /**
+     * Constructs a new {@link ProductStorePool}.
+     *
+     * @param context {@link Context} for creating {@link ProductDbHelper}s.
+     * @param looper  {@link Looper} of the background thread idle databases are closed on.
+     */
+    ProductStorePool(@NonNull Context context, @NonNull Looper looper) {
+        this.context = context;
+        this.handler = new Handler(looper);
+        this.fanOutExecutor = new ThreadPoolExecutor(MAX_FAN_OUT_THREADS, MAX_FAN_OUT_THREADS,
+                FAN_OUT_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.fanOutExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the name of a store's database file.
+     *
+     * @param storeId Id of the store.
+     * @return Name of the database file.
+     */
+    @NonNull
+    static String getDatabaseName(long storeId) {
+        return DB_NAME_PREFIX + storeId + DB_NAME_SUFFIX;
+    }
+
+    /**
+     * Leases a store's {@link ProductDbHelper}, creating it if the store is not open. The
+     * database itself opens on its first use. Every lease must be released with
+     * {@link #release(long)}.
+     *
+     * @param storeId Id of the store.
+     * @return The store's {@link ProductDbHelper}.
+     */
+    @NonNull
+    synchronized ProductDbHelper acquire(long storeId) {
+        Entry entry = entries.get(storeId);
+        if (entry == null) {
+            entry = new Entry(new ProductDbHelper(context, getDatabaseName(storeId)));
+            entries.put(storeId, entry);
+        }
+        entry.countLeases++;
+        return entry.dbHelper;
+    }
+
+    /**
+     * Releases a lease taken by {@link #acquire(long)}. Once a store has no leases left, its
+     * database is closed after {@link #IDLE_CLOSE_MILLIS} unless it is leased again.
+     *
+     * @param storeId Id of the store.
+     */
+    synchronized void release(long storeId) {
+        Entry entry = entries.get(storeId);
+        if (entry == null || entry.countLeases == 0) {
+            return;
+        }
+        entry.countLeases--;
+        if (entry.countLeases == 0) {
+            entry.lastReleasedMillis = SystemClock.uptimeMillis();
+            if (!isCloseIdlePosted) {
+                isCloseIdlePosted = true;
+                handler.postDelayed(closeIdle, IDLE_CLOSE_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Runs an {@link Operation} on a store's database, leased for the length of the call.
+     *
+     * @param storeId   Id of the store.
+     * @param operation {@link Operation} to run.
+     * @return The result of the {@link Operation}.
+     */
+    <T> T run(long storeId, @NonNull Operation<T> operation) {
+        ProductDbHelper dbHelper = acquire(storeId);
+        try {
+            return operation.run(dbHelper);
+        } finally {
+            release(storeId);
+        }
+    }
+
+    /**
+     * Runs an {@link Operation} on a store's database on a fan-out thread, so several stores can
+     * be read at the same time.
+     *
+     * @param storeId   Id of the store.
+     * @param operation {@link Operation} to run.
+     * @return {@link Future} of the result of the {@link Operation}.
+     */
+    @NonNull
+    <T> Future<T> submit(long storeId, @NonNull Operation<T> operation) {
+        return fanOutExecutor.submit(() -> run(storeId, operation));
+    }
+
+    /**
+     * Returns a {@link Cursor} that releases a lease of a store when it is closed, so the
+     * store's database stays open while the passed {@link Cursor} reads from it.
+     *
+     * @param storeId Id of the store, leased by the caller.
+     * @param cursor  {@link Cursor} reading from the store's database.
+     * @return A {@link Cursor} over the same rows.
+     */
+    @NonNull
+    Cursor releaseOnClose(long storeId, @NonNull Cursor cursor) {
+        final AtomicBoolean isReleased = new AtomicBoolean(false);
+        return new CursorWrapper(cursor) {
+            @Override
+            public void close() {
+                super.close();
+                if (isReleased.compareAndSet(false, true)) {
+                    release(storeId);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the ids of every store that has a database file, in ascending order.
+     *
+     * @return The store ids.
+     */
+    @NonNull
+    long[] listStoreIds() {
+        File directory = context.getDatabasePath(ProductDbHelper.DB_NAME).getParentFile();
+        String[] names = directory == null ? null : directory.list();
+        List<Long> storeIds = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(DB_NAME_PREFIX) || !name.endsWith(DB_NAME_SUFFIX)) {
+                    continue;
+                }
+                String id = name.substring(DB_NAME_PREFIX.length(),
+                        name.length() - DB_NAME_SUFFIX.length());
+
+                // Skip names whose id is not a number that fits in a long.
+                if (!TextUtils.isEmpty(id) && id.length() < 19 && TextUtils.isDigitsOnly(id)) {
+                    storeIds.add(Long.parseLong(id));
+                }
+            }
+        }
+
+        long[] result = new long[storeIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = storeIds.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Closes the databases of the stores that have had no lease for {@link #IDLE_CLOSE_MILLIS},
+     * and posts itself again for the next store that will have been idle as long.
+     */
+    private synchronized void closeIdle() {
+        isCloseIdlePosted = false;
+        final long nowMillis = SystemClock.uptimeMillis();
+        long nextDueMillis = Long.MAX_VALUE;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.countLeases > 0) {
+                continue;
+            }
+            final long dueMillis = entry.lastReleasedMillis + IDLE_CLOSE_MILLIS;
+            if (dueMillis <= nowMillis) {
+                entry.dbHelper.close();
+                iterator.remove();
+            } else {
+                nextDueMillis = Math.min(nextDueMillis, dueMillis);
+            }
+        }
+        if (nextDueMillis != Long.MAX_VALUE) {
+            isCloseIdlePosted = true;
+            handler.postDelayed(closeIdle, nextDueMillis - nowMillis);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * {@link QueryKey} is a model class that describes the parameters of a query. Two queries with
+ * equal {@link QueryKey}s return the same rows while the data is unchanged, so it is used to share
+ * and cache query results.
+ */
+final class QueryKey {
+
+    /**
+     * Parameters of the query, with the same meaning as in
+     * {@link android.content.ContentResolver#query(Uri, String[], String, String[], String)}.
+     */
+    final Uri uri;
+    final String[] projection;
+    final String selection;
+    final String[] selectionArgs;
+    final String sortOrder;
+
+    /**
+     * Constructs a new {@link QueryKey}. The passed arrays are copied.
+     *
+     * @param uri           Content URI to query.
+     * @param projection    The list of columns to return. This value may be null.
+     * @param selection     A selection criteria to apply when filtering rows. This value may be
+     *                      null.
+     * @param selectionArgs Arguments for the ?s in selection. This value may be null.
+     * @param sortOrder     How the rows should be sorted. This value may be null.
+     */
+    QueryKey(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+             @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        this.uri = uri;
+        this.projection = projection == null ? null : projection.clone();
+        this.selection = selection;
+        this.selectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+        this.sortOrder = sortOrder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey other = (QueryKey) o;
+        return uri.equals(other.uri)
+                && Arrays.equals(projection, other.projection)
+                && Objects.equals(selection, other.selection)
+                && Arrays.equals(selectionArgs, other.selectionArgs)
+                && Objects.equals(sortOrder, other.sortOrder);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = uri.hashCode();
+        result = 31 * result + Arrays.hashCode(projection);
+        result = 31 * result + Objects.hashCode(selection);
+        result = 31 * result + Arrays.hashCode(selectionArgs);
+        result = 31 * result + Objects.hashCode(sortOrder);
+        return result;
+    }
+}
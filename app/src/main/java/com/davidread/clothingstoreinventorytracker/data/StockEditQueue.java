@@ -0,0 +1,423 @@
+package com.davidread.clothingstoreinventorytracker.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link StockEditQueue} is a class that takes quantity edits on the main thread and writes them
+ * behind. Edits to the same product are merged into a single delta, and all merged deltas are
+ * flushed to the {@link ProductProvider} in one transaction on a background thread, either a short
+ * time after the first edit or as soon as enough products are edited.
+ *
+ * <p>Queued and in-flight edits are saved to {@link SharedPreferences}, so edits made right before
+ * the process dies are flushed the next time the queue is created. Each flush carries a batch id
+ * that the {@link ProductProvider} applies only once, so resending a flush after a restart never
+ * counts an edit twice.
+ *
+ * <p>Until an edit shows up in queried data, {@link #getDisplayDelta(long)} returns it so the UI
+ * can show the edited quantity right away. A flushed edit counts with the delta the
+ * {@link ProductProvider} actually applied, which is smaller when a quantity stops at 0, and is
+ * only dropped once a cursor queried after its commit is delivered, so a query that started
+ * before the commit does not make the edit flicker away.
+ */
+public class StockEditQueue {
+
+    /**
+     * Time in milliseconds between the first queued edit and its flush.
+     */
+    private static final long FLUSH_DELAY_MILLIS = 500;
+
+    /**
+     * Number of edited products that triggers an immediate flush.
+     */
+    private static final int FLUSH_THRESHOLD = 50;
+
+    /**
+     * {@link String} name of the {@link SharedPreferences} file holding unflushed edits.
+     */
+    private static final String PREFERENCES_NAME = "stock_edits";
+
+    /**
+     * {@link String} key of the queued edits, and key prefix of each in-flight batch.
+     */
+    private static final String KEY_PENDING = "pending";
+    private static final String KEY_BATCH_PREFIX = "batch_";
+
+    /**
+     * Single instance of {@link StockEditQueue} for this process.
+     */
+    private static StockEditQueue instance;
+
+    /**
+     * {@link ContentResolver} for flushing edits.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * {@link SharedPreferences} holding unflushed edits.
+     */
+    private final SharedPreferences preferences;
+
+    /**
+     * {@link ExecutorService} for flushing edits off the main thread, one batch at a time.
+     */
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * {@link Handler} for scheduling flushes and handling their results on the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * {@link Runnable} that flushes the queued edits.
+     */
+    private final Runnable flushRunnable = this::flush;
+
+    /**
+     * Whether {@link #flushRunnable} is posted to {@link #mainHandler}.
+     */
+    private boolean isFlushScheduled = false;
+
+    /**
+     * Quantity deltas per product id that are queued, being flushed, or flushed but not yet seen
+     * in queried data. Only touched on the main thread.
+     */
+    private final Map<Long, Integer> pendingDeltas = new HashMap<>();
+    private final Map<Long, Integer> inFlightDeltas = new HashMap<>();
+    private final Map<Long, Integer> committedDeltas = new HashMap<>();
+
+    /**
+     * Applied deltas per product id of each flushed batch that is part of
+     * {@link #committedDeltas}, keyed by the provider generation it was committed at. Only
+     * touched on the main thread.
+     */
+    private final TreeMap<Long, Map<Long, Integer>> committedBatches = new TreeMap<>();
+
+    /**
+     * Provider generation of the last delivered cursor. Batches committed at or before it are
+     * already part of queried data. Only touched on the main thread.
+     */
+    private long refreshedGeneration = -1;
+
+    /**
+     * Constructs a new {@link StockEditQueue} and resends any edits saved by a previous process.
+     *
+     * @param contentResolver {@link ContentResolver} for flushing edits.
+     * @param preferences     {@link SharedPreferences} for saving unflushed edits.
+     */
+    @MainThread
+    StockEditQueue(@NonNull ContentResolver contentResolver,
+                   @NonNull SharedPreferences preferences) {
+        this.contentResolver = contentResolver;
+        this.preferences = preferences;
+
+        // Resend batches that were in flight when the previous process died.
+        for (String key : preferences.getAll().keySet()) {
+            if (key.startsWith(KEY_BATCH_PREFIX)) {
+                String batchId = key.substring(KEY_BATCH_PREFIX.length());
+                Map<Long, Integer> deltas = decode(preferences.getString(key, null));
+                merge(inFlightDeltas, deltas);
+                submit(batchId, deltas);
+            }
+        }
+
+        // Flush edits that were still queued.
+        merge(pendingDeltas, decode(preferences.getString(KEY_PENDING, null)));
+        if (!pendingDeltas.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the single instance of {@link StockEditQueue} for this process.
+     *
+     * @param context {@link Context} for getting the {@link ContentResolver} and saved edits.
+     * @return The {@link StockEditQueue}.
+     */
+    @MainThread
+    @NonNull
+    public static StockEditQueue getInstance(@NonNull Context context) {
+        if (instance == null) {
+            Context applicationContext = context.getApplicationContext();
+            instance = new StockEditQueue(
+                    applicationContext.getContentResolver(),
+                    applicationContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a change to the quantity of a product.
+     *
+     * @param id    Id of the product.
+     * @param delta Amount to add to the product's quantity. Negative to subtract.
+     */
+    @MainThread
+    public void adjustQuantity(long id, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        Integer previous = pendingDeltas.get(id);
+        int merged = (previous == null ? 0 : previous) + delta;
+        if (merged == 0) {
+            pendingDeltas.remove(id);
+        } else {
+            pendingDeltas.put(id, merged);
+        }
+        preferences.edit().putString(KEY_PENDING, encode(pendingDeltas)).apply();
+
+        if (pendingDeltas.size() >= FLUSH_THRESHOLD) {
+            flush();
+        } else if (!pendingDeltas.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns the total delta of the edits to a product that may not show up in queried data yet.
+     *
+     * @param id Id of the product.
+     * @return Amount to add to the queried quantity of the product.
+     */
+    @MainThread
+    public int getDisplayDelta(long id) {
+        return valueOf(pendingDeltas, id) + valueOf(inFlightDeltas, id) + valueOf(committedDeltas, id);
+    }
+
+    /**
+     * Callback method to invoke when fresh product data has been queried. Edits flushed before the
+     * query started are part of that data, so they stop counting towards
+     * {@link #getDisplayDelta(long)}. Edits flushed while the query ran keep counting.
+     *
+     * @param cursor {@link Cursor} of the queried product data.
+     */
+    @MainThread
+    public void onDataRefreshed(@NonNull Cursor cursor) {
+
+        // A cursor without a generation is treated as holding every flushed edit.
+        Bundle extras = cursor.getExtras();
+        long generation = extras == null
+                ? Long.MAX_VALUE
+                : extras.getLong(ProductContract.EXTRA_GENERATION, Long.MAX_VALUE);
+        refreshedGeneration = Math.max(refreshedGeneration, generation);
+
+        Iterator<Map<Long, Integer>> batches =
+                committedBatches.headMap(generation, true).values().iterator();
+        while (batches.hasNext()) {
+            for (Map.Entry<Long, Integer> entry : batches.next().entrySet()) {
+                add(committedDeltas, entry.getKey(), -entry.getValue());
+            }
+            batches.remove();
+        }
+    }
+
+    /**
+     * Flushes the queued edits now. Call it when edits must not wait, such as in
+     * {@link android.app.Activity#onStop()}.
+     */
+    @MainThread
+    public void flush() {
+        mainHandler.removeCallbacks(flushRunnable);
+        isFlushScheduled = false;
+        if (pendingDeltas.isEmpty()) {
+            return;
+        }
+
+        // Save the batch under its id before clearing the queue, so it survives a restart.
+        final String batchId = UUID.randomUUID().toString();
+        final Map<Long, Integer> deltas = new HashMap<>(pendingDeltas);
+        pendingDeltas.clear();
+        merge(inFlightDeltas, deltas);
+        preferences.edit()
+                .putString(KEY_BATCH_PREFIX + batchId, encode(deltas))
+                .remove(KEY_PENDING)
+                .apply();
+
+        submit(batchId, deltas);
+    }
+
+    /**
+     * Posts {@link #flushRunnable} to run after {@link #FLUSH_DELAY_MILLIS}, unless it is already
+     * posted.
+     */
+    private void scheduleFlush() {
+        if (!isFlushScheduled) {
+            isFlushScheduled = true;
+            mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Sends a batch of edits to the {@link ProductProvider} on {@link #flushExecutor}. On success,
+     * the batch is forgotten and the deltas the provider applied are shown until queried data
+     * includes them. On failure, including a call that throws, its edits are queued again.
+     *
+     * @param batchId {@link String} id of the batch.
+     * @param deltas  Quantity deltas per product id.
+     */
+    private void submit(@NonNull String batchId, @NonNull Map<Long, Integer> deltas) {
+        final long[] ids = new long[deltas.size()];
+        final int[] values = new int[deltas.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+            ids[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+
+        flushExecutor.execute(() -> {
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, ids);
+            extras.putIntArray(ProductContract.EXTRA_DELTAS, values);
+            Bundle result;
+            try {
+                result = contentResolver.call(
+                        ProductEntry.CONTENT_URI,
+                        ProductContract.METHOD_ADJUST_QUANTITIES,
+                        batchId,
+                        extras
+                );
+            } catch (SQLiteException | IllegalStateException e) {
+
+                // The batch failed, such as while a restore closed the database, so retry it.
+                result = null;
+            }
+            final boolean isSucceeded = result != null;
+            final Map<Long, Integer> appliedDeltas = new HashMap<>();
+            final long generation;
+            if (isSucceeded) {
+                int[] applied = result.getIntArray(ProductContract.EXTRA_DELTAS);
+                for (int j = 0; applied != null && j < applied.length && j < ids.length; j++) {
+                    add(appliedDeltas, ids[j], applied[j]);
+                }
+                generation = result.getLong(ProductContract.EXTRA_GENERATION, Long.MAX_VALUE);
+            } else {
+                generation = Long.MAX_VALUE;
+            }
+            mainHandler.post(() -> onFlushed(batchId, deltas, appliedDeltas, generation,
+                    isSucceeded));
+        });
+    }
+
+    /**
+     * Handles the result of a flushed batch on the main thread.
+     *
+     * @param batchId       {@link String} id of the batch.
+     * @param deltas        Quantity deltas per product id in the batch.
+     * @param appliedDeltas Quantity deltas per product id the provider applied.
+     * @param generation    Provider generation the batch was committed at.
+     * @param isSucceeded   Whether the batch was applied.
+     */
+    private void onFlushed(@NonNull String batchId, @NonNull Map<Long, Integer> deltas,
+                           @NonNull Map<Long, Integer> appliedDeltas, long generation,
+                           boolean isSucceeded) {
+        for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+            add(inFlightDeltas, entry.getKey(), -entry.getValue());
+        }
+        SharedPreferences.Editor editor = preferences.edit().remove(KEY_BATCH_PREFIX + batchId);
+        if (isSucceeded) {
+
+            // A cursor delivered since the commit already holds the batch.
+            if (generation > refreshedGeneration && !appliedDeltas.isEmpty()) {
+                Map<Long, Integer> batch = committedBatches.get(generation);
+                if (batch == null) {
+                    committedBatches.put(generation, new HashMap<>(appliedDeltas));
+                } else {
+                    merge(batch, appliedDeltas);
+                }
+                merge(committedDeltas, appliedDeltas);
+            }
+        } else {
+            merge(pendingDeltas, deltas);
+            editor.putString(KEY_PENDING, encode(pendingDeltas));
+            scheduleFlush();
+        }
+        editor.apply();
+    }
+
+    /**
+     * Adds every delta of one map to another.
+     */
+    private static void merge(@NonNull Map<Long, Integer> into, @NonNull Map<Long, Integer> deltas) {
+        for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+            add(into, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Adds a delta to the entry of a map, removing the entry when it reaches 0.
+     */
+    private static void add(@NonNull Map<Long, Integer> into, long id, int delta) {
+        int sum = valueOf(into, id) + delta;
+        if (sum == 0) {
+            into.remove(id);
+        } else {
+            into.put(id, sum);
+        }
+    }
+
+    /**
+     * Returns the delta of a product in a map, or 0 if it has none.
+     */
+    private static int valueOf(@NonNull Map<Long, Integer> deltas, long id) {
+        Integer delta = deltas.get(id);
+        return delta == null ? 0 : delta;
+    }
+
+    /**
+     * Encodes deltas as "id:delta" pairs separated by commas.
+     */
+    @NonNull
+    private static String encode(@NonNull Map<Long, Integer> deltas) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodes deltas encoded by {@link #encode(Map)}. Malformed pairs are skipped.
+     */
+    @NonNull
+    private static Map<Long, Integer> decode(@Nullable String encoded) {
+        Map<Long, Integer> deltas = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return deltas;
+        }
+        for (String pair : encoded.split(",")) {
+            int separator = pair.indexOf(':');
+            try {
+                add(deltas, Long.parseLong(pair.substring(0, separator)),
+                        Integer.parseInt(pair.substring(separator + 1)));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                // Skip the malformed pair.
+            }
+        }
+        return deltas;
+    }
+}
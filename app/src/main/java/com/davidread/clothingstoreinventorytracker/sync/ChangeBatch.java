@@ -0,0 +1,81 @@
+package com.davidread.clothingstoreinventorytracker.sync;
+
+import android.content.ContentValues;
+
+import androidx.annotation.NonNull;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link ChangeBatch} is a model class that describes a batch of product changes exchanged with a
+ * {@link SyncPeer}. Each change is a {@link ContentValues} holding the product's
+ * {@link ProductEntry#COLUMN_UUID}, its product columns, and {@link ProductEntry#COLUMN_DELETED}.
+ * Deleted products only hold their globally unique id.
+ */
+public final class ChangeBatch {
+
+    /**
+     * {@link List} of changes in this batch, ordered by change token.
+     */
+    private final List<ContentValues> changes;
+
+    /**
+     * Change token of the last change in this batch. Passing it to the next pull resumes after
+     * this batch.
+     */
+    private final long token;
+
+    /**
+     * Whether more changes are available after this batch.
+     */
+    private final boolean hasMore;
+
+    /**
+     * Constructs a new {@link ChangeBatch}.
+     *
+     * @param changes {@link List} of changes ordered by change token.
+     * @param token   Change token of the last change in the batch.
+     * @param hasMore Whether more changes are available after this batch.
+     */
+    public ChangeBatch(@NonNull List<ContentValues> changes, long token, boolean hasMore) {
+        this.changes = Collections.unmodifiableList(changes);
+        this.token = token;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Returns {@link ChangeBatch#changes}.
+     */
+    @NonNull
+    public List<ContentValues> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns {@link ChangeBatch#token}.
+     */
+    public long getToken() {
+        return token;
+    }
+
+    /**
+     * Returns {@link ChangeBatch#hasMore}.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Returns whether the passed change describes a deleted product.
+     *
+     * @param change Change from {@link #getChanges()}.
+     * @return Whether the change describes a deleted product.
+     */
+    public static boolean isDeleted(@NonNull ContentValues change) {
+        Integer deleted = change.getAsInteger(ProductEntry.COLUMN_DELETED);
+        return deleted != null && deleted == 1;
+    }
+}
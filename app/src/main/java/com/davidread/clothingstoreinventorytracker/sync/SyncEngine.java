@@ -0,0 +1,268 @@
+package com.davidread.clothingstoreinventorytracker.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SyncEngine} is a class that keeps the products of the
+ * {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider} in sync with a
+ * {@link SyncPeer}. It pushes local rows marked dirty and pulls the peer's changes after the last
+ * change token it saw, so only changed rows are transferred. Each pulled batch is applied in a
+ * single transaction. Changes name products by {@link ProductEntry#COLUMN_UUID}, which is the same
+ * on every device, since each device allocates its own {@link ProductEntry#_ID} values. Conflicts
+ * resolve in favor of the peer, since local changes are pushed before the peer's changes are
+ * pulled.
+ */
+public class SyncEngine {
+
+    /**
+     * {@link String} name of the {@link SharedPreferences} file holding sync state.
+     */
+    private static final String PREFERENCES_NAME = "sync";
+
+    /**
+     * {@link String} key of the last change token pulled from the peer.
+     */
+    private static final String KEY_REMOTE_TOKEN = "remote_token";
+
+    /**
+     * Default maximum number of changes exchanged in one batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    /**
+     * {@link ContentResolver} for accessing the product data.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * {@link SharedPreferences} holding the last change token pulled from the peer.
+     */
+    private final SharedPreferences preferences;
+
+    /**
+     * {@link SyncPeer} to exchange changes with.
+     */
+    private final SyncPeer peer;
+
+    /**
+     * Maximum number of changes exchanged in one batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Constructs a new {@link SyncEngine} with the default batch size.
+     *
+     * @param context {@link Context} for getting the {@link ContentResolver} and sync state.
+     * @param peer    {@link SyncPeer} to exchange changes with.
+     */
+    public SyncEngine(@NonNull Context context, @NonNull SyncPeer peer) {
+        this(
+                context.getContentResolver(),
+                context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE),
+                peer,
+                DEFAULT_BATCH_SIZE
+        );
+    }
+
+    /**
+     * Constructs a new {@link SyncEngine}.
+     *
+     * @param contentResolver {@link ContentResolver} for accessing the product data.
+     * @param preferences     {@link SharedPreferences} for storing sync state.
+     * @param peer            {@link SyncPeer} to exchange changes with.
+     * @param batchSize       Maximum number of changes exchanged in one batch.
+     */
+    public SyncEngine(@NonNull ContentResolver contentResolver,
+                      @NonNull SharedPreferences preferences, @NonNull SyncPeer peer,
+                      int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.contentResolver = contentResolver;
+        this.preferences = preferences;
+        this.peer = peer;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs one sync by pushing local changes and then pulling the peer's changes.
+     *
+     * @throws IOException                    If the peer cannot be reached or a local query fails.
+     * @throws RemoteException                If the content provider cannot be reached.
+     * @throws OperationApplicationException If a pulled batch cannot be applied.
+     */
+    @WorkerThread
+    public void sync() throws IOException, RemoteException, OperationApplicationException {
+        push();
+        pull();
+    }
+
+    /**
+     * Pushes every dirty product and tombstone to the peer in batches. Each batch is marked clean
+     * after the peer accepts it. Rows changed while a batch is in flight stay dirty and are pushed
+     * again.
+     *
+     * @throws IOException If the peer cannot be reached or a local query fails.
+     */
+    private void push() throws IOException {
+        Uri dirtyChangesUri = ProductEntry.buildChangesUri(0).buildUpon()
+                .appendQueryParameter(ProductContract.PARAM_LIMIT, String.valueOf(batchSize))
+                .build();
+        while (true) {
+
+            // Query the next batch of dirty rows.
+            Cursor cursor = contentResolver.query(
+                    dirtyChangesUri,
+                    null,
+                    ProductEntry.COLUMN_DIRTY + "=1",
+                    null,
+                    null
+            );
+            if (cursor == null) {
+                throw new IOException("Cannot query local changes");
+            }
+
+            List<ContentValues> changes = new ArrayList<>();
+            long[] ids;
+            long[] versions;
+            try {
+                ids = new long[cursor.getCount()];
+                versions = new long[cursor.getCount()];
+                int idColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry._ID);
+                int versionColumnIndex = cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_VERSION);
+                while (cursor.moveToNext()) {
+                    ids[changes.size()] = cursor.getLong(idColumnIndex);
+                    versions[changes.size()] = cursor.getLong(versionColumnIndex);
+                    changes.add(readChange(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // Stop when there is nothing left to push.
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            peer.push(new ChangeBatch(
+                    changes,
+                    versions[versions.length - 1],
+                    changes.size() == batchSize
+            ));
+
+            // Mark the pushed rows clean.
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, ids);
+            extras.putLongArray(ProductContract.EXTRA_VERSIONS, versions);
+            Bundle result = contentResolver.call(
+                    ProductEntry.CONTENT_URI,
+                    ProductContract.METHOD_MARK_CLEAN,
+                    null,
+                    extras
+            );
+            if (result == null) {
+                throw new IOException("Cannot mark pushed changes clean");
+            }
+
+            // Stop if every remaining dirty row is still dirty because it changed during the push.
+            if (result.getInt(ProductContract.EXTRA_COUNT) == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pulls the peer's changes after the last saved change token and applies each batch in a
+     * single transaction. The change token is saved after each applied batch, so an interrupted
+     * pull resumes where it stopped.
+     *
+     * @throws IOException                    If the peer cannot be reached.
+     * @throws RemoteException                If the content provider cannot be reached.
+     * @throws OperationApplicationException If a pulled batch cannot be applied.
+     */
+    private void pull() throws IOException, RemoteException, OperationApplicationException {
+        long token = preferences.getLong(KEY_REMOTE_TOKEN, 0);
+        ChangeBatch batch;
+        do {
+            batch = peer.pull(token, batchSize);
+
+            // Turn each change into a sync adapter operation.
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            for (ContentValues change : batch.getChanges()) {
+                if (ChangeBatch.isDeleted(change)) {
+                    operations.add(ContentProviderOperation
+                            .newDelete(ProductContract.asSyncAdapter(ProductEntry.CONTENT_URI))
+                            .withSelection(ProductEntry.COLUMN_UUID + "=?", new String[]{
+                                    change.getAsString(ProductEntry.COLUMN_UUID)})
+                            .build());
+                } else {
+                    ContentValues values = new ContentValues(change);
+                    values.remove(ProductEntry.COLUMN_DELETED);
+                    operations.add(ContentProviderOperation
+                            .newInsert(ProductContract.asSyncAdapter(ProductEntry.CONTENT_URI))
+                            .withValues(values)
+                            .build());
+                }
+            }
+
+            // Apply the batch and remember where it ended.
+            if (!operations.isEmpty()) {
+                contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            }
+            if (batch.getToken() > token) {
+                token = batch.getToken();
+                preferences.edit().putLong(KEY_REMOTE_TOKEN, token).apply();
+            }
+        } while (batch.hasMore() && !batch.getChanges().isEmpty());
+    }
+
+    /**
+     * Reads the change at the current position of a change feed {@link Cursor}. The id, version,
+     * and dirty columns are local bookkeeping and are left out.
+     *
+     * @param cursor {@link Cursor} from {@link ProductEntry#CONTENT_CHANGES_URI}.
+     * @return {@link ContentValues} describing the change.
+     */
+    @NonNull
+    private static ContentValues readChange(@NonNull Cursor cursor) {
+        ContentValues change = new ContentValues();
+        change.put(ProductEntry.COLUMN_UUID,
+                cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_UUID)));
+        int deleted = cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_DELETED));
+        change.put(ProductEntry.COLUMN_DELETED, deleted);
+        if (deleted == 0) {
+            change.put(ProductEntry.COLUMN_NAME,
+                    cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_NAME)));
+            change.put(ProductEntry.COLUMN_PRICE,
+                    cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRICE)));
+            change.put(ProductEntry.COLUMN_QUANTITY,
+                    cursor.getInt(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_QUANTITY)));
+            change.put(ProductEntry.COLUMN_SUPPLIER,
+                    cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_SUPPLIER)));
+            change.put(ProductEntry.COLUMN_PICTURE,
+                    cursor.getBlob(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PICTURE)));
+            change.put(ProductEntry.COLUMN_SKU,
+                    cursor.getString(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_SKU)));
+        }
+        return change;
+    }
+}
@@ -0,0 +1,32 @@
+package com.davidread.clothingstoreinventorytracker.sync;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * {@link SyncPeer} is an interface for the other side of a {@link SyncEngine} sync, such as
+ * another device or a store server. Both directions exchange {@link ChangeBatch} objects, so only
+ * rows changed since the last sync are transferred.
+ */
+public interface SyncPeer {
+
+    /**
+     * Returns the changes this peer has made after the passed change token.
+     *
+     * @param sinceToken Change token returned by a previous pull. Is 0 on the first pull.
+     * @param limit      Maximum number of changes to return.
+     * @return {@link ChangeBatch} of changes ordered by the peer's change token.
+     * @throws IOException If the peer cannot be reached.
+     */
+    @NonNull
+    ChangeBatch pull(long sinceToken, int limit) throws IOException;
+
+    /**
+     * Sends a batch of local changes to this peer. The peer must apply the whole batch or throw.
+     *
+     * @param batch {@link ChangeBatch} of local changes.
+     * @throws IOException If the peer cannot be reached or rejects the batch.
+     */
+    void push(@NonNull ChangeBatch batch) throws IOException;
+}
@@ -0,0 +1,62 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.davidread.clothingstoreinventorytracker.data.FirstScreenSnapshot;
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FirstScreenSnapshotTest} provides tests that verify {@link FirstScreenSnapshot} keeps the
+ * first screen of products across launches. They run on the local JVM under Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FirstScreenSnapshotTest {
+
+    /**
+     * Verifies that a saved snapshot is read back by a later launch, limited to the first screen
+     * of rows and to the columns the list shows.
+     */
+    @Test
+    public void save_LiveRows_ReadBackByNextLaunch() {
+        Context context = ApplicationProvider.getApplicationContext();
+        final int maxRows = context.getResources().getInteger(R.integer.first_screen_snapshot_rows);
+
+        MatrixCursor live = new MatrixCursor(new String[]{
+                ProductEntry._ID,
+                ProductEntry.COLUMN_NAME,
+                ProductEntry.COLUMN_PRICE,
+                ProductEntry.COLUMN_QUANTITY,
+                ProductEntry.COLUMN_SUPPLIER,
+                ProductEntry.COLUMN_VARIANT_COUNT,
+                ProductEntry.COLUMN_VARIANT_QUANTITY
+        });
+        for (int i = 1; i <= maxRows + 5; i++) {
+            live.addRow(new Object[]{i, "Product " + i, 100 * i, i, "Harbor Supply", 0, 0});
+        }
+
+        assertNull(new FirstScreenSnapshot(context).read());
+        new FirstScreenSnapshot(context).save(live, Runnable::run);
+        live.close();
+
+        // Verify that a new instance, as on the next launch, reads the first screen back.
+        Cursor snapshot = new FirstScreenSnapshot(context).read();
+        assertNotNull(snapshot);
+        assertArrayEquals(FirstScreenSnapshot.COLUMNS, snapshot.getColumnNames());
+        assertEquals(maxRows, snapshot.getCount());
+        assertTrue(snapshot.moveToLast());
+        assertEquals(maxRows, snapshot.getLong(0));
+        assertEquals("Product " + maxRows, snapshot.getString(1));
+        assertEquals(100 * maxRows, snapshot.getInt(2));
+        snapshot.close();
+    }
+}
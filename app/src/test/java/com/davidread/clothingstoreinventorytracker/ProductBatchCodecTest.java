@@ -0,0 +1,213 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductBatchDecoder;
+import com.davidread.clothingstoreinventorytracker.data.ProductBatchEncoder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ProductBatchCodecTest} provides several unit tests to verify the correctness of
+ * {@link ProductBatchEncoder} and {@link ProductBatchDecoder}, and a benchmark comparing their size
+ * and throughput against JSON.
+ */
+public class ProductBatchCodecTest {
+
+    /**
+     * Some dummy name and supplier values, matching those used by {@link InventoryActivity}.
+     */
+    private static final String[] NAMES = {
+            "Super Soft Icon T-Shirt",
+            "AirFlex + Patched Stacked Skinny Jean",
+            "Cozy Cabin Flannel",
+            "Skate Sneaker",
+            "Ünïcödé Jäckét 🧥"
+    };
+    private static final String[] SUPPLIERS = {
+            "Grainger Industrial Supply",
+            "Hudson Wholesale Inc.",
+            "Regards Wholesale",
+            "Garment Center Supplier Association",
+            "eFashion Wholesale"
+    };
+
+    /**
+     * Number of products in the benchmark batch.
+     */
+    private static final int BENCHMARK_SIZE = 100_000;
+
+    /**
+     * Verifies that products and deletions written by {@link ProductBatchEncoder} are read back
+     * unchanged by {@link ProductBatchDecoder}.
+     */
+    @Test
+    public void roundTrip_MixedRows_ReadsBackSameValues() {
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        ProductBatchEncoder encoder = new ProductBatchEncoder();
+        assertTrue(encoder.writeHeader(buffer));
+        assertTrue(encoder.writeProduct(buffer, 42, NAMES[4], 2499, 7, SUPPLIERS[2], new byte[]{1, 2, 3}));
+        assertTrue(encoder.writeProduct(buffer, 7, NAMES[0], 0, 0, SUPPLIERS[2], null));
+        assertTrue(encoder.writeDeleted(buffer, 9000));
+        buffer.flip();
+
+        ProductBatchDecoder decoder = new ProductBatchDecoder();
+        assertTrue(decoder.readHeader(buffer));
+
+        assertTrue(decoder.next(buffer));
+        assertEquals(42, decoder.getId());
+        assertFalse(decoder.isDeleted());
+        assertEquals(NAMES[4], decoder.getName());
+        assertEquals(2499, decoder.getPrice());
+        assertEquals(7, decoder.getQuantity());
+        assertEquals(SUPPLIERS[2], decoder.getSupplier());
+        assertArrayEquals(new byte[]{1, 2, 3}, decoder.getPicture());
+
+        assertTrue(decoder.next(buffer));
+        assertEquals(7, decoder.getId());
+        assertEquals(NAMES[0], decoder.getName());
+        assertEquals(SUPPLIERS[2], decoder.getSupplier());
+        assertNull(decoder.getPicture());
+
+        assertTrue(decoder.next(buffer));
+        assertEquals(9000, decoder.getId());
+        assertTrue(decoder.isDeleted());
+
+        assertFalse(decoder.next(buffer));
+    }
+
+    /**
+     * Verifies that rows streamed through small buffers are never split: the encoder refuses rows
+     * that do not fit, and the decoder waits for the rest of a partial row.
+     */
+    @Test
+    public void roundTrip_SmallBuffers_StreamsEveryRow() {
+
+        // Encode through a 128 byte buffer, draining it into a big one whenever it fills up.
+        ByteBuffer stream = ByteBuffer.allocate(64 * 1024);
+        ByteBuffer chunk = ByteBuffer.allocate(128);
+        ProductBatchEncoder encoder = new ProductBatchEncoder();
+        assertTrue(encoder.writeHeader(chunk));
+        for (int i = 0; i < 100; i++) {
+            if (!encoder.writeProduct(chunk, i, NAMES[i % 4], i, i, SUPPLIERS[i % 5], null)) {
+                chunk.flip();
+                stream.put(chunk);
+                chunk.clear();
+                assertTrue(encoder.writeProduct(chunk, i, NAMES[i % 4], i, i, SUPPLIERS[i % 5], null));
+            }
+        }
+        chunk.flip();
+        stream.put(chunk);
+        stream.flip();
+
+        // Decode by feeding 5 bytes at a time.
+        ByteBuffer window = ByteBuffer.allocate(128);
+        window.flip();
+        ProductBatchDecoder decoder = new ProductBatchDecoder();
+        boolean hasReadHeader = false;
+        int countRows = 0;
+        while (stream.hasRemaining() || window.hasRemaining()) {
+            window.compact();
+            for (int i = 0; i < 5 && stream.hasRemaining(); i++) {
+                window.put(stream.get());
+            }
+            window.flip();
+            if (!hasReadHeader) {
+                hasReadHeader = decoder.readHeader(window);
+            }
+            while (hasReadHeader && decoder.next(window)) {
+                assertEquals(countRows, decoder.getId());
+                assertEquals(NAMES[countRows % 4], decoder.getName());
+                assertEquals(SUPPLIERS[countRows % 5], decoder.getSupplier());
+                countRows++;
+            }
+            if (!stream.hasRemaining() && countRows == 100) {
+                break;
+            }
+        }
+
+        assertEquals(100, countRows);
+    }
+
+    /**
+     * Compares the encoded size and round trip time of {@link #BENCHMARK_SIZE} products against
+     * JSON and verifies that the binary format is smaller, reporting both in the assertion
+     * messages.
+     */
+    @Test
+    public void benchmark_100kProducts_SmallerThanJson() throws Exception {
+
+        // Generate a catalog like the one InventoryActivity builds with dummy rows.
+        Random random = new Random(42);
+        String[] names = new String[BENCHMARK_SIZE];
+        int[] prices = new int[BENCHMARK_SIZE];
+        int[] quantities = new int[BENCHMARK_SIZE];
+        String[] suppliers = new String[BENCHMARK_SIZE];
+        byte[][] pictures = new byte[BENCHMARK_SIZE][];
+        for (int i = 0; i < BENCHMARK_SIZE; i++) {
+            names[i] = NAMES[random.nextInt(NAMES.length)];
+            prices[i] = random.nextInt(10000);
+            quantities[i] = random.nextInt(1000);
+            suppliers[i] = SUPPLIERS[random.nextInt(SUPPLIERS.length)];
+            pictures[i] = new byte[4];
+            random.nextBytes(pictures[i]);
+        }
+
+        // Binary round trip.
+        long binaryStart = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024 * 1024);
+        ProductBatchEncoder encoder = new ProductBatchEncoder();
+        encoder.writeHeader(buffer);
+        for (int i = 0; i < BENCHMARK_SIZE; i++) {
+            assertTrue(encoder.writeProduct(buffer, i + 1, names[i], prices[i], quantities[i],
+                    suppliers[i], pictures[i]));
+        }
+        buffer.flip();
+        int binarySize = buffer.remaining();
+        ProductBatchDecoder decoder = new ProductBatchDecoder();
+        decoder.readHeader(buffer);
+        long checksum = 0;
+        while (decoder.next(buffer)) {
+            checksum += decoder.getPrice() + decoder.getQuantity() + decoder.getPictureLength();
+        }
+        long binaryNanos = System.nanoTime() - binaryStart;
+
+        // JSON round trip.
+        long jsonStart = System.nanoTime();
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < BENCHMARK_SIZE; i++) {
+            JSONObject object = new JSONObject();
+            object.put("_id", i + 1);
+            object.put("name", names[i]);
+            object.put("price", prices[i]);
+            object.put("quantity", quantities[i]);
+            object.put("supplier", suppliers[i]);
+            object.put("picture", Base64.getEncoder().encodeToString(pictures[i]));
+            array.put(object);
+        }
+        byte[] json = array.toString().getBytes(StandardCharsets.UTF_8);
+        JSONArray parsed = new JSONArray(new String(json, StandardCharsets.UTF_8));
+        long jsonChecksum = 0;
+        for (int i = 0; i < parsed.length(); i++) {
+            JSONObject object = parsed.getJSONObject(i);
+            jsonChecksum += object.getInt("price") + object.getInt("quantity")
+                    + Base64.getDecoder().decode(object.getString("picture")).length;
+        }
+        long jsonNanos = System.nanoTime() - jsonStart;
+
+        final String report = String.format(Locale.US,
+                "Binary: %d bytes, %.1f ms round trip; JSON: %d bytes, %.1f ms round trip",
+                binarySize, binaryNanos / 1e6, json.length, jsonNanos / 1e6);
+        assertEquals(report, jsonChecksum, checksum);
+        assertTrue(report, binarySize < json.length);
+    }
+}
@@ -0,0 +1,360 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link ProductLoadDriver} is a class that drives a
+ * {@link com.davidread.clothingstoreinventorytracker.data.ProductProvider} from several threads at
+ * once with a mix of reads, updates, inserts, and deletes generated by {@link ProductWorkload}, and
+ * reports throughput, latency percentiles, and contention.
+ */
+public class ProductLoadDriver {
+
+    /**
+     * Kinds of operations in a workload mix.
+     */
+    public static final int OPERATION_READ = 0;
+    public static final int OPERATION_UPDATE = 1;
+    public static final int OPERATION_INSERT = 2;
+    public static final int OPERATION_DELETE = 3;
+    private static final String[] OPERATION_NAMES = {"read", "update", "insert", "delete"};
+
+    /**
+     * Columns read by a read operation, matching what the product list shows.
+     */
+    private static final String[] READ_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_NAME,
+            ProductEntry.COLUMN_PRICE,
+            ProductEntry.COLUMN_QUANTITY
+    };
+
+    /**
+     * {@link ContentResolver} for accessing the provider.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Constructs a new {@link ProductLoadDriver}.
+     *
+     * @param contentResolver {@link ContentResolver} for accessing the provider.
+     */
+    public ProductLoadDriver(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * Inserts a catalog of products, one insert at a time like the app does.
+     *
+     * @param workload {@link ProductWorkload} generating the catalog.
+     * @param size     Number of products to insert.
+     * @return Ids of the inserted products.
+     */
+    public long[] seed(ProductWorkload workload, int size) {
+        List<ContentValues> catalog = workload.nextCatalog(size);
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            Uri uri = contentResolver.insert(ProductEntry.CONTENT_URI, catalog.get(i));
+            if (uri == null) {
+                throw new IllegalStateException("Cannot seed product " + i);
+            }
+            ids[i] = ContentUris.parseId(uri);
+        }
+        return ids;
+    }
+
+    /**
+     * Runs a workload from several threads that start at the same time. Reads, updates, and
+     * deletes target random products among the passed ids and those inserted during the run, so
+     * some of them hit deleted products, as they would in a real store.
+     *
+     * @param ids                 Ids of existing products, usually from
+     *                            {@link #seed(ProductWorkload, int)}.
+     * @param countThreads        Number of concurrent threads.
+     * @param operationsPerThread Number of operations run by each thread.
+     * @param mix                 Relative weight of each operation, indexed by
+     *                            {@link #OPERATION_READ}, {@link #OPERATION_UPDATE},
+     *                            {@link #OPERATION_INSERT}, and {@link #OPERATION_DELETE}.
+     * @param seed                Seed of the workload. Each thread derives its own from it.
+     * @return {@link Report} of the run.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    public Report run(long[] ids, int countThreads, int operationsPerThread, int[] mix, long seed)
+            throws InterruptedException {
+        if (mix.length != OPERATION_NAMES.length) {
+            throw new IllegalArgumentException("Mix needs a weight for each operation");
+        }
+        int totalWeight = 0;
+        for (int weight : mix) {
+            totalWeight += weight;
+        }
+
+        // Products inserted during the run are appended here so other threads can target them.
+        final int capacity = ids.length + countThreads * operationsPerThread;
+        final AtomicLongArray knownIds = new AtomicLongArray(capacity);
+        for (int i = 0; i < ids.length; i++) {
+            knownIds.set(i, ids[i]);
+        }
+        final int[] countKnownIds = {ids.length};
+
+        final int[][] countLatencies = new int[countThreads][OPERATION_NAMES.length];
+        final long[][][] threadLatencies = new long[countThreads][OPERATION_NAMES.length][operationsPerThread];
+        final int[] countMisses = new int[countThreads];
+        final Throwable[] failures = new Throwable[countThreads];
+        final CyclicBarrier startBarrier = new CyclicBarrier(countThreads + 1);
+        final CountDownLatch doneLatch = new CountDownLatch(countThreads);
+        final int finalTotalWeight = totalWeight;
+
+        for (int t = 0; t < countThreads; t++) {
+            final int thread = t;
+            new Thread(() -> {
+                ProductWorkload workload = new ProductWorkload(seed * 31 + thread, 20, 1.0, 1024, 16 * 1024);
+                try {
+                    startBarrier.await();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        int operation = pickOperation(workload.nextInt(finalTotalWeight), mix);
+                        int known;
+                        synchronized (countKnownIds) {
+                            known = countKnownIds[0];
+                        }
+                        long id = known == 0 ? 1 : knownIds.get(workload.nextInt(known));
+
+                        long start = System.nanoTime();
+                        boolean isHit = execute(operation, id, workload, knownIds, countKnownIds);
+                        long elapsed = System.nanoTime() - start;
+
+                        threadLatencies[thread][operation][countLatencies[thread][operation]++] = elapsed;
+                        if (!isHit) {
+                            countMisses[thread]++;
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures[thread] = e;
+                } finally {
+                    doneLatch.countDown();
+                }
+            }, "load-" + t).start();
+        }
+
+        long runStart;
+        try {
+            startBarrier.await();
+            runStart = System.nanoTime();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot start load threads", e);
+        }
+        doneLatch.await();
+        long runNanos = System.nanoTime() - runStart;
+
+        // Merge per-thread latencies and outcomes.
+        long[][] latencies = new long[OPERATION_NAMES.length][countThreads * operationsPerThread];
+        int[] countPerOperation = new int[OPERATION_NAMES.length];
+        for (int t = 0; t < countThreads; t++) {
+            for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+                int count = countLatencies[t][operation];
+                System.arraycopy(threadLatencies[t][operation], 0,
+                        latencies[operation], countPerOperation[operation], count);
+                countPerOperation[operation] += count;
+            }
+        }
+        int totalMisses = 0;
+        List<Throwable> failureList = new ArrayList<>();
+        for (int t = 0; t < countThreads; t++) {
+            totalMisses += countMisses[t];
+            if (failures[t] != null) {
+                failureList.add(failures[t]);
+            }
+        }
+        long[][] sortedLatencies = new long[OPERATION_NAMES.length][];
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            sortedLatencies[operation] = Arrays.copyOf(latencies[operation], countPerOperation[operation]);
+            Arrays.sort(sortedLatencies[operation]);
+        }
+        return new Report(countThreads, runNanos, sortedLatencies, totalMisses, failureList);
+    }
+
+    /**
+     * Runs a single operation.
+     *
+     * @return Whether the operation found the product it targeted.
+     */
+    private boolean execute(int operation, long id, ProductWorkload workload,
+                            AtomicLongArray knownIds, int[] countKnownIds) {
+        Uri uri = ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id);
+        switch (operation) {
+            case OPERATION_READ:
+                Cursor cursor = contentResolver.query(uri, READ_PROJECTION, null, null, null);
+                if (cursor == null) {
+                    throw new IllegalStateException("Query failed");
+                }
+                try {
+                    return cursor.moveToFirst();
+                } finally {
+                    cursor.close();
+                }
+            case OPERATION_UPDATE:
+                int countUpdated = contentResolver.update(uri, workload.nextEdit(), null, null);
+                if (countUpdated == -1) {
+                    throw new IllegalStateException("Update failed");
+                }
+                return countUpdated == 1;
+            case OPERATION_INSERT:
+                Uri insertUri = contentResolver.insert(ProductEntry.CONTENT_URI, workload.nextProduct());
+                if (insertUri == null) {
+                    throw new IllegalStateException("Insert failed");
+                }
+                synchronized (countKnownIds) {
+                    knownIds.set(countKnownIds[0]++, ContentUris.parseId(insertUri));
+                }
+                return true;
+            case OPERATION_DELETE:
+                int countDeleted = contentResolver.delete(uri, null, null);
+                if (countDeleted == -1) {
+                    throw new IllegalStateException("Delete failed");
+                }
+                return countDeleted == 1;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    /**
+     * Maps a random number in [0, total weight) to an operation of the mix.
+     */
+    private static int pickOperation(int value, int[] mix) {
+        for (int operation = 0; operation < mix.length; operation++) {
+            value -= mix[operation];
+            if (value < 0) {
+                return operation;
+            }
+        }
+        return mix.length - 1;
+    }
+
+    /**
+     * {@link Report} is a model class that holds the outcome of a
+     * {@link #run(long[], int, int, int[], long)}.
+     */
+    public static class Report {
+
+        private final int countThreads;
+        private final long runNanos;
+        private final long[][] sortedLatencies;
+        private final int countMisses;
+        private final List<Throwable> failures;
+
+        Report(int countThreads, long runNanos, long[][] sortedLatencies, int countMisses,
+               List<Throwable> failures) {
+            this.countThreads = countThreads;
+            this.runNanos = runNanos;
+            this.sortedLatencies = sortedLatencies;
+            this.countMisses = countMisses;
+            this.failures = failures;
+        }
+
+        /**
+         * Returns the number of completed operations.
+         */
+        public int getCountOperations() {
+            int count = 0;
+            for (long[] latencies : sortedLatencies) {
+                count += latencies.length;
+            }
+            return count;
+        }
+
+        /**
+         * Returns the completed operations per second over the whole run.
+         */
+        public double getThroughput() {
+            return getCountOperations() / (runNanos / 1e9);
+        }
+
+        /**
+         * Returns a latency percentile of an operation in microseconds, or 0 if it never ran.
+         *
+         * @param operation  One of the OPERATION constants.
+         * @param percentile Percentile in [0, 100].
+         */
+        public double getLatencyMicros(int operation, double percentile) {
+            long[] latencies = sortedLatencies[operation];
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e3;
+        }
+
+        /**
+         * Returns how well throughput scales compared with a run on fewer threads. It is 1 when
+         * throughput grows with the number of threads and 1 / threads when every operation is
+         * serialized behind a lock, so it measures contention between threads.
+         *
+         * @param baseline {@link Report} of the same workload on fewer threads, usually one.
+         */
+        public double getScalingEfficiency(Report baseline) {
+            double speedup = getThroughput() / baseline.getThroughput();
+            return speedup / ((double) countThreads / baseline.countThreads);
+        }
+
+        /**
+         * Returns how many times slower the median of an operation is compared with a run on
+         * fewer threads. Time spent waiting for other threads shows up here.
+         *
+         * @param baseline  {@link Report} of the same workload on fewer threads, usually one.
+         * @param operation One of the OPERATION constants.
+         */
+        public double getLatencyInflation(Report baseline, int operation) {
+            double baselineMedian = baseline.getLatencyMicros(operation, 50);
+            return baselineMedian == 0 ? 0 : getLatencyMicros(operation, 50) / baselineMedian;
+        }
+
+        /**
+         * Returns the number of reads, updates, and deletes that targeted a missing product.
+         */
+        public int getCountMisses() {
+            return countMisses;
+        }
+
+        /**
+         * Returns the errors thrown by the load threads. Each one stopped its thread.
+         */
+        public List<Throwable> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Returns a human readable table of the report.
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.US,
+                    "%d threads: %d ops in %.1f ms, %.0f ops/s, %d misses, %d failures%n",
+                    countThreads, getCountOperations(), runNanos / 1e6, getThroughput(),
+                    countMisses, failures.size()));
+            for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+                builder.append(String.format(Locale.US,
+                        "  %-6s n=%-6d p50=%8.1fus p95=%8.1fus p99=%8.1fus max=%8.1fus%n",
+                        OPERATION_NAMES[operation], sortedLatencies[operation].length,
+                        getLatencyMicros(operation, 50), getLatencyMicros(operation, 95),
+                        getLatencyMicros(operation, 99), getLatencyMicros(operation, 100)));
+            }
+            return builder.toString();
+        }
+    }
+}
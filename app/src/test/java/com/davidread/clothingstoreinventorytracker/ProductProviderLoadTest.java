@@ -0,0 +1,123 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract;
+import com.davidread.clothingstoreinventorytracker.data.ProductProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ProductProviderLoadTest} provides tests that verify {@link ProductWorkload} and drive
+ * {@link ProductProvider} from concurrent threads with {@link ProductLoadDriver}. They run on the
+ * local JVM under Robolectric and report the figures of each run in their assertion messages.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProductProviderLoadTest {
+
+    /**
+     * Workload mix of a busy store floor: mostly reads, a steady stream of stock edits, and some
+     * catalog churn.
+     */
+    private static final int[] STORE_MIX = {70, 20, 7, 3};
+
+    /**
+     * Size of the catalog seeded before each run, and operations run by each thread.
+     */
+    private static final int CATALOG_SIZE = 500;
+    private static final int OPERATIONS_PER_THREAD = 400;
+
+    /**
+     * {@link ProductLoadDriver} driving the {@link ProductProvider}.
+     */
+    private ProductLoadDriver driver;
+
+    /**
+     * Callback method invoked before each test method. It registers a {@link ProductProvider} and
+     * initializes {@link #driver}.
+     */
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+        ContentResolver contentResolver =
+                ApplicationProvider.getApplicationContext().getContentResolver();
+        driver = new ProductLoadDriver(contentResolver);
+    }
+
+    /**
+     * Verifies that {@link ProductWorkload} is deterministic, only generates values the provider
+     * accepts, and skews suppliers as configured.
+     */
+    @Test
+    public void workload_SameSeed_GeneratesSameSkewedCatalog() {
+
+        List<ContentValues> first = new ProductWorkload(7, 10, 1.2, 0, 64).nextCatalog(2000);
+        List<ContentValues> second = new ProductWorkload(7, 10, 1.2, 0, 64).nextCatalog(2000);
+        for (int i = 0; i < first.size(); i++) {
+            for (String column : new String[]{ProductContract.ProductEntry.COLUMN_NAME,
+                    ProductContract.ProductEntry.COLUMN_PRICE, ProductContract.ProductEntry.COLUMN_QUANTITY,
+                    ProductContract.ProductEntry.COLUMN_SUPPLIER}) {
+                assertEquals(first.get(i).get(column), second.get(i).get(column));
+            }
+            assertArrayEquals(first.get(i).getAsByteArray(ProductContract.ProductEntry.COLUMN_PICTURE),
+                    second.get(i).getAsByteArray(ProductContract.ProductEntry.COLUMN_PICTURE));
+        }
+
+        Map<String, Integer> countPerSupplier = new HashMap<>();
+        for (ContentValues values : first) {
+            assertFalse(values.getAsString(ProductContract.ProductEntry.COLUMN_NAME).isEmpty());
+            assertTrue(values.getAsInteger(ProductContract.ProductEntry.COLUMN_PRICE) >= 0);
+            assertTrue(values.getAsInteger(ProductContract.ProductEntry.COLUMN_QUANTITY) >= 0);
+            assertTrue(values.getAsByteArray(ProductContract.ProductEntry.COLUMN_PICTURE).length <= 64);
+            countPerSupplier.merge(values.getAsString(ProductContract.ProductEntry.COLUMN_SUPPLIER), 1, Integer::sum);
+        }
+
+        // With a skew above 1, the top supplier stocks far more than an even share.
+        assertEquals(10, countPerSupplier.size());
+        int top = 0;
+        for (int count : countPerSupplier.values()) {
+            top = Math.max(top, count);
+        }
+        assertTrue(top > 3 * 2000 / 10);
+    }
+
+    /**
+     * Drives the {@link ProductProvider} with the store mix on one thread and then on four, and
+     * verifies that every operation completes without failing.
+     */
+    @Test
+    public void run_StoreMixOnFourThreads_CompletesWithoutFailures() throws Exception {
+
+        long[] ids = driver.seed(new ProductWorkload(1, 20, 1.0, 1024, 16 * 1024), CATALOG_SIZE);
+        assertEquals(CATALOG_SIZE, ids.length);
+
+        ProductLoadDriver.Report baseline = driver.run(ids, 1, OPERATIONS_PER_THREAD, STORE_MIX, 2);
+        ProductLoadDriver.Report loaded = driver.run(ids, 4, OPERATIONS_PER_THREAD, STORE_MIX, 3);
+
+        // Each assertion reports both runs, so a failure shows the figures it happened at.
+        final String report = String.format(Locale.US,
+                "%s%sScaling efficiency: %.2f, update p50 inflation: %.1fx%n", baseline, loaded,
+                loaded.getScalingEfficiency(baseline),
+                loaded.getLatencyInflation(baseline, ProductLoadDriver.OPERATION_UPDATE));
+
+        assertTrue(report + baseline.getFailures(), baseline.getFailures().isEmpty());
+        assertTrue(report + loaded.getFailures(), loaded.getFailures().isEmpty());
+        assertEquals(report, OPERATIONS_PER_THREAD, baseline.getCountOperations());
+        assertEquals(report, 4 * OPERATIONS_PER_THREAD, loaded.getCountOperations());
+        assertTrue(report, loaded.getThroughput() > 0);
+    }
+}
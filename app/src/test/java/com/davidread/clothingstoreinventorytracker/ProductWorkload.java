@@ -0,0 +1,204 @@
+package com.davidread.clothingstoreinventorytracker;
+
+import android.content.ContentValues;
+
+import com.davidread.clothingstoreinventorytracker.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link ProductWorkload} is a class that generates realistic product catalogs for tests and
+ * benchmarks. Names are built from clothing vocabulary, prices and quantities follow skewed
+ * distributions like those of a real store, a few suppliers stock most products, and pictures
+ * have configurable sizes. The same seed always produces the same catalog.
+ *
+ * <p>A {@link ProductWorkload} is not thread-safe. Give each thread its own instance with a
+ * distinct seed.
+ */
+public class ProductWorkload {
+
+    /**
+     * Vocabulary that product names are built from.
+     */
+    private static final String[] ADJECTIVES = {
+            "Super Soft", "AirFlex", "Cozy", "Vintage", "Classic", "Slim Fit", "Relaxed", "Thermal",
+            "Stretch", "Heavyweight", "Lightweight", "Distressed", "Washed", "Essential"
+    };
+    private static final String[] MATERIALS = {
+            "Cotton", "Denim", "Flannel", "Fleece", "Linen", "Jersey", "Corduroy", "Canvas", "Wool"
+    };
+    private static final String[] GARMENTS = {
+            "T-Shirt", "Skinny Jean", "Cargo Jogger", "Hoodie", "Flannel Shirt", "Denim Short",
+            "Cargo Short", "Trunk Underwear", "Sneaker", "Crew Sweater", "Polo", "Chino", "Jacket"
+    };
+    private static final String[] SUPPLIER_WORDS = {
+            "Grainger", "Hudson", "Regards", "Garment Center", "eFashion", "Harbor", "Summit",
+            "Union", "Atlas", "Pioneer", "Keystone", "Meridian"
+    };
+    private static final String[] SUPPLIER_SUFFIXES = {
+            "Wholesale", "Supply", "Wholesale Inc.", "Trading Co.", "Apparel Group"
+    };
+
+    /**
+     * {@link Random} driving every generated value.
+     */
+    private final Random random;
+
+    /**
+     * Names of the suppliers, and the cumulative probability of picking each one.
+     */
+    private final String[] suppliers;
+    private final double[] supplierCumulativeWeights;
+
+    /**
+     * Range of picture sizes in bytes.
+     */
+    private final int minPictureBytes;
+    private final int maxPictureBytes;
+
+    /**
+     * Constructs a new {@link ProductWorkload}.
+     *
+     * @param seed            Seed of the generated values.
+     * @param countSuppliers  Number of distinct suppliers.
+     * @param supplierSkew    Zipf exponent of the supplier distribution. 0 spreads products evenly
+     *                        across suppliers, and about 1 makes the top few supply most products.
+     * @param minPictureBytes Minimum size of a picture in bytes.
+     * @param maxPictureBytes Maximum size of a picture in bytes.
+     */
+    public ProductWorkload(long seed, int countSuppliers, double supplierSkew, int minPictureBytes,
+                           int maxPictureBytes) {
+        if (countSuppliers < 1 || supplierSkew < 0 || minPictureBytes < 0
+                || maxPictureBytes < minPictureBytes) {
+            throw new IllegalArgumentException("Invalid workload parameters");
+        }
+        this.random = new Random(seed);
+        this.minPictureBytes = minPictureBytes;
+        this.maxPictureBytes = maxPictureBytes;
+
+        // Name the suppliers, and weigh the i-th one by 1 / (i + 1)^skew.
+        suppliers = new String[countSuppliers];
+        supplierCumulativeWeights = new double[countSuppliers];
+        double totalWeight = 0;
+        for (int i = 0; i < countSuppliers; i++) {
+            suppliers[i] = SUPPLIER_WORDS[i % SUPPLIER_WORDS.length] + " "
+                    + SUPPLIER_SUFFIXES[(i / SUPPLIER_WORDS.length) % SUPPLIER_SUFFIXES.length]
+                    + (i < SUPPLIER_WORDS.length * SUPPLIER_SUFFIXES.length ? "" : " " + i);
+            totalWeight += 1 / Math.pow(i + 1, supplierSkew);
+            supplierCumulativeWeights[i] = totalWeight;
+        }
+        for (int i = 0; i < countSuppliers; i++) {
+            supplierCumulativeWeights[i] /= totalWeight;
+        }
+    }
+
+    /**
+     * Returns a catalog of new products.
+     *
+     * @param size Number of products in the catalog.
+     * @return {@link ContentValues} of each product, ready to be inserted.
+     */
+    public List<ContentValues> nextCatalog(int size) {
+        List<ContentValues> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            catalog.add(nextProduct());
+        }
+        return catalog;
+    }
+
+    /**
+     * Returns a new product with every required column.
+     *
+     * @return {@link ContentValues} of the product, ready to be inserted.
+     */
+    public ContentValues nextProduct() {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_NAME, nextName());
+        values.put(ProductEntry.COLUMN_PRICE, nextPrice());
+        values.put(ProductEntry.COLUMN_QUANTITY, nextQuantity());
+        values.put(ProductEntry.COLUMN_SUPPLIER, nextSupplier());
+        values.put(ProductEntry.COLUMN_PICTURE, nextPicture());
+        return values;
+    }
+
+    /**
+     * Returns an edit of an existing product, the way a store would make one: usually a stock
+     * count, sometimes a price change.
+     *
+     * @return {@link ContentValues} of the edited columns, ready to be updated.
+     */
+    public ContentValues nextEdit() {
+        ContentValues values = new ContentValues();
+        if (random.nextInt(10) < 8) {
+            values.put(ProductEntry.COLUMN_QUANTITY, nextQuantity());
+        } else {
+            values.put(ProductEntry.COLUMN_PRICE, nextPrice());
+        }
+        return values;
+    }
+
+    /**
+     * Returns a random int in [0, bound).
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    /**
+     * Returns a product name such as "Cozy Flannel Hoodie".
+     */
+    private String nextName() {
+        String name = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                + MATERIALS[random.nextInt(MATERIALS.length)] + " "
+                + GARMENTS[random.nextInt(GARMENTS.length)];
+        return random.nextInt(4) == 0 ? name + " " + (random.nextInt(5) + 2) + "-Pack" : name;
+    }
+
+    /**
+     * Returns a price in cents, log-normally spread around $25 and rounded to end in 99 cents.
+     */
+    private int nextPrice() {
+        double dollars = Math.exp(Math.log(25) + 0.6 * random.nextGaussian());
+        return Math.max(1, (int) Math.round(Math.min(dollars, 1000))) * 100 - 1;
+    }
+
+    /**
+     * Returns a quantity in stock. Most products have a few dozen units, some are sold out, and a
+     * few are overstocked.
+     */
+    private int nextQuantity() {
+        if (random.nextInt(20) == 0) {
+            return 0;
+        }
+        return (int) Math.min(5000, Math.round(-40 * Math.log(1 - random.nextDouble())));
+    }
+
+    /**
+     * Returns a supplier picked from the skewed distribution.
+     */
+    private String nextSupplier() {
+        double target = random.nextDouble();
+        int low = 0;
+        int high = suppliers.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (supplierCumulativeWeights[middle] < target) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return suppliers[low];
+    }
+
+    /**
+     * Returns picture bytes of a size picked uniformly from the configured range.
+     */
+    private byte[] nextPicture() {
+        byte[] picture = new byte[minPictureBytes + random.nextInt(maxPictureBytes - minPictureBytes + 1)];
+        random.nextBytes(picture);
+        return picture;
+    }
+}